@@ -0,0 +1,181 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.opimage;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PointKernels} using the Vector API.
+ * <p>
+ * Each row is split into planar float arrays, padded to a whole number of
+ * vectors, computed a vector at a time and interleaved back.  Results match
+ * {@link ScalarPointKernels} to within one code value, since the scalar
+ * loops compute some intermediate values in double.
+ */
+final class VectorPointKernels implements PointKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private static final float PI = (float) Math.PI;
+
+    /**
+     * Planar rows, reused by the calls on a thread.
+     */
+    private static final class Rows {
+        float[] r = new float[0], g = r, b = r;
+
+        Rows size(int width) {
+            int length = SPECIES.loopBound(width + SPECIES.length() - 1);
+            if (r.length < length) {
+                r = new float[length];
+                g = new float[length];
+                b = new float[length];
+            }
+            return this;
+        }
+    }
+
+    private static final ThreadLocal<Rows> rows = ThreadLocal.withInitial(Rows::new);
+
+    private static void load(short[] data, int offset, int pixelStride, int width, float[] row) {
+        for (int col = 0; col < width; col++)
+            row[col] = data[offset + col * pixelStride] & 0xffff;
+    }
+
+    private static void store(float[] row, int width, short[] data, int offset, int pixelStride) {
+        for (int col = 0; col < width; col++)
+            data[offset + col * pixelStride] = (short) (int) row[col];
+    }
+
+    private static FloatVector clamp(FloatVector v) {
+        return v.max(0).min(0xffff);
+    }
+
+    @Override
+    public void vibrance(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                         short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                         int width, int height,
+                         float[][] transform, float[][] toLinearsRGB, boolean saturationIncrease) {
+        final Rows rows = VectorPointKernels.rows.get().size(width);
+        final float[] rr = rows.r, gg = rows.g, bb = rows.b;
+        final int length = SPECIES.loopBound(width + SPECIES.length() - 1);
+
+        final float coeff_1 = PI / 4;
+        final float coeff_2 = 3 * coeff_1;
+
+        for (int row = 0; row < height; row++) {
+            int srcOffset = row * srcLineStride;
+            load(srcData, srcOffset + srcBandOffsets[0], srcPixelStride, width, rr);
+            load(srcData, srcOffset + srcBandOffsets[1], srcPixelStride, width, gg);
+            load(srcData, srcOffset + srcBandOffsets[2], srcPixelStride, width, bb);
+
+            for (int i = 0; i < length; i += SPECIES.length()) {
+                FloatVector r = FloatVector.fromArray(SPECIES, rr, i);
+                FloatVector g = FloatVector.fromArray(SPECIES, gg, i);
+                FloatVector b = FloatVector.fromArray(SPECIES, bb, i);
+
+                FloatVector lr = r.mul(toLinearsRGB[0][0]).add(g.mul(toLinearsRGB[0][1])).add(b.mul(toLinearsRGB[0][2]));
+                FloatVector lg = r.mul(toLinearsRGB[1][0]).add(g.mul(toLinearsRGB[1][1])).add(b.mul(toLinearsRGB[1][2]));
+                FloatVector lb = r.mul(toLinearsRGB[2][0]).add(g.mul(toLinearsRGB[2][1])).add(b.mul(toLinearsRGB[2][2]));
+
+                // VibranceOpImage.arctan2(x, y)
+                FloatVector y = lr.sub(lg.add(lb).mul(0.5f));
+                FloatVector x = lg.sub(lb).mul(0.866f);
+                FloatVector abs_y = y.abs().add(1e-10f);
+                VectorMask<Float> xPositive = x.compare(VectorOperators.GE, 0);
+                FloatVector ratio = x.sub(abs_y).div(x.add(abs_y))
+                        .blend(x.add(abs_y).div(abs_y.sub(x)), xPositive.not());
+                FloatVector angle = ratio.mul(-coeff_1).add(coeff_1)
+                        .blend(ratio.mul(-coeff_1).add(coeff_2), xPositive.not());
+                angle = angle.blend(angle.neg(), y.compare(VectorOperators.LT, 0));
+
+                FloatVector hue = angle.add(PI);
+                hue = hue.blend(hue.add(2 * PI), hue.compare(VectorOperators.LT, 0));
+                VectorMask<Float> third = hue.compare(VectorOperators.GT, 4 * PI / 3);
+                VectorMask<Float> second = hue.compare(VectorOperators.GT, 2 * PI / 3).andNot(third);
+                hue = hue.blend(hue.sub(4 * PI / 3), third).blend(hue.sub(2 * PI / 3), second);
+
+                FloatVector mask = hue.sub(PI / 6).abs().div(-PI / 3).add(1).mul(0.5f).add(0.5f);
+
+                if (saturationIncrease) {
+                    FloatVector min = r.min(g).min(b);
+                    FloatVector max = r.max(g).max(b);
+                    VectorMask<Float> nonZero = max.compare(VectorOperators.NE, 0);
+                    FloatVector saturation = min.div(max).neg().add(1).blend(0, nonZero.not());
+                    mask = mask.mul(saturation.mul(saturation).neg().add(1));
+                }
+
+                FloatVector tr = r.mul(transform[0][0]).add(g.mul(transform[0][1])).add(b.mul(transform[0][2]));
+                FloatVector tg = r.mul(transform[1][0]).add(g.mul(transform[1][1])).add(b.mul(transform[1][2]));
+                FloatVector tb = r.mul(transform[2][0]).add(g.mul(transform[2][1])).add(b.mul(transform[2][2]));
+
+                FloatVector inverse = mask.neg().add(1);
+                clamp(r.mul(inverse).add(tr.mul(mask))).intoArray(rr, i);
+                clamp(g.mul(inverse).add(tg.mul(mask))).intoArray(gg, i);
+                clamp(b.mul(inverse).add(tb.mul(mask))).intoArray(bb, i);
+            }
+
+            int dstOffset = row * dstLineStride;
+            store(rr, width, dstData, dstOffset + dstBandOffsets[0], dstPixelStride);
+            store(gg, width, dstData, dstOffset + dstBandOffsets[1], dstPixelStride);
+            store(bb, width, dstData, dstOffset + dstBandOffsets[2], dstPixelStride);
+        }
+    }
+
+    @Override
+    public void rawAdjustments(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                               short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                               int width, int height,
+                               float[][] cameraRGB, float exposureCompensation) {
+        final Rows rows = VectorPointKernels.rows.get().size(width);
+        final float[] rr = rows.r, gg = rows.g, bb = rows.b;
+        final int length = SPECIES.loopBound(width + SPECIES.length() - 1);
+        final float c = exposureCompensation;
+
+        for (int row = 0; row < height; row++) {
+            int srcOffset = row * srcLineStride;
+            load(srcData, srcOffset + srcBandOffsets[0], srcPixelStride, width, rr);
+            load(srcData, srcOffset + srcBandOffsets[1], srcPixelStride, width, gg);
+            load(srcData, srcOffset + srcBandOffsets[2], srcPixelStride, width, bb);
+
+            for (int i = 0; i < length; i += SPECIES.length()) {
+                FloatVector r = FloatVector.fromArray(SPECIES, rr, i);
+                FloatVector g = FloatVector.fromArray(SPECIES, gg, i);
+                FloatVector b = FloatVector.fromArray(SPECIES, bb, i);
+
+                FloatVector r1 = r.mul(cameraRGB[0][0]).add(g.mul(cameraRGB[0][1])).add(b.mul(cameraRGB[0][2]));
+                FloatVector g1 = r.mul(cameraRGB[1][0]).add(g.mul(cameraRGB[1][1])).add(b.mul(cameraRGB[1][2]));
+                FloatVector b1 = r.mul(cameraRGB[2][0]).add(g.mul(cameraRGB[2][1])).add(b.mul(cameraRGB[2][2]));
+
+                FloatVector r2 = r1.mul(c);
+                FloatVector b2 = b1.mul(c);
+
+                // Highlight recovery
+                if (c < 1) {
+                    VectorMask<Float> clipped = g1.compare(VectorOperators.GT, 0xffff)
+                            .or(r1.compare(VectorOperators.GT, 0xffff))
+                            .or(b1.compare(VectorOperators.GT, 0xffff));
+                    if (clipped.anyTrue()) {
+                        FloatVector gs = g1.min(0xffff);
+                        FloatVector c1s = gs.sub(r1.min(0xffff));
+                        FloatVector c2s = gs.sub(b1.min(0xffff));
+                        r2 = r2.blend(g1.sub(c1s).mul(c), clipped);
+                        b2 = b2.blend(g1.sub(c2s).mul(c), clipped);
+                    }
+                }
+
+                clamp(r2).intoArray(rr, i);
+                clamp(g1.mul(c)).intoArray(gg, i);
+                clamp(b2).intoArray(bb, i);
+            }
+
+            int dstOffset = row * dstLineStride;
+            store(rr, width, dstData, dstOffset + dstBandOffsets[0], dstPixelStride);
+            store(gg, width, dstData, dstOffset + dstBandOffsets[1], dstPixelStride);
+            store(bb, width, dstData, dstOffset + dstBandOffsets[2], dstPixelStride);
+        }
+    }
+}
@@ -2161,6 +2161,7 @@ public class Application {
                         // the startup flag has not elapsed, set it here.
                         StartupCrash.startupEnded();
                         savePrefs();
+                        DocumentDatabase.close();
                     }
                 }
         );
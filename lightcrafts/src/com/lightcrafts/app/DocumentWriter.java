@@ -41,6 +41,8 @@ public class DocumentWriter {
      * jobs using the given ProgressThread.  The XMLException can only arise
      * when surprises occur in the LZN structure as it is navigated for
      * features that mangle XML like "copy original" and "multilayer TIFF".
+     * The ComboFrame may be null when a ProgressThread is given, as in batch
+     * processing.
      */
     public static boolean save(
         Document doc, ComboFrame frame, boolean saveDirectly,
@@ -57,9 +59,17 @@ public class DocumentWriter {
 
             if (options.isLzn()) {
                 // Just write the XML to a file, with a thumbnail and a preview:
-                frame.pause();
-                saveLzn(doc, xml);
-                frame.resume();
+                if (frame != null) {
+                    frame.pause();
+                }
+                try {
+                    saveLzn(doc, xml);
+                }
+                finally {
+                    if (frame != null) {
+                        frame.resume();
+                    }
+                }
                 return true;
             }
 
@@ -0,0 +1,525 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.app.batch;
+
+import com.lightcrafts.app.Application;
+import com.lightcrafts.app.DocumentWriter;
+import com.lightcrafts.image.BadImageFileException;
+import com.lightcrafts.image.ColorProfileException;
+import com.lightcrafts.image.UnknownImageTypeException;
+import com.lightcrafts.image.UnsupportedColorProfileException;
+import com.lightcrafts.image.export.ImageExportOptions;
+import com.lightcrafts.image.export.ImageFileExportOptions;
+import com.lightcrafts.image.metadata.ImageMetadata;
+import com.lightcrafts.image.types.ImageType;
+import com.lightcrafts.image.types.JPEGImageType;
+import com.lightcrafts.image.types.LZNImageType;
+import com.lightcrafts.image.types.TIFFImageType;
+import com.lightcrafts.jai.JAIContext;
+import com.lightcrafts.model.Engine;
+import com.lightcrafts.ui.editor.Document;
+import com.lightcrafts.ui.editor.assoc.DocumentDatabase;
+import com.lightcrafts.ui.export.ExportNameUtility;
+import com.lightcrafts.ui.export.SaveOptions;
+import com.lightcrafts.utils.MemoryLimits;
+import com.lightcrafts.utils.ProgressIndicator;
+import com.lightcrafts.utils.UserCanceledException;
+import com.lightcrafts.utils.thread.ProgressThread;
+import com.lightcrafts.utils.xml.XMLException;
+import com.lightcrafts.utils.xml.XmlDocument;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lightcrafts.app.batch.Locale.LOCALE;
+
+/**
+ * The engine behind {@link BatchProcessor}: applies a template or an export
+ * configuration to a list of files, several documents at a time.
+ * <p>
+ * The number of documents in flight is sized from the available heap,
+ * allowing {@link MemoryLimits#getMinimum()} megabytes per document, and
+ * from the capacity of the JAI tile cache, so that every document gets a
+ * fair share of it. Before opening a new document a worker waits for the
+ * heap to have room for it. Exports render through the EXPORT lane of the
+ * tile scheduler.
+ * <p>
+ * This class has no Swing dependency: progress and results are reported
+ * through a {@link Listener}, on the worker threads.
+ */
+public class BatchEngine {
+
+    /**
+     * Overrides the computed number of documents processed at once.
+     */
+    public static final String THREADS_PROPERTY = "lightcrafts.batch.threads";
+
+    public interface Listener {
+
+        void fileStarted(File file);
+
+        void fileSaved(File file, File outFile, long millis);
+
+        void fileFailed(File file, String message, Throwable e);
+    }
+
+    private final static long MB = 1024 * 1024;
+
+    private final BatchConfig conf;
+    private final XmlDocument template;
+    private final XmlDocument exportXml;
+    private final boolean ignoreResize;
+    private final int threadCount;
+
+    private Listener listener;
+    private ProgressIndicator indicator;
+
+    private volatile boolean canceled;
+    private final List<FileProgress> active = new ArrayList<FileProgress>();
+
+    private final AtomicInteger saved = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private long start;
+    private long end;
+
+    public BatchEngine(BatchConfig conf, XmlDocument template) {
+        this(conf, template, getDefaultThreadCount());
+    }
+
+    public BatchEngine(BatchConfig conf, XmlDocument template, int threadCount) {
+        this.conf = conf;
+        this.template = template;
+        this.threadCount = Math.max(threadCount, 1);
+
+        final ImageFileExportOptions export = conf.export;
+        ignoreResize = export.resizeWidth.getValue() == 0 &&
+                       export.resizeHeight.getValue() == 0;
+
+        // Every file gets its own copy of the export options, since they
+        // get mutated while a file is processed.  See these methods:
+        //     createTemplateSaveOptions()
+        //     conformExportOptions()
+        //     Engine.write()
+        exportXml = new XmlDocument("Export");
+        export.write(exportXml.getRoot());
+    }
+
+    /**
+     * The number of documents that fit in the heap and in the tile cache at
+     * the same time, at most one per processor.
+     */
+    public static int getDefaultThreadCount() {
+        final Integer threads = Integer.getInteger(THREADS_PROPERTY);
+        if (threads != null && threads > 0) {
+            return threads;
+        }
+        final long budget = MemoryLimits.getMinimum() * MB;
+        long count = Runtime.getRuntime().maxMemory() / budget;
+        count = Math.min(count, JAIContext.fileCache.getMemoryCapacity() / budget);
+        count = Math.min(count, Runtime.getRuntime().availableProcessors());
+        return (int) Math.max(count, 1);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Progress of the export of the individual files, only meaningful when
+     * files are processed one at a time.
+     */
+    public void setProgressIndicator(ProgressIndicator indicator) {
+        this.indicator = indicator;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Process all the given files, returns when they are done or after the
+     * batch was canceled and the files in progress are finished.
+     */
+    public void process(File[] files) {
+        canceled = false;
+        saved.set(0);
+        failed.set(0);
+        start = System.currentTimeMillis();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threadCount, Math.max(files.length, 1)),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(
+                        r, "Batch Processor-" + count.getAndIncrement()
+                    );
+                    t.setDaemon(true);
+                    return t;
+                }
+            }
+        );
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final File file : files) {
+                futures.add(executor.submit(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!canceled) {
+                                processFile(file);
+                            }
+                        }
+                    }
+                ));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        cancel();
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        cancel();
+                        throw (Error) cause;
+                    }
+                }
+                catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+            end = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Stop picking up new files and ask the exports in progress to abort.
+     */
+    public void cancel() {
+        canceled = true;
+        synchronized (active) {
+            for (FileProgress progress : active) {
+                progress.requestCancel();
+            }
+            active.notifyAll();
+        }
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    public int getSavedCount() {
+        return saved.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Wall clock time of the last (or current) batch, in milliseconds.
+     */
+    public long getElapsedTime() {
+        return (end >= start ? end : System.currentTimeMillis()) - start;
+    }
+
+    /**
+     * Files successfully processed per minute.
+     */
+    public double getThroughput() {
+        final long elapsed = getElapsedTime();
+        return elapsed > 0 ? saved.get() * 60000. / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "%d files saved, %d failed in %.1f s (%.1f files/min, %d threads)",
+            saved.get(), failed.get(), getElapsedTime() / 1000.,
+            getThroughput(), threadCount
+        );
+    }
+
+    private void processFile(File file) {
+        final FileProgress progress = new FileProgress(indicator);
+        if (!admit(progress)) {
+            return;
+        }
+        final long fileStart = System.currentTimeMillis();
+        boolean ok = false;
+        try {
+            if (listener != null) {
+                listener.fileStarted(file);
+            }
+            final File outFile = processDocument(file, progress);
+            ok = true;
+            saved.incrementAndGet();
+            if (listener != null) {
+                listener.fileSaved(
+                    file, outFile, System.currentTimeMillis() - fileStart
+                );
+            }
+        }
+        catch (XMLException e) {
+            fail(file, LOCALE.get("BatchLogXmlError"), e);
+        }
+        catch (BadImageFileException e) {
+            fail(file, LOCALE.get("BatchLogBadImageError"), e);
+        }
+        catch (IOException e) {
+            fail(file, LOCALE.get("BatchLogIOError"), e);
+        }
+        catch (OutOfMemoryError e) {
+            fail(file, LOCALE.get("BatchLogMemoryError"), e);
+        }
+        catch (UnknownImageTypeException e) {
+            fail(file, LOCALE.get("BatchLogImageTypeError"), e);
+        }
+        catch (UnsupportedColorProfileException e) {
+            fail(file, LOCALE.get("BatchLogCameraError"), e);
+        }
+        catch (ColorProfileException e) {
+            fail(file, LOCALE.get("BatchLogColorError"), e);
+        }
+        catch (Throwable e) {
+            fail(file, LOCALE.get("BatchLogUnknownError"), e);
+            e.printStackTrace();
+        }
+        finally {
+            if (!ok) {
+                releaseFile(progress.reserved);
+            }
+            synchronized (active) {
+                active.remove(progress);
+                active.notifyAll();
+            }
+            if (progress.getProgressIndicator() != null) {
+                progress.getProgressIndicator().setIndeterminate(false);
+            }
+        }
+    }
+
+    /**
+     * Wait until there is heap enough for one more document, or nothing
+     * else is in progress.
+     */
+    private boolean admit(FileProgress progress) {
+        final long budget = MemoryLimits.getMinimum() * MB;
+        final Runtime runtime = Runtime.getRuntime();
+        synchronized (active) {
+            while (!canceled && !active.isEmpty()) {
+                final long free = runtime.maxMemory()
+                    - (runtime.totalMemory() - runtime.freeMemory());
+                if (free >= budget) {
+                    break;
+                }
+                try {
+                    active.wait(1000);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (canceled) {
+                return false;
+            }
+            active.add(progress);
+            return true;
+        }
+    }
+
+    private void fail(File file, String message, Throwable e) {
+        failed.incrementAndGet();
+        if (listener != null) {
+            listener.fileFailed(file, message, e);
+        }
+    }
+
+    private File processDocument(File file, FileProgress progress)
+        throws XMLException, IOException, BadImageFileException,
+               UnknownImageTypeException, ColorProfileException,
+               UserCanceledException, Document.MissingImageFileException
+    {
+        final ImageFileExportOptions export = getExportOptions();
+        final Document doc = Application.createDocumentHeadless(file);
+        try {
+            if (template != null) {
+                final XmlDocument xml;
+                synchronized (template) {
+                    xml = new XmlDocument(template);
+                }
+                doc.applyTemplate(xml.getRoot());
+
+                SaveOptions save = doc.getSaveOptions();
+                if (save == null) {
+                    save = createTemplateSaveOptions(doc, export, progress);
+                }
+                doc.setSaveOptions(save);
+
+                DocumentWriter.save(doc, null, false, progress);
+                final File outFile = save.getFile();
+                DocumentDatabase.addDocumentFile(outFile);
+                return outFile;
+            }
+            conformExportOptions(doc, export, progress);
+
+            final Engine engine = doc.getEngine();
+            DocumentWriter.export(engine, export, progress);
+            return export.getExportFile();
+        }
+        finally {
+            doc.dispose();
+        }
+    }
+
+    private ImageFileExportOptions getExportOptions() throws XMLException {
+        synchronized (exportXml) {
+            return (ImageFileExportOptions) ImageExportOptions.read(
+                exportXml.getRoot()
+            );
+        }
+    }
+
+    /**
+     * Construct SaveOptions for processed images that have never been saved.
+     * Save back to the same directory as the original image,
+     * with a unique file name, with the given export options, except
+     * the resize dimensions, which are set to the document's "natural"
+     * dimensions.
+     */
+    private SaveOptions createTemplateSaveOptions(
+        Document doc, ImageFileExportOptions export, FileProgress progress
+    ) throws IOException {
+        final ImageMetadata meta = doc.getMetadata();
+        File file = meta.getFile();
+        final ImageType type = export.getImageType();
+        final String ext = type.getExtensions()[0];
+        if (type == LZNImageType.INSTANCE) {
+            file = ExportNameUtility.setFileExtension(file, ext);
+            file = progress.reserve(file);
+            return SaveOptions.createLzn(file);
+        }
+
+        final SaveOptions options;
+        if (type instanceof TIFFImageType) {
+            options = SaveOptions.createSidecarTiff(export);
+        }
+        else if (type instanceof JPEGImageType) {
+            options = SaveOptions.createSidecarJpeg(export);
+        }
+        else {
+            throw new IllegalArgumentException(
+                "Can't save to image type \"" + type.getName() + "\""
+            );
+        }
+        final Engine engine = doc.getEngine();
+        final Dimension size = engine.getNaturalSize();
+        if (ignoreResize) {
+            export.resizeWidth.setValue(size.width);
+            export.resizeHeight.setValue(size.height);
+        }
+        file = new File(ExportNameUtility.getBaseName(file) + "_lzn." + ext);
+        file = progress.reserve(file);
+        options.setFile(file);
+
+        return options;
+    }
+
+    /**
+     * Ensure that the given ImageExportOptions agrees with the BatchConfig
+     * about the output folder, the batch name, and the output file type
+     * extension, and agrees with the given Document and the configuration
+     * about the output image size.
+     */
+    private void conformExportOptions(
+        Document doc, ImageFileExportOptions export, FileProgress progress
+    ) throws IOException {
+        final ImageMetadata meta = doc.getMetadata();
+        final File file = meta.getFile();
+        final String name = file.getName();
+        final File directory = conf.directory;
+        File outFile = new File(directory, name);
+
+        // Mutate the default file into a conformant name:
+        final String outLabel = conf.name;
+        final String outName = ExportNameUtility.trimFileExtension(
+            outFile.getName()
+        );
+        final String outSuffix = export.getImageType().getExtensions()[0];
+        outFile = (outLabel.length() > 0)
+                ? new File(directory, outName + outLabel + "." + outSuffix)
+                : new File(directory, outName + "." + outSuffix);
+        outFile = progress.reserve(outFile);
+        export.setExportFile(outFile);
+
+        if (ignoreResize) {
+            final Engine engine = doc.getEngine();
+            final Dimension size = engine.getNaturalSize();
+            export.resizeWidth.setValue(size.width);
+            export.resizeHeight.setValue(size.height);
+        }
+    }
+
+    /**
+     * Pick a unique output file name and claim it with an empty file, so
+     * that documents processed concurrently can't pick the same one.
+     */
+    private static synchronized File reserveFile(File file)
+        throws IOException
+    {
+        file = ExportNameUtility.ensureNotExists(file);
+        while (!file.createNewFile()) {
+            file = ExportNameUtility.ensureNotExists(file);
+        }
+        return file;
+    }
+
+    private static void releaseFile(File file) {
+        if (file != null && file.isFile() && file.length() == 0) {
+            file.delete();
+        }
+    }
+
+    // ProgressThread is how Engine.write() reports progress and checks for
+    // cancellation, one per file.
+    private static class FileProgress extends ProgressThread {
+
+        // The output file claimed for this file, removed if processing fails
+        File reserved;
+
+        FileProgress(ProgressIndicator indicator) {
+            super(indicator);
+        }
+
+        File reserve(File file) throws IOException {
+            reserved = reserveFile(file);
+            return reserved;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -3,28 +3,9 @@
 
 package com.lightcrafts.app.batch;
 
-import com.lightcrafts.app.Application;
 import com.lightcrafts.app.ComboFrame;
-import com.lightcrafts.app.DocumentWriter;
-import com.lightcrafts.image.BadImageFileException;
-import com.lightcrafts.image.ColorProfileException;
-import com.lightcrafts.image.UnknownImageTypeException;
-import com.lightcrafts.image.UnsupportedColorProfileException;
-import com.lightcrafts.image.export.ImageFileExportOptions;
-import com.lightcrafts.image.metadata.ImageMetadata;
-import com.lightcrafts.image.types.ImageType;
-import com.lightcrafts.image.types.JPEGImageType;
-import com.lightcrafts.image.types.LZNImageType;
-import com.lightcrafts.image.types.TIFFImageType;
-import com.lightcrafts.model.Engine;
 import com.lightcrafts.ui.LightZoneSkin;
-import com.lightcrafts.ui.editor.Document;
-import com.lightcrafts.ui.editor.assoc.DocumentDatabase;
-import com.lightcrafts.ui.export.ExportNameUtility;
-import com.lightcrafts.ui.export.SaveOptions;
-import com.lightcrafts.utils.xml.XMLException;
 import com.lightcrafts.utils.xml.XmlDocument;
-import com.lightcrafts.utils.xml.XmlNode;
 
 import javax.swing.*;
 import java.awt.*;
@@ -33,7 +14,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.io.File;
-import java.io.IOException;
 
 import static com.lightcrafts.app.batch.Locale.LOCALE;
 
@@ -54,7 +34,7 @@ public class BatchProcessor {
     private static long Start;      // Time started, for time estimates
     private static boolean Interrupted; // Flag to halt background work
     private static boolean Finished;    // Flag to indicate work is halted
-    private static boolean Canceled;    // Flag to indicate work is canceled by the user
+    private static BatchEngine Engine;  // Does the work, several files at a time
 
     private static RuntimeException Error;  // Propagate unchecked exceptions
 
@@ -64,13 +44,14 @@ public class BatchProcessor {
         final XmlDocument template,
         final BatchConfig conf
     ) {
+        Engine = new BatchEngine(conf, template);
         Thread = new Thread(
             new Runnable() {
                 @Override
                 public void run() {
                     frame.pause();
                     try {
-                        processTemplate(files, template, conf);
+                        processTemplate(files);
                     }
                     catch (RuntimeException e) {
                         System.err.println(
@@ -141,7 +122,7 @@ public class BatchProcessor {
             @Override
             public void actionPerformed(ActionEvent e) {
                 if (!Finished) {
-                    Canceled = true;
+                    Engine.cancel();
                     Button.setText("Canceling...");
                 } else {
                     Dialog.dispose();
@@ -163,13 +144,13 @@ public class BatchProcessor {
                 @Override
                 public void componentHidden(ComponentEvent e) {
                     Interrupted = true;
+                    Engine.cancel();
                 }
             }
         );
 
         Interrupted = false;
         Finished = false;
-        Canceled = false;
 
         Thread.start();
         Dialog.setVisible(true);
@@ -187,7 +168,7 @@ public class BatchProcessor {
             }
             Interrupted = false;
             Finished = false;
-            Canceled = false;
+            Engine = null;
         }
         if (Error != null) {
             RuntimeException e = Error;
@@ -199,109 +180,61 @@ public class BatchProcessor {
     /**
      * Conduct the export and template processes, in the background under the dialog.
      */
-    private static void processTemplate(
-            File[] files, XmlDocument template, BatchConfig conf
-    ) {
-        final ImageFileExportOptions export = conf.export;
-        final boolean ignoreResize =
-            export.resizeWidth.getValue() == 0 &&
-                export.resizeHeight.getValue() == 0;
-
-        // Remember the requested output width and height, because they may get
-        // mutated each time a file is processed.  See these methods:
-        //     createTemplateSaveOptions()
-        //     conformExportOptions()
-        //     Engine.write()
-        final int exportWidth = export.resizeWidth.getValue();
-        final int exportHeight = export.resizeHeight.getValue();
-
-        int n = 0;
-        for (final File file : files) {
-
-            if (Canceled)
-                break;
-
-            if (Interrupted) {
-                synchronized(Thread) {
-                    Thread.notifyAll();
-                    return;
-                }
-            }
-
-            try {
-                Image.setCachedFile(file);
-
-                logStart(file);
-                final Document doc = Application.createDocumentHeadless(file);
-                final File outFile;
-                final String outName;
-
-                // Enforce the original requested output dimensions, since
-                // the ImageExportOptions may have been mutated on a previous
-                // iteration.
-                export.resizeWidth.setValue(exportWidth);
-                export.resizeHeight.setValue(exportHeight);
-
-                if (template != null) {
-                    XmlNode root = template.getRoot();
+    private static void processTemplate(final File[] files) {
+        final boolean concurrent =
+            Engine.getThreadCount() > 1 && files.length > 1;
 
-                    doc.applyTemplate(root);
+        if (concurrent) {
+            // Per-file progress is meaningless with several files at a time
+            Progress.getProgressIndicator().setIndeterminate(true);
+        }
+        else {
+            Engine.setProgressIndicator(Progress.getProgressIndicator());
+        }
+        Engine.setListener(
+            new BatchEngine.Listener() {
+                private int n = 0;
 
-                    SaveOptions save = doc.getSaveOptions();
-                    if (save == null) {
-                        save = createTemplateSaveOptions(doc, export, ignoreResize);
+                @Override
+                public void fileStarted(File file) {
+                    if (!concurrent) {
+                        Image.setCachedFile(file);
+                        logStart(file);
                     }
-                    doc.setSaveOptions(save);
-
-                    ComboFrame frame = (ComboFrame) Dialog.getOwner();
-                    DocumentWriter.save(doc, frame, false, Progress);
-                    outFile = save.getFile();
-                    outName = outFile.getName();
-                    DocumentDatabase.addDocumentFile(outFile);
-                } else {
-                    conformExportOptions(doc, conf, ignoreResize);
-
-                    Engine engine = doc.getEngine();
-                    DocumentWriter.export(engine, export, Progress);
-                    outFile = export.getExportFile();
-                    outName = outFile.getName();
                 }
 
-                doc.dispose();
-
-                logEnd(LOCALE.get("BatchLogSavedMessage", outName));
+                @Override
+                public void fileSaved(File file, File outFile, long millis) {
+                    if (concurrent) {
+                        logStart(file);
+                    }
+                    logEnd(
+                        LOCALE.get("BatchLogSavedMessage", outFile.getName()) +
+                        LOCALE.get(
+                            "BatchLogTimeMessage",
+                            String.format("%.1f", millis / 1000.)
+                        )
+                    );
+                    Image.setFile(outFile);
+                    fileDone();
+                }
 
-                Image.setFile(outFile);
+                @Override
+                public void fileFailed(File file, String message, Throwable e) {
+                    if (concurrent) {
+                        logStart(file);
+                    }
+                    logError(message, e);
+                    fileDone();
+                }
 
-                Progress.reset();
-            }
-            catch (XMLException e) {
-                logError(LOCALE.get("BatchLogXmlError"), e);
-            }
-            catch (BadImageFileException e) {
-                logError(LOCALE.get("BatchLogBadImageError"), e);
-            }
-            catch (IOException e) {
-                logError(LOCALE.get("BatchLogIOError"), e);
-            }
-            catch (OutOfMemoryError e) {
-                logError(LOCALE.get("BatchLogMemoryError"), e);
-            }
-            catch (UnknownImageTypeException e) {
-                logError(LOCALE.get("BatchLogImageTypeError"), e);
-            }
-            catch (UnsupportedColorProfileException e) {
-                logError(LOCALE.get("BatchLogCameraError"), e);
-            }
-            catch (ColorProfileException e) {
-                logError(LOCALE.get("BatchLogColorError"), e);
-            }
-            catch (Throwable e) {
-                logError(LOCALE.get("BatchLogUnknownError"), e);
-                e.printStackTrace();
+                private synchronized void fileDone() {
+                    updateLabel(++n, files.length);
+                }
             }
-            updateLabel(++n, files.length);
-        }
+        );
+        Engine.process(files);
+
         synchronized(Thread) {
             Finished = true;
             Thread.notifyAll();
@@ -309,88 +242,6 @@ public class BatchProcessor {
         }
     }
 
-    /**
-     * Construct SaveOptions for processed images that have never been saved.
-     * Save back to the same directory as the original image,
-     * with a unique file name, with the given export options, except
-     * the resize dimensions, which are set to the document's "natural"
-     * dimensions.
-     */
-    private static SaveOptions createTemplateSaveOptions(
-        Document doc, ImageFileExportOptions export, boolean ignoreResize
-    ) {
-        final ImageMetadata meta = doc.getMetadata();
-        File file = meta.getFile();
-        final ImageType type = export.getImageType();
-        final String ext = type.getExtensions()[0];
-        if (type == LZNImageType.INSTANCE) {
-            file = ExportNameUtility.setFileExtension(file, ext);
-            file = ExportNameUtility.ensureNotExists(file);
-            return SaveOptions.createLzn(file);
-        }
-
-        final SaveOptions options;
-        if (type instanceof TIFFImageType) {
-            options = SaveOptions.createSidecarTiff(export);
-        }
-        else if (type instanceof JPEGImageType) {
-            options = SaveOptions.createSidecarJpeg(export);
-        }
-        else {
-            throw new IllegalArgumentException(
-                "Can't save to image type \"" + type.getName() + "\""
-            );
-        }
-        final Engine engine = doc.getEngine();
-        final Dimension size = engine.getNaturalSize();
-        if (ignoreResize) {
-            export.resizeWidth.setValue(size.width);
-            export.resizeHeight.setValue(size.height);
-        }
-        file = new File(ExportNameUtility.getBaseName(file) + "_lzn." + ext);
-        file = ExportNameUtility.ensureNotExists(file);
-        options.setFile(file);
-
-        return options;
-    }
-
-    /**
-     * Ensure that the given ImageExportOptions agrees with the given
-     * TemplateBatchConfigurator about the output folder, the batch name,
-     * and the output file type extension, and agrees with the given Document
-     * and the configurator about the output image size.
-     */
-    private static void conformExportOptions(
-        Document doc, BatchConfig conf, boolean ignoreResize
-    ) {
-        final ImageMetadata meta = doc.getMetadata();
-        final File file = meta.getFile();
-        final String name = file.getName();
-        final File directory = conf.directory;
-        File outFile = new File(directory, name);
-
-        // Mutate the default file into a conformant name:
-        final String outLabel = conf.name;
-        final String outName = ExportNameUtility.trimFileExtension(
-            outFile.getName()
-        );
-        final ImageFileExportOptions export = conf.export;
-
-        final String outSuffix = export.getImageType().getExtensions()[0];
-        outFile = (outLabel.length() > 0)
-                ? new File(directory, outName + outLabel + "." + outSuffix)
-                : new File(directory, outName + "." + outSuffix);
-        outFile = ExportNameUtility.ensureNotExists(outFile);
-        export.setExportFile(outFile);
-
-        if (ignoreResize) {
-            final Engine engine = doc.getEngine();
-            final Dimension size = engine.getNaturalSize();
-            export.resizeWidth.setValue(size.width);
-            export.resizeHeight.setValue(size.height);
-        }
-    }
-
     private static void logStart(File file) {
         Text.appendStart(file.getName());
     }
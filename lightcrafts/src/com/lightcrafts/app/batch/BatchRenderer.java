@@ -0,0 +1,189 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.app.batch;
+
+import com.lightcrafts.image.export.ImageExportOptions;
+import com.lightcrafts.image.export.ImageFileExportOptions;
+import com.lightcrafts.image.types.ImageType;
+import com.lightcrafts.image.types.JPEGImageType;
+import com.lightcrafts.ui.editor.DocumentReader;
+import com.lightcrafts.utils.xml.XmlDocument;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point for batch rendering, without a GUI: applies an
+ * optional template to LZN documents or images and exports them through
+ * {@link BatchEngine}.
+ * <pre>
+ * BatchRenderer [-template file | [-output dir] [-name suffix]]
+ *               [-type JPEG|TIFF] [-threads n] [-&lt;Option&gt; value ...] file ...
+ * </pre>
+ * With a template, each document is saved back to its own file and each
+ * image next to itself as a sidecar, as in the batch dialog, so
+ * <code>-output</code> and <code>-name</code> are rejected.
+ * <p>
+ * Any other flag names an export option, the class name in
+ * com.lightcrafts.image.export without the "Option" suffix, for instance
+ * <code>-Quality 90 -ResizeWidth 2048 -BitsPerChannel 16</code>.  Resize
+ * dimensions of 0 mean the natural size of each image.
+ * <p>
+ * The exit status is 0 if all the files were saved, 1 if some failed and
+ * 2 for usage errors.
+ */
+public class BatchRenderer {
+
+    private static final String OptionPackage =
+        ImageExportOptions.class.getPackage().getName();
+
+    private static void usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println(
+            "usage: BatchRenderer [-template file | [-output dir] [-name suffix]] " +
+            "[-type JPEG|TIFF] [-threads n] " +
+            "[-<Option> value ...] file ..."
+        );
+        System.exit(2);
+    }
+
+    public static void main(String[] args) {
+        // Must happen before anything touches AWT
+        System.setProperty("java.awt.headless", "true");
+
+        File templateFile = null;
+        ImageType type = JPEGImageType.INSTANCE;
+        File directory = null;
+        String name = null;
+        int threads = 0;
+        final List<String[]> options = new ArrayList<String[]>();
+        final List<File> files = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (!arg.startsWith("-") || arg.length() == 1) {
+                files.add(new File(arg));
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage("Missing value for " + arg);
+            }
+            final String key = arg.substring(1);
+            final String value = args[++i];
+            switch (key) {
+                case "template":
+                    templateFile = new File(value);
+                    break;
+                case "type":
+                    type = ImageType.getImageTypeByName(value.toUpperCase());
+                    if (type == null ||
+                        !(type.newExportOptions() instanceof ImageFileExportOptions)) {
+                        usage("Can't export to image type \"" + value + "\"");
+                    }
+                    break;
+                case "output":
+                    directory = new File(value);
+                    break;
+                case "name":
+                    name = value;
+                    break;
+                case "threads":
+                    try {
+                        threads = Integer.parseInt(value);
+                    }
+                    catch (NumberFormatException e) {
+                        usage("Not a number: " + value);
+                    }
+                    break;
+                default:
+                    options.add(new String[] { key, value });
+            }
+        }
+        if (files.isEmpty()) {
+            usage(null);
+        }
+        if (templateFile != null && (directory != null || name != null)) {
+            usage(
+                "-output and -name don't apply to -template, which saves " +
+                "next to each file"
+            );
+        }
+        if (directory == null) {
+            directory = new File(System.getProperty("user.dir"));
+        }
+        if (name == null) {
+            name = "";
+        }
+        if (!directory.isDirectory()) {
+            usage("Not a directory: " + directory);
+        }
+
+        final BatchConfig conf = new BatchConfig();
+        conf.name = name;
+        conf.directory = directory;
+        conf.export = (ImageFileExportOptions) type.newExportOptions();
+        for (String[] option : options) {
+            String className = option[0];
+            if (!className.endsWith("Option")) {
+                className += "Option";
+            }
+            try {
+                conf.export.setValueOf(
+                    OptionPackage + '.' + className, option[1]
+                );
+            }
+            catch (IllegalArgumentException e) {
+                usage(
+                    "Invalid export option -" + option[0] + " " + option[1] +
+                    " for " + type.getName()
+                );
+            }
+        }
+
+        XmlDocument template = null;
+        if (templateFile != null) {
+            final DocumentReader.Interpretation interp =
+                DocumentReader.read(templateFile);
+            if (interp == null) {
+                usage("Not a template: " + templateFile);
+            }
+            template = interp.xml;
+        }
+
+        final BatchEngine engine = (threads > 0)
+            ? new BatchEngine(conf, template, threads)
+            : new BatchEngine(conf, template);
+        engine.setListener(
+            new BatchEngine.Listener() {
+                @Override
+                public void fileStarted(File file) {
+                }
+
+                @Override
+                public void fileSaved(File file, File outFile, long millis) {
+                    System.out.printf(
+                        "%s -> %s (%.1f s)%n",
+                        file.getPath(), outFile.getPath(), millis / 1000.
+                    );
+                }
+
+                @Override
+                public void fileFailed(File file, String message, Throwable e) {
+                    System.err.println(
+                        file.getPath() + ": " + message +
+                        (e != null ? ": " + e.getClass().getName() + " " +
+                                     e.getMessage() : "")
+                    );
+                }
+            }
+        );
+        engine.process(files.toArray(new File[0]));
+
+        System.out.println(engine);
+
+        System.exit(engine.getFailedCount() > 0 ? 1 : 0);
+    }
+}
@@ -54,20 +54,41 @@ public final class CoreDirectory extends ImageMetadataDirectory implements
             (CoreDirectory)metadata.getDirectoryFor(
                 CoreDirectory.class, true
             );
-        dir.addAperture( metadata );
+        dir.addLazily(
+            metadata, ApertureProvider.class, CORE_APERTURE,
+            () -> dir.addAperture( metadata )
+        );
         dir.addCamera( imageInfo );
         dir.addCaptureDateTime( imageInfo );
         dir.addColorProfile( imageInfo );
-        dir.addColorTemperature( metadata );
+        dir.addLazily(
+            metadata, ColorTemperatureProvider.class, CORE_COLOR_TEMPERATURE,
+            () -> dir.addColorTemperature( metadata )
+        );
         dir.addFileInfo( imageInfo );
-        dir.addFlash( metadata );
-        dir.addFocalLength( metadata );
+        dir.addLazily(
+            metadata, FlashProvider.class, CORE_FLASH,
+            () -> dir.addFlash( metadata )
+        );
+        dir.addLazily(
+            metadata, FocalLengthProvider.class, CORE_FOCAL_LENGTH,
+            () -> dir.addFocalLength( metadata )
+        );
         dir.addImageDimensions( imageInfo );
-        dir.addISO( metadata );
-        dir.addLens( metadata );
+        dir.addLazily(
+            metadata, ISOProvider.class, CORE_ISO,
+            () -> dir.addISO( metadata )
+        );
+        dir.addLazily(
+            metadata, LensProvider.class, CORE_LENS,
+            () -> dir.addLens( metadata )
+        );
         dir.addOrientation( metadata );
         dir.addResolution( metadata );
-        dir.addShutterSpeed( metadata );
+        dir.addLazily(
+            metadata, ShutterSpeedProvider.class, CORE_SHUTTER_SPEED,
+            () -> dir.addShutterSpeed( metadata )
+        );
 
         dir.addRating( metadata );
         syncEditableMetadata( metadata );
@@ -529,6 +550,30 @@ public final class CoreDirectory extends ImageMetadataDirectory implements
         m_tagsByName.put( name, tagInfo );
     }
 
+    /**
+     * Adds a value to the <code>CoreDirectory</code>'s metadata, but only the
+     * first time it is accessed if a directory that would be asked for it
+     * hasn't been read yet, typically maker notes.  The value is the same
+     * either way since it's still asked from the providers in priority order,
+     * but a maker notes directory only gets decoded if the value is needed
+     * and the directories before it in that order don't have it.
+     *
+     * @param metadata The {@link ImageMetadata} to add into.
+     * @param provider The provider interface of the value.
+     * @param tagID The tag ID of the value.
+     * @param adder The method adding the value.
+     */
+    private void addLazily( ImageMetadata metadata,
+                            Class<? extends ImageMetadataProvider> provider,
+                            int tagID, Runnable adder ) {
+        for ( ImageMetadataDirectory dir : metadata.findProvidersOf( provider ) )
+            if ( dir.isDeferred() ) {
+                setDeferredValue( tagID, adder );
+                return;
+            }
+        adder.run();
+    }
+
     /**
      * Adds aperture information to the <code>CoreDirectory</code>'s metadata.
      *
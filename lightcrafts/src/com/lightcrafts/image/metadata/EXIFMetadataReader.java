@@ -299,7 +299,11 @@ public class EXIFMetadataReader extends ImageMetadataReader
     }
 
     /**
-     * Read a camera manufacturer's maker notes.
+     * Read a camera manufacturer's maker notes.  Unless the
+     * <code>lightcrafts.metadata.lazy</code> property is <code>false</code>,
+     * only the maker notes directory is created here and its values are read
+     * the first time they're accessed: most of the time, e.g. in the browser,
+     * they aren't needed.
      *
      * @param offset The offset from the beginning of the buffer of the maker
      * @param byteCount The total number of bytes for the maker notes data.
@@ -311,6 +315,39 @@ public class EXIFMetadataReader extends ImageMetadataReader
     {
         final ImageMetadataDirectory dir =
                 m_metadata.getDirectoryFor( dirClass, true );
+        if ( !LAZY_MAKER_NOTES ) {
+            readMakerNotes( offset, byteCount, dir );
+            return;
+        }
+        final ByteOrder order = m_buf.order();
+        dir.setDeferredReader( () -> {
+            synchronized ( m_buf ) {
+                final ByteOrder origOrder = m_buf.order();
+                m_buf.order( order );
+                try {
+                    readMakerNotes( offset, byteCount, dir );
+                }
+                catch ( IOException | RuntimeException e ) {
+                    logBadImageMetadata( e );
+                }
+                finally {
+                    m_buf.order( origOrder );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Read a camera manufacturer's maker notes into the given directory.
+     *
+     * @param offset The offset from the beginning of the buffer of the maker
+     * @param byteCount The total number of bytes for the maker notes data.
+     * @param dir The maker notes directory.
+     */
+    private void readMakerNotes( int offset, int byteCount,
+                                 ImageMetadataDirectory dir )
+        throws IOException
+    {
         int valueOffsetAdjustment = 0;
         final int[] adjustments = dir.getMakerNotesAdjustments( m_buf, offset );
         if ( adjustments != null ) {
@@ -324,6 +361,12 @@ public class EXIFMetadataReader extends ImageMetadataReader
         }
     }
 
+    /**
+     * Whether maker notes are read only when their values are accessed.
+     */
+    private static final boolean LAZY_MAKER_NOTES =
+        !"false".equals( System.getProperty( "lightcrafts.metadata.lazy" ) );
+
     /**
      * A map of directory names (e.g., "IFD0", "SubIFD1") to directories.
      */
@@ -66,7 +66,10 @@ public class ImageMetadata implements
      * Clear all metadata.
      */
     public void clear() {
-        m_classToDirMap.clear();
+        synchronized ( m_classToDirMap ) {
+            m_classToDirMap.clear();
+            m_providerIndex.clear();
+        }
     }
 
     /**
@@ -159,21 +162,17 @@ public class ImageMetadata implements
      */
     public Collection<ImageMetadataDirectory>
     findProvidersOf( Class<? extends ImageMetadataProvider> provider ) {
-        final ArrayList<ImageMetadataDirectory> providers =
-            new ArrayList<ImageMetadataDirectory>();
-        for ( ImageMetadataDirectory dir : getDirectories() )
-            if ( provider.isInstance( dir ) )
-                providers.add( dir );
-        Collections.sort( providers, new ProviderComparator( provider ) );
-        return providers;
+        return new ArrayList<ImageMetadataDirectory>(
+            Arrays.asList( getProvidersOf( provider ) )
+        );
     }
 
     /**
      * {@inheritDoc}
      */
     public float getAperture() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ApertureProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ApertureProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final float value = ((ApertureProvider)dir).getAperture();
             if ( value > 0 )
@@ -186,8 +185,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public String getArtist() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ArtistProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ArtistProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((ArtistProvider)dir).getArtist();
             if ( value != null )
@@ -200,8 +199,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getBitsPerChannel() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( BitsPerChannelProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( BitsPerChannelProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int value = ((BitsPerChannelProvider)dir).getBitsPerChannel();
             if ( value > 0 )
@@ -218,8 +217,8 @@ public class ImageMetadata implements
      * seperated by a space or <code>null</code> if not available.
      */
     public final String getCameraMake( boolean includeModel ) {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( MakeModelProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( MakeModelProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String make =
                 ((MakeModelProvider)dir).getCameraMake( includeModel );
@@ -233,8 +232,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public String getCaption() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( CaptionProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( CaptionProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((CaptionProvider)dir).getCaption();
             if ( value != null )
@@ -247,8 +246,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public Date getCaptureDateTime() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( CaptureDateTimeProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( CaptureDateTimeProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final Date date =
                 ((CaptureDateTimeProvider)dir).getCaptureDateTime();
@@ -262,8 +261,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getColorTemperature() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ColorTemperatureProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ColorTemperatureProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int temp =
                 ((ColorTemperatureProvider)dir).getColorTemperature();
@@ -277,8 +276,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public String getCopyright() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( CopyrightProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( CopyrightProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((CopyrightProvider)dir).getCopyright();
             if ( value != null )
@@ -336,6 +335,7 @@ public class ImageMetadata implements
                     throw new IllegalStateException( e );
                 }
                 m_classToDirMap.put( dirClass, dir );
+                m_providerIndex.clear();
             }
             return dir;
         }
@@ -365,8 +365,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getFlash() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( FlashProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( FlashProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int flash = ((FlashProvider)dir).getFlash();
             if ( flash != -1 )
@@ -379,8 +379,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public float getFocalLength() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( FocalLengthProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( FocalLengthProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final float value = ((FocalLengthProvider)dir).getFocalLength();
             if ( value > 0 )
@@ -394,8 +394,8 @@ public class ImageMetadata implements
      */
     @Override
     public Double getGPSLatitude() {
-        final Collection<ImageMetadataDirectory> dirs =
-                findProvidersOf( GPSProvider.class );
+        final ImageMetadataDirectory[] dirs =
+                getProvidersOf( GPSProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final Double latitude = ((GPSProvider)dir).getGPSLatitude();
             if ( latitude != null )
@@ -409,8 +409,8 @@ public class ImageMetadata implements
      */
     @Override
     public Double getGPSLongitude() {
-        final Collection<ImageMetadataDirectory> dirs =
-                findProvidersOf( GPSProvider.class );
+        final ImageMetadataDirectory[] dirs =
+                getProvidersOf( GPSProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final Double longitude = ((GPSProvider)dir).getGPSLongitude();
             if ( longitude != null )
@@ -424,8 +424,8 @@ public class ImageMetadata implements
      */
     @Override
     public String getGPSLatitudeDMS() {
-        final Collection<ImageMetadataDirectory> dirs =
-                findProvidersOf( GPSProvider.class );
+        final ImageMetadataDirectory[] dirs =
+                getProvidersOf( GPSProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((GPSProvider)dir).getGPSLatitudeDMS();
             if (! value.isEmpty())
@@ -439,8 +439,8 @@ public class ImageMetadata implements
      */
     @Override
     public String getGPSLongitudeDMS() {
-        final Collection<ImageMetadataDirectory> dirs =
-                findProvidersOf( GPSProvider.class );
+        final ImageMetadataDirectory[] dirs =
+                getProvidersOf( GPSProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((GPSProvider)dir).getGPSLongitudeDMS();
             if (! value.isEmpty())
@@ -453,8 +453,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getImageHeight() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( WidthHeightProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( WidthHeightProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int height = ((WidthHeightProvider)dir).getImageHeight();
             if ( height > 0 )
@@ -492,8 +492,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getImageWidth() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( WidthHeightProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( WidthHeightProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int width = ((WidthHeightProvider)dir).getImageWidth();
             if ( width > 0 )
@@ -506,8 +506,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getOriginalImageHeight() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( OriginalWidthHeightProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( OriginalWidthHeightProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int height =
                 ((OriginalWidthHeightProvider)dir).getOriginalImageHeight();
@@ -521,8 +521,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getOriginalImageWidth() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( OriginalWidthHeightProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( OriginalWidthHeightProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int width =
                 ((OriginalWidthHeightProvider)dir).getOriginalImageWidth();
@@ -536,8 +536,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getISO() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ISOProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ISOProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int iso = ((ISOProvider)dir).getISO();
             if ( iso > 0 )
@@ -550,8 +550,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public String getLens() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( LensProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( LensProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String lens = ((LensProvider)dir).getLens();
             if ( lens != null )
@@ -564,8 +564,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public ImageOrientation getOrientation() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( OrientationProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( OrientationProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final ImageOrientation orientation =
                 ((OrientationProvider)dir).getOrientation();
@@ -610,8 +610,8 @@ public class ImageMetadata implements
      * @see #setRating(int)
      */
     public int getRating() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( RatingProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( RatingProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int rating = ((RatingProvider)dir).getRating();
             if ( rating != 0 )
@@ -624,8 +624,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public double getResolution() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ResolutionProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ResolutionProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final double value = ((ResolutionProvider)dir).getResolution();
             if ( value > 0 )
@@ -638,8 +638,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public int getResolutionUnit() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ResolutionProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ResolutionProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final int value = ((ResolutionProvider)dir).getResolutionUnit();
             if ( value != RESOLUTION_UNIT_NONE )
@@ -652,8 +652,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public float getShutterSpeed() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( ShutterSpeedProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( ShutterSpeedProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final float speed = ((ShutterSpeedProvider)dir).getShutterSpeed();
             if ( speed > 0 )
@@ -666,8 +666,8 @@ public class ImageMetadata implements
      * {@inheritDoc}
      */
     public String getTitle() {
-        final Collection<ImageMetadataDirectory> dirs =
-            findProvidersOf( TitleProvider.class );
+        final ImageMetadataDirectory[] dirs =
+            getProvidersOf( TitleProvider.class );
         for ( ImageMetadataDirectory dir : dirs ) {
             final String value = ((TitleProvider)dir).getTitle();
             if ( value != null )
@@ -1142,7 +1142,10 @@ public class ImageMetadata implements
      */
     public ImageMetadataDirectory putDirectory( ImageMetadataDirectory dir ) {
         final Class dirClass = dir.getClass();
-        return m_classToDirMap.put( dirClass, dir );
+        synchronized ( m_classToDirMap ) {
+            m_providerIndex.clear();
+            return m_classToDirMap.put( dirClass, dir );
+        }
     }
 
     /**
@@ -1191,19 +1194,25 @@ public class ImageMetadata implements
      * <code>null</code> if there was no such directory to remove.
      */
     public ImageMetadataDirectory removeDirectory( Class dirClass ) {
-        return m_classToDirMap.remove( dirClass );
+        synchronized ( m_classToDirMap ) {
+            m_providerIndex.clear();
+            return m_classToDirMap.remove( dirClass );
+        }
     }
 
     /**
      * Remove all directories that have no metadata.
      */
     public void removeAllEmptyDirectories() {
-        for ( Iterator<Map.Entry<Class,ImageMetadataDirectory>>
-              i = m_classToDirMap.entrySet().iterator(); i.hasNext(); ) {
-            final Map.Entry<Class,ImageMetadataDirectory> me = i.next();
-            final ImageMetadataDirectory dir = me.getValue();
-            if ( dir.isEmpty() )
-                i.remove();
+        synchronized ( m_classToDirMap ) {
+            m_providerIndex.clear();
+            for ( Iterator<Map.Entry<Class,ImageMetadataDirectory>>
+                  i = m_classToDirMap.entrySet().iterator(); i.hasNext(); ) {
+                final Map.Entry<Class,ImageMetadataDirectory> me = i.next();
+                final ImageMetadataDirectory dir = me.getValue();
+                if ( dir.isEmpty() )
+                    i.remove();
+            }
         }
     }
 
@@ -1485,6 +1494,36 @@ public class ImageMetadata implements
         private final Class<? extends ImageMetadataProvider> m_provider;
     }
 
+    /**
+     * Gets all instances of {@link ImageMetadataDirectory} that implement the
+     * given provider interface in priority order.  The result is kept in
+     * {@link #m_providerIndex} until a directory is added or removed, so the
+     * getters don't scan and sort the directories each time.
+     *
+     * @param provider The provider interface to find.
+     * @return Returns said directories.  The array is shared and must not be
+     * modified.
+     * @see #findProvidersOf(Class)
+     */
+    private ImageMetadataDirectory[]
+    getProvidersOf( Class<? extends ImageMetadataProvider> provider ) {
+        synchronized ( m_classToDirMap ) {
+            ImageMetadataDirectory[] providers =
+                m_providerIndex.get( provider );
+            if ( providers == null ) {
+                final ArrayList<ImageMetadataDirectory> list =
+                    new ArrayList<ImageMetadataDirectory>();
+                for ( ImageMetadataDirectory dir : m_classToDirMap.values() )
+                    if ( provider.isInstance( dir ) )
+                        list.add( dir );
+                providers = list.toArray( new ImageMetadataDirectory[0] );
+                Arrays.sort( providers, new ProviderComparator( provider ) );
+                m_providerIndex.put( provider, providers );
+            }
+            return providers;
+        }
+    }
+
     /**
      * Convert relevant metadata into an XMP Dublin Core RDF element.
      *
@@ -1544,6 +1583,15 @@ public class ImageMetadata implements
     private final Map<Class,ImageMetadataDirectory> m_classToDirMap =
         new HashMap<Class,ImageMetadataDirectory>();
 
+    /**
+     * The directories implementing each provider interface in priority
+     * order, built lazily by {@link #getProvidersOf(Class)} and cleared
+     * whenever a directory is added or removed.  Guarded by
+     * {@link #m_classToDirMap}.
+     */
+    private final Map<Class,ImageMetadataDirectory[]> m_providerIndex =
+        new HashMap<Class,ImageMetadataDirectory[]>();
+
     /**
      * The type of the image file this metadata is for.
      */
@@ -38,6 +38,8 @@ public abstract class ImageMetadataDirectory implements
      * Clears all metadata.
      */
     public synchronized void clear() {
+        m_deferredReader = null;
+        m_deferredValues.clear();
         m_tagIDToValueMap.clear();
     }
 
@@ -77,7 +79,7 @@ public abstract class ImageMetadataDirectory implements
         // that don't rely on data, only behavior.
         //
         synchronized( this ) {
-            copy.m_tagIDToValueMap.putAll( m_tagIDToValueMap );
+            copy.m_tagIDToValueMap.putAll( values() );
         }
         return copy;
     }
@@ -134,7 +136,7 @@ public abstract class ImageMetadataDirectory implements
     public final Set<Integer> getTagIDSet( boolean all ) {
         if ( !all )
             synchronized ( this ) {
-                return m_tagIDToValueMap.keySet();
+                return values().keySet();
             }
 
         final Class<? extends ImageMetaTags> tagsInterface = getTagsInterface();
@@ -340,7 +342,7 @@ public abstract class ImageMetadataDirectory implements
     public final synchronized ImageMetaValue getValue( Integer tagID ) {
         ImageMetadataDirectory dir = this;
         while ( dir != null ) {
-            final ImageMetaValue value = dir.m_tagIDToValueMap.get( tagID );
+            final ImageMetaValue value = dir.valuesFor( tagID, true ).get( tagID );
             if ( value != null )
                 return value;
             dir = dir.getStaticParent();
@@ -473,7 +475,10 @@ public abstract class ImageMetadataDirectory implements
      * @return Returns <code>true</code> only if the directory is empty.
      */
     public final synchronized boolean isEmpty() {
-        return m_tagIDToValueMap.isEmpty();
+        // Deferred values are presumed to be there, so that checking for
+        // empty directories doesn't read them.
+        return  m_deferredReader == null && m_deferredValues.isEmpty() &&
+                m_tagIDToValueMap.isEmpty();
     }
 
     /**
@@ -507,7 +512,7 @@ public abstract class ImageMetadataDirectory implements
     @Override
     public final synchronized Iterator<Map.Entry<Integer,ImageMetaValue>>
     iterator() {
-        return m_tagIDToValueMap.entrySet().iterator();
+        return values().entrySet().iterator();
     }
 
     /**
@@ -620,7 +625,7 @@ public abstract class ImageMetadataDirectory implements
             value.setOwningTagID( tagID );
         }
         synchronized( this ) {
-            m_tagIDToValueMap.put( tagID, value );
+            valuesFor( tagID, false ).put( tagID, value );
         }
     }
 
@@ -652,7 +657,8 @@ public abstract class ImageMetadataDirectory implements
     public final synchronized ImageMetaValue removeValue( Integer tagID ) {
         ImageMetadataDirectory dir = this;
         while ( dir != null ) {
-            final ImageMetaValue value = dir.m_tagIDToValueMap.remove( tagID );
+            final ImageMetaValue value =
+                dir.valuesFor( tagID, false ).remove( tagID );
             if ( value != null )
                 return value;
             dir = dir.getStaticParent();
@@ -677,7 +683,7 @@ public abstract class ImageMetadataDirectory implements
             throw new IllegalArgumentException( "unknown tag " + tagID );
 
         synchronized ( this ) {
-            ImageMetaValue value = m_tagIDToValueMap.get( tagID );
+            ImageMetaValue value = valuesFor( tagID, true ).get( tagID );
             if ( value == null ) {
                 value = tag.createValue();
                 value.setOwningDirectory( this );
@@ -713,7 +719,7 @@ public abstract class ImageMetadataDirectory implements
 */
 
         synchronized ( this ) {
-            ImageMetaValue value = m_tagIDToValueMap.get( tagID );
+            ImageMetaValue value = valuesFor( tagID, true ).get( tagID );
             if ( value == null ) {
                 value = tag.createValue();
                 value.setOwningDirectory( this );
@@ -745,7 +751,7 @@ public abstract class ImageMetadataDirectory implements
      * @return Returns said number.
      */
     public final synchronized int size() {
-        return m_tagIDToValueMap.size();
+        return values().size();
     }
 
     /**
@@ -1079,6 +1085,41 @@ public abstract class ImageMetadataDirectory implements
         return null;
     }
 
+    /**
+     * Sets a reader to be run the first time the values of this directory are
+     * accessed, instead of reading them right away.  Values that are read
+     * later are never edited, so {@link #clearEdited()},
+     * {@link #isChanged()} and {@link #isEmpty()} don't run it.
+     *
+     * @param reader The reader.  It must deal with its own errors.
+     */
+    final synchronized void setDeferredReader( Runnable reader ) {
+        m_deferredReader = reader;
+    }
+
+    /**
+     * Sets a reader to be run the first time the value of the given tag is
+     * accessed, instead of working it out right away.  The reader is expected
+     * to put the value, or nothing if there is none.  Putting or removing the
+     * value first supersedes the reader.
+     *
+     * @param tagID The metadata tag ID.
+     * @param reader The reader.
+     */
+    final synchronized void setDeferredValue( Integer tagID, Runnable reader ) {
+        m_deferredValues.put( tagID, reader );
+    }
+
+    /**
+     * Returns whether the values of this directory have yet to be read.
+     *
+     * @return Returns <code>true</code> only if a deferred reader is pending.
+     * @see #setDeferredReader(Runnable)
+     */
+    final synchronized boolean isDeferred() {
+        return m_deferredReader != null;
+    }
+
     /**
      * Reads the maker notes from the given buffer.
      *
@@ -1189,7 +1230,67 @@ public abstract class ImageMetadataDirectory implements
     private ImageMetadata m_owningMetadata;
 
     /**
-     * A {@link Map} of tag IDs to {@link ImageMetaValue}s.
+     * Gets the {@link Map} of tag IDs to {@link ImageMetaValue}s, running the
+     * deferred reader and the readers of deferred values first, if any.  The
+     * caller must hold the lock on this directory.
+     *
+     * @return Returns said {@link Map}.
+     * @see #setDeferredReader(Runnable)
+     * @see #setDeferredValue(Integer,Runnable)
+     */
+    private HashMap<Integer,ImageMetaValue> values() {
+        if ( m_deferredReader != null ) {
+            final Runnable reader = m_deferredReader;
+            m_deferredReader = null;
+            reader.run();
+        }
+        while ( !m_deferredValues.isEmpty() ) {
+            final Integer tagID = m_deferredValues.keySet().iterator().next();
+            m_deferredValues.remove( tagID ).run();
+        }
+        return m_tagIDToValueMap;
+    }
+
+    /**
+     * Gets the {@link Map} of tag IDs to {@link ImageMetaValue}s for accessing
+     * a single tag, running the deferred reader first, if any.  The caller
+     * must hold the lock on this directory.
+     *
+     * @param tagID The metadata tag ID about to be accessed.
+     * @param read If <code>true</code>, the deferred reader of the tag, if
+     * any, is run; otherwise it is dropped because the value is about to be
+     * put or removed.
+     * @return Returns said {@link Map}.
+     * @see #setDeferredValue(Integer,Runnable)
+     */
+    private HashMap<Integer,ImageMetaValue> valuesFor( Integer tagID,
+                                                      boolean read ) {
+        if ( m_deferredReader != null ) {
+            final Runnable reader = m_deferredReader;
+            m_deferredReader = null;
+            reader.run();
+        }
+        final Runnable reader = m_deferredValues.remove( tagID );
+        if ( reader != null && read )
+            reader.run();
+        return m_tagIDToValueMap;
+    }
+
+    /**
+     * The reader of values that haven't been read yet, if any.
+     */
+    private Runnable m_deferredReader;
+
+    /**
+     * The readers of single values that haven't been worked out yet.
+     */
+    private final HashMap<Integer,Runnable> m_deferredValues =
+        new HashMap<Integer,Runnable>();
+
+    /**
+     * A {@link Map} of tag IDs to {@link ImageMetaValue}s.  Except for
+     * {@link #clearEdited()} and {@link #isChanged()}, access it through
+     * {@link #values()} or {@link #valuesFor(Integer,boolean)}.
      */
     private final HashMap<Integer,ImageMetaValue> m_tagIDToValueMap =
         new HashMap<Integer,ImageMetaValue>();
@@ -2,16 +2,22 @@
 
 package com.lightcrafts.image.types;
 
+import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.media.jai.PlanarImage;
 
 import com.lightcrafts.utils.filecache.FileCache;
 import com.lightcrafts.utils.filecache.FileCacheFactory;
 import com.lightcrafts.utils.DCRaw;
+import com.lightcrafts.utils.ProgressIndicator;
 import com.lightcrafts.utils.UserCanceledException;
 import com.lightcrafts.utils.thread.ProgressThread;
 import com.lightcrafts.image.libs.LCTIFFWriter;
@@ -23,47 +29,174 @@ import com.lightcrafts.image.ImageInfo;
 import com.lightcrafts.image.BadImageFileException;
 import com.lightcrafts.image.UnknownImageTypeException;
 import com.lightcrafts.jai.JAIContext;
+import com.lightcrafts.jai.opimage.CachedImage;
 
 /**
- * TODO.
+ * A write-behind cache of raw conversions.
+ * <p>
+ * Converted images are queued by cache key and written as TIFF files into
+ * the global {@link FileCache} by a few background writers.  Adding a key
+ * that is already queued replaces the queued image, adding one that is
+ * being written is a no-op.  The images waiting in the queue are bounded
+ * in size: when a new one doesn't fit, the oldest waiting ones are dropped.
+ * A write is canceled if its image is disposed before it completes.
+ * <p>
+ * The queue size, in megabytes, can be set with the
+ * <code>lightcrafts.rawcache.queue</code> system property, the number of
+ * writers with <code>lightcrafts.rawcache.writers</code>.
  *
  * @author Fabio Riccardi [fabio@lightcrafts.com]
  */
-class RawImageCache extends Thread {
+class RawImageCache {
     private static String version = "V5";
 
-    private static final class ImageToCache {
+    static final String CAPACITY_PROPERTY = "lightcrafts.rawcache.queue";
+    static final String WRITERS_PROPERTY = "lightcrafts.rawcache.writers";
+
+    private static final long MB = 1024 * 1024;
+
+    private static final RawImageCache INSTANCE = new RawImageCache(
+        Long.getLong(
+            CAPACITY_PROPERTY, Runtime.getRuntime().maxMemory() / 4 / MB
+        ) * MB,
+        Integer.getInteger( WRITERS_PROPERTY, 2 )
+    );
+
+    private final class WriteJob extends ProgressThread {
         final String cacheKey;
         final RenderedImage image;
+        final long size;
 
-        ImageToCache(String cacheKey, RenderedImage image) {
+        WriteJob( String cacheKey, RenderedImage image ) {
+            super( new DisposeWatch() );
+            ((DisposeWatch)getProgressIndicator()).job = this;
             this.cacheKey = cacheKey;
             this.image = image;
+            size = (long)image.getWidth() * image.getHeight()
+                * image.getSampleModel().getNumBands()
+                * DataBuffer.getDataTypeSize(
+                    image.getSampleModel().getDataType()
+                ) / 8;
+        }
+
+        boolean isImageDisposed() {
+            return image instanceof CachedImage
+                && ((CachedImage)image).isDisposed();
+        }
+
+        public void run() {
+            boolean success = false;
+            try {
+                success = write( this );
+            }
+            catch ( IOException | LCImageLibException e ) {
+                // nevermind, do without cache...
+                e.printStackTrace();
+            }
+            finally {
+                done( this, success );
+            }
         }
     }
 
-    private static final RawImageCache INSTANCE;
+    /**
+     * The TIFF writer reports progress after every tile, which is where a
+     * write gets canceled if its image has been disposed meanwhile.
+     */
+    private static final class DisposeWatch implements ProgressIndicator {
+        WriteJob job;
+
+        public void incrementBy( int delta ) {
+            if ( job.isImageDisposed() )
+                job.requestCancel();
+        }
+
+        public void setIndeterminate( boolean indeterminate ) { }
+
+        public void setMaximum( int maxValue ) { }
 
-    static {
-        INSTANCE = new RawImageCache();
-        INSTANCE.start();
+        public void setMinimum( int minValue ) { }
     }
 
-    private ImageToCache currentJob;
+    private final long capacity;
+    private long queuedSize;
+
+    // Waiting jobs, oldest first, and the ones being written
+    private final LinkedHashMap<String, WriteJob> pending =
+        new LinkedHashMap<String, WriteJob>();
+    private final Map<String, WriteJob> writing =
+        new HashMap<String, WriteJob>();
+
+    private long hits;
+    private long misses;
+    private long written;
+    private long dropped;
+    private long canceled;
+    private long failed;
+
+    private RawImageCache( long capacity, int writers ) {
+        this.capacity = capacity;
+        for ( int i = 0; i < Math.max( writers, 1 ); i++ ) {
+            final Thread writer = new Thread(
+                new Runnable() {
+                    public void run() {
+                        writeLoop();
+                    }
+                },
+                "RawImageCache-" + i
+            );
+            writer.setPriority( Thread.NORM_PRIORITY - 1 );
+            writer.setDaemon( true );
+            writer.start();
+        }
+        // Report the cache activity of the session, to help sizing the
+        // global FileCache.
+        Runtime.getRuntime().addShutdownHook(
+            new Thread( "RawImageCache statistics" ) {
+                public void run() {
+                    if ( hasActivity() )
+                        System.out.println( getStatistics() );
+                }
+            }
+        );
+    }
 
-    private RawImageCache() {
-        super( "RawImageCache" );
-        setPriority( Thread.NORM_PRIORITY - 1 );
-        setDaemon( true );
+    private synchronized boolean hasActivity() {
+        return hits + misses + written + dropped + canceled + failed > 0;
     }
 
     static void add( String cacheKey, RenderedImage rawImage ) {
+        INSTANCE.enqueue( INSTANCE.new WriteJob( cacheKey, rawImage ) );
+    }
+
+    static void recordHit() {
+        synchronized ( INSTANCE ) {
+            INSTANCE.hits++;
+        }
+    }
+
+    static void recordMiss() {
         synchronized ( INSTANCE ) {
-            INSTANCE.currentJob = new ImageToCache( cacheKey, rawImage );
-            INSTANCE.notify();
+            INSTANCE.misses++;
         }
     }
 
+    /**
+     * Gets a summary of the cache activity, to help sizing the global
+     * {@link FileCache}.
+     */
+    static String getStatistics() {
+        return INSTANCE.toString();
+    }
+
+    public synchronized String toString() {
+        return "RawImageCache: " + hits + " hits, " + misses + " misses, "
+            + written + " written, " + dropped + " dropped, "
+            + canceled + " canceled, " + failed + " failed, "
+            + (pending.size() + writing.size()) + " queued ("
+            + queuedSize / MB + "MB of " + capacity / MB + "MB)";
+    }
+
     static String getCacheKeyFor( ImageInfo imageInfo )
         throws BadImageFileException, IOException, UnknownImageTypeException
     {
@@ -99,6 +232,9 @@ class RawImageCache extends Thread {
     }
 
     static File getCachedImageFileFor( String cacheKey ) {
+        // A file still being written is no good
+        if ( INSTANCE.isQueued( cacheKey ) )
+            return null;
         final FileCache fileCache = FileCacheFactory.getGlobalCache();
         return fileCache != null ? fileCache.getFileFor( cacheKey ) : null;
     }
@@ -123,48 +259,118 @@ class RawImageCache extends Thread {
         return null;
     }
 
-    public void run() {
-        while (true) {
-            synchronized (this) {
-                try {
-                    while (currentJob == null)
-                        wait();
-                } catch (InterruptedException e) {
+    private synchronized boolean isQueued( String cacheKey ) {
+        return pending.containsKey( cacheKey )
+            || writing.containsKey( cacheKey );
+    }
+
+    private synchronized void enqueue( WriteJob job ) {
+        if ( writing.containsKey( job.cacheKey ) )
+            return;
 
+        final WriteJob old = pending.remove( job.cacheKey );
+        if ( old != null )
+            queuedSize -= old.size;
+
+        if ( job.size > capacity ) {
+            dropped++;
+            System.out.println( "Too large to cache: " + job.cacheKey );
+            return;
+        }
+
+        final Iterator<WriteJob> i = pending.values().iterator();
+        while ( queuedSize + job.size > capacity && i.hasNext() ) {
+            final WriteJob eldest = i.next();
+            i.remove();
+            queuedSize -= eldest.size;
+            dropped++;
+            System.out.println( "Dropped cache write: " + eldest.cacheKey );
+        }
+
+        pending.put( job.cacheKey, job );
+        queuedSize += job.size;
+        notifyAll();
+    }
+
+    private synchronized WriteJob take() throws InterruptedException {
+        while ( true ) {
+            final Iterator<WriteJob> i = pending.values().iterator();
+            while ( i.hasNext() ) {
+                final WriteJob job = i.next();
+                i.remove();
+                if ( job.isImageDisposed() ) {
+                    queuedSize -= job.size;
+                    canceled++;
+                    continue;
                 }
+                writing.put( job.cacheKey, job );
+                return job;
             }
+            wait();
+        }
+    }
 
-            System.out.println("Caching image: " + currentJob.cacheKey);
-
-            long t1 = System.currentTimeMillis();
-
-            final FileCache fileCache = FileCacheFactory.getGlobalCache();
-            if (fileCache != null) {
-                try {
-                    final File cacheFile = fileCache.putToFile(currentJob.cacheKey);
-
-                    try {
-                        LCTIFFWriter writer = new LCTIFFWriter(cacheFile.getAbsolutePath(),
-                                                               currentJob.image.getWidth(),
-                                                               currentJob.image.getHeight());
-                        writer.setByteField( TIFFTags.TIFF_ICC_PROFILE, JAIContext.linearProfile.getData());
-                        writer.putImageTiled(currentJob.image, null);
-                    } catch ( LCImageLibException e) {
-                        e.printStackTrace();
-                    } finally {
-                        fileCache.notifyAboutCloseOf(cacheFile);
-                    }
-                } catch ( IOException e ) {
-                    // nevermind, do without cache...
-                    e.printStackTrace();
-                }
+    private synchronized void done( WriteJob job, boolean success ) {
+        writing.remove( job.cacheKey );
+        queuedSize -= job.size;
+        if ( success )
+            written++;
+        else if ( job.isCanceled() )
+            canceled++;
+        else
+            failed++;
+    }
+
+    private void writeLoop() {
+        while ( true ) {
+            final WriteJob job;
+            try {
+                job = take();
             }
+            catch ( InterruptedException e ) {
+                return;
+            }
+            job.run();
+        }
+    }
+
+    private boolean write( WriteJob job )
+        throws IOException, LCImageLibException
+    {
+        final FileCache fileCache = FileCacheFactory.getGlobalCache();
+        if ( fileCache == null )
+            return false;
 
-            currentJob = null;
+        System.out.println( "Caching image: " + job.cacheKey );
 
-            long t2 = System.currentTimeMillis();
-            System.out.println("Image cached in " + (t2 - t1) + "ms");
+        final long t1 = System.currentTimeMillis();
+
+        final File cacheFile = fileCache.putToFile( job.cacheKey );
+        boolean complete = false;
+        try {
+            final LCTIFFWriter writer = new LCTIFFWriter(
+                cacheFile.getAbsolutePath(),
+                job.image.getWidth(), job.image.getHeight()
+            );
+            writer.setByteField(
+                TIFFTags.TIFF_ICC_PROFILE, JAIContext.linearProfile.getData()
+            );
+            writer.putImageTiled( job.image, job );
+            complete = !job.isCanceled();
+        }
+        finally {
+            if ( complete )
+                fileCache.notifyAboutCloseOf( cacheFile );
+            else if ( cacheFile.exists() && !cacheFile.delete() )
+                System.out.println( "Could not delete partial cache file: " + cacheFile );
         }
+
+        final long t2 = System.currentTimeMillis();
+        if ( complete )
+            System.out.println( "Image cached in " + (t2 - t1) + "ms" );
+        else
+            System.out.println( "Canceled caching of: " + job.cacheKey );
+        return complete;
     }
 }
 /* vim:set et sw=4 ts=4: */
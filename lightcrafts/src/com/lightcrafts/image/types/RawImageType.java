@@ -71,15 +71,27 @@ public abstract class RawImageType extends ImageType {
      * {@inheritDoc}
      */
     @Override
-    public synchronized PlanarImage getImage( ImageInfo imageInfo, ProgressThread thread )
+    public PlanarImage getImage( ImageInfo imageInfo, ProgressThread thread )
         throws BadImageFileException, ColorProfileException, IOException,
                UnknownImageTypeException, UserCanceledException
     {
-        long startTime = System.currentTimeMillis();
-
         val rawInfo = (RawImageInfo)imageInfo.getAuxiliaryInfo();
         val dcRaw = rawInfo.getDCRaw();
 
+        // Convert a given raw file once at a time, different files are
+        // decoded concurrently, see DCRawPool.
+        synchronized ( dcRaw ) {
+            return getImage( imageInfo, dcRaw, thread );
+        }
+    }
+
+    private PlanarImage getImage( ImageInfo imageInfo, DCRaw dcRaw,
+                                  ProgressThread thread )
+        throws BadImageFileException, ColorProfileException, IOException,
+               UnknownImageTypeException, UserCanceledException
+    {
+        long startTime = System.currentTimeMillis();
+
         if (!dcRaw.decodable() || dcRaw.rawColors() != 3)
             throw new UnknownImageTypeException("Unsupported Camera");
 
@@ -101,6 +113,7 @@ public abstract class RawImageType extends ImageType {
                     val image = new LCTIFFReader.TIFFImage(fileName);
                     val t2 = System.currentTimeMillis();
                     System.out.println("Retrieved Cached image in " + (t2 - t1) + "ms");
+                    RawImageCache.recordHit();
                     return image;
                 } catch (LCImageLibException e) {
                     // never mind, don't use the cache
@@ -108,6 +121,7 @@ public abstract class RawImageType extends ImageType {
                 }
             } else
                 System.out.println("File not in cache.");
+            RawImageCache.recordMiss();
         }
 
         ProgressIndicator indicator = null;
@@ -125,7 +139,7 @@ public abstract class RawImageType extends ImageType {
                 Transparency.OPAQUE
         );
 
-        val dcrawImage = (BufferedImage) dcRaw.runDCRaw(DCRaw.dcrawMode.full, false);
+        val dcrawImage = dcRaw.runDCRaw(DCRaw.dcrawMode.full, false);
         val dcrawTime = System.currentTimeMillis();
 
         val metadata = imageInfo.getMetadata();
@@ -194,12 +208,17 @@ public abstract class RawImageType extends ImageType {
 
             for (int x = 0; x <= cache.getMaxTileX(); x++) {
                 for (int y = 0; y <= cache.getMaxTileY(); y++) {
-                    Functions.copyData(cache.getWritableTile(x, y), dcrawImage.getRaster());
+                    val tile = cache.getWritableTile(x, y);
+                    Functions.copyData(tile, dcrawImage.getData(tile.getBounds()));
                 }
             }
             rgbImage = cache;
         }
 
+        // The streamed dcraw output has been copied, let its tiles go
+        if (dcrawImage instanceof CachedImage)
+            JAIContext.fileCache.removeTiles((CachedImage) dcrawImage);
+
         if (indicator != null)
             indicator.incrementBy(1);
 
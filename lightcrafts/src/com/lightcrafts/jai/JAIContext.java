@@ -4,7 +4,9 @@ package com.lightcrafts.jai;
 
 import com.lightcrafts.jai.operator.*;
 import com.lightcrafts.jai.opimage.*;
+import com.lightcrafts.jai.utils.LCStripedTileCache;
 import com.lightcrafts.jai.utils.LCTileCache;
+import com.lightcrafts.jai.utils.LCTileScheduler;
 import com.lightcrafts.jai.utils.LCRecyclingTileFactory;
 import com.lightcrafts.image.color.ColorScience;
 import com.lightcrafts.image.color.ColorProfileInfo;
@@ -76,6 +78,19 @@ public class JAIContext {
     public static final TileCache fileCache;
     public static final TileCache defaultTileCache;
 
+    /**
+     * System property selecting the implementation of the file cache:
+     * "striped" for {@link LCStripedTileCache}, anything else for the
+     * classic single-lock {@link LCTileCache}.
+     */
+    public static final String TILE_CACHE_PROPERTY = "lightcrafts.tilecache";
+
+    /**
+     * System property selecting the tile scheduler: "jai" for JAI's stock
+     * scheduler, anything else for {@link LCTileScheduler}.
+     */
+    public static final String TILE_SCHEDULER_PROPERTY = "lightcrafts.tilescheduler";
+
     /** Tile dimensions. */
     public static final int TILE_WIDTH = 512;
     public static final int TILE_HEIGHT = 512;
@@ -176,8 +191,10 @@ public class JAIContext {
 
         JAI jaiInstance = JAI.getDefaultInstance();
 
-        // Use our own Tile Scheduler -- TODO: Needs more testing
-        // jaiInstance.setTileScheduler(new LCTileScheduler());
+        // Use our own Tile Scheduler, with priority lanes
+        if (!"jai".equals(System.getProperty(TILE_SCHEDULER_PROPERTY))) {
+            jaiInstance.setTileScheduler(new LCTileScheduler());
+        }
 
         int processors = Runtime.getRuntime().availableProcessors();
 
@@ -200,7 +217,12 @@ public class JAIContext {
             jaiInstance.getTileScheduler().setParallelism(processors);
         else
             jaiInstance.getTileScheduler().setParallelism(1);
-        fileCache = new LCTileCache(maxMemory <= 2048L * MB ? maxMemory/2 : maxMemory -  1024 * MB, true);
+        final long cacheSize = maxMemory <= 2048L * MB ? maxMemory/2 : maxMemory -  1024 * MB;
+        if ("striped".equals(System.getProperty(TILE_CACHE_PROPERTY))) {
+            fileCache = new LCStripedTileCache(cacheSize, true);
+        } else {
+            fileCache = new LCTileCache(cacheSize, true);
+        }
         // fileCache.setMemoryThreshold(0.5f);
         jaiInstance.setTileCache(fileCache);
         fileCacheHint = new RenderingHints(JAI.KEY_TILE_CACHE, fileCache);
@@ -241,6 +263,12 @@ public class JAIContext {
         RenderedImageFactory rif = new LCSeparableConvolveRIF();
         RIFRegistry.register(or, desc.getName(), "com.lightcrafts", rif);
 
+        // register LCGaussianBlur
+        desc = new LCGaussianBlurDescriptor();
+        or.registerDescriptor(desc);
+        rif = new LCGaussianBlurRIF();
+        RIFRegistry.register(or, desc.getName(), "com.lightcrafts", rif);
+
         // register NOPOp
         desc = new NOPDescriptor();
         or.registerDescriptor(desc);
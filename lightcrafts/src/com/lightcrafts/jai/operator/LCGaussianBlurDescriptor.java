@@ -0,0 +1,70 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.operator;
+
+import com.sun.media.jai.util.AreaOpPropertyGenerator;
+
+import javax.media.jai.JAI;
+import javax.media.jai.OperationDescriptorImpl;
+import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.PropertyGenerator;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.registry.RenderedRegistryMode;
+import java.awt.image.RenderedImage;
+import java.awt.*;
+
+/**
+ * Gaussian blur of a given standard deviation.  The cost per pixel of the
+ * blur does not grow with the deviation, except for the source pixels
+ * needed around each tile.  The border extender hint is used for the image
+ * edges.
+ */
+public class LCGaussianBlurDescriptor extends OperationDescriptorImpl {
+    /**
+     * The resource strings that provide the general documentation and
+     * specify the parameter list for a GaussianBlur operation.
+     */
+    private static final String[][] resources = {
+        {"GlobalName",  "LCGaussianBlur"},
+        {"LocalName",   "LCGaussianBlur"},
+        {"Vendor",      "com.lightcrafts.jai"},
+        {"Description", "Gaussian Blur"},
+        {"Version",     "1.0"},
+        {"arg0Desc",    "standard deviation"}
+    };
+
+    private static final String[] paramNames = {
+        "standardDeviation"
+    };
+
+    private static final Class[] paramClasses = {
+        Double.class
+    };
+
+    private static final Object[] paramDefaults = {
+        NO_PARAMETER_DEFAULT
+    };
+
+    public LCGaussianBlurDescriptor() {
+        super(resources, 1, paramClasses, paramNames, paramDefaults);
+    }
+
+    public PropertyGenerator[] getPropertyGenerators() {
+        PropertyGenerator[] pg = new PropertyGenerator[1];
+        pg[0] = new AreaOpPropertyGenerator();
+        return pg;
+    }
+
+    public static RenderedOp create(RenderedImage source,
+                                    double standardDeviation,
+                                    RenderingHints hints)  {
+        ParameterBlockJAI pb =
+            new ParameterBlockJAI("LCGaussianBlur", RenderedRegistryMode.MODE_NAME);
+
+        pb.setSource("source0", source);
+
+        pb.setParameter("standardDeviation", standardDeviation);
+
+        return JAI.create("LCGaussianBlur", pb, hints);
+    }
+}
@@ -21,6 +21,7 @@ import java.awt.*;
  */
 public class CachedImage extends PlanarImage {
     private final TileCache cache;
+    private volatile boolean disposed = false;
 
     // Provide an easy mechanism to generate sRGB images, workaround for a rendering bug on windogs
     static ImageLayout getsRGBImageLayout(PlanarImage image) {
@@ -60,6 +61,28 @@ public class CachedImage extends PlanarImage {
         return cache.getTile(this, tileX, tileY);
     }
 
+    /**
+     * Hand a tile filled by the caller over to the cache, the raster must
+     * not be modified afterwards.
+     */
+    public synchronized void setTile(int tileX, int tileY, Raster raster) {
+        cache.add(this, tileX, tileY, raster);
+    }
+
+    /**
+     * Whether {@link #dispose()} has been called, so that whoever still
+     * holds on to this image in the background can let it go.
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        super.dispose();
+    }
+
     public synchronized WritableRaster getWritableTile(int tileX, int tileY) {
         Raster raster = cache.getTile(this, tileX, tileY);
         if (raster == null)
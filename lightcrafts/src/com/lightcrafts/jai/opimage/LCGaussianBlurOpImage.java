@@ -0,0 +1,294 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.opimage;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import javax.media.jai.AreaOpImage;
+import javax.media.jai.BorderExtender;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.RasterAccessor;
+import javax.media.jai.RasterFormatTag;
+import java.util.Map;
+
+/**
+ * Gaussian blur with the fourth order recursive filter of Deriche
+ * ("Recursively implementing the Gaussian and its derivatives", INRIA RR-1893,
+ * 1993).
+ * <p>
+ * Each column and then each row is filtered by a causal and an anticausal
+ * recursion whose sum approximates the Gaussian, so the cost per pixel does
+ * not depend on the standard deviation.  Tiles are computed from the source
+ * padded by {@link #getPadding(double)} pixels, the recursions are started
+ * from the edge of the padding as if the image continued with that value.
+ * <p>
+ * The filter is accurate for deviations above about 2, see
+ * {@link LCGaussianBlurRIF} for the smaller ones.
+ */
+final class LCGaussianBlurOpImage extends AreaOpImage {
+
+    // Deriche's coefficients for the Gaussian
+    private static final double a0 = 1.680, a1 = 3.735, b0 = 1.783, b1 = 1.723,
+                                c0 = -0.6803, c1 = -0.2598, w0 = 0.6318, w1 = 1.997;
+
+    // causal and anticausal numerators, common denominator
+    private final double n0, n1, n2, n3;
+    private final double m1, m2, m3, m4;
+    private final double d1, d2, d3, d4;
+
+    // responses to a constant input, and the normalization
+    private final double causalGain, anticausalGain, scale;
+
+    private final int padding;
+
+    /**
+     * The source pixels needed on each side of a tile.  Beyond three
+     * deviations the Gaussian weights sum up to less than 0.15%.
+     */
+    static int getPadding(double sigma) {
+        return (int) Math.ceil(3 * sigma);
+    }
+
+    LCGaussianBlurOpImage(RenderedImage source,
+                          BorderExtender extender,
+                          Map config,
+                          ImageLayout layout,
+                          double sigma) {
+        super(source,
+              layout,
+              config,
+              true,
+              extender,
+              getPadding(sigma),
+              getPadding(sigma),
+              getPadding(sigma),
+              getPadding(sigma));
+
+        padding = getPadding(sigma);
+
+        double cos0 = Math.cos(w0 / sigma), sin0 = Math.sin(w0 / sigma);
+        double cos1 = Math.cos(w1 / sigma), sin1 = Math.sin(w1 / sigma);
+        double e0 = Math.exp(-b0 / sigma), e1 = Math.exp(-b1 / sigma);
+
+        n0 = a0 + c0;
+        n1 = e1 * (c1 * sin1 - (c0 + 2 * a0) * cos1)
+             + e0 * (a1 * sin0 - (2 * c0 + a0) * cos0);
+        n2 = 2 * e0 * e1 * ((a0 + c0) * cos1 * cos0 - a1 * cos1 * sin0 - c1 * cos0 * sin1)
+             + c0 * e0 * e0 + a0 * e1 * e1;
+        n3 = e1 * e0 * e0 * (c1 * sin1 - c0 * cos1)
+             + e0 * e1 * e1 * (a1 * sin0 - a0 * cos0);
+
+        d1 = -2 * e1 * cos1 - 2 * e0 * cos0;
+        d2 = 4 * cos1 * cos0 * e0 * e1 + e1 * e1 + e0 * e0;
+        d3 = -2 * cos0 * e0 * e1 * e1 - 2 * cos1 * e1 * e0 * e0;
+        d4 = e0 * e0 * e1 * e1;
+
+        m1 = n1 - d1 * n0;
+        m2 = n2 - d2 * n0;
+        m3 = n3 - d3 * n0;
+        m4 = -d4 * n0;
+
+        double d = 1 + d1 + d2 + d3 + d4;
+        causalGain = (n0 + n1 + n2 + n3) / d;
+        anticausalGain = (m1 + m2 + m3 + m4) / d;
+        scale = 1 / (causalGain + anticausalGain);
+    }
+
+    /**
+     * Performs the blur on a specified rectangle. The sources are cobbled.
+     *
+     * @param sources an array of source Rasters, guaranteed to provide all
+     *                necessary source data for computing the output.
+     * @param dest a WritableRaster tile containing the area to be computed.
+     * @param destRect the rectangle within dest to be processed.
+     */
+    protected void computeRect(Raster[] sources,
+                               WritableRaster dest,
+                               Rectangle destRect) {
+        RasterFormatTag[] formatTags = getFormatTags();
+
+        Raster source = sources[0];
+        Rectangle srcRect = mapDestRect(destRect, 0);
+
+        RasterAccessor srcAccessor =
+                new RasterAccessor(source, srcRect, formatTags[0],
+                                   getSourceImage(0).getColorModel());
+        RasterAccessor dstAccessor =
+                new RasterAccessor(dest, destRect, formatTags[1],
+                                   this.getColorModel());
+
+        switch (dstAccessor.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            byteLoop(srcAccessor, dstAccessor);
+            break;
+        case DataBuffer.TYPE_USHORT:
+            ushortLoop(srcAccessor, dstAccessor);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported data type: " + dstAccessor.getDataType());
+        }
+
+        if (dstAccessor.isDataCopy()) {
+            dstAccessor.clampDataArrays();
+            dstAccessor.copyDataToRaster();
+        }
+    }
+
+    private void byteLoop(RasterAccessor src, RasterAccessor dst) {
+        byte[][] srcDataArrays = src.getByteDataArrays();
+        byte[][] dstDataArrays = dst.getByteDataArrays();
+
+        int swidth = src.getWidth();
+        int sheight = src.getHeight();
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+
+        int srcLineStride = src.getScanlineStride();
+        int srcPixelStride = src.getPixelStride();
+        int dstLineStride = dst.getScanlineStride();
+        int dstPixelStride = dst.getPixelStride();
+
+        float[] data = new float[sheight * swidth];
+        float[] transposed = new float[swidth * dheight];
+        float[] causal = new float[Math.max(data.length, transposed.length)];
+
+        for (int band = 0; band < dst.getNumBands(); band++) {
+            byte[] srcData = srcDataArrays[band];
+            byte[] dstData = dstDataArrays[band];
+            int srcBandOffset = src.getBandOffset(band);
+            int dstBandOffset = dst.getBandOffset(band);
+
+            for (int y = 0; y < sheight; y++) {
+                int srcPixOffset = srcBandOffset + y * srcLineStride;
+                for (int x = 0; x < swidth; x++) {
+                    data[y * swidth + x] = srcData[srcPixOffset] & 0xff;
+                    srcPixOffset += srcPixelStride;
+                }
+            }
+
+            blur(data, transposed, causal, swidth, sheight, dheight);
+
+            for (int y = 0; y < dheight; y++) {
+                int dstPixOffset = dstBandOffset + y * dstLineStride;
+                for (int x = 0; x < dwidth; x++) {
+                    int v = (int) (transposed[(x + padding) * dheight + y] + 0.5f);
+                    dstData[dstPixOffset] = (byte) (v < 0 ? 0 : v > 0xff ? 0xff : v);
+                    dstPixOffset += dstPixelStride;
+                }
+            }
+        }
+    }
+
+    private void ushortLoop(RasterAccessor src, RasterAccessor dst) {
+        short[][] srcDataArrays = src.getShortDataArrays();
+        short[][] dstDataArrays = dst.getShortDataArrays();
+
+        int swidth = src.getWidth();
+        int sheight = src.getHeight();
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+
+        int srcLineStride = src.getScanlineStride();
+        int srcPixelStride = src.getPixelStride();
+        int dstLineStride = dst.getScanlineStride();
+        int dstPixelStride = dst.getPixelStride();
+
+        float[] data = new float[sheight * swidth];
+        float[] transposed = new float[swidth * dheight];
+        float[] causal = new float[Math.max(data.length, transposed.length)];
+
+        for (int band = 0; band < dst.getNumBands(); band++) {
+            short[] srcData = srcDataArrays[band];
+            short[] dstData = dstDataArrays[band];
+            int srcBandOffset = src.getBandOffset(band);
+            int dstBandOffset = dst.getBandOffset(band);
+
+            for (int y = 0; y < sheight; y++) {
+                int srcPixOffset = srcBandOffset + y * srcLineStride;
+                for (int x = 0; x < swidth; x++) {
+                    data[y * swidth + x] = srcData[srcPixOffset] & 0xffff;
+                    srcPixOffset += srcPixelStride;
+                }
+            }
+
+            blur(data, transposed, causal, swidth, sheight, dheight);
+
+            for (int y = 0; y < dheight; y++) {
+                int dstPixOffset = dstBandOffset + y * dstLineStride;
+                for (int x = 0; x < dwidth; x++) {
+                    int v = (int) (transposed[(x + padding) * dheight + y] + 0.5f);
+                    dstData[dstPixOffset] = (short) (v < 0 ? 0 : v > 0xffff ? 0xffff : v);
+                    dstPixOffset += dstPixelStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * Blurs a swidth by sheight block: the columns first, then the rows
+     * that are part of the destination after transposing them into
+     * transposed, so that both passes run over whole lines in memory order
+     * and the recursions on different lines are independent.  The result for
+     * destination pixel (x, y) is at transposed[(x + padding) * dheight + y].
+     */
+    private void blur(float[] data, float[] transposed, float[] causal,
+                      int swidth, int sheight, int dheight) {
+        blurLines(data, causal, swidth, sheight);
+
+        for (int y = 0; y < dheight; y++) {
+            int offset = (y + padding) * swidth;
+            for (int x = 0; x < swidth; x++)
+                transposed[x * dheight + y] = data[offset + x];
+        }
+
+        blurLines(transposed, causal, dheight, swidth);
+    }
+
+    /**
+     * Filters the columns of a width by height block in place, a line at a
+     * time: a causal and an anticausal recursion along each column, started
+     * as if the first and last lines were repeated.
+     */
+    private void blurLines(float[] data, float[] causal, int width, int height) {
+        double[] x1 = new double[width], x2 = new double[width],
+                 x3 = new double[width], x4 = new double[width];
+        double[] y1 = new double[width], y2 = new double[width],
+                 y3 = new double[width], y4 = new double[width];
+
+        for (int i = 0; i < width; i++) {
+            x1[i] = x2[i] = x3[i] = data[i];
+            y1[i] = y2[i] = y3[i] = y4[i] = causalGain * data[i];
+        }
+        for (int line = 0; line < height; line++) {
+            int offset = line * width;
+            for (int i = 0; i < width; i++) {
+                double x = data[offset + i];
+                double y = n0 * x + n1 * x1[i] + n2 * x2[i] + n3 * x3[i]
+                           - d1 * y1[i] - d2 * y2[i] - d3 * y3[i] - d4 * y4[i];
+                causal[offset + i] = (float) y;
+                x3[i] = x2[i]; x2[i] = x1[i]; x1[i] = x;
+                y4[i] = y3[i]; y3[i] = y2[i]; y2[i] = y1[i]; y1[i] = y;
+            }
+        }
+
+        int last = (height - 1) * width;
+        for (int i = 0; i < width; i++) {
+            x1[i] = x2[i] = x3[i] = x4[i] = data[last + i];
+            y1[i] = y2[i] = y3[i] = y4[i] = anticausalGain * data[last + i];
+        }
+        for (int line = height - 1; line >= 0; line--) {
+            int offset = line * width;
+            for (int i = 0; i < width; i++) {
+                double x = data[offset + i];
+                double y = m1 * x1[i] + m2 * x2[i] + m3 * x3[i] + m4 * x4[i]
+                           - d1 * y1[i] - d2 * y2[i] - d3 * y3[i] - d4 * y4[i];
+                data[offset + i] = (float) (scale * (causal[offset + i] + y));
+                x4[i] = x3[i]; x3[i] = x2[i]; x2[i] = x1[i]; x1[i] = x;
+                y4[i] = y3[i]; y3[i] = y2[i]; y2[i] = y1[i]; y1[i] = y;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.opimage;
+
+import com.sun.media.jai.opimage.RIFUtil;
+
+import javax.media.jai.BorderExtender;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.KernelJAI;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.awt.image.renderable.RenderedImageFactory;
+import java.awt.*;
+
+/**
+ * Picks the Gaussian blur implementation by standard deviation: a separable
+ * convolution with the sampled kernel when it is short or the recursive
+ * filter is not accurate enough, the recursive {@link LCGaussianBlurOpImage}
+ * otherwise.
+ */
+public class LCGaussianBlurRIF implements RenderedImageFactory {
+
+    /**
+     * Below this deviation the convolution kernel has at most 19 taps.
+     */
+    static final double MIN_RECURSIVE_SIGMA = 3;
+
+    public RenderedImage create(ParameterBlock paramBlock,
+                                RenderingHints renderHints) {
+        // Get ImageLayout from renderHints if any.
+        ImageLayout layout = RIFUtil.getImageLayoutHint(renderHints);
+
+        // Get BorderExtender from renderHints if any.
+        BorderExtender extender = RIFUtil.getBorderExtenderHint(renderHints);
+
+        RenderedImage source = paramBlock.getRenderedSource(0);
+        double sigma = paramBlock.getDoubleParameter(0);
+
+        int dataType = source.getSampleModel().getDataType();
+        boolean dataTypeOk = (dataType == DataBuffer.TYPE_BYTE ||
+                              dataType == DataBuffer.TYPE_USHORT);
+
+        if (sigma >= MIN_RECURSIVE_SIGMA && dataTypeOk)
+            return new LCGaussianBlurOpImage(source, extender, renderHints, layout, sigma);
+
+        return new LCSeparableConvolveOpImage(source, extender, renderHints, layout,
+                                              getGaussKernel(sigma));
+    }
+
+    /**
+     * The Gaussian sampled out to three deviations and normalized.
+     */
+    static KernelJAI getGaussKernel(double sigma) {
+        if (sigma < 0.001)
+            sigma = 0.001;
+
+        int radius = LCGaussianBlurOpImage.getPadding(sigma);
+        int size = 2 * radius + 1;
+
+        float[] data = new float[size];
+        float scale = 0;
+        for (int x = -radius; x <= radius; x++) {
+            data[x + radius] = (float) Math.exp(-x * x / (2 * sigma * sigma));
+            scale += data[x + radius];
+        }
+        for (int i = 0; i < size; i++)
+            data[i] /= scale;
+
+        return new KernelJAI(size, size, radius, radius, data, data);
+    }
+}
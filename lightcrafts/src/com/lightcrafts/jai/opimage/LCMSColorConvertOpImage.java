@@ -90,6 +90,15 @@ public class LCMSColorConvertOpImage extends PointOpImage {
                             ? new LCMS.Transform(sourceProfile, inType, targetProfile, outType, proofProfile,
                                                  lcms_proofIntent, lcms_intent, lcms_flags)
                             : new LCMS.Transform(sourceProfile, inType, targetProfile, outType, lcms_intent, lcms_flags);
+
+                // Transforms are shared through LCMS's cache and don't need
+                // their profiles once built, release the ones made here
+                if (!(sourceCS instanceof LCMS_ColorSpace))
+                    sourceProfile.dispose();
+                if (!(targetCS instanceof LCMS_ColorSpace))
+                    targetProfile.dispose();
+                if (proofProfile != null)
+                    proofProfile.dispose();
             }
         }
 
@@ -0,0 +1,48 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.opimage;
+
+/**
+ * The inner loops of the pure Java point operators, over pixel interleaved
+ * 16-bit data.
+ * <p>
+ * {@link ScalarPointKernels} is the reference implementation.  When the
+ * <code>lightcrafts.vector</code> property is set, the SIMD implementation
+ * built from <code>src-vector</code> is used instead; it needs a JDK with the
+ * Vector API and <code>--add-modules jdk.incubator.vector</code>, otherwise
+ * the scalar loops are used.
+ */
+interface PointKernels {
+
+    void vibrance(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                  short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                  int width, int height,
+                  float[][] transform, float[][] toLinearsRGB, boolean saturationIncrease);
+
+    void rawAdjustments(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                        short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                        int width, int height,
+                        float[][] cameraRGB, float exposureCompensation);
+
+    static PointKernels get() {
+        return Holder.INSTANCE;
+    }
+
+    final class Holder {
+        static final PointKernels INSTANCE = load();
+
+        private static PointKernels load() {
+            if (Boolean.getBoolean("lightcrafts.vector")) {
+                try {
+                    return (PointKernels) Class.forName("com.lightcrafts.jai.opimage.VectorPointKernels")
+                            .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    System.err.println("Vector API point kernels unavailable, using scalar ones: " + e);
+                }
+            }
+            return new ScalarPointKernels();
+        }
+
+        private Holder() { }
+    }
+}
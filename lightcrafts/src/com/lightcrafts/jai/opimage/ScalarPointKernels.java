@@ -0,0 +1,130 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.opimage;
+
+/**
+ * The per-pixel {@link PointKernels}, the reference for other
+ * implementations.
+ */
+final class ScalarPointKernels implements PointKernels {
+
+    @Override
+    public void vibrance(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                         short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                         int width, int height,
+                         float[][] transform, float[][] toLinearsRGB, boolean saturationIncrease) {
+        int srcROffset = srcBandOffsets[0];
+        int srcGOffset = srcBandOffsets[1];
+        int srcBOffset = srcBandOffsets[2];
+
+        int dstROffset = dstBandOffsets[0];
+        int dstGOffset = dstBandOffsets[1];
+        int dstBOffset = dstBandOffsets[2];
+
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int srcPixOffset = srcPixelStride * col + row * srcLineStride;
+                int r = 0xffff & srcData[srcPixOffset + srcROffset];
+                int g = 0xffff & srcData[srcPixOffset + srcGOffset];
+                int b = 0xffff & srcData[srcPixOffset + srcBOffset];
+
+                float lr = toLinearsRGB[0][0] * r + toLinearsRGB[0][1] * g + toLinearsRGB[0][2] * b;
+                float lg = toLinearsRGB[1][0] * r + toLinearsRGB[1][1] * g + toLinearsRGB[1][2] * b;
+                float lb = toLinearsRGB[2][0] * r + toLinearsRGB[2][1] * g + toLinearsRGB[2][2] * b;
+
+                float x = lr - 0.5f*(lg+lb);
+                float y = 0.866f*(lg-lb);
+
+                float hue = (float) (VibranceOpImage.arctan2(x, y) + Math.PI);
+
+                if (hue < 0)
+                    hue += 2 * (float) Math.PI;
+
+                if (hue > 4 * Math.PI / 3)
+                    hue -= 4 * (float) Math.PI / 3;
+                else if (hue > 2 * Math.PI / 3)
+                    hue -= 2 * (float) Math.PI / 3;
+
+                float mask = (float) (0.5 + 0.5 * (1 - Math.abs(Math.PI / 6 - hue) / (Math.PI / 3)));
+
+                if (saturationIncrease) {
+                    int min = Math.min(r, Math.min(g, b));
+                    int max = Math.max(r, Math.max(g, b));
+
+                    float saturation = max != 0 ? 1 - min / (float) max : 0;
+
+                    mask *= (1 - saturation * saturation);
+                }
+
+                float rr = transform[0][0] * r + transform[0][1] * g + transform[0][2] * b;
+                float gg = transform[1][0] * r + transform[1][1] * g + transform[1][2] * b;
+                float bb = transform[2][0] * r + transform[2][1] * g + transform[2][2] * b;
+
+                rr = (1 - mask) * r + rr * mask;
+                gg = (1 - mask) * g + gg * mask;
+                bb = (1 - mask) * b + bb * mask;
+
+                int dstPixOffset = dstPixelStride * col + row * dstLineStride;
+                dstData[dstPixOffset + dstROffset] = (short) (rr < 0 ? 0 : rr > 0xffff ? 0xffff : rr);
+                dstData[dstPixOffset + dstGOffset] = (short) (gg < 0 ? 0 : gg > 0xffff ? 0xffff : gg);
+                dstData[dstPixOffset + dstBOffset] = (short) (bb < 0 ? 0 : bb > 0xffff ? 0xffff : bb);
+            }
+        }
+    }
+
+    @Override
+    public void rawAdjustments(short[] srcData, int[] srcBandOffsets, int srcLineStride, int srcPixelStride,
+                               short[] dstData, int[] dstBandOffsets, int dstLineStride, int dstPixelStride,
+                               int width, int height,
+                               float[][] cameraRGB, float exposureCompensation) {
+        int srcROffset = srcBandOffsets[0];
+        int srcGOffset = srcBandOffsets[1];
+        int srcBOffset = srcBandOffsets[2];
+
+        int dstROffset = dstBandOffsets[0];
+        int dstGOffset = dstBandOffsets[1];
+        int dstBOffset = dstBandOffsets[2];
+
+        float t00 = cameraRGB[0][0], t01 = cameraRGB[0][1], t02 = cameraRGB[0][2],
+              t10 = cameraRGB[1][0], t11 = cameraRGB[1][1], t12 = cameraRGB[1][2],
+              t20 = cameraRGB[2][0], t21 = cameraRGB[2][1], t22 = cameraRGB[2][2];
+
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int srcPixOffset = srcPixelStride * col + row * srcLineStride;
+                int r = 0xffff & srcData[srcPixOffset + srcROffset];
+                int g = 0xffff & srcData[srcPixOffset + srcGOffset];
+                int b = 0xffff & srcData[srcPixOffset + srcBOffset];
+
+                float r1 = t00 * r + t01 * g + t02 * b;
+                float g1 = t10 * r + t11 * g + t12 * b;
+                float b1 = t20 * r + t21 * g + t22 * b;
+
+                // Highlight recovery code
+
+                float c = exposureCompensation;
+
+                if (c < 1 && (g1 > 0xffff || r1 > 0xffff || b1 > 0xffff)) {
+                    float rs = Math.min(r1, 0xffff);
+                    float gs = Math.min(g1, 0xffff);
+                    float bs = Math.min(b1, 0xffff);
+
+                    float c1s = gs - rs;
+                    float c2s = gs - bs;
+
+                    r1 = c * (g1 - c1s);
+                    b1 = c * (g1 - c2s);
+                } else {
+                    r1 *= c;
+                    b1 *= c;
+                }
+                g1 *= c;
+
+                int dstPixOffset = dstPixelStride * col + row * dstLineStride;
+                dstData[dstPixOffset + dstROffset] = (short) (r1 < 0 ? 0 : r1 > 0xffff ? 0xffff : (int) r1);
+                dstData[dstPixOffset + dstGOffset] = (short) (g1 < 0 ? 0 : g1 > 0xffff ? 0xffff : (int) g1);
+                dstData[dstPixOffset + dstBOffset] = (short) (b1 < 0 ? 0 : b1 > 0xffff ? 0xffff : (int) b1);
+            }
+        }
+    }
+}
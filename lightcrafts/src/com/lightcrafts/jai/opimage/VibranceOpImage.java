@@ -101,62 +101,8 @@ public class VibranceOpImage extends PointOpImage {
         int srcLineStride = src.getScanlineStride();
         int srcPixelStride = src.getPixelStride();
 
-        int srcROffset = srcBandOffsets[0];
-        int srcGOffset = srcBandOffsets[1];
-        int srcBOffset = srcBandOffsets[2];
-
-        int dstROffset = dstBandOffsets[0];
-        int dstGOffset = dstBandOffsets[1];
-        int dstBOffset = dstBandOffsets[2];
-
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                int srcPixOffset = srcPixelStride * col + row * srcLineStride;
-                int r = 0xffff & srcData[srcPixOffset + srcROffset];
-                int g = 0xffff & srcData[srcPixOffset + srcGOffset];
-                int b = 0xffff & srcData[srcPixOffset + srcBOffset];
-
-                float lr = toLinearsRGB[0][0] * r + toLinearsRGB[0][1] * g + toLinearsRGB[0][2] * b;
-                float lg = toLinearsRGB[1][0] * r + toLinearsRGB[1][1] * g + toLinearsRGB[1][2] * b;
-                float lb = toLinearsRGB[2][0] * r + toLinearsRGB[2][1] * g + toLinearsRGB[2][2] * b;
-
-                float x = lr - 0.5f*(lg+lb);
-                float y = 0.866f*(lg-lb);
-
-                float hue = (float) (arctan2(x, y) + Math.PI);
-
-                if (hue < 0)
-                    hue += 2 * (float) Math.PI;
-
-                if (hue > 4 * Math.PI / 3)
-                    hue -= 4 * (float) Math.PI / 3;
-                else if (hue > 2 * Math.PI / 3)
-                    hue -= 2 * (float) Math.PI / 3;
-
-                float mask = (float) (0.5 + 0.5 * (1 - Math.abs(Math.PI / 6 - hue) / (Math.PI / 3)));
-
-                if (saturationIncrease) {
-                    int min = Math.min(r, Math.min(g, b));
-                    int max = Math.max(r, Math.max(g, b));
-
-                    float saturation = max != 0 ? 1 - min / (float) max : 0;
-
-                    mask *= (1 - saturation * saturation);
-                }
-
-                float rr = transform[0][0] * r + transform[0][1] * g + transform[0][2] * b;
-                float gg = transform[1][0] * r + transform[1][1] * g + transform[1][2] * b;
-                float bb = transform[2][0] * r + transform[2][1] * g + transform[2][2] * b;
-
-                rr = (1 - mask) * r + rr * mask;
-                gg = (1 - mask) * g + gg * mask;
-                bb = (1 - mask) * b + bb * mask;
-
-                int dstPixOffset = dstPixelStride * col + row * dstLineStride;
-                dstData[dstPixOffset + dstROffset] = (short) (rr < 0 ? 0 : rr > 0xffff ? 0xffff : rr);
-                dstData[dstPixOffset + dstGOffset] = (short) (gg < 0 ? 0 : gg > 0xffff ? 0xffff : gg);
-                dstData[dstPixOffset + dstBOffset] = (short) (bb < 0 ? 0 : bb > 0xffff ? 0xffff : bb);
-            }
-        }
+        PointKernels.get().vibrance(srcData, srcBandOffsets, srcLineStride, srcPixelStride,
+                                    dstData, dstBandOffsets, dstLineStride, dstPixelStride,
+                                    width, height, transform, toLinearsRGB, saturationIncrease);
     }
 }
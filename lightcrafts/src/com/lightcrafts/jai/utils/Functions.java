@@ -121,11 +121,29 @@ public class Functions {
         }
     }
 
+    /**
+     * Kernels wider than this many taps on each side go to LCGaussianBlur.
+     */
+    private static final int MAX_CONVOLVE_RADIUS = 8;
+
     public static RenderedOp fastGaussianBlur(RenderedImage image, double radius) {
-        // TODO: Make this fast
         RenderingHints extenderHints = new RenderingHints(JAI.KEY_BORDER_EXTENDER,
                 BorderExtender.createInstance(BorderExtender.BORDER_COPY));
         KernelJAI kernel = getGaussKernel(radius);
+        if (kernel.getXOrigin() > MAX_CONVOLVE_RADIUS) {
+            // getGaussKernel() stops at one deviation, blur with the
+            // Gaussian that has the same spread as the truncated kernel
+            float[] data = kernel.getHorizontalKernelData();
+            double variance = 0;
+            for (int i = 0; i < data.length; i++) {
+                int x = i - kernel.getXOrigin();
+                variance += x * x * data[i];
+            }
+            ParameterBlock pb = new ParameterBlock()
+                    .addSource(image)
+                    .add(Math.sqrt(variance));
+            return JAI.create("LCGaussianBlur", pb, extenderHints);
+        }
         ParameterBlock pb = new ParameterBlock()
                 .addSource(image)
                 .add(kernel);
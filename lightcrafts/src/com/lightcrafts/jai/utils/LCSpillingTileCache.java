@@ -0,0 +1,27 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.utils;
+
+import javax.media.jai.TileCache;
+import java.io.IOException;
+
+/**
+ * A {@link TileCache} that can spill the tiles of images tagged with
+ * {@link com.lightcrafts.jai.JAIContext#PERSISTENT_CACHE_TAG} to a scratch
+ * file instead of discarding them.
+ */
+public interface LCSpillingTileCache extends TileCache {
+
+    /** Returns the number of tiles written to the scratch file so far. */
+    long tilesWritten();
+
+    /** Returns the number of tiles read back from the scratch file so far. */
+    long tilesRead();
+
+    /** Returns the number of tiles currently held in the scratch file. */
+    long tilesOnDisk();
+
+    /** Releases the scratch file and any associated resources. */
+    void dispose() throws IOException;
+}
+/* vim:set et sw=4 ts=4: */
@@ -0,0 +1,904 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.utils;
+
+import com.lightcrafts.jai.JAIContext;
+import com.lightcrafts.utils.cache.Cache;
+import com.sun.media.jai.util.CacheDiagnostics;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-striped implementation of <code>javax.media.jai.TileCache</code>.
+ *
+ * <p> {@link LCTileCache} guards all of its state with a single monitor, so
+ * every JAI worker thread contends on it for every tile lookup.  This cache
+ * instead hashes tile keys onto a fixed number of segments, each with its own
+ * lock, its own access-ordered map and its own memory accounting.  There is no
+ * global LRU list: when the cache goes over capacity, a clock hand sweeps over
+ * the segments and evicts the least recently used tile of each segment it
+ * visits, starting with the segments holding more than their fair share of
+ * memory.  The result is an approximation of global LRU order.
+ *
+ * <p> Like {@link LCTileCache}, tiles of images tagged with
+ * {@link JAIContext#PERSISTENT_CACHE_TAG} are spilled to a scratch file
+ * instead of being discarded when the cache is created with disk support.
+ *
+ * <p> Tile comparators are not supported: eviction order is always
+ * (approximate) least recently used.
+ *
+ * @see LCTileCache
+ */
+public final class LCStripedTileCache extends Observable
+        implements LCSpillingTileCache, CacheDiagnostics {
+
+    /** The default memory capacity of the cache (16 MB). */
+    private static final long DEFAULT_MEMORY_CAPACITY = 16L * 1024L * 1024L;
+
+    // diagnostic actions, same values as LCTileCache.getCachedTileActions()
+    private static final int ADD                 = 0;
+    private static final int REMOVE              = 1;
+    private static final int REMOVE_FROM_FLUSH   = 2;
+    private static final int REMOVE_FROM_MEMCON  = 3;
+    private static final int UPDATE_FROM_ADD     = 4;
+    private static final int UPDATE_FROM_GETTILE = 5;
+    private static final int ABOUT_TO_REMOVE     = 6;
+    private static final int REMOVE_FROM_GCEVENT = 7;
+
+    /**
+     * A segment of the cache: an access-ordered map, so that its first entry
+     * is always its least recently used tile, plus the memory it accounts for.
+     * All fields are guarded by the segment's own monitor.
+     */
+    private static final class Segment {
+        final LinkedHashMap<Object, LCCachedTile> tiles =
+                new LinkedHashMap<>(64, 0.75F, true);
+
+        long memoryUsed = 0;
+
+        long timeStamp = 0;
+    }
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    /** The memory capacity of the cache. */
+    private volatile long memoryCapacity;
+
+    /** The amount of memory to keep after memory control */
+    private volatile float memoryThreshold = 0.75F;
+
+    /** Diagnostics enable/disable */
+    private volatile boolean diagnostics;
+
+    private final AtomicLong cacheMemoryUsed = new AtomicLong();
+
+    private final AtomicLong cacheTileCount = new AtomicLong();
+
+    private final LongAdder cacheHitCount = new LongAdder();
+
+    private final LongAdder cacheMissCount = new LongAdder();
+
+    /** The clock hand used to pick the next segment to evict from. */
+    private final AtomicInteger evictionHand = new AtomicInteger();
+
+    /** Set while a thread is running memory control. */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final Cache m_objectCache;
+
+    private File tmpFile = null;
+
+    private final AtomicLong tilesWritten = new AtomicLong();
+    private final AtomicLong tilesRead = new AtomicLong();
+    private final AtomicLong tilesOnDisk = new AtomicLong();
+
+    /**
+     * Constructor. Use the DEFAULT_MEMORY_CAPACITY of 16 Megs.
+     */
+    public LCStripedTileCache(boolean useDisk) {
+        this(DEFAULT_MEMORY_CAPACITY, useDisk);
+    }
+
+    /**
+     * Constructor.  The memory capacity should be explicitly specified.  The
+     * number of segments is derived from the number of processors.
+     *
+     * @param memoryCapacity  The maximum cache memory size in bytes.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     */
+    public LCStripedTileCache(long memoryCapacity, boolean useDisk) {
+        this(memoryCapacity, 4 * Runtime.getRuntime().availableProcessors(), useDisk);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param memoryCapacity  The maximum cache memory size in bytes.
+     * @param concurrency     The expected number of concurrent threads,
+     *                        rounded up to a power of two to give the number
+     *                        of segments.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     */
+    public LCStripedTileCache(long memoryCapacity, int concurrency, boolean useDisk) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memory capacity must be >= 0");
+        }
+        this.memoryCapacity = memoryCapacity;
+
+        int size = 1;
+        while (size < concurrency && size < (1 << 16)) {
+            size <<= 1;
+        }
+        segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment();
+        }
+        segmentMask = size - 1;
+
+        Cache objectCache = null;
+        if (useDisk) {
+            try {
+                tmpFile = LCTileCache.createCacheFile();
+                objectCache = LCTileCache.createDiskCache(tmpFile);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        m_objectCache = objectCache;
+
+        m_tileReaper = new TileReaper(this);
+        m_tileReaper.start();
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * Adds a tile to the cache.
+     *
+     * @param owner            The image the tile blongs to.
+     * @param tileX            The tile's X index within the image.
+     * @param tileY            The tile's Y index within the image.
+     * @param tile             The tile to be cached.
+     */
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile) {
+        add(owner, tileX, tileY, tile, null);
+    }
+
+    /**
+     * Adds a tile to the cache with an associated tile compute cost.
+     *
+     * <p> If the specified tile is already in the cache, it will not be
+     * cached again.  If by adding this tile, the cache exceeds the memory
+     * capacity, older tiles in the cache are removed to keep the cache
+     * memory usage under the specified limit.
+     *
+     * @param owner            The image the tile blongs to.
+     * @param tileX            The tile's X index within the image.
+     * @param tileY            The tile's Y index within the image.
+     * @param tile             The tile to be cached.
+     * @param tileCacheMetric  Metric for prioritizing tiles
+     */
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile,
+                    Object tileCacheMetric) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+
+        final Object key = LCCachedTile.hashKey(owner, tileX, tileY);
+        addTile(owner, tileX, tileY, tile, tileCacheMetric, key);
+
+        if (cacheMemoryUsed.get() > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    private void addTile(RenderedImage owner, int tileX, int tileY, Raster tile,
+                         Object tileCacheMetric, Object key) {
+        final Segment segment = segmentFor(key);
+        LCCachedTile ct;
+        boolean added = false;
+
+        synchronized (segment) {
+            ct = segment.tiles.get(key);
+            if (ct == null) {
+                ct = new LCCachedTile(owner, tileX, tileY, tile, tileCacheMetric);
+                segment.tiles.put(key, ct);
+                segment.memoryUsed += ct.tileSize;
+                added = true;
+            }
+            ct.tileTimeStamp = segment.timeStamp++;
+        }
+        cacheHitCount.increment();
+
+        if (added) {
+            cacheMemoryUsed.addAndGet(ct.tileSize);
+            cacheTileCount.incrementAndGet();
+            trackOwner(owner, key);
+        }
+        notifyDiagnostics(ct, added ? ADD : UPDATE_FROM_ADD);
+    }
+
+    /**
+     * Removes a tile from the cache.
+     *
+     * <p> If the specified tile is not in the cache, this method
+     * does nothing.
+     */
+    @Override
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+
+        final Object key = LCCachedTile.hashKey(owner, tileX, tileY);
+        final Segment segment = segmentFor(key);
+        final LCCachedTile ct;
+
+        synchronized (segment) {
+            ct = segment.tiles.get(key);
+            if (ct == null) {
+                // if the tile is not in the memory cache than it might be on disk...
+                if (m_objectCache != null && m_objectCache.remove(key)) {
+                    tilesOnDisk.decrementAndGet();
+                }
+                return;
+            }
+        }
+        notifyDiagnostics(ct, ABOUT_TO_REMOVE);
+        removeTile(key, REMOVE);
+    }
+
+    private boolean removeTile(Object key, int action) {
+        final Segment segment = segmentFor(key);
+        final LCCachedTile ct;
+        synchronized (segment) {
+            ct = segment.tiles.remove(key);
+            if (ct == null) {
+                return false;
+            }
+            segment.memoryUsed -= ct.tileSize;
+        }
+        cacheMemoryUsed.addAndGet(-ct.tileSize);
+        cacheTileCount.decrementAndGet();
+        notifyDiagnostics(ct, action);
+        return true;
+    }
+
+    /**
+     * Retrieves a tile from the cache.
+     *
+     * <p> If the specified tile is not in the cache, this method
+     * returns <code>null</code>.  If the specified tile is in the
+     * cache, its last-access time is updated.
+     *
+     * @param owner  The image the tile blongs to.
+     * @param tileX  The tile's X index within the image.
+     * @param tileY  The tile's Y index within the image.
+     */
+    @Override
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+
+        final Object key = LCCachedTile.hashKey(owner, tileX, tileY);
+        final Segment segment = segmentFor(key);
+        LCCachedTile ct;
+
+        synchronized (segment) {
+            ct = segment.tiles.get(key);
+            if (ct != null) {
+                ct.tileTimeStamp = segment.timeStamp++;
+            }
+        }
+
+        if (ct == null && m_objectCache != null) {
+            final Raster raster = readTileFromDisk(owner, tileX, tileY, key);
+            if (raster != null) {
+                add(owner, tileX, tileY, raster, null);
+                return raster;
+            }
+        }
+
+        if (ct == null) {
+            cacheMissCount.increment();
+            return null;
+        }
+        cacheHitCount.increment();
+        notifyDiagnostics(ct, UPDATE_FROM_GETTILE);
+        return ct.getTile();
+    }
+
+    /**
+     * Retrieves a contiguous array of all tiles in the cache which are
+     * owned by the specified image.  May be <code>null</code> if there
+     * were no tiles in the cache.  The array contains no null entries.
+     *
+     * @param owner The <code>RenderedImage</code> to which the tiles belong.
+     * @return An array of all tiles owned by the specified image or
+     *         <code>null</code> if there are none currently in the cache.
+     */
+    @Override
+    public Raster[] getTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+
+        final Set<Object> hashKeys = m_imageMap.get(new OwnerReference(owner, null));
+        if (hashKeys == null) {
+            return null;
+        }
+
+        final List<Raster> temp = new ArrayList<>(hashKeys.size());
+        for (Object key : hashKeys) {
+            final Segment segment = segmentFor(key);
+            synchronized (segment) {
+                final LCCachedTile ct = segment.tiles.get(key);
+                if (ct != null) {
+                    ct.tileTimeStamp = segment.timeStamp++;
+                    temp.add(ct.getTile());
+                }
+            }
+        }
+        return temp.isEmpty() ? null : temp.toArray(new Raster[0]);
+    }
+
+    /**
+     * Removes all the tiles that belong to a <code>RenderedImage</code>
+     * from the cache.
+     *
+     * @param owner  The image whose tiles are to be removed from the cache.
+     */
+    @Override
+    public void removeTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        final Set<Object> hashKeys = m_imageMap.remove(new OwnerReference(owner, null));
+        if (hashKeys == null) {
+            return;
+        }
+        for (Object key : hashKeys) {
+            removeOwnedTile(key, REMOVE);
+        }
+    }
+
+    /**
+     * Removes a tile from memory and from disk, given its key from
+     * {@link #m_imageMap}.
+     */
+    private void removeOwnedTile(Object key, int action) {
+        removeTile(key, action);
+
+        if (m_objectCache != null) {
+            final Segment segment = segmentFor(key);
+            synchronized (segment) {
+                if (m_objectCache.remove(key)) {
+                    tilesOnDisk.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an array of tiles to the tile cache.
+     */
+    @Override
+    public void addTiles(RenderedImage owner, Point[] tileIndices,
+                         Raster[] tiles, Object tileCacheMetric) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    /**
+     * Returns an array of tile <code>Raster</code>s from the cache.
+     * Any or all of the elements of the returned array may be <code>null</code>
+     * if the corresponding tile is not in the cache.
+     */
+    @Override
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final Raster[] tiles = new Raster[tileIndices.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tiles;
+    }
+
+    /** Removes -ALL- tiles from the cache. */
+    @Override
+    public void flush() {
+        LCTileCache.notifyFlushListener();
+
+        // NOTE: we don't do flushing for disk caches, it wipes the persistent cache, rather spill most of it out
+        if (m_objectCache != null) {
+            System.err.println("flushing the cache");
+            evict((long) (memoryCapacity * 0.1F));
+            return;
+        }
+
+        for (Segment segment : segments) {
+            final List<LCCachedTile> removed;
+            synchronized (segment) {
+                removed = new ArrayList<>(segment.tiles.values());
+                segment.tiles.clear();
+                segment.memoryUsed = 0;
+                segment.timeStamp = 0;
+            }
+            for (LCCachedTile ct : removed) {
+                cacheMemoryUsed.addAndGet(-ct.tileSize);
+                cacheTileCount.decrementAndGet();
+                notifyDiagnostics(ct, REMOVE_FROM_FLUSH);
+            }
+        }
+        resetCounts();
+    }
+
+    /**
+     * This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method always returns 0.
+     */
+    @Override
+    public int getTileCapacity() { return 0; }
+
+    /**
+     * This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method does nothing.
+     */
+    @Override
+    public void setTileCapacity(int tileCapacity) { }
+
+    /**
+     * Sets the cache's memory capacity to the desired number of bytes.
+     * If the new memory capacity is smaller than the amount of memory
+     * currently being used by this cache, tiles are removed from the
+     * cache until the memory usage is less than the specified memory
+     * capacity.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     */
+    @Override
+    public void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memory capacity must be >= 0");
+        } else if (memoryCapacity == 0) {
+            flush();
+        }
+
+        this.memoryCapacity = memoryCapacity;
+
+        if (cacheMemoryUsed.get() > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    @Override
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /** Enable Tile Monitoring and Diagnostics */
+    @Override
+    public void enableDiagnostics() {
+        diagnostics = true;
+    }
+
+    /** Turn off diagnostic notification */
+    @Override
+    public void disableDiagnostics() {
+        diagnostics = false;
+    }
+
+    @Override
+    public long getCacheTileCount() {
+        return cacheTileCount.get();
+    }
+
+    @Override
+    public long getCacheMemoryUsed() {
+        return cacheMemoryUsed.get();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount.sum();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMissCount.sum();
+    }
+
+    /** Reset hit and miss counters. */
+    @Override
+    public void resetCounts() {
+        cacheHitCount.reset();
+        cacheMissCount.reset();
+    }
+
+    /** Set the memory threshold value. */
+    @Override
+    public void setMemoryThreshold(float mt) {
+        if (mt < 0.0F || mt > 1.0F) {
+            throw new IllegalArgumentException("memory threshold must be between 0 and 1");
+        }
+        memoryThreshold = mt;
+        memoryControl();
+    }
+
+    /** Returns the current <code>memoryThreshold</code>. */
+    @Override
+    public float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Tile comparators are not supported by this cache.
+     *
+     * @throws IllegalArgumentException if <code>c</code> is not null.
+     */
+    @Override
+    public void setTileComparator(Comparator c) {
+        if (c != null)
+            throw new IllegalArgumentException("TileComparator not supported by LCStripedTileCache");
+    }
+
+    @Override
+    public Comparator getTileComparator() {
+        return null;
+    }
+
+    /**
+     * Returns the number of segments (lock stripes) of this cache.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the memory currently accounted to each segment, for tuning the
+     * number of segments.
+     */
+    public long[] getSegmentMemoryUsed() {
+        final long[] used = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            synchronized (segments[i]) {
+                used[i] = segments[i].memoryUsed;
+            }
+        }
+        return used;
+    }
+
+    /** Returns a string representation of the class object. */
+    @Override
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+               ": memoryCapacity = " + Long.toHexString(memoryCapacity) +
+               " cacheMemoryUsed = " + Long.toHexString(cacheMemoryUsed.get()) +
+               " #tilesInCache = " + cacheTileCount.get() +
+               " #segments = " + segments.length;
+    }
+
+    /**
+     * Removes tiles from the cache, in approximate least recently used order,
+     * until the memory usage is memoryThreshold % of the memory capacity.
+     * Only one thread evicts at a time; other threads that find the cache
+     * over capacity carry on, since the eviction in progress will bring the
+     * memory usage down for them as well.
+     */
+    @Override
+    public void memoryControl() {
+        evict((long) (memoryCapacity * memoryThreshold));
+    }
+
+    private void evict(long limit) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final long fairShare = limit / segments.length;
+            int idle = 0;
+
+            // First sweep only over segments above their fair share, then over
+            // any segment that still holds tiles.
+            for (int pass = 0; pass < 2 && cacheMemoryUsed.get() > limit; pass++) {
+                final long floor = pass == 0 ? fairShare : 0;
+                idle = 0;
+                while (cacheMemoryUsed.get() > limit && idle < segments.length) {
+                    final int hand = evictionHand.getAndIncrement() & segmentMask;
+                    if (evictEldest(segments[hand], floor)) {
+                        idle = 0;
+                    } else {
+                        idle++;
+                    }
+                }
+            }
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Evicts the least recently used tile of a segment if the segment uses
+     * more than <code>floor</code> bytes.  Tiles of persistent images are
+     * written to the scratch file while the segment is locked, so that a
+     * concurrent lookup either finds the tile in memory or on disk.
+     */
+    private boolean evictEldest(Segment segment, long floor) {
+        final LCCachedTile ct;
+        synchronized (segment) {
+            if (segment.memoryUsed <= floor || segment.tiles.isEmpty()) {
+                return false;
+            }
+            final Iterator<LCCachedTile> it = segment.tiles.values().iterator();
+            ct = it.next();
+            it.remove();
+            segment.memoryUsed -= ct.tileSize;
+
+            if (m_objectCache != null) {
+                final RenderedImage owner = ct.getOwner();
+                if (owner != null && owner.getProperty(JAIContext.PERSISTENT_CACHE_TAG) == Boolean.TRUE) {
+                    writeTileToDisk(ct, ct.key);
+                }
+            }
+        }
+        cacheMemoryUsed.addAndGet(-ct.tileSize);
+        cacheTileCount.decrementAndGet();
+        notifyDiagnostics(ct, REMOVE_FROM_MEMCON);
+        return true;
+    }
+
+    private void notifyDiagnostics(LCCachedTile ct, int action) {
+        if (diagnostics) {
+            synchronized (this) {
+                ct.action = action;
+                setChanged();
+                notifyObservers(ct);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws IOException {
+        if (m_objectCache != null)
+            m_objectCache.dispose();
+
+        m_tileReaper.kill();
+
+        if (tmpFile != null)
+            tmpFile.delete();
+    }
+
+    /**
+     * Finalize an <code>LCStripedTileCache</code>.
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        dispose();
+        super.finalize();
+    }
+
+    @Override
+    public long tilesWritten() {
+        return tilesWritten.get();
+    }
+
+    @Override
+    public long tilesRead() {
+        return tilesRead.get();
+    }
+
+    @Override
+    public long tilesOnDisk() {
+        return tilesOnDisk.get();
+    }
+
+    private Raster readTileFromDisk(RenderedImage owner, int tileX, int tileY, Object key) {
+        final Segment segment = segmentFor(key);
+        final SampleModel sm = owner.getSampleModel();
+        final DataBuffer db;
+
+        synchronized (segment) {
+            if (!m_objectCache.contains(key)) {
+                return null;
+            }
+            db = sm.createDataBuffer();
+            try {
+                switch (db.getDataType()) {
+                    case DataBuffer.TYPE_BYTE:
+                        m_objectCache.getOnce(key, ((DataBufferByte) db).getData());
+                        break;
+
+                    case DataBuffer.TYPE_USHORT:
+                        m_objectCache.getOnce(key, ((DataBufferUShort) db).getData());
+                        break;
+
+                    case DataBuffer.TYPE_INT:
+                        m_objectCache.getOnce(key, ((DataBufferInt) db).getData());
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("unsupported image type " + db.getClass());
+                }
+                tilesOnDisk.decrementAndGet();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        tilesRead.incrementAndGet();
+        return Raster.createWritableRaster(sm, db, new Point(tileX * owner.getTileWidth(),
+                                                             tileY * owner.getTileHeight()));
+    }
+
+    private void writeTileToDisk(LCCachedTile ct, Object key) {
+        final DataBuffer db = ct.getTile().getDataBuffer();
+
+        try {
+            switch (db.getDataType()) {
+                case DataBuffer.TYPE_BYTE:
+                    m_objectCache.put(key, ((DataBufferByte) db).getData());
+                    break;
+
+                case DataBuffer.TYPE_USHORT:
+                    m_objectCache.put(key, ((DataBufferUShort) db).getData());
+                    break;
+
+                case DataBuffer.TYPE_INT:
+                    m_objectCache.put(key, ((DataBufferInt) db).getData());
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("unsupported image type " + db.getClass());
+            }
+            tilesOnDisk.incrementAndGet();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        tilesWritten.incrementAndGet();
+    }
+
+    private void trackOwner(RenderedImage owner, Object key) {
+        Set<Object> hashKeys = m_imageMap.get(new OwnerReference(owner, null));
+        if (hashKeys == null) {
+            final Set<Object> newKeys = ConcurrentHashMap.newKeySet();
+            hashKeys = m_imageMap.putIfAbsent(
+                new OwnerReference(owner, m_tileReaper.getRefQ()), newKeys
+            );
+            if (hashKeys == null) {
+                hashKeys = newKeys;
+            }
+        }
+        hashKeys.add(key);
+    }
+
+    /**
+     * A {@link WeakReference} to a tile owner that compares by the identity
+     * of its referent, so that it can be used as a key of a concurrent map.
+     * A cleared reference is only equal to itself.
+     */
+    private static final class OwnerReference extends WeakReference<RenderedImage> {
+        private final int hash;
+
+        OwnerReference(RenderedImage owner, ReferenceQueue<RenderedImage> queue) {
+            super(owner, queue);
+            hash = System.identityHashCode(owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof OwnerReference))
+                return false;
+            final RenderedImage owner = get();
+            return owner != null && owner == ((OwnerReference) o).get();
+        }
+    }
+
+    /**
+     * A <code>TileReaper</code> is-a {@link Thread} that waits for
+     * {@link RenderedImage}s that the Java garbage collector has determined
+     * are weakly reachable and removes all of their tiles from the memory
+     * and disk caches.
+     */
+    private static final class TileReaper extends Thread {
+
+        @Override
+        public void run() {
+            while ( !m_killed ) {
+                try {
+                    final Reference<? extends RenderedImage> weakKey = m_refQ.remove();
+
+                    final LCStripedTileCache tileCache = m_tileCacheRef.get();
+                    if ( tileCache == null )
+                        break;
+
+                    final Set<Object> hashKeys = tileCache.m_imageMap.remove(weakKey);
+                    if ( hashKeys == null )
+                        continue;
+
+                    for (Object key : hashKeys) {
+                        tileCache.removeOwnedTile(key, REMOVE_FROM_GCEVENT);
+                    }
+                }
+                catch ( InterruptedException e ) {
+                    // do nothing
+                }
+            }
+        }
+
+        TileReaper( LCStripedTileCache tileCache ) {
+            super("StripedTileReaper");
+            setDaemon( true );
+            m_refQ = new ReferenceQueue<>();
+            m_tileCacheRef = new WeakReference<>( tileCache );
+        }
+
+        ReferenceQueue<RenderedImage> getRefQ() {
+            return m_refQ;
+        }
+
+        void kill() {
+            m_killed = true;
+            interrupt();
+        }
+
+        private volatile boolean m_killed;
+
+        private final ReferenceQueue<RenderedImage> m_refQ;
+
+        private final WeakReference<LCStripedTileCache> m_tileCacheRef;
+    }
+
+    /**
+     * Maps each tile owner, through an {@link OwnerReference}, to the keys of
+     * its tiles.
+     */
+    private final Map<OwnerReference, Set<Object>> m_imageMap = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link TileReaper} associated with this cache.
+     */
+    private final TileReaper m_tileReaper;
+}
+/* vim:set et sw=4 ts=4: */
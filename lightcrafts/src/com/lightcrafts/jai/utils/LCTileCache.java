@@ -14,7 +14,6 @@
 package com.lightcrafts.jai.utils;
 
 import com.lightcrafts.jai.JAIContext;
-import com.lightcrafts.utils.LCArrays;
 import com.lightcrafts.utils.MemoryLimits;
 import com.lightcrafts.utils.cache.*;
 import com.sun.media.jai.util.CacheDiagnostics;
@@ -57,7 +56,7 @@ import java.util.prefs.Preferences;
  */
 
 public final class LCTileCache extends Observable
-                                implements TileCache,
+                                implements LCSpillingTileCache,
         CacheDiagnostics {
 
     /** The default memory capacity of the cachedObject (16 MB). */
@@ -564,11 +563,7 @@ public final class LCTileCache extends Observable
     /** Removes -ALL- tiles from the cachedObject. */
     @Override
     public synchronized void flush() {
-        // Call the LCTileCacheListener, if one is defined.  This helps detect
-        // low memory conditions.
-        if (Listener != null) {
-            Listener.tileCacheFlushed();
-        }
+        notifyFlushListener();
         // NOTE: we don't do flushing for disk caches, it wipes the persistent cachedObject, rather spill half of the cachedObject out
         if (m_objectCache != null) {
             System.err.println("flushing the cachedObject");
@@ -614,6 +609,16 @@ public final class LCTileCache extends Observable
         // no System.gc() here, it's too slow and may occur anyway.
     }
 
+    /**
+     * Call the LCTileCacheListener, if one is defined.  This helps detect
+     * low memory conditions.
+     */
+    static void notifyFlushListener() {
+        if (Listener != null) {
+            Listener.tileCacheFlushed();
+        }
+    }
+
     /**
      * Returns the cachedObject's tile capacity.
      *
@@ -777,23 +782,17 @@ public final class LCTileCache extends Observable
 
         // TODO: cachedObject the ByteBuffer with a soft reference
 
+        // Samples go through views in the byte order of the buffer, which a
+        // CacheCodec records to compress 16-bit samples.
         @Override
         public Object decodeFromByteBuffer( ByteBuffer buf, Object obj ) {
+            buf.position( 0 );
             if ( obj instanceof byte[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( buf.array(), 0, (byte[])obj, 0, buf.capacity() );
-                else
-                    buf.get( (byte[])obj );
+                buf.get( (byte[])obj );
             else if ( obj instanceof short[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( buf.array(), 0, (short[])obj, 0, buf.capacity() );
-                else
-                    buf.asShortBuffer().get( (short[])obj );
+                buf.asShortBuffer().get( (short[])obj );
             else if ( obj instanceof int[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( buf.array(), 0, (int[])obj, 0, buf.capacity() );
-                else
-                    buf.asIntBuffer().get( (int[])obj );
+                buf.asIntBuffer().get( (int[])obj );
             else
                 throw new IllegalArgumentException(
                     "can't decode " + obj.getClass()
@@ -803,21 +802,13 @@ public final class LCTileCache extends Observable
 
         @Override
         public void encodeToByteBuffer( ByteBuffer buf, Object obj ) {
+            buf.position( 0 );
             if ( obj instanceof byte[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( (byte[])obj, 0, buf.array(), 0, buf.capacity() );
-                else
-                    buf.put( (byte[])obj );
+                buf.put( (byte[])obj );
             else if ( obj instanceof short[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( (short[])obj, 0, buf.array(), 0, buf.capacity() );
-                else
-                    buf.asShortBuffer().put( (short[])obj );
+                buf.asShortBuffer().put( (short[])obj );
             else if ( obj instanceof int[] )
-                if ( buf.hasArray() ) 
-                    LCArrays.copy( (int[])obj, 0, buf.array(), 0, buf.capacity() );
-                else
-                    buf.asIntBuffer().put( (int[])obj );
+                buf.asIntBuffer().put( (int[])obj );
             else
                 throw new IllegalArgumentException(
                     "can't encode " + obj.getClass()
@@ -847,46 +838,8 @@ public final class LCTileCache extends Observable
 
     private Cache createDiskCache() {
         try {
-            // Try creating the temp file in the user-specified location
-            String path = Prefs.get(CacheDirKey, null);
-            tmpFile = null;
-            if (path != null) {
-                File tmpDir = new File(path);
-                if (tmpDir.isDirectory() && tmpDir.canWrite()) {
-                    tmpFile = File.createTempFile("LCCacheFile", ".cce", tmpDir);
-                }
-            }
-            // Fall back to the regular java temp directory
-            if (tmpFile == null) {
-                tmpFile = File.createTempFile("LCCacheFile", ".cce");
-            }
-            tmpFile.deleteOnExit();
-
-            // Try to delete old cachedObject files, checking if the file is locked by some other instance of ourself
-            File[] oldCacheFiles = tmpFile.getParentFile().listFiles(new CacheFileFilter(tmpFile));
-            if ( oldCacheFiles != null )
-                for (File oldCacheFile : oldCacheFiles) {
-                    oldCacheFile.delete();
-                }
-
-            int defaultMemorySize = MemoryLimits.getDefault();
-            Preferences prefs = Preferences.userRoot().node("/com/lightcrafts/app");
-            long maxMemory = (long) prefs.getInt("MaxMemory", defaultMemorySize) * 1024 * 1024;
-            long maxHeap = Runtime.getRuntime().maxMemory();
-            long extraCacheSize = Math.max( maxMemory - maxHeap, 0 );
-
-            System.out.println("Allocating " + (extraCacheSize / (1024 * 1024)) + "MB for the image cachedObject.");
-
-            return new Cache(
-                new TileCacheCacheObjectBroker(),
-                extraCacheSize < 128 * 1024 * 1024 ?
-                    new WriteThroughCacheObjectMap() :
-                    new LRUCacheObjectMap(
-                        new NativeByteBufferAllocator( CHUNK_SIZE ), extraCacheSize
-                    ),
-                new DirectFileCacheStore( tmpFile ),
-                new CoalescingFreeBlockManager()
-            );
+            tmpFile = createCacheFile();
+            return createDiskCache(tmpFile);
         }
         catch ( IOException e ) {
             e.printStackTrace();
@@ -894,11 +847,77 @@ public final class LCTileCache extends Observable
         }
     }
 
+    /**
+     * Creates the scratch file used to spill tiles to disk, in the
+     * user-specified scratch directory if there is one, and deletes any stale
+     * scratch files left behind by previous runs.
+     */
+    static File createCacheFile() throws IOException {
+        // Try creating the temp file in the user-specified location
+        String path = Prefs.get(CacheDirKey, null);
+        File tmpFile = null;
+        if (path != null) {
+            File tmpDir = new File(path);
+            if (tmpDir.isDirectory() && tmpDir.canWrite()) {
+                tmpFile = File.createTempFile("LCCacheFile", ".cce", tmpDir);
+            }
+        }
+        // Fall back to the regular java temp directory
+        if (tmpFile == null) {
+            tmpFile = File.createTempFile("LCCacheFile", ".cce");
+        }
+        tmpFile.deleteOnExit();
+
+        // Try to delete old cachedObject files, checking if the file is locked by some other instance of ourself
+        File[] oldCacheFiles = tmpFile.getParentFile().listFiles(new CacheFileFilter(tmpFile));
+        if ( oldCacheFiles != null )
+            for (File oldCacheFile : oldCacheFiles) {
+                oldCacheFile.delete();
+            }
+        return tmpFile;
+    }
+
+    /**
+     * Creates the disk {@link Cache} backing the tiles of
+     * {@link JAIContext#PERSISTENT_CACHE_TAG} images, sized from the memory
+     * preferences.
+     */
+    static Cache createDiskCache(File tmpFile) throws IOException {
+        int defaultMemorySize = MemoryLimits.getDefault();
+        Preferences prefs = Preferences.userRoot().node("/com/lightcrafts/app");
+        long maxMemory = (long) prefs.getInt("MaxMemory", defaultMemorySize) * 1024 * 1024;
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long extraCacheSize = Math.max( maxMemory - maxHeap, 0 );
+
+        System.out.println("Allocating " + (extraCacheSize / (1024 * 1024)) + "MB for the image cachedObject.");
+
+        return new Cache(
+            new TileCacheCacheObjectBroker(),
+            extraCacheSize < 128 * 1024 * 1024 ?
+                new WriteThroughCacheObjectMap() :
+                new LRUCacheObjectMap(
+                    new NativeByteBufferAllocator( CHUNK_SIZE ), extraCacheSize
+                ),
+            new DirectFileCacheStore( tmpFile ),
+            new CoalescingFreeBlockManager(),
+            COMPRESS_DISK_CACHE ? new DeltaCacheCodec() : null
+        );
+    }
+
+    /**
+     * If set, spilled tiles are compressed, trading some CPU on the cache
+     * writer thread for less scratch file I/O.
+     */
+    private static final boolean COMPRESS_DISK_CACHE =
+        Boolean.getBoolean("lightcrafts.cache.compress");
+
     // private static final long CACHE_SIZE = (long) (1024 * 1024 * 1024);
     private static final int CHUNK_SIZE = 16 * 1024 * 1024;
 
+    @Override
     public synchronized void dispose() throws IOException {
-        m_objectCache.dispose();
+        if (m_objectCache != null)
+            m_objectCache.dispose();
 
         // Close and delete the old cachedObject file
         if (m_tileReaper != null)
@@ -921,14 +940,46 @@ public final class LCTileCache extends Observable
     private long tilesRead = 0;
     private long tilesOnDisk = 0;
 
+    /**
+     * If set, the scratch file is compacted when more than half of it is
+     * free space.
+     */
+    private static final boolean COMPACT_DISK_CACHE =
+        Boolean.getBoolean("lightcrafts.cache.compact");
+
+    private static final long MIN_COMPACT_SIZE = 64 * 1024 * 1024;
+
+    // Called by the TileReaper, after the tiles of an image went away.
+    private void compactDiskCache() {
+        if (!COMPACT_DISK_CACHE
+                || m_objectCache.getStoreSize() < MIN_COMPACT_SIZE
+                || m_objectCache.getFreeRatio() < 0.5) {
+            return;
+        }
+        try {
+            long t0 = System.currentTimeMillis();
+            long saved = m_objectCache.compact();
+            System.out.println(
+                "Compacted tile scratch file by " + (saved >> 20) + "MB in "
+                + (System.currentTimeMillis() - t0) + "ms: " + m_objectCache
+            );
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
     public long tilesWritten() {
         return tilesWritten;
     }
 
+    @Override
     public long tilesRead() {
         return tilesRead;
     }
 
+    @Override
     public long tilesOnDisk() {
         return tilesOnDisk;
     }
@@ -1155,6 +1206,7 @@ public final class LCTileCache extends Observable
                             }
                         }
                     }
+                    tileCache.compactDiskCache();
                 }
                 catch ( InterruptedException e ) {
                     // do nothing
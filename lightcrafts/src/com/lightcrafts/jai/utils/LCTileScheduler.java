@@ -20,13 +20,22 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.media.jai.OpImage;
 import javax.media.jai.PlanarImage;
@@ -38,6 +47,7 @@ import javax.media.jai.util.ImagingException;
 import javax.media.jai.util.ImagingListener;
 import com.sun.media.jai.util.ImageUtil;
 
+
 /**
  * A class representing a request for non-prefetch background computation
  * of tiles.  The object stores the image, the indices of all tiles being
@@ -149,67 +159,139 @@ class Request implements TileRequest {
     }
 }
 
-/** A job to put in a job queue. */
-interface Job {
+/**
+ * A single tile computation queued on one of the lanes of an
+ * {@link LCTileScheduler}.  A job is claimed exactly once, either by a worker
+ * of the scheduler's pool or by a thread blocked in
+ * <code>scheduleTiles()</code> that helps with its own tiles; a job still
+ * pending can be cancelled instead.
+ */
+abstract class Job implements ForkJoinPool.ManagedBlocker {
+
+    private static final int PENDING   = 0;
+    private static final int RUNNING   = 1;
+    private static final int DONE      = 2;
+    private static final int CANCELLED = 3;
+
+    final LCTileScheduler scheduler; // the TileScheduler
+    final LCTileScheduler.Lane lane; // the lane the job is queued on
+    final PlanarImage owner;         // the image this tile belongs to
+    final int tileX;                 // tile's X index
+    final int tileY;                 // tile's Y index
+    final Raster[] tiles;            // the computed tiles
+    final int offset;                // offset into arrays
+
+    final long queueTime = System.nanoTime();
+
+    Exception exception = null;      // Any exception that might have occured
+                                     // during computeTile
+
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    Job(LCTileScheduler scheduler, LCTileScheduler.Lane lane,
+        PlanarImage owner, int tileX, int tileY,
+        Raster[] tiles, int offset) {
+        this.scheduler = scheduler;
+        this.lane = lane;
+        this.owner = owner;
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.tiles = tiles;
+        this.offset = offset;
+    }
+
     /** Computes the job required. */
-    void compute();
+    abstract void compute();
+
+    /** Takes ownership of a pending job; returns false if it is taken. */
+    boolean claim() {
+        return state.compareAndSet(PENDING, RUNNING);
+    }
+
+    /** Cancels a pending job; returns false if it already started. */
+    boolean cancel() {
+        if (state.compareAndSet(PENDING, CANCELLED)) {
+            finished.countDown();
+            return true;
+        }
+        return false;
+    }
 
-    /** Returns <code>true</code> if the job is not done. */
-    boolean notDone();
+    /** Runs a claimed job. */
+    void run() {
+        try {
+            compute();
+        } finally {
+            state.set(DONE);
+            finished.countDown();
+        }
+    }
 
-    /** Returns the image for which tiles are being computed. */
-    PlanarImage getOwner();
+    boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
 
     /**
-     * Returns <code>true</code> if and only if the job should block the
-     * thread which processes it.  In this case the scheduler and the
-     * processing thread must communicate using <code>wait()</code> and
-     * <code>notify()</code>.
+     * Waits for the job to finish.  When called from a worker of the
+     * scheduler's pool the pool is told about the blocking, so that it can
+     * compensate with a spare thread.
      */
-    boolean isBlocking();
+    void await() {
+        while (!isReleasable()) {
+            try {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException e) {
+                // Ignore: the tile is needed anyway.
+            }
+        }
+    }
 
-    /** Returns the first exception encountered or <code>null</code>. */
-    Exception getException();
+    @Override
+    public boolean block() throws InterruptedException {
+        finished.await();
+        return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+        return finished.getCount() == 0;
+    }
+
+    /** Returns a string representation of the class object. */
+    @Override
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+               ": owner = " + owner.toString() +
+               " tileX = " + tileX +
+               " tileY = " + tileY +
+               " lane = " + lane +
+               " tile = " + tiles[offset];
+    }
 }
 
 /**
- * A <code>Job</code> which computes a single tile at a time for a
- * non-prefetch background job queued by the version of scheduleTiles()
- * which returns a <code>TileRequest</code>.  This <code>Job</code>
- * notifies all <code>TileComputationListener</code>s of all
- * <code>TileRequest</code>s with which this tile is associated of
- * whether the tile was computed or the computation failed.
+ * A <code>Job</code> which computes a single tile for a non-prefetch
+ * background job queued by the version of scheduleTiles() which returns a
+ * <code>TileRequest</code>.  This <code>Job</code> notifies all
+ * <code>TileComputationListener</code>s of all <code>TileRequest</code>s
+ * with which this tile is associated of whether the tile was computed or
+ * the computation failed.
  */
-final class RequestJob implements Job {
-
-    final LCTileScheduler scheduler; // the TileScheduler
-
-    final PlanarImage owner;     // the image this tile belongs to
-    final int tileX;             // tile's X index
-    final int tileY;             // tile's Y index
-    final Raster[] tiles;        // the computed tiles
-    final int offset;            // offset into arrays
-
-    boolean done = false;        // flag indicating completion status
-    Exception exception = null;  // Any exception that might have occured
-                                 // during computeTile
+final class RequestJob extends Job {
 
     /** Constructor. */
-    RequestJob(LCTileScheduler scheduler,
+    RequestJob(LCTileScheduler scheduler, LCTileScheduler.Lane lane,
                PlanarImage owner, int tileX, int tileY,
                Raster[] tiles, int offset) {
-        this.scheduler = scheduler;
-        this.owner = owner;
-        this.tileX = tileX;
-        this.tileY = tileY;
-        this.tiles = tiles;
-        this.offset = offset;
+        super(scheduler, lane, owner, tileX, tileY, tiles, offset);
     }
 
     /**
      * Tile computation. Does the actual call to getTile().
      */
-    public void compute() {
+    @Override
+    void compute() {
         // Get the Request List.
         List<Request> reqList;
         synchronized(scheduler.tileRequests) {
@@ -225,7 +307,6 @@ final class RequestJob implements Job {
 
         // Check whether reqList is valid in case job was cancelled while
         // blocking on the tileRequests Map above.
-        // XXX Do not need empty check in next line?
         if(reqList != null && !reqList.isEmpty()) {
             // Update tile status to "processing".
             Point p = new Point(tileX, tileY);
@@ -244,10 +325,9 @@ final class RequestJob implements Job {
                 // Extract the Set of all TileComputationListeners.
                 Set<TileComputationListener> listeners = LCTileScheduler.getListeners(reqList);
 
-                // XXX Do not need empty check in next line.
-                if(listeners != null && !listeners.isEmpty()) {
+                if(listeners != null) {
                     // Get TileRequests as an array for later use.
-                    TileRequest[] requests = reqList.toArray(new TileRequest[reqList.size()]);
+                    TileRequest[] requests = reqList.toArray(new TileRequest[0]);
 
                     // Update tile status as needed.
                     tileStatus = exception == null ?
@@ -276,200 +356,96 @@ final class RequestJob implements Job {
                 }
             }
         }
-
-        // Set the flag indicating job completion.
-        done = true;
-    }
-
-    /**
-     * Returns <code>true</code> if the job is not done; that is,
-     * the tile is not computed and no exceptions have occurred.
-     */
-    public boolean notDone() {
-        return !done;
-    }
-
-    /** Returns the image for which the tile is being computed. */
-    public PlanarImage getOwner() {
-        return owner;
-    }
-
-    /** Always returns <code>true</code>. */
-    public boolean isBlocking() {
-        // Big Change: this should prevent enqueueing of new tiles while an image is being processed
-        return true;
-    }
-
-    /** Returns any encountered exception or <code>null</code>. */
-    public Exception getException() {
-        return exception;
-    }
-
-    /** Returns a string representation of the class object. */
-    public String toString() {
-        String tString = "null";
-        if (tiles[offset] != null) {
-            tString = tiles[offset].toString();
-        }
-        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
-               ": owner = " + owner.toString() +
-               " tileX = " + Integer.toString(tileX) +
-               " tileY = " + Integer.toString(tileY) +
-               " tile = " + tString;
     }
 }
 
 /**
- * A <code>Job</code> which computes one or more tiles at a time for either
- * a prefetch job or a blocking job.
+ * A <code>Job</code> which computes a single tile for either a prefetch job
+ * or a blocking job.
  */
-final class TileJob implements Job {
-
-    final LCTileScheduler scheduler; // the TileScheduler
-
-    final boolean isBlocking;  // whether the job is blocking
-    final PlanarImage owner;   // the image this tile belongs to
-    final Point[] tileIndices; // the tile indices
-    final Raster[] tiles;      // the computed tiles
-    final int offset;          // offset into arrays
-    final int numTiles;        // number of elements to use in indices array
-
-    boolean done = false;       // flag indicating completion status
-    Exception exception = null; // The first exception that might have
-                                // occured during computeTile
+final class TileJob extends Job {
 
     /** Constructor. */
-    TileJob(LCTileScheduler scheduler, boolean isBlocking,
-            PlanarImage owner, Point[] tileIndices,
-            Raster[] tiles, int offset, int numTiles) {
-        this.scheduler = scheduler;
-        this.isBlocking = isBlocking;
-        this.owner = owner;
-        this.tileIndices = tileIndices;
-        this.tiles = tiles;
-        this.offset = offset;
-        this.numTiles = numTiles;
-    }
-
-    /**
-     * Tile computation. Does the actual calls to getTile().
-     */
-    public void compute() {
-        exception = scheduler.compute(owner, tileIndices, tiles,
-                                      offset, numTiles, null);
-        done = true;
+    TileJob(LCTileScheduler scheduler, LCTileScheduler.Lane lane,
+            PlanarImage owner, int tileX, int tileY,
+            Raster[] tiles, int offset) {
+        super(scheduler, lane, owner, tileX, tileY, tiles, offset);
     }
 
     /**
-     * Returns <code>true</code> if the job is not done; that is,
-     * the tile is not computed and no exceptions have occurred.
+     * Tile computation. Does the actual call to getTile().
      */
-    public boolean notDone() {
-        return !done;
-    }
-
-    /** Returns the image for which tiles are being computed. */
-    public PlanarImage getOwner() {
-        return owner;
-    }
-
-    /** Returns <code>true</code> if and only if there is a listener. */
-    public boolean isBlocking() {
-        return isBlocking;
-    }
-
-    /** Returns any encountered exception or <code>null</code>. */
-    public Exception getException() {
-        return exception;
+    @Override
+    void compute() {
+        try {
+            tiles[offset] = owner.getTile(tileX, tileY);
+        } catch (Exception e) {
+            exception = e;
+        } catch (Error e) {
+            exception = new Exception(e);
+        }
     }
 }
 
 /**
- * Worker thread that takes jobs from the tile computation queue and does
- * the actual computation.
+ * LightZone's implementation of the <code>javax.media.jai.TileScheduler</code>
+ * interface, derived from Sun Microsystems' reference implementation.
+ *
+ * <p> Tiles are computed by a work-stealing {@link ForkJoinPool}.  Jobs are
+ * not submitted to the pool directly: they are queued on one of the
+ * {@link Lane}s, and each submission only hands the pool an anonymous
+ * "run the most urgent job" task.  Whichever worker picks that task up
+ * takes the first pending job of the highest priority non-empty lane, so a
+ * big prefetch never delays the tiles of the visible viewport by more than
+ * the tiles already being computed.  Prefetch and thumbnail jobs are further
+ * limited to <code>getPrefetchParallelism()</code> concurrent tiles.
+ *
+ * <p> The lane of a job is taken from the thread that schedules it, see
+ * {@link #setCurrentLane(Lane)}; prefetches always go to
+ * {@link Lane#PREFETCH} or lower.  Workers run with the lane of the job they
+ * compute, so the tiles of source images that a job needs inherit its
+ * priority.
+ *
+ * <p> A thread blocked in <code>scheduleTiles()</code> computes its own
+ * pending tiles instead of waiting for the pool, and waits only for the tiles
+ * already being computed by workers.  This keeps nested tile requests from
+ * deadlocking the pool.
+ *
+ * <p> Pending jobs of a <code>TileRequest</code> are cancelled by
+ * <code>cancelTiles()</code>, which is what {@code TileManager} does when the
+ * display starts a new epoch.
+ *
+ * @see javax.media.jai.TileScheduler
  */
-class WorkerThread extends Thread {
-
-    /** <code>Object</code> indicating the the thread should exit. */
-    public static final Object TERMINATE = new Object();
-
-    /** The scheduler that spawned this thread. */
-    final LCTileScheduler scheduler;
-
-    /** Whether this is a prefetch thread. */
-    boolean isPrefetch;
-
-    /** Constructor. */
-    public WorkerThread(ThreadGroup group,
-                        LCTileScheduler scheduler,
-                        boolean isPrefetch) {
-        super(group, group.getName() + group.activeCount());
-        this.scheduler = scheduler;
-        this.isPrefetch = isPrefetch;
+public final class LCTileScheduler implements TileScheduler {
 
-        setDaemon(true);
-        start();
+    /**
+     * The priority lanes of the scheduler, from the most to the least
+     * urgent.
+     */
+    public enum Lane {
+        /** Tiles the user is looking at. */
+        VIEWPORT,
+        /** Tiles of an image being exported or printed. */
+        EXPORT,
+        /** Tiles computed ahead of time, in case they are needed later. */
+        PREFETCH,
+        /** Tiles of browser thumbnails and previews. */
+        THUMBNAIL;
+
+        boolean isBackground() {
+            return this == PREFETCH || this == THUMBNAIL;
+        }
     }
 
-    /** Does the tile computation. */
-    public void run() {
-        LinkedList<Object> jobQueue = scheduler.getQueue(isPrefetch);
-
-        while(true) {
-            Object dequeuedObject = null;
-
-            // Check the job queue.
-            if(jobQueue.size() > 0) {
-                // Remove the first job.
-                dequeuedObject = jobQueue.removeFirst();
-            } else {
-                try {
-                    // Wait for a notify() on the queue.
-                    jobQueue.wait();
-                    continue;
-                } catch(InterruptedException ie) {
-                    // Ignore: should never happen.
-                }
-            }
-
-            if(dequeuedObject == TERMINATE ||
-               getThreadGroup() == null || getThreadGroup().isDestroyed()) {
-                // Remove WorkerThread from appropriate ArrayList.
-                LinkedList<Thread> threads;
-                synchronized(threads = scheduler.getWorkers(isPrefetch)) {
-                    threads.remove(this);
-                }
-
-                // Exit the thread.
-                return;
-            }
-
-            Job job = (Job)dequeuedObject;
-
-            // Execute tile job.
-            if (job != null) {
-                job.compute();
-
-                // Notify the scheduler only if the Job is blocking.
-                if(job.isBlocking()) {
-                    synchronized(scheduler) {
-                        scheduler.notify();
-                    }
-                }
-            }
-        } // infinite loop
+    /** Queue depth and latency counters for a lane. */
+    private static final class LaneStatistics {
+        final AtomicInteger depth = new AtomicInteger();
+        final LongAdder completed = new LongAdder();
+        final LongAdder cancelled = new LongAdder();
+        final LongAdder queueNanos = new LongAdder();
+        final LongAdder computeNanos = new LongAdder();
     }
-}
-
-/**
- * This is Sun Microsystems' reference implementation of the
- * <code>javax.media.jai.TileScheduler</code> interface.  It provides
- * a mechanism for scheduling tile calculation.  Multi-threading is
- * used whenever possible.
- *
- * @see javax.media.jai.TileScheduler
- */
-public final class LCTileScheduler implements TileScheduler {
 
     /** The default number of worker threads. */
     private static final int NUM_THREADS_DEFAULT = 2;
@@ -477,80 +453,55 @@ public final class LCTileScheduler implements TileScheduler {
     /** The default number of prefetch threads. */
     private static final int NUM_PREFETCH_THREADS_DEFAULT = 1;
 
-    /** The instance counter.  It is used to compose the name of the
-     *  ThreadGroup.
-     */
-    private static int numInstances = 0;
-
-    /** The root ThreadGroup, which holds two sub-groups:
-     * the ThreadGroup for the standard jobs, and the ThreadGroup for
-     * the prefetch jobs.
-     */
-    private ThreadGroup rootGroup;
+    /** The instance counter.  It is used to compose the name of the threads. */
+    private static final AtomicInteger numInstances = new AtomicInteger();
 
-    /** The ThreadGroup contains all the standard jobs. */
-    private ThreadGroup standardGroup;
-
-    /** The ThreadGroup contains all the prefetch jobs. */
-    private ThreadGroup prefetchGroup;
+    /** The lane of the jobs scheduled by the current thread. */
+    private static final ThreadLocal<Lane> currentLane =
+        ThreadLocal.withInitial(() -> Lane.VIEWPORT);
 
     /** The worker thread parallelism. */
-    private int parallelism = NUM_THREADS_DEFAULT;
+    private volatile int parallelism = NUM_THREADS_DEFAULT;
 
-    /** The processing thread parallelism. */
-    private int prefetchParallelism = NUM_PREFETCH_THREADS_DEFAULT;
+    /** The maximum number of concurrent prefetch and thumbnail jobs. */
+    private volatile int prefetchParallelism = NUM_PREFETCH_THREADS_DEFAULT;
 
     /** The worker thread priority. */
-    private int priority = Thread.NORM_PRIORITY;
+    private volatile int priority = Thread.NORM_PRIORITY;
 
     /** The prefetch thread priority. */
-    private int prefetchPriority = Thread.MIN_PRIORITY;
+    private volatile int prefetchPriority = Thread.MIN_PRIORITY;
 
-    /** A job queue for tiles waiting to be computed by the worker threads. */
-    private final LinkedList<Object> queue;
+    /** The pool computing the tiles, created lazily. */
+    private ForkJoinPool pool;
 
-    /** A job queue for tiles waiting to be computed by prefetch workers. */
-    private final LinkedList<Object> prefetchQueue;
+    /** The pending jobs of each lane. */
+    private final Map<Lane, Queue<Job>> lanes = new EnumMap<>(Lane.class);
 
-    /**
-     * A <code>LinkedList</code> of <code>WorkerThread</code>s that persist
-     * to do the actual tile computation for normal processing.  This
-     * variable should never be set to <code>null</code>.
-     */
-    private LinkedList<Thread> workers = new LinkedList<Thread>();
+    private final LaneStatistics[] laneStatistics;
 
-    /**
-     * A <code>LinkedList</code> of <code>WorkerThread</code>s that persist
-     * to do the actual tile computation for prefetch processing.  This
-     * variable should never be set to <code>null</code>.
-     */
-    private LinkedList<Thread> prefetchWorkers = new LinkedList<Thread>();
+    /** The number of prefetch and thumbnail jobs being computed. */
+    private final AtomicInteger activeBackgroundJobs = new AtomicInteger();
 
     /**
-     * The effective number of worker threads; may differ from
-     * <code>workers.size()</code> due to latency.  This value should
-     * equal the size of <code>workers</code> less the number of
-     * <code>WorkerThread.TERMINATE</code>s in <code>queue</code>.
+     * The number of pool tasks that found only background jobs while
+     * <code>prefetchParallelism</code> of them were already running, and
+     * that must be resubmitted when one of them completes.
      */
-    private int numWorkerThreads = 0;
+    private final AtomicInteger deferredTasks = new AtomicInteger();
 
-    /**
-     * The effective number of prefetch worker threads; may differ from
-     * <code>prefetchWorkers.size()</code> due to latency.  This value should
-     * equal the size of <code>prefetchWorkers</code> less the number of
-     * <code>WorkerThread.TERMINATE</code>s in <code>prefetchQueue</code>.
-     */
-    private int numPrefetchThreads = 0;
+    /** The pool task that runs the most urgent pending job. */
+    private final Runnable runNextJob = this::runNextJob;
 
     /**
-     * <code>Map</code> of tiles currently being computed.  The key is
-     * created from the image and tile indices by the <code>tileKey()</code>
-     * method.  Each key is mapped to an <code>Object[1]</code> which may
-     * contain <code>null</code>, a <code>Raster</code>, or an indefinite
-     * <code>Object</code> which represent, respectively, that the tile is
-     * being computed, the tile itself, and that the tile computation failed.
+     * <code>Map</code> of tiles currently being computed by
+     * <code>scheduleTile()</code>.  The key is created from the image and
+     * tile indices by the <code>tileKey()</code> method.  Threads asking for
+     * a tile that is already being computed wait for its future instead of
+     * computing it again.
      */
-    private final Map<Object, Object[]> tilesInProgress = new HashMap<Object, Object[]>();
+    private final Map<Object, CompletableFuture<Raster>> tilesInProgress =
+        new ConcurrentHashMap<>();
 
     /**
      * <code>Map</code> of tiles to <code>Request</code>s.  The key is
@@ -561,19 +512,19 @@ public final class LCTileScheduler implements TileScheduler {
      * should always be non-null and the <code>List</code> value should
      * have size of at least unity.
      */
-    final Map<Object, List<Request>> tileRequests = new HashMap<Object, List<Request>>();
+    final Map<Object, List<Request>> tileRequests = new HashMap<>();
 
     /**
      * <code>Map</code> of tiles to <code>Job</code>s.The key is
      * created from the image and tile indices by the <code>tileKey()</code>
      * method.  Each key is mapped to a <code>Job</code> for the tile.  If
      * there is no mapping for the tile, then there is no enqueued
-     * <code>RequestJob</code>.
+     * <code>RequestJob</code>.  Guarded by <code>tileRequests</code>.
      */
-    Map<Object, Job> tileJobs = new HashMap<Object, Job>();
+    final Map<Object, Job> tileJobs = new HashMap<>();
 
     /** The name of this instance. */
-    private String nameOfThisInstance;
+    private final String nameOfThisInstance;
 
     /**
      * Returns the hash table "key" as a <code>Object</code> for this
@@ -605,10 +556,9 @@ public final class LCTileScheduler implements TileScheduler {
         // Extract the Set of all TileComputationListeners.
         HashSet<TileComputationListener> listeners = null;
         for (Request req : reqList) {
-            // XXX Do not need empty check in next line.
             if (req.listeners != null && !req.listeners.isEmpty()) {
                 if (listeners == null) {
-                    listeners = new HashSet<TileComputationListener>();
+                    listeners = new HashSet<>();
                 }
                 listeners.addAll(req.listeners);
             }
@@ -617,6 +567,34 @@ public final class LCTileScheduler implements TileScheduler {
         return listeners;
     }
 
+    /**
+     * Sets the lane of the tiles subsequently scheduled by the current
+     * thread.  Callers should restore the returned lane when done:
+     * <pre>
+     * Lane previous = LCTileScheduler.setCurrentLane(Lane.EXPORT);
+     * try {
+     *     ...
+     * } finally {
+     *     LCTileScheduler.setCurrentLane(previous);
+     * }
+     * </pre>
+     *
+     * @param lane The new lane.
+     * @return Returns the previous lane of the current thread.
+     */
+    public static Lane setCurrentLane(Lane lane) {
+        final Lane previous = currentLane.get();
+        currentLane.set(lane);
+        return previous;
+    }
+
+    /**
+     * Returns the lane of the tiles scheduled by the current thread.
+     */
+    public static Lane getCurrentLane() {
+        return currentLane.get();
+    }
+
     /**
      * Constructor.
      *
@@ -624,7 +602,6 @@ public final class LCTileScheduler implements TileScheduler {
      *        If this number is less than 1, no multi-threading is used.
      * @param priority  The priority of worker threads.
      * @param prefetchParallelism  The number of threads to do prefetching.
-     *        If this number is less than 1, no multi-threading is used.
      * @param prefetchPriority  The priority of prefetch threads.
      */
     public LCTileScheduler(int parallelism, int priority,
@@ -639,33 +616,173 @@ public final class LCTileScheduler implements TileScheduler {
     }
 
     /**
-     * Constructor.  Processing and prefetch queues are created and all
-     * parallelism and priority values are set to default values.
+     * Constructor.  The lanes are created and all parallelism and priority
+     * values are set to default values.
      */
     public LCTileScheduler() {
-        queue = new LinkedList<Object>();
-        prefetchQueue = new LinkedList<Object>();
+        final Lane[] values = Lane.values();
+        laneStatistics = new LaneStatistics[values.length];
+        for (Lane lane : values) {
+            lanes.put(lane, new ConcurrentLinkedQueue<>());
+            laneStatistics[lane.ordinal()] = new LaneStatistics();
+        }
+        nameOfThisInstance = "LCTileScheduler" + numInstances.getAndIncrement();
+    }
+
+    /**
+     * Returns the pool, (re)creating it if the parallelism has changed, or
+     * <code>null</code> if tiles must be computed in the calling thread.
+     */
+    private synchronized ForkJoinPool getPool() {
+        final int n = parallelism;
+        if (n == 0) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+            return null;
+        }
+        if (pool == null || pool.getParallelism() != n) {
+            if (pool != null) {
+                // Already submitted tasks still run on the old pool.
+                pool.shutdown();
+            }
+            final String name = nameOfThisInstance;
+            final int threadPriority = priority;
+            pool = new ForkJoinPool(
+                n,
+                p -> {
+                    final ForkJoinWorkerThread t =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName(name + "-" + t.getPoolIndex());
+                    t.setDaemon(true);
+                    t.setPriority(threadPriority);
+                    return t;
+                },
+                (t, e) -> sendExceptionToListener("RuntimeException", e),
+                true
+            );
+        }
+        return pool;
+    }
+
+    /** Queues a job on its lane and asks the pool to run a job. */
+    private void submit(Job job, ForkJoinPool p) {
+        laneStatistics[job.lane.ordinal()].depth.incrementAndGet();
+        lanes.get(job.lane).add(job);
+        p.execute(runNextJob);
+    }
+
+    /** Claims a job for the current thread, updating the lane depth. */
+    private boolean claim(Job job) {
+        if (job.claim()) {
+            laneStatistics[job.lane.ordinal()].depth.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
 
-        // The tile scheduler name.  It is used to compose the name of the
-        // ThreadGroup.
-        String name = "LCTileSchedulerName";
-        nameOfThisInstance = name + numInstances;
-        rootGroup = new ThreadGroup(nameOfThisInstance);
-        rootGroup.setDaemon(true);
+    /** Cancels a pending job, updating the lane depth. */
+    private boolean cancel(Job job) {
+        if (job.cancel()) {
+            final LaneStatistics stats = laneStatistics[job.lane.ordinal()];
+            stats.depth.decrementAndGet();
+            stats.cancelled.increment();
+            return true;
+        }
+        return false;
+    }
 
-        standardGroup = new ThreadGroup(rootGroup,
-                nameOfThisInstance + "Standard");
-        standardGroup.setDaemon(true);
+    /**
+     * The pool task: takes the first pending job of the most urgent lane and
+     * runs it.
+     */
+    private void runNextJob() {
+        boolean deferred = false;
+        for (Lane lane : Lane.values()) {
+            final Queue<Job> queue = lanes.get(lane);
+            if (queue.isEmpty()) {
+                continue;
+            }
+            if (lane.isBackground() && !acquireBackgroundSlot()) {
+                deferred = true;
+                break;
+            }
+            Job job;
+            while ((job = queue.poll()) != null) {
+                if (claim(job)) {
+                    runJob(job, lane.isBackground());
+                    return;
+                }
+            }
+            if (lane.isBackground()) {
+                releaseBackgroundSlot();
+            }
+        }
+        if (deferred) {
+            deferredTasks.incrementAndGet();
+            // A background job may have completed meanwhile.
+            if (activeBackgroundJobs.get() < Math.max(prefetchParallelism, 1)) {
+                resumeDeferredTask();
+            }
+        }
+    }
+
+    private boolean acquireBackgroundSlot() {
+        final int limit = Math.max(prefetchParallelism, 1);
+        int active;
+        do {
+            active = activeBackgroundJobs.get();
+            if (active >= limit) {
+                return false;
+            }
+        } while (!activeBackgroundJobs.compareAndSet(active, active + 1));
+        return true;
+    }
 
-        prefetchGroup = new ThreadGroup(rootGroup,
-                nameOfThisInstance + "Prefetch");
-        prefetchGroup.setDaemon(true);
+    private void releaseBackgroundSlot() {
+        activeBackgroundJobs.decrementAndGet();
+        resumeDeferredTask();
+    }
+
+    private void resumeDeferredTask() {
+        int deferred;
+        while ((deferred = deferredTasks.get()) > 0) {
+            if (deferredTasks.compareAndSet(deferred, deferred - 1)) {
+                final ForkJoinPool p = getPool();
+                if (p != null) {
+                    p.execute(runNextJob);
+                }
+                return;
+            }
+        }
+    }
 
-        numInstances++;
+    /**
+     * Runs a claimed job in the current thread, with the lane of the job, and
+     * records its latency.  If the job holds one of the background slots, the
+     * slot is released when it is done.
+     */
+    private void runJob(Job job, boolean backgroundSlot) {
+        final LaneStatistics stats = laneStatistics[job.lane.ordinal()];
+        final Lane previous = setCurrentLane(job.lane);
+        final long start = System.nanoTime();
+        stats.queueNanos.add(start - job.queueTime);
+        try {
+            job.run();
+        } finally {
+            stats.computeNanos.add(System.nanoTime() - start);
+            stats.completed.increment();
+            setCurrentLane(previous);
+            if (backgroundSlot) {
+                releaseBackgroundSlot();
+            }
+        }
     }
 
     /**
-     * Tile computation. Does the actual calls to getTile().
+     * Tile computation in the calling thread, used when there are no worker
+     * threads.
      */
     Exception compute(PlanarImage owner, Point[] tileIndices,
                       Raster[] tiles, int offset, int numTiles,
@@ -758,14 +875,14 @@ public final class LCTileScheduler implements TileScheduler {
      * @return  The computed tile
      */
     //
-    // This method blocks on the 'tilesInProgress' Map to avoid simultaneous
+    // This method uses the 'tilesInProgress' Map to avoid simultaneous
     // computation of the same tile in two or more different threads. The idea
     // is to release the resources of all but one thread so that the computation
-    // occurs more quickly. The synchronization variable is an Object[] of length
-    // unity. The computed tile is passed from the computing thread to the
-    // waiting threads via the contents of this Object[]. Thus this method does
+    // occurs more quickly. The computed tile is passed from the computing
+    // thread to the waiting threads through a future, thus this method does
     // not depend on the TileCache to transfer the data.
     //
+    @Override
     public Raster scheduleTile(OpImage owner,
                                int tileX,
                                int tileY) {
@@ -773,371 +890,188 @@ public final class LCTileScheduler implements TileScheduler {
             throw new IllegalArgumentException("Null owner");
         }
 
-        // Eventual tile to be returned.
-        Raster tile = null;
-
         // Get the tile's unique ID.
         final Object tileID = tileKey(owner, tileX, tileY);
 
-        // Set the computation flag and initialize or retrieve the tile cache.
-        boolean computeTile;
-        final Object[] cache;
-        synchronized(tilesInProgress) {
-            if(computeTile = !tilesInProgress.containsKey(tileID)) {
-                // Computing: add tile ID to the map.
-                tilesInProgress.put(tileID, cache = new Object[1]);
-            } else {
-                // Waiting: get tile cache from the Map.
-                cache = tilesInProgress.get(tileID);
+        final CompletableFuture<Raster> inProgress = new CompletableFuture<>();
+        final CompletableFuture<Raster> computing =
+            tilesInProgress.putIfAbsent(tileID, inProgress);
+
+        if (computing != null) {
+            // Wait for the computation to complete.
+            final Raster tile = computing.join();
+            if (tile == null) {
+                throw new RuntimeException("Not a Raster instance?");
             }
+            return tile;
         }
 
-        if(computeTile) {
+        // Eventual tile to be returned.
+        Raster tile = null;
+        try {
             try {
+                // Attempt to compute the tile.
+                tile = owner.computeTile(tileX, tileY);
+            } catch (OutOfMemoryError e) {
+                // Free some space in cache
+                TileCache tileCache = owner.getTileCache();
+                if(tileCache != null) {
+                    tileCache.removeTiles(owner);
+                }
                 try {
-                    // Attempt to compute the tile.
+                    // Re-attempt to compute the tile.
                     tile = owner.computeTile(tileX, tileY);
-                } catch (OutOfMemoryError e) {
-                    // Free some space in cache
-                    TileCache tileCache = owner.getTileCache();
+                } catch (OutOfMemoryError e1) {
+                    // Empty the cache
                     if(tileCache != null) {
-                        tileCache.removeTiles(owner);
-                    }
-                    try {
-                        // Re-attempt to compute the tile.
-                        tile = owner.computeTile(tileX, tileY);
-                    } catch (OutOfMemoryError e1) {
-                        // Empty the cache
-                        if(tileCache != null) {
-                            tileCache.flush();
-                        }
+                        tileCache.flush();
                     }
 
                     // Re-attempt to compute the tile.
                     tile = owner.computeTile(tileX, tileY);
                 }
-            } catch(Throwable e) {
-                // Re-throw the Error or Exception.
-                if(e instanceof Error) {
-                    throw (Error)e;
-                } else {
-                    sendExceptionToListener("RuntimeException", e);
-                }
-            } finally {
-                // Always set the cached tile to a non-null value.
-                cache[0] = tile != null ? tile : new Object();
-
-                // Notify the thread(s).
-                cache.notifyAll();
-
-                // Remove the tile ID from the Map.
-                tilesInProgress.remove(tileID);
             }
-        } else {
-            // Check the cache: a null value indicates computation is
-            // still in progress.
-            if(cache[0] == null) {
-                // Wait for the computation to complete.
-                try {
-                    cache.wait(); // XXX Should there be a timeout?
-                } catch(Exception e) {
-                    // XXX What response here?
-                }
-            }
-
-            // Set the result only if cache contains a Raster.
-            if(cache[0] instanceof Raster) {
-                tile = (Raster)cache[0];
+        } catch(Throwable e) {
+            // Re-throw the Error or Exception.
+            if(e instanceof Error) {
+                throw (Error)e;
             } else {
-                throw new RuntimeException("Not a Raster instance?");
+                sendExceptionToListener("RuntimeException", e);
             }
+        } finally {
+            // Remove the tile ID from the Map and release the waiting threads.
+            tilesInProgress.remove(tileID);
+            inProgress.complete(tile);
         }
-
         return tile;
     }
 
     /**
-     * General purpose method for job creation and queueing.  Note that
-     * the returned value should be ignored if the <code>listener</code>
-     * parameter is non-<code>null</code>.
+     * Schedules multiple tiles of an image for computation.  The calling
+     * thread computes the tiles not yet taken by a worker itself, then waits
+     * for the others.
      *
-     * @param owner The image for which tile computation jobs will be queued.
-     * @param tileIndices The indices of the tiles to be computed.
-     * @param isPrefetch Whether the operation is a prefetch.
-     * @param listeners A <code>TileComputationListener</code> of the
-     *        processing.  May be <code>null</code>.
+     * @param owner  The image the tiles belong to.
+     * @param tileIndices  An array of tile X and Y indices.
      *
-     * @return The computed tiles.  This value is meaningless if
-     *         <code>listener</code> is non-<code>null</code>.
+     * @return  An array of computed tiles.
      */
-    // The allowable arguments are constained as follows:
-    // A) owner and tileIndices non-null.
-    // B) (isBlocking,isPrefetch) in {(true,false),(false,false),(false,true)}
-    // C) listeners != null <=> (isBlocking,isPrefetch) == (false,false)
-    // The returned value is one of:
-    // Raster[] <=> (isBlocking,isPrefetch) == (true,false)
-    // Integer <=> (isBlocking,isPrefetch) == (false,false)
-    // (Raster[])null <=> (isBlocking,isPrefetch) == (false,true)
-    private Object scheduleJob(PlanarImage owner,
-                               Point[] tileIndices,
-                               boolean isBlocking,
-                               boolean isPrefetch,
-                               TileComputationListener[] listeners) {
-        if(owner == null || tileIndices == null) {
-            // null parameters
-            throw new IllegalArgumentException(); // coding error - no message
-        } else if((isBlocking || isPrefetch) && listeners != null) {
-            // listeners for blocking or prefetch job
-            throw new IllegalArgumentException(); // coding error - no message
-        } else if(isBlocking && isPrefetch) {
-            throw new IllegalArgumentException(); // coding error - no message
+    @Override
+    public Raster[] scheduleTiles(OpImage owner,
+                                  Point[] tileIndices) {
+        if (owner == null || tileIndices == null) {
+            throw new IllegalArgumentException("Null owner or TileIndices");
         }
 
-        int numTiles = tileIndices.length;
-        Raster[] tiles = new Raster[numTiles];
-        Object returnValue = tiles;
-
-        final int numThreads;
-        Job[] jobs = null;
-        int numJobs = 0;
-
-        synchronized(getWorkers(isPrefetch)) {
-            numThreads = getNumThreads(isPrefetch);
-
-            if(numThreads > 0) { // worker threads exist
-                if(numTiles <= numThreads ||       // no more tiles than threads
-                   (!isBlocking && !isPrefetch)) { // non-blocking, non-prefetch
-
-                    jobs = new Job[numTiles];
-
-                    if(!isBlocking && !isPrefetch) {
-                        Request request =
-                            new Request(this, owner, tileIndices, listeners);
-
-                        // Override return value.
-                        returnValue = request;
-
-                        // Queue all tiles as single-tile jobs.
-                        while(numJobs < numTiles) {
-                            Point p = tileIndices[numJobs];
-
-                            Object tileID = tileKey(owner, p.x, p.y);
-
-                            synchronized(tileRequests) {
-                                List<Request> reqList = tileRequests.get(tileID);
-                                if (reqList != null) {
-                                    // This tile is already queued in a
-                                    // non-blocking, non-prefetch job.
-                                    reqList.add(request);
-                                    numTiles--;
-                                } else {
-                                    // This tile has not yet been queued.
-                                    reqList = new ArrayList<Request>();
-                                    reqList.add(request);
-                                    tileRequests.put(tileID, reqList);
-
-                                    jobs[numJobs] = new RequestJob(this, owner,
-                                                                   p.x, p.y,
-                                                                   tiles, numJobs);
-                                    tileJobs.put(tileID, jobs[numJobs]);
-
-                                    addJob(jobs[numJobs++], false);
-                                }
-                            }
-                        }
-                    } else { // numTiles <= numThreads
-                        while(numJobs < numTiles) {
-                            jobs[numJobs] = new TileJob(this,
-                                                        isBlocking,
-                                                        owner,
-                                                        tileIndices,
-                                                        tiles,
-                                                        numJobs,
-                                                        1);
-                            addJob(jobs[numJobs++], isPrefetch);
-                        }
-                    }
-                } else { // more tiles than worker threads
-                    // Set the fraction of unqueued tiles to be processed by
-                    // each worker thread.
-                    float frac = 1.0F/(2.0F*numThreads);
-
-                    // Set the minimum number of tiles each thread may process.
-                    // If there is only one thread this will equal the total
-                    // number of tiles.
-                    int minTilesPerThread = numThreads == 1 ? numTiles :
-                        Math.min(Math.max(1, (int)(frac*numTiles/2.0F + 0.5F)),
-                                 numTiles);
-
-                    // Allocate the maximum possible number of multi-tile jobs.
-                    // This will be larger than the actual number of jobs but
-                    // a more precise calcuation is not possible and a dynamic
-                    // storage object such as a Collection would not be useful
-                    // since as calculated maxNumJobs = 4*numThreads if the
-                    // preceeding values of "frac" and "minTilesPerThread" are
-                    // 1/(2*numThreads) and frac*numTiles/2, respectively.
-                    int maxNumJobs = numThreads == 1 ? 1 :
-                        (int)((float)numTiles/(float)minTilesPerThread+0.5F);
-                    jobs = new TileJob[maxNumJobs];
-
-                    // Set the number of enqueued tiles and the number left.
-                    int numTilesQueued = 0;
-                    int numTilesLeft = numTiles - numTilesQueued;
-
-                    // Assign a number of tiles to each thread determined by
-                    // the number of remaining tiles, the fraction of remaining
-                    // tiles to be processed and the minimum chunk size.
-                    while(numTilesLeft > 0) {
-                        // Set the number of tiles to the pre-calculated
-                        // fraction of tiles yet to be computed.
-                        int numTilesInThread = (int)(frac*numTilesLeft + 0.5F);
-
-                        // Ensure that the number to be processed is at
-                        // least the minimum chunk size.
-                        if(numTilesInThread < minTilesPerThread) {
-                            numTilesInThread = minTilesPerThread;
-                        }
-
-                        // Clamp number of tiles in thread to number unqueued.
-                        if(numTilesInThread > numTilesLeft) {
-                            numTilesInThread = numTilesLeft;
-                        }
-
-                        // Decrement the count of remaining tiles. Note that
-                        // this value will be non-negative due to the clamping
-                        // above.
-                        numTilesLeft -= numTilesInThread;
-
-                        // If the number left is smaller than the minimum chunk
-                        // size then process these tiles in the current job.
-                        if(numTilesLeft < minTilesPerThread) {
-                            numTilesInThread += numTilesLeft;
-                            numTilesLeft = 0;
-                        }
-
-                        // Create a job to process the number of tiles needed.
-                        jobs[numJobs] = new TileJob(this,
-                                                    isBlocking,
-                                                    owner,
-                                                    tileIndices,
-                                                    tiles,
-                                                    numTilesQueued,
-                                                    numTilesInThread);
-
-                        // Queue the job and increment the job count.
-                        addJob(jobs[numJobs++], isPrefetch);
-
-                        // Increment the count of tiles queued.
-                        numTilesQueued += numTilesInThread;
-                    }
-                } // SingleTile vs. MultiTile Jobs
-            } // numThreads > 0
-        } // end synchronized block
-
-        if(numThreads != 0) {
-            // If blocking, wait until all tiles have been computed.
-            // There is no 'else' block for non-blocking as in that
-            // case we just want to continue.
-            if(isBlocking) {
-                for (int i = 0; i < numJobs; i++) {
-                    synchronized(this) {
-                        while (jobs[i].notDone()) {
-                            try {
-                                wait();
-                            } catch(InterruptedException ie) {
-                                // Ignore: should never happen.
-                            }
-                        }
-                    }
-
-                    // XXX: should we re-throw the exception or
-                    //      should we reschedule this job ?? krishnag
-                    Exception e = jobs[i].getException();
-
-                    if (e != null) {
-                        // Throw a RuntimeException with the Exception's
-                        // message concatenated with the stack trace.
-                        String message = "Exception while scheduling tiles: ";
-                        sendExceptionToListener(message,
-                                                new ImagingException(message, e));
-                    }
-                }
-            }
-        } else { // numThreads == 0
-            Request request = null;
-            if(!isBlocking && !isPrefetch) {
-                request = new Request(this, owner, tileIndices, listeners);
-                returnValue = request;
-            }
+        final int numTiles = tileIndices.length;
+        final Raster[] tiles = new Raster[numTiles];
+        final ForkJoinPool p = numTiles > 1 ? getPool() : null;
 
+        if (p == null) {
             // no workers; sequentially compute tiles in main thread
-            Exception e = compute(owner, tileIndices, tiles, 0, numTiles,
-                                  request);
+            reportException(compute(owner, tileIndices, tiles, 0, numTiles, null));
+            return tiles;
+        }
 
-            // Throw a RuntimeException with the Exception's
-            // message concatenated with the stack trace.
-            if(e != null) {
-                String message = "Exception while scheduling tiles: ";
-                sendExceptionToListener(message,
-                                        new ImagingException(message, e));
+        final Lane lane = getCurrentLane();
+        final Job[] jobs = new Job[numTiles];
+        for (int i = 0; i < numTiles; i++) {
+            jobs[i] = new TileJob(this, lane, owner,
+                                  tileIndices[i].x, tileIndices[i].y,
+                                  tiles, i);
+        }
+        // Leave the first tile to the calling thread.
+        for (int i = 1; i < numTiles; i++) {
+            submit(jobs[i], p);
+        }
+
+        // Help: compute the tiles no worker has taken yet.
+        for (Job job : jobs) {
+            if (job == jobs[0] ? job.claim() : claim(job)) {
+                runJob(job, false);
             }
         }
 
-        return returnValue;
+        // Wait for the tiles taken by the workers.
+        for (Job job : jobs) {
+            job.await();
+            reportException(job.exception);
+        }
+        return tiles;
     }
 
-    /**
-     * Schedules multiple tiles of an image for computation.
-     *
-     * @param owner  The image the tiles belong to.
-     * @param tileIndices  An array of tile X and Y indices.
-     *
-     * @return  An array of computed tiles.
-     */
-    public Raster[] scheduleTiles(OpImage owner,
-                                  Point[] tileIndices) {
-        if (owner == null || tileIndices == null) {
-            throw new IllegalArgumentException("Null owner or TileIndices");
+    private void reportException(Exception e) {
+        if (e != null) {
+            // Throw a RuntimeException with the Exception's
+            // message concatenated with the stack trace.
+            String message = "Exception while scheduling tiles: ";
+            sendExceptionToListener(message, new ImagingException(message, e));
         }
-        return (Raster[])scheduleJob(owner, tileIndices, true, false, null);
     }
 
     /**
      * Schedule a list of tiles for computation.  The supplied listeners
      * will be notified after each tile has been computed.  This
-     * method ideally should be non-blocking. If the <code>TileScheduler</code>
-     * implementation uses multithreading, it is at the discretion of the
-     * implementation which thread invokes the
-     * <code>TileComputationListener</code> methods.
+     * method is non-blocking, unless the parallelism is zero.  The listeners
+     * are invoked from the worker threads.
      */
+    @Override
     public TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
                                      TileComputationListener[] tileListeners) {
         if (target == null || tileIndices == null) {
             throw new IllegalArgumentException("Null owner or TileIndices");
         }
-        return (TileRequest)scheduleJob(target, tileIndices, false, false,
-                                        tileListeners);
+
+        final Request request = new Request(this, target, tileIndices, tileListeners);
+        final Raster[] tiles = new Raster[tileIndices.length];
+        final ForkJoinPool p = getPool();
+
+        if (p == null) {
+            reportException(compute(target, tileIndices, tiles, 0, tileIndices.length, request));
+            return request;
+        }
+
+        final Lane lane = getCurrentLane();
+        for (int i = 0; i < tileIndices.length; i++) {
+            final Point tile = tileIndices[i];
+            final Object tileID = tileKey(target, tile.x, tile.y);
+
+            synchronized(tileRequests) {
+                List<Request> reqList = tileRequests.get(tileID);
+                if (reqList != null) {
+                    // This tile is already queued in a
+                    // non-blocking, non-prefetch job.
+                    reqList.add(request);
+                    continue;
+                }
+                // This tile has not yet been queued.
+                reqList = new ArrayList<>();
+                reqList.add(request);
+                tileRequests.put(tileID, reqList);
+
+                final Job job = new RequestJob(this, lane, target,
+                                               tile.x, tile.y, tiles, i);
+                tileJobs.put(tileID, job);
+                submit(job, p);
+            }
+        }
+        return request;
     }
 
     /**
      * Issues an advisory cancellation request to the
      * <code>TileScheduler</code> stating that the indicated tiles of the
-     * specified image should not be processed.  The handling of this request
-     * is at the discretion of the scheduler which may cancel tile processing
-     * in progress and remove tiles from its internal queue, remove tiles from
-     * the queue but not terminate current processing, or simply do nothing.
+     * specified image should not be processed.
      *
-     * <p> In the Sun Microsystems reference implementation of
-     * <code>TileScheduler</code> the second tile cancellation option is
-     * implemented, i.e., tiles are removed from the internal queue but
-     * computation already in progress is not terminated.  If there is at
-     * least one worker thread this method should be non-blocking.  Any tiles
-     * allowed to complete computation subsequent to this call are complete
-     * and will be treated as if they had not been cancelled, e.g., with
-     * respect to caching, notification of registered listeners, etc.
-     * Furthermore, cancelling a tile request in no way invalidates the tile
-     * as a candidate for future recomputation.
+     * <p> Pending jobs are cancelled in place, and skipped when they reach
+     * the head of their lane; computation already in progress is not
+     * terminated.  Any tiles allowed to complete computation subsequent to
+     * this call are complete and will be treated as if they had not been
+     * cancelled, e.g., with respect to caching, notification of registered
+     * listeners, etc.  Furthermore, cancelling a tile request in no way
+     * invalidates the tile as a candidate for future recomputation.
      */
+    @Override
     public void cancelTiles(TileRequest request, Point[] tileIndices) {
         if(request == null) {
             throw new IllegalArgumentException("Null TileRequest");
@@ -1151,15 +1085,13 @@ public final class LCTileScheduler implements TileScheduler {
             // Initialize the set of tile indices to cancel.
             Point[] indices;
             if(tileIndices != null && tileIndices.length > 0) {
-                // Create a Set from the supplied indices.
-                List<Point> tileIndexList = Arrays.asList(tileIndices);
-
                 // Retain only indices which were actually in the request.
+                List<Point> tileIndexList = new ArrayList<>(Arrays.asList(tileIndices));
                 tileIndexList.retainAll(reqIndexList);
 
-                indices = tileIndexList.toArray(new Point[tileIndexList.size()]);
+                indices = tileIndexList.toArray(new Point[0]);
             } else {
-                indices = reqIndexList.toArray(new Point[reqIndexList.size()]);
+                indices = reqIndexList.toArray(new Point[0]);
             }
 
             // Cache status value.
@@ -1181,14 +1113,12 @@ public final class LCTileScheduler implements TileScheduler {
                 // Remove this Request from the Request List for this tile.
                 reqList.remove(req);
 
-                // If the request list is now empty, dequeue the job and
+                // If the request list is now empty, cancel the job and
                 // remove the tile from the hashes.
                 if(reqList.isEmpty()) {
-                    synchronized(queue) {
-                        Object job = tileJobs.remove(tileID);
-                        if(job != null) {
-                            queue.remove(job);
-                        }
+                    Job job = tileJobs.remove(tileID);
+                    if(job != null) {
+                        cancel(job);
                     }
                     tileRequests.remove(tileID);
                 }
@@ -1209,41 +1139,51 @@ public final class LCTileScheduler implements TileScheduler {
     }
 
     /**
-     * Prefetchs a list of tiles of an image.
+     * Prefetchs a list of tiles of an image on the {@link Lane#PREFETCH}
+     * lane, or on the {@link Lane#THUMBNAIL} lane if that is the lane of the
+     * calling thread.
      *
      * @param owner  The image the tiles belong to.
      * @param tileIndices  An array of tile X and Y indices.
      */
+    @Override
     public void prefetchTiles(PlanarImage owner,
                               Point[] tileIndices) {
         if(owner == null || tileIndices == null) {
             throw new IllegalArgumentException("Null owner or TileIndices");
         }
-        scheduleJob(owner, tileIndices, false, true, null);
+
+        final Raster[] tiles = new Raster[tileIndices.length];
+        final ForkJoinPool p = getPool();
+
+        if (p == null) {
+            reportException(compute(owner, tileIndices, tiles, 0, tileIndices.length, null));
+            return;
+        }
+
+        final Lane lane = getCurrentLane() == Lane.THUMBNAIL ? Lane.THUMBNAIL : Lane.PREFETCH;
+        for (int i = 0; i < tileIndices.length; i++) {
+            submit(new TileJob(this, lane, owner,
+                               tileIndices[i].x, tileIndices[i].y,
+                               tiles, i), p);
+        }
     }
 
     /**
      * Suggests to the scheduler the degree of parallelism to use in
-     * processing invocations of <code>scheduleTiles()</code>.  For
-     * example, this might set the number of threads to spawn.  It is
-     * legal to implement this method as a no-op.
+     * processing invocations of <code>scheduleTiles()</code>.
      *
-     * <p> In the Sun Microsystems reference implementation of TileScheduler
-     * this method sets the number of worker threads actually used for tile
-     * computation.  Ideally this number should equal the number of processors
-     * actually available on the system.  It is the responsibility of the
-     * application to set this value as the number of processors is not
-     * available via the virtual machine.  A parallelism value of zero
-     * indicates that all tile computation will be effected in the primary
-     * thread.  A parallelism value of <i>N</i> indicates that there will be
-     * <i>N</i> worker threads in addition to the primary scheduler thread.
-     * In JAI the parallelism defaults to a value of 2 unless explicity set
-     * by the application.
+     * <p> In this implementation this method sets the parallelism of the
+     * pool of worker threads.  Ideally this number should equal the number of
+     * processors actually available on the system.  A parallelism value of
+     * zero indicates that all tile computation will be effected in the
+     * calling thread.
      *
      * @param parallelism The suggested degree of parallelism.
      * @throws IllegalArgumentException if <code>parallelism</code>
      *         is negative.
      */
+    @Override
     public void setParallelism(int parallelism) {
         if (parallelism < 0) {
             throw new IllegalArgumentException("Negative Parallelism?");
@@ -1254,14 +1194,17 @@ public final class LCTileScheduler implements TileScheduler {
     /**
      * Returns the degree of parallelism of the scheduler.
      */
+    @Override
     public int getParallelism() {
         return parallelism;
     }
 
     /**
-     * Identical to <code>setParallelism()</code> but applies only to
-     * <code>prefetchTiles()</code>.
+     * Sets the maximum number of {@link Lane#PREFETCH} and
+     * {@link Lane#THUMBNAIL} jobs computed at the same time by the workers.
+     * Values smaller than one are treated as one.
      */
+    @Override
     public void setPrefetchParallelism(int parallelism) {
         if (parallelism < 0) {
             throw new IllegalArgumentException("Negative Parallelism?");
@@ -1270,27 +1213,25 @@ public final class LCTileScheduler implements TileScheduler {
     }
 
     /**
-     * Identical to <code>getParallelism()</code> but applies only to
-     * <code>prefetchTiles()</code>.
+     * Returns the maximum number of concurrent prefetch and thumbnail jobs.
      */
+    @Override
     public int getPrefetchParallelism() {
         return prefetchParallelism;
     }
 
     /**
      * Suggests to the scheduler the priority to assign to processing
-     * effected by <code>scheduleTiles()</code>.  For example, this might
-     * set thread priority.  Values outside of the accepted priority range
-     * will be clamped to the nearest extremum.  An implementation may clamp
-     * the prefetch priority to less than the scheduling priority.  It is
-     * legal to implement this method as a no-op.
+     * effected by <code>scheduleTiles()</code>.  Values outside of the
+     * accepted priority range will be clamped to the nearest extremum.
      *
-     * <p> In the Sun Microsystems reference implementation of TileScheduler
-     * this method sets the priority of the worker threads used for tile
-     * computation.  Its initial value is <code>Thread.NORM_PRIORITY</code>.
+     * <p> In this implementation this method sets the priority of the worker
+     * threads created from now on.  Its initial value is
+     * <code>Thread.NORM_PRIORITY</code>.
      *
      * @param priority The suggested priority.
      */
+    @Override
     public void setPriority(int priority) {
         this.priority = Math.max(Math.min(priority, Thread.MAX_PRIORITY),
                                  Thread.MIN_PRIORITY);
@@ -1299,6 +1240,7 @@ public final class LCTileScheduler implements TileScheduler {
     /**
      * Returns the priority of <code>scheduleTiles()</code> processing.
      */
+    @Override
     public int getPriority() {
         return priority;
     }
@@ -1307,11 +1249,10 @@ public final class LCTileScheduler implements TileScheduler {
      * Identical to <code>setPriority()</code> but applies only to
      * <code>prefetchTiles()</code>.
      *
-     * <p> In the Sun Microsystems reference implementation of
-     * <code>TileScheduler</code>, this method sets the priority of any threads
-     * spawned to prefetch tiles.  Its initial value is
-     * <code>Thread.MIN_PRIORITY</code>.
+     * <p> This implementation has no separate prefetch threads: prefetching
+     * is ordered by lanes instead, and this value is only recorded.
      */
+    @Override
     public void setPrefetchPriority(int priority) {
         prefetchPriority = Math.max(Math.min(priority, Thread.MAX_PRIORITY),
                                     Thread.MIN_PRIORITY);
@@ -1321,184 +1262,90 @@ public final class LCTileScheduler implements TileScheduler {
      * Identical to <code>getPriority()</code> but applies only to
      * <code>prefetchTiles()</code>.
      */
+    @Override
     public int getPrefetchPriority() {
         return prefetchPriority;
     }
 
-    /** Recreate the <code>ThreadGroup</code>is and <code>WorkThread</code>s.
-     * This happens in the case of applet: the java plugin will exist after
-     * the termination of the applet so that JAI and LCTileScheduler will
-     * also exist.  However, the <code>ThreadGroup</code>s are destroyed.
-     * Thus, the old workers should be terminated and new i
-     * <code>ThreadGroup</code> and workers should be created.
+    /**
+     * Returns the number of jobs waiting on a lane.
      */
-//    private synchronized void createThreadGroup(boolean isPrefetch) {
-    private void createThreadGroup(boolean isPrefetch) {
-        if (rootGroup == null || rootGroup.isDestroyed()) {
-            rootGroup = new ThreadGroup(nameOfThisInstance);
-            rootGroup.setDaemon(true);
-        }
-
-        if (isPrefetch &&
-            (prefetchGroup == null || prefetchGroup.isDestroyed())) {
-            prefetchGroup = new ThreadGroup(rootGroup,
-                                            nameOfThisInstance + "Prefetch");
-            prefetchGroup.setDaemon(true);
-        }
-
-        if (!isPrefetch &&
-            (standardGroup == null || standardGroup.isDestroyed())) {
-            standardGroup = new ThreadGroup(rootGroup,
-                                            nameOfThisInstance + "Standard");
-            standardGroup.setDaemon(true);
-        }
-
-        LinkedList<Thread> thr = getWorkers(isPrefetch);
-
-        for(Thread t : thr) {
-            if (!t.isAlive())
-                thr.remove(t);
-        }
-
-        if (isPrefetch)
-            numPrefetchThreads = thr.size();
-        else
-            numWorkerThreads = thr.size();
-
+    public int getQueueDepth(Lane lane) {
+        return laneStatistics[lane.ordinal()].depth.get();
     }
 
     /**
-     * Returns the effective number of threads of the specified type.
-     * This method also updates the number and priority of threads of
-     * the specified type according to the global settings. This method
-     * may add <code>WorkerThread.TERMINATE</code>s to the appropriate
-     * queue if there are too many effective threads.
+     * Returns the number of jobs of a lane computed so far.
      */
-    private int getNumThreads(boolean isPrefetch) {
-        createThreadGroup(isPrefetch);
-
-        // Local variables.
-        LinkedList<Thread> thr = getWorkers(isPrefetch);
-        int nthr;
-        final int prll;
-        final int prty;
-
-        // Set local variables depending on the thread type.
-        if(isPrefetch) {
-            nthr = numPrefetchThreads;
-            prll = prefetchParallelism;
-            prty = prefetchPriority;
-        } else {
-            nthr = numWorkerThreads;
-            prll = parallelism;
-            prty = priority;
-        }
-
-        // Update priority if it has changed.
-        if(nthr > 0 &&
-           (thr.get(0)).getPriority() != prty) {
-            for (Thread t : thr) {
-                if (t != null && t.getThreadGroup() != null) {
-                    t.setPriority(prty);
-                }
-            }
-        }
-
-        if(nthr < prll) {
-            // Not enough processing threads.
-            // Add more threads at current priority.
-            while(nthr < prll) {
-                Thread t =
-                        new WorkerThread(isPrefetch ? prefetchGroup : standardGroup,
-                                         this, isPrefetch);
-
-                t.setPriority(prty);
-                thr.add(t);
-                nthr++;
-            }
-        } else {
-            // Too many processing threads: queue WorkerThread.TERMINATEs.
-            // WorkerThread will remove itself later from the appropriate
-            // ArrayList.
-            while(nthr > prll) {
-                addJob(WorkerThread.TERMINATE, isPrefetch);
-                nthr--;
-            }
-        }
-
-        // Update the number of effective threads.
-        if(isPrefetch) {
-            numPrefetchThreads = nthr;
-        } else {
-            numWorkerThreads = nthr;
-        }
+    public long getCompletedJobs(Lane lane) {
+        return laneStatistics[lane.ordinal()].completed.sum();
+    }
 
-        return nthr;
+    /**
+     * Returns the number of jobs of a lane cancelled before they started.
+     */
+    public long getCancelledJobs(Lane lane) {
+        return laneStatistics[lane.ordinal()].cancelled.sum();
     }
 
-    /** Returns the appropriate worker list. */
-    LinkedList<Thread> getWorkers(boolean isPrefetch) {
-        return isPrefetch ? workers : prefetchWorkers;
+    /**
+     * Returns the average time, in milliseconds, the jobs of a lane waited
+     * before being computed.
+     */
+    public double getAverageQueueTime(Lane lane) {
+        final LaneStatistics stats = laneStatistics[lane.ordinal()];
+        final long completed = stats.completed.sum();
+        return completed == 0 ? 0 : stats.queueNanos.sum() / (1e6 * completed);
     }
 
-    /** Returns the appropriate queue. */
-    LinkedList<Object> getQueue(boolean isPrefetch) {
-        return isPrefetch ? prefetchQueue : queue;
+    /**
+     * Returns the average time, in milliseconds, taken to compute a job of a
+     * lane.
+     */
+    public double getAverageComputeTime(Lane lane) {
+        final LaneStatistics stats = laneStatistics[lane.ordinal()];
+        final long completed = stats.completed.sum();
+        return completed == 0 ? 0 : stats.computeNanos.sum() / (1e6 * completed);
     }
 
-    /** Append a job to the appropriate queue. */
-    private void addJob(Object job, boolean isPrefetch) {
-        if(job == null ||
-           (job != WorkerThread.TERMINATE && !(job instanceof Job))) {
-            // Programming error: deliberately no message.
-            throw new IllegalArgumentException();
+    /**
+     * Resets the job counters and latencies of all lanes; queue depths are
+     * not affected.
+     */
+    public void resetStatistics() {
+        for (LaneStatistics stats : laneStatistics) {
+            stats.completed.reset();
+            stats.cancelled.reset();
+            stats.queueNanos.reset();
+            stats.computeNanos.reset();
         }
+    }
 
-        final LinkedList<Object> jobQueue = getQueue(isPrefetch);
-        if(isPrefetch ||
-           jobQueue.isEmpty() ||
-           job instanceof RequestJob) {
-            // Append job to queue.
-            jobQueue.addLast(job);
-        } else {
-            // If the queue is non-empty or the job is a TileJob
-            // insert the job after the last TileJob in the queue.
-            boolean inserted = false;
-            for(int idx = jobQueue.size() - 1; idx >= 0; idx--) {
-                if(jobQueue.get(idx) instanceof TileJob) {
-                    jobQueue.add(idx+1, job);
-                    inserted = true;
-                    break;
-                }
-            }
-            if(!inserted) {
-                jobQueue.addFirst(job);
-            }
+    /** Returns a string representation of the lane statistics. */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(nameOfThisInstance);
+        sb.append(": parallelism = ").append(parallelism);
+        for (Lane lane : Lane.values()) {
+            sb.append(String.format(
+                "%n  %-9s depth: %4d, done: %6d, cancelled: %6d, queued: %8.2fms, computed: %8.2fms",
+                lane, getQueueDepth(lane), getCompletedJobs(lane),
+                getCancelledJobs(lane), getAverageQueueTime(lane),
+                getAverageComputeTime(lane)
+            ));
         }
-        jobQueue.notify();
+        return sb.toString();
     }
 
-    /** Queue WorkerThread.TERMINATEs to all workers. */
+    /** Shuts the worker pool down. */
+    @Override
     protected void finalize() throws Throwable {
-        terminateAll(false);
-        terminateAll(true);
-        super.finalize();
-    }
-
-    /** Queue WorkerThread.TERMINATEs to all appropriate workers. */
-    private void terminateAll(boolean isPrefetch) {
-        synchronized(getWorkers(isPrefetch)) {
-            int numThreads = isPrefetch ?
-                numPrefetchThreads : numWorkerThreads;
-            for(int i = 0; i < numThreads; i++) {
-                addJob(WorkerThread.TERMINATE, isPrefetch);
-                if(isPrefetch) {
-                    numPrefetchThreads--;
-                } else {
-                    numWorkerThreads--;
-                }
+        synchronized (this) {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
+        super.finalize();
     }
 
     void sendExceptionToListener(String message, Throwable e) {
@@ -0,0 +1,115 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.jai.utils;
+
+import javax.media.jai.PlanarImage;
+import java.awt.*;
+import java.awt.image.Raster;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Full resolution histograms of rectangles of a tiled image, built from
+ * per-tile histograms.
+ * <p>
+ * The histogram of each tile is computed the first time the tile is needed
+ * and kept until a different image is asked for, since a rendering's tiles
+ * never change.  A histogram of any rectangle then costs one merge per tile
+ * it covers, plus a pass over the parts of the tiles on its edges.
+ */
+public final class TileHistograms {
+
+    /**
+     * @param binTable The bin of each 16-bit sample value.
+     * @param numBins The number of bins.
+     */
+    public TileHistograms(int[] binTable, int numBins) {
+        this.binTable = binTable;
+        this.numBins = numBins;
+    }
+
+    /**
+     * Computes the histogram of a rectangle of an image.
+     *
+     * @param image The image, whose samples are at most 16 bits.
+     * @param rect The rectangle, clipped to the image bounds.
+     * @return Returns the histogram, indexed by band then bin.
+     */
+    public synchronized int[][] getBins(PlanarImage image, Rectangle rect) {
+        if (image != this.image) {
+            this.image = image;
+            tiles.clear();
+        }
+        final int bands = image.getSampleModel().getNumBands();
+        final int[][] bins = new int[bands][numBins];
+
+        final Rectangle bounds = rect.intersection(image.getBounds());
+        if (bounds.isEmpty())
+            return bins;
+
+        final int minTileX = image.XToTileX(bounds.x);
+        final int maxTileX = image.XToTileX(bounds.x + bounds.width - 1);
+        final int minTileY = image.YToTileY(bounds.y);
+        final int maxTileY = image.YToTileY(bounds.y + bounds.height - 1);
+
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                final Rectangle tileRect =
+                    image.getTileRect(tx, ty).intersection(image.getBounds());
+
+                if (bounds.contains(tileRect)) {
+                    final Point key = new Point(tx, ty);
+                    int[][] tileBins = tiles.get(key);
+                    if (tileBins == null) {
+                        final Raster tile = image.getTile(tx, ty);
+                        if (tile == null)
+                            continue;
+                        tileBins = new int[bands][numBins];
+                        accumulate(tile, tileRect, tileBins);
+                        tiles.put(key, tileBins);
+                    }
+                    for (int c = 0; c < bands; c++) {
+                        final int[] src = tileBins[c];
+                        final int[] dst = bins[c];
+                        for (int i = 0; i < numBins; i++)
+                            dst[i] += src[i];
+                    }
+                } else {
+                    final Raster tile = image.getTile(tx, ty);
+                    if (tile != null)
+                        accumulate(tile, tileRect.intersection(bounds), bins);
+                }
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * Forgets the tile histograms of the current image.
+     */
+    public synchronized void clear() {
+        image = null;
+        tiles.clear();
+    }
+
+    private void accumulate(Raster raster, Rectangle rect, int[][] bins) {
+        final int bands = bins.length;
+        final int width = rect.width;
+        int[] row = null;
+
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            row = raster.getPixels(rect.x, y, width, 1, row);
+            for (int c = 0; c < bands; c++) {
+                final int[] bin = bins[c];
+                for (int i = c; i < width * bands; i += bands)
+                    bin[binTable[row[i] & 0xFFFF]]++;
+            }
+        }
+    }
+
+    private final int[] binTable;
+    private final int numBins;
+
+    private PlanarImage image;
+    private final Map<Point, int[][]> tiles = new HashMap<Point, int[][]>();
+}
@@ -4,15 +4,14 @@ package com.lightcrafts.model.ImageEditor;
 
 import com.lightcrafts.jai.JAIContext;
 import com.lightcrafts.jai.utils.Functions;
+import com.lightcrafts.jai.utils.TileHistograms;
 import com.lightcrafts.model.Preview;
 import com.lightcrafts.model.Region;
 
-import javax.media.jai.Histogram;
 import javax.media.jai.PlanarImage;
 import java.awt.*;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.Raster;
 
 import static com.lightcrafts.model.ImageEditor.Locale.LOCALE;
 
@@ -79,8 +78,12 @@ public class HistogramPreview extends Preview implements PaintListener {
 
     @Override
     public void setSelected(Boolean selected) {
-        if (!selected)
-            bins = null;
+        if (!selected) {
+            synchronized (this) {
+                bins = null;
+            }
+            tileHistograms.clear();
+        }
     }
 
     @Override
@@ -179,93 +182,87 @@ public class HistogramPreview extends Preview implements PaintListener {
         }
     }
 
-    private static float[] logTable = new float[0x10000];
+    private static final int NUM_BINS = 256;
+
+    /**
+     * The bin of each 16-bit sample, on a log scale over the top 8 stops.
+     */
+    private static final int[] binTable = new int[0x10000];
 
     static {
-        for (int i = 0; i < 0x10000; i++)
-            logTable[i] = (float) Math.log1p(i);
+        final double log2 = Math.log(2);
+        for (int i = 0; i < 0x10000; i++) {
+            int v = (int) (511 * (float) Math.log1p(i) / (16 * log2));
+            binTable[i] = v > 255 ? v - 256 : 0;
+        }
     }
 
-    private synchronized void computeHistogram(Rectangle visibleRect, PlanarImage image) {
-        int channels = image.getSampleModel().getNumBands();
-
-        Histogram hist = new Histogram(256, 256, 512, channels);
-
-        bins = hist.getBins();
-
-        int[] pixel = null;
-
-        int maxPixels = 256;
-        int incX = visibleRect.width >= 2 * maxPixels ? visibleRect.width / maxPixels : 1;
-        int incY = visibleRect.height >= 2 * maxPixels ? visibleRect.height / maxPixels : 1;
-
-        double log2 = Math.log(2);
+    private final TileHistograms tileHistograms = new TileHistograms(binTable, NUM_BINS);
 
-        int minTileX = image.XToTileX(visibleRect.x);
-        int maxTileX = image.XToTileX(visibleRect.x + visibleRect.width - 1);
-        int minTileY = image.YToTileY(visibleRect.y);
-        int maxTileY = image.YToTileY(visibleRect.y + visibleRect.height - 1);
+    private void computeHistogram(Rectangle visibleRect, PlanarImage image) {
+        int[][] newBins = tileHistograms.getBins(image, visibleRect);
 
-        for (int tx = minTileX; tx <= maxTileX; tx++) {
-            for (int ty = minTileY; ty <= maxTileY; ty++) {
-                Raster raster = image.getTile(tx, ty);
-
-                int minX = Math.max(visibleRect.x, raster.getMinX());
-                int maxX = Math.min(visibleRect.x + visibleRect.width, raster.getMinX() + raster.getWidth());
-                int minY = Math.max(visibleRect.y, raster.getMinY());
-                int maxY = Math.min(visibleRect.y + visibleRect.height, raster.getMinY() + raster.getHeight());
-
-                for (int x = minX; x < maxX; x+=incX) {
-                    for (int y = minY; y < maxY; y+=incY) {
-                        pixel = raster.getPixel(x, y, pixel);
-                        for (int c = 0; c < channels; c++) {
-                            int v = (int) (511 * logTable[pixel[c]] / (16 * log2));
-                            if (v > 255)
-                                bins[c][v - 256]++;
-                            else
-                                bins[c][0]++;
-                        }
-                    }
-                }
-            }
+        synchronized (this) {
+            bins = newBins;
         }
-
-        bins = hist.getBins();
     }
 
+    /**
+     * How long an idle Histogrammer waits for the next view before quitting.
+     */
+    private static final long HISTOGRAMMER_IDLE_MILLIS = 30000;
+
     private class Histogrammer extends Thread {
         PlanarImage image;
-        PlanarImage nextImage = null;
         Rectangle visibleRect;
+        boolean done = false;
 
-        Histogrammer(Rectangle visibleRect, PlanarImage image) {
+        Histogrammer() {
             super("Histogram Preview Histogrammer");
-            this.visibleRect = visibleRect;
-            this.image = image;
-        }
-
-        synchronized void nextView(Rectangle visibleRect, PlanarImage image) {
-            this.visibleRect = visibleRect;
-            nextImage = image;
+            setDaemon(true);
         }
 
-        synchronized private boolean getNextView() {
-            if (nextImage != null) {
-                image = nextImage;
-                nextImage = null;
-                return true;
-            } else
+        /**
+         * Hands the next view to this Histogrammer, replacing a pending one.
+         *
+         * @return Returns false if this Histogrammer has quit.
+         */
+        synchronized boolean nextView(Rectangle visibleRect, PlanarImage image) {
+            if (done)
                 return false;
+            this.visibleRect = visibleRect;
+            this.image = image;
+            notify();
+            return true;
         }
 
         @Override
         public void run() {
-            do {
+            while (true) {
+                PlanarImage nextImage;
+                Rectangle nextRect;
+                synchronized (this) {
+                    if (image == null) {
+                        try {
+                            wait(HISTOGRAMMER_IDLE_MILLIS);
+                        }
+                        catch (InterruptedException e) {
+                            // quit below
+                        }
+                    }
+                    if (image == null) {
+                        done = true;
+                        return;
+                    }
+                    nextImage = image;
+                    nextRect = visibleRect;
+                    image = null;
+                }
                 if (getSize().width > 0 && getSize().height > 0) {
-                    computeHistogram(visibleRect, image);
+                    computeHistogram(nextRect, nextImage);
                     repaint();
                 }
-            } while (getNextView());
+            }
         }
     }
 
@@ -276,11 +273,11 @@ public class HistogramPreview extends Preview implements PaintListener {
         Dimension previewDimension = getSize();
 
         if (previewDimension.getHeight() > 1 && previewDimension.getWidth() > 1) {
-            if (histogrammer == null || !histogrammer.isAlive()) {
-                histogrammer = new Histogrammer(visibleRect, image);
-                histogrammer.start();
-            } else
+            if (histogrammer == null || !histogrammer.nextView(visibleRect, image)) {
+                histogrammer = new Histogrammer();
                 histogrammer.nextView(visibleRect, image);
+                histogrammer.start();
+            }
         }
     }
 }
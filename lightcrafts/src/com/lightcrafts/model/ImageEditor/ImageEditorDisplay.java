@@ -26,7 +26,10 @@ import java.awt.event.ComponentListener;
 import java.awt.geom.AffineTransform;
 import java.awt.image.*;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -122,6 +125,7 @@ public class ImageEditorDisplay extends JPanel {
     }
 
     public void dispose() {
+        cancelCoarsePass();
         if (source != null) {
             source.removeTileComputationListener(tileManager);
             tileManager.cancelTiles(source, epoch);
@@ -153,6 +157,10 @@ public class ImageEditorDisplay extends JPanel {
         epoch++;
         source.addTileComputationListener(tileManager);
 
+        cancelCoarsePass();
+        epochStart = System.currentTimeMillis();
+        epochPainted = false;
+
         int maxTileX = source.getMaxTileX();
         int maxTileY = source.getMaxTileY();
         validImageBackground = new boolean[maxTileX+1][maxTileY+1];
@@ -383,6 +391,11 @@ public class ImageEditorDisplay extends JPanel {
             return;
         }
 
+        // the coarse rendering of the current image beats an old tile
+        if (!validImageBackground[tx][ty] && drawCoarseTile(g2d)) {
+            return;
+        }
+
         // if we don't have a fresh tile, try and see if we have an old one around
         val backgroundTileCache = backgroundCache.get(new CacheKey(tx, ty));
         if (backgroundTileCache != null) {
@@ -422,6 +435,13 @@ public class ImageEditorDisplay extends JPanel {
             computingTiles = true;
             tileManager.queueTiles(source, epoch, dirtyTiles, synchronizedImage, false, tileHandler);
         } else if (tileManager.pendingTiles(source, epoch) == 0) {
+            if (!epochPainted) {
+                epochPainted = true;
+                if (DEBUG_PROGRESSIVE)
+                    System.out.println("ImageEditorDisplay: full frame in "
+                                       + (System.currentTimeMillis() - epochStart) + "ms"
+                                       + (PROGRESSIVE ? "" : " (progressive display off)"));
+            }
             if (paintListener != null) {
                 val endGetTiles = System.currentTimeMillis();
                 val time = (computingTiles && synchronizedImage && startGetTiles > 0)
@@ -433,4 +453,283 @@ public class ImageEditorDisplay extends JPanel {
             computingTiles = false;
         }
     }
+
+    /*
+        Progressive display: after a new image is set, the visible part of a
+        coarse rendering of the same pipeline is computed on the CoarseRenderer
+        thread and shown upsampled until the full resolution tiles come in.
+    */
+
+    private static final boolean PROGRESSIVE =
+            !"false".equals(System.getProperty("lightcrafts.progressive"));
+
+    private static final boolean DEBUG_PROGRESSIVE = Boolean.getBoolean("lightcrafts.debug.progressive");
+
+    // With fewer visible tiles than this the full resolution comes in fast enough
+    private static final int MIN_PROGRESSIVE_TILES = 4;
+
+    private static final CoarseRenderer coarseRenderer = new CoarseRenderer();
+
+    private CoarsePass coarsePass = null;
+
+    // When the current epoch started and whether all of its visible tiles were painted
+    private long epochStart;
+    private boolean epochPainted = true;
+
+    /**
+     * The ratio between the current image and the coarse rendering to show
+     * while its tiles are computed, or 0 if a coarse pass isn't worth it.
+     */
+    synchronized int getCoarseRatio() {
+        if (!PROGRESSIVE || source == null) {
+            return 0;
+        }
+        val visibleRect = HiDpi.imageSpaceRectFrom(getVisibleRect()).intersection(source.getBounds());
+        if (visibleRect.isEmpty()) {
+            return 0;
+        }
+        val tileIndices = source.getTileIndices(visibleRect);
+        if (tileIndices == null || tileIndices.length < MIN_PROGRESSIVE_TILES) {
+            return 0;
+        }
+        return visibleRect.width * visibleRect.height > 16 * JAIContext.TILE_WIDTH * JAIContext.TILE_HEIGHT ? 8 : 4;
+    }
+
+    /**
+     * Sets the coarse rendering of the current image and starts computing
+     * its visible part.
+     */
+    synchronized void setCoarseImage(PlanarImage image) {
+        cancelCoarsePass();
+        if (image == null || source == null) {
+            return;
+        }
+
+        // coarse image to display image coordinates
+        val scaleX = source.getWidth() / (double) image.getWidth();
+        val scaleY = source.getHeight() / (double) image.getHeight();
+        val transform = AffineTransform.getTranslateInstance(source.getMinX(), source.getMinY());
+        transform.scale(scaleX, scaleY);
+        transform.translate(-image.getMinX(), -image.getMinY());
+
+        // the visible area in the coarse image, with a pixel around for the interpolation
+        val visibleRect = HiDpi.imageSpaceRectFrom(getVisibleRect());
+        val x0 = (int) Math.floor((visibleRect.x - source.getMinX()) / scaleX) + image.getMinX() - 1;
+        val y0 = (int) Math.floor((visibleRect.y - source.getMinY()) / scaleY) + image.getMinY() - 1;
+        val x1 = (int) Math.ceil((visibleRect.x + visibleRect.width - source.getMinX()) / scaleX) + image.getMinX() + 1;
+        val y1 = (int) Math.ceil((visibleRect.y + visibleRect.height - source.getMinY()) / scaleY) + image.getMinY() + 1;
+        val coarseArea = new Rectangle(x0, y0, x1 - x0, y1 - y0).intersection(image.getBounds());
+        if (coarseArea.isEmpty()) {
+            return;
+        }
+
+        coarsePass = new CoarsePass(this, epoch, image, coarseArea, transform);
+        coarseRenderer.submit(coarsePass);
+    }
+
+    private void cancelCoarsePass() {
+        if (coarsePass != null) {
+            coarsePass.cancel();
+            coarsePass = null;
+        }
+    }
+
+    private synchronized void coarsePassDone(CoarsePass pass) {
+        if (pass != coarsePass || pass.cancelled) {
+            return;
+        }
+        if (DEBUG_PROGRESSIVE) {
+            System.out.println("ImageEditorDisplay: coarse frame in "
+                               + (System.currentTimeMillis() - epochStart) + "ms; " + coarseRenderer);
+        }
+        repaint();
+    }
+
+    /**
+     * Draws the coarse rendering of the current image if it covers the clip.
+     */
+    private boolean drawCoarseTile(Graphics2D g2d) {
+        val pass = coarsePass;
+        if (pass == null || pass.epoch != epoch || pass.result == null
+                || !pass.displayArea.contains(g2d.getClipBounds())) {
+            return false;
+        }
+        val interpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(pass.result, pass.resultTransform, this);
+        if (interpolation != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+        return true;
+    }
+
+    /**
+     * The visible area of a coarse rendering, computed for one epoch.  The
+     * coarse image is disposed once the area is copied, or when the pass is
+     * cancelled before that.
+     */
+    private static final class CoarsePass {
+        final ImageEditorDisplay display;
+        final int epoch;
+        final PlanarImage image;
+        final Rectangle area;
+        final AffineTransform transform;
+        volatile boolean cancelled = false;
+
+        // Whether the CoarseRenderer is computing the pass, it disposes of the image then
+        private boolean rendering = false;
+        private boolean disposed = false;
+
+        // Set by the CoarseRenderer once the area is computed
+        volatile BufferedImage result = null;
+        volatile AffineTransform resultTransform = null;
+        volatile Rectangle displayArea = null;
+
+        CoarsePass(ImageEditorDisplay display, int epoch, PlanarImage image,
+                   Rectangle area, AffineTransform transform) {
+            this.display = display;
+            this.epoch = epoch;
+            this.image = image;
+            this.area = area;
+            this.transform = transform;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (!rendering) {
+                dispose();
+            }
+        }
+
+        synchronized boolean startRendering() {
+            if (cancelled) {
+                return false;
+            }
+            rendering = true;
+            return true;
+        }
+
+        synchronized void renderingDone() {
+            rendering = false;
+            EventQueue.invokeLater(this::dispose);
+        }
+
+        private synchronized void dispose() {
+            if (!disposed) {
+                disposed = true;
+                image.dispose();
+            }
+        }
+
+        /**
+         * Copies the area a tile at a time, so that computing the coarse
+         * pipeline can be abandoned as soon as a newer epoch starts.
+         */
+        boolean render() {
+            val sampleModel = image.getSampleModel().createCompatibleSampleModel(area.width, area.height);
+            val raster = Raster.createWritableRaster(sampleModel, new Point(area.x, area.y));
+
+            val tileIndices = image.getTileIndices(area);
+            if (tileIndices == null) {
+                return false;
+            }
+            for (val tileIndex : tileIndices) {
+                if (cancelled) {
+                    return false;
+                }
+                raster.setRect(image.getTile(tileIndex.x, tileIndex.y));
+            }
+
+            val coarseImage = new BufferedImage(image.getColorModel(),
+                                                raster.createWritableTranslatedChild(0, 0),
+                                                false, null);
+            val imageTransform = new AffineTransform(transform);
+            imageTransform.translate(area.x, area.y);
+
+            displayArea = imageTransform.createTransformedShape(
+                    new Rectangle(0, 0, area.width, area.height)).getBounds();
+            resultTransform = imageTransform;
+            result = Functions.toFastBufferedImage(coarseImage);
+            return !cancelled;
+        }
+    }
+
+    /**
+     * Computes the coarse passes of all the displays on one long-lived
+     * thread.  A display has at most one pass waiting, the latest, and a
+     * pass is abandoned at its next tile once its epoch is over.
+     */
+    private static final class CoarseRenderer extends Thread {
+        private final Map<ImageEditorDisplay, CoarsePass> pending = new LinkedHashMap<>();
+
+        private long passes, cancellations, renderTime;
+
+        CoarseRenderer() {
+            super("ImageEditorDisplay Coarse Renderer");
+            setDaemon(true);
+            start();
+        }
+
+        synchronized void submit(CoarsePass pass) {
+            pending.put(pass.display, pass);
+            notify();
+        }
+
+        private synchronized CoarsePass take() throws InterruptedException {
+            while (pending.isEmpty())
+                wait();
+            Iterator<CoarsePass> i = pending.values().iterator();
+            val pass = i.next();
+            i.remove();
+            return pass;
+        }
+
+        private synchronized void rendered(long millis) {
+            passes++;
+            renderTime += millis;
+        }
+
+        private synchronized void cancelled() {
+            cancellations++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return passes + " coarse passes"
+                   + (passes > 0 ? " (avg " + renderTime / passes + "ms)" : "")
+                   + ", " + cancellations + " cancelled";
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                CoarsePass pass;
+                try {
+                    pass = take();
+                }
+                catch (InterruptedException e) {
+                    continue;
+                }
+                if (!pass.startRendering()) {
+                    cancelled();
+                    continue;
+                }
+                try {
+                    val start = System.currentTimeMillis();
+                    if (pass.render()) {
+                        rendered(System.currentTimeMillis() - start);
+                        EventQueue.invokeLater(() -> pass.display.coarsePassDone(pass));
+                    } else {
+                        cancelled();
+                    }
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                finally {
+                    pass.renderingDone();
+                }
+            }
+        }
+    }
 }
@@ -18,7 +18,8 @@ import com.lightcrafts.jai.JAIContext;
 import com.lightcrafts.jai.operator.LCMSColorConvertDescriptor;
 import com.lightcrafts.jai.opimage.CachedImage;
 import com.lightcrafts.jai.utils.Functions;
-import com.lightcrafts.jai.utils.LCTileCache;
+import com.lightcrafts.jai.utils.LCSpillingTileCache;
+import com.lightcrafts.jai.utils.LCTileScheduler;
 import javax.media.jai.*;
 import com.lightcrafts.model.*;
 import com.lightcrafts.platform.Platform;
@@ -276,6 +277,8 @@ public class ImageEditorEngine implements Engine {
         canvas = null;
         metadata = null;
         rendering = null;
+        coarseRendering = null;
+        coarseOperations = null;
         listeners = null;
         previews = null;
 
@@ -589,6 +592,71 @@ public class ImageEditorEngine implements Engine {
 
         val finalImage = scaleFinal(previewImage);
         canvas.set(finalImage, isLive);
+
+        // Live updates too: the coarse pass is dropped a tile at a time as soon
+        // as the next update comes in
+        val coarseRatio = canvas.getCoarseRatio();
+        if (coarseRatio > 0)
+            canvas.setCoarseImage(renderCoarse(coarseRatio));
+    }
+
+    /*
+        The pipeline rendered at a fraction of the display scale, shown by the
+        canvas while the tiles of the full resolution image are computed.
+    */
+    private PlanarImage renderCoarse(int ratio) {
+        val scale = Math.min(rendering.getScaleFactor(), 1f) / ratio;
+        syncCoarseRendering(rendering.getCropBounds(), scale);
+
+        return Functions.fromUShortToByte(Functions.toColorSpace(coarseRendering.getRendering(!engineActive),
+                                                                 JAIContext.systemColorSpace,
+                                                                 this.proofProfile,
+                                                                 null,
+                                                                 this.proofIntent,
+                                                                 null),
+                                          null);
+    }
+
+    /*
+        The clone of the rendering behind the coarse pass is kept across updates,
+        only the operations whose settings changed since are cloned again, so
+        that during a slider drag the upstream operations keep their JAI graphs
+        and their cached tiles. A new clone is taken when the operations, the
+        crop or the scale change.
+    */
+    private Rendering coarseRendering = null;
+    private OperationImpl[] coarseOperations = null;
+    private long[] coarseVersions = null;
+
+    private void syncCoarseRendering(CropBounds cropBounds, float scale) {
+        val count = rendering.getOperationCount();
+        boolean reclone = coarseRendering == null
+                || coarseOperations.length != count
+                || coarseRendering.getScaleFactor() != scale
+                || !coarseRendering.getCropBounds().equals(cropBounds);
+        for (int i = 0; i < count && !reclone; i++)
+            reclone = coarseOperations[i] != rendering.getOperation(i);
+
+        if (reclone) {
+            coarseRendering = rendering.clone();
+            coarseRendering.setCropAndScale(cropBounds, scale);
+            coarseOperations = new OperationImpl[count];
+            coarseVersions = new long[count];
+            for (int i = 0; i < count; i++) {
+                coarseOperations[i] = (OperationImpl) rendering.getOperation(i);
+                coarseVersions[i] = coarseOperations[i].getVersion();
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            val op = coarseOperations[i];
+            if (op.getVersion() != coarseVersions[i]) {
+                // The replaced clone may still be computing a cancelled coarse pass, it is not disposed
+                coarseRendering.removeOperation(i);
+                coarseRendering.addOperation(i, ((BlendedOperation) op).clone(coarseRendering));
+                coarseVersions[i] = op.getVersion();
+            }
+        }
     }
 
     /*
@@ -615,8 +683,8 @@ public class ImageEditorEngine implements Engine {
             // }
 
             val tileCache = JAI.getDefaultInstance().getTileCache();
-            if (tileCache instanceof LCTileCache) {
-                val tc = (LCTileCache) tileCache;
+            if (tileCache instanceof LCSpillingTileCache) {
+                val tc = (LCSpillingTileCache) tileCache;
                 if (tilesRead != tc.tilesRead()
                         || tilesWritten != tc.tilesWritten()
                         || tilesOnDisk != tc.tilesOnDisk()) {
@@ -862,7 +930,12 @@ public class ImageEditorEngine implements Engine {
         // LZN editor state data
         val lzn = exportOptions.getAuxData();
         val imageInfo = (m_exportInfo != null) ? m_exportInfo : m_imageInfo;
-        exportType.putImage(imageInfo, exportImage, exportOptions, lzn, thread);
+        val lane = LCTileScheduler.setCurrentLane(LCTileScheduler.Lane.EXPORT);
+        try {
+            exportType.putImage(imageInfo, exportImage, exportOptions, lzn, thread);
+        } finally {
+            LCTileScheduler.setCurrentLane(lane);
+        }
     }
 
     Color getPixelValue(final int x, final int y) {
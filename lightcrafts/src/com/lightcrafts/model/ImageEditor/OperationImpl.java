@@ -58,6 +58,9 @@ abstract class OperationImpl implements Operation {
     protected boolean changed;
     private boolean selected = false;
 
+    // Bumped whenever the settings or the region change, see PipelineCache
+    private long version = 0;
+
     // The depth of the current batch:
     int batch;
 
@@ -155,6 +158,7 @@ abstract class OperationImpl implements Operation {
     // Whenever Operation parameters change, the Engine must update:
     void settingsChanged() {
         changed = true;
+        version++;
         rendering.update(this, batch != 0);
     }
 
@@ -162,6 +166,7 @@ abstract class OperationImpl implements Operation {
     public void setRegion(Region newRegion) {
         region = newRegion;
         regionChanged = true;
+        version++;
 
         // System.out.println("batch: " + batch + ", interactiveRegionUpdates: " + interactiveRegionUpdates);
 
@@ -193,6 +198,10 @@ abstract class OperationImpl implements Operation {
     protected abstract void updateOp(Transform op);
     protected abstract Transform createOp(PlanarImage source);
 
+    long getVersion() {
+        return version;
+    }
+
     @Override
     public void dispose() {
         if (operation != null)
@@ -0,0 +1,105 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.model.ImageEditor;
+
+import com.lightcrafts.jai.JAIContext;
+import com.lightcrafts.model.ImageEditor.BlendedOperation.BlendedTransform.CachedImage;
+
+import javax.media.jai.TileCache;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The intermediate results of a {@link Rendering} pipeline.
+ * <p>
+ * Every operation output is identified by a fingerprint chaining the
+ * fingerprint of its upstream stage with the identity and the settings
+ * version of the operation. While the user drags a slider on operation N
+ * the outputs of operations 0..N-1 are handed out as the same
+ * {@link CachedImage} instances as long as their fingerprint holds, so that
+ * only operation N onward is rebuilt and recomputed.
+ * <p>
+ * The tiles of the stages live in {@link JAIContext#fileCache}, owned by
+ * their {@link CachedImage}, so they share the budget and the eviction of all
+ * the other tiles. When the fingerprint of a stage changes its tiles are
+ * dropped from the cache at once instead of lingering until evicted.
+ */
+final class PipelineCache {
+    // Set to false to disable pinning altogether
+    static final String ENABLED_PROPERTY = "lightcrafts.pipelinecache";
+
+    private static final boolean ENABLED =
+            !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+    // For the Rendering clones, which render once and don't pin anything
+    static final PipelineCache DISABLED = new PipelineCache(false);
+
+    private final boolean enabled;
+
+    private final TileCache cache = JAIContext.fileCache;
+
+    private final Map<OperationImpl, Stage> stages =
+            new IdentityHashMap<OperationImpl, Stage>();
+
+    private static final class Stage {
+        final CachedImage image;
+        final long fingerprint;
+
+        Stage(CachedImage image, long fingerprint) {
+            this.image = image;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    PipelineCache() {
+        this(ENABLED);
+    }
+
+    private PipelineCache(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    static long fingerprint(long upstream, long value) {
+        // 64 bit mix, see the MurmurHash3 finalizer
+        long h = (upstream ^ value) * 0x9E3779B97F4A7C15L + upstream;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the pinned stage for the output of the given operation: the
+     * image handed out last time if the fingerprint didn't change, the new
+     * result otherwise, after dropping the tiles of the stale one.
+     */
+    synchronized CachedImage getStage(OperationImpl op, long fingerprint, CachedImage result) {
+        Stage stage = stages.get(op);
+        if (stage != null) {
+            if (stage.fingerprint == fingerprint)
+                return stage.image;
+            if (stage.image != result)
+                cache.removeTiles(stage.image);
+        }
+        stages.put(op, new Stage(result, fingerprint));
+        return result;
+    }
+
+    synchronized void removeStage(OperationImpl op) {
+        Stage stage = stages.remove(op);
+        if (stage != null)
+            cache.removeTiles(stage.image);
+    }
+
+    synchronized void clear() {
+        for (Stage stage : stages.values())
+            cache.removeTiles(stage.image);
+        stages.clear();
+    }
+}
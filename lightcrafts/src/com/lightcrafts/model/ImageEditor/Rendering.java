@@ -4,15 +4,14 @@
 package com.lightcrafts.model.ImageEditor;
 
 import com.lightcrafts.jai.JAIContext;
-import com.lightcrafts.jai.opimage.CachedImage;
 import com.lightcrafts.jai.utils.Functions;
 import com.lightcrafts.model.CropBounds;
+import com.lightcrafts.model.ImageEditor.BlendedOperation.BlendedTransform.CachedImage;
 import com.lightcrafts.model.Operation;
 import lombok.Getter;
 import lombok.val;
 
 import javax.media.jai.BorderExtender;
-import javax.media.jai.ImageLayout;
 import javax.media.jai.Interpolation;
 import javax.media.jai.JAI;
 import javax.media.jai.PlanarImage;
@@ -20,8 +19,6 @@ import javax.media.jai.RenderedOp;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 import java.awt.image.renderable.ParameterBlock;
 import java.util.LinkedList;
 
@@ -43,6 +40,10 @@ public class Rendering implements Cloneable {
     private LinkedList<Operation> pipeline = new LinkedList<Operation>();
     private ImagePyramid pyramid;
 
+    // Intermediate results of the operations upstream of the one being edited
+    private PipelineCache pipelineCache = new PipelineCache();
+    private OperationImpl editedOperation = null;
+
     public boolean cheapScale = false;
 
     private static final int MIP_SCALE_RATIO = 2;
@@ -55,6 +56,8 @@ public class Rendering implements Cloneable {
             object.inputTransform = buildTransform(true);
             object.transform = buildTransform(false);
             object.xformedSourceImage = null;
+            object.pipelineCache = PipelineCache.DISABLED;
+            object.editedOperation = null;
             object.pipeline = new LinkedList<Operation>();
             for (val op : pipeline) {
                 object.pipeline.add(((BlendedOperation) op).clone(object));
@@ -67,6 +70,8 @@ public class Rendering implements Cloneable {
     }
 
     void dispose() {
+        pipelineCache.clear();
+        editedOperation = null;
         if (pipeline != null) {
             while (!pipeline.isEmpty())
                 pipeline.removeLast().dispose();
@@ -79,7 +84,11 @@ public class Rendering implements Cloneable {
     }
 
     Operation removeOperation(int position) {
-        return pipeline.remove(position);
+        val op = (OperationImpl) pipeline.remove(position);
+        pipelineCache.removeStage(op);
+        if (op == editedOperation)
+            editedOperation = null;
+        return op;
     }
 
     public int indexOf(Operation op) {
@@ -90,6 +99,10 @@ public class Rendering implements Cloneable {
         return pipeline.get(index);
     }
 
+    int getOperationCount() {
+        return pipeline.size();
+    }
+
     public Rendering(PlanarImage sourceImage, ImageEditorEngine engine) {
         this.sourceImage = sourceImage;
         this.engine = engine;
@@ -104,6 +117,8 @@ public class Rendering implements Cloneable {
     }
 
     public void update(OperationImpl op, boolean isLive) {
+        // Pin the results of the operations upstream of op while it is being edited
+        editedOperation = op;
         if (engine != null) {
             engine.update(op, isLive);
         }
@@ -142,6 +157,7 @@ public class Rendering implements Cloneable {
                 xformedSourceImage.dispose();
                 xformedSourceImage = null;
             }
+            pipelineCache.clear();
         }
     }
 
@@ -152,6 +168,23 @@ public class Rendering implements Cloneable {
     }
 
     public PlanarImage getRendering(boolean inactive, int stopBefore) {
+        return cropSourceImage(renderPipeline(inactive, stopBefore, getPinBefore()));
+    }
+
+    // The operations upstream of the one being edited have their results pinned
+    private int getPinBefore() {
+        return pipelineCache.isEnabled() && pipeline != null && editedOperation != null
+               ? pipeline.indexOf(editedOperation)
+               : 0;
+    }
+
+    /*
+        Run the pipeline, the results of the operations before pinBefore are served
+        through the PipelineCache: as long as their fingerprint doesn't change the very
+        same images are handed to the downstream operations, so that these don't need
+        to be rebuilt and the upstream tiles don't need to be recomputed.
+    */
+    private PlanarImage renderPipeline(boolean inactive, int stopBefore, int pinBefore) {
         PlanarImage processedImage = getXformedSourceImage();
 
         if (pipeline == null) {
@@ -159,18 +192,29 @@ public class Rendering implements Cloneable {
             return processedImage;
         }
 
+        val scale = scaleFactor < 1 ? scaleFactor : 1;
+        long fingerprint = PipelineCache.fingerprint(inactive ? 1 : 0, Float.floatToIntBits(scale));
+        int index = 0;
+
         for (val op : pipeline) {
             val operation = (OperationImpl) op;
             if (stopBefore-- == 0)
                 break;
 
             if (operation.isActive() && !(inactive && operation.isDeactivatable())) {
-                val result = operation.render(processedImage, scaleFactor < 1 ? scaleFactor : 1);
-                if (result != null)
+                val result = operation.render(processedImage, scale);
+                fingerprint = PipelineCache.fingerprint(
+                        fingerprint,
+                        PipelineCache.fingerprint(System.identityHashCode(operation), operation.getVersion()));
+                if (index < pinBefore && result instanceof CachedImage) {
+                    processedImage = pipelineCache.getStage(operation, fingerprint, (CachedImage) result);
+                } else if (result != null) {
                     processedImage = result;
+                }
             }
+            index++;
         }
-        return cropSourceImage(processedImage);
+        return processedImage;
     }
 
     public void prefetch(Rectangle area) {
@@ -179,29 +223,11 @@ public class Rendering implements Cloneable {
             return;
         }
 
-        PlanarImage processedImage = cropSourceImage(getXformedSourceImage());
-
-        for (val operation : pipeline) {
-            if (!operation.isActive()) {
-                continue;
-            }
-            PlanarImage result = ((OperationImpl)operation).render(processedImage, scaleFactor < 1 ? scaleFactor : 1);
-            if (result == null) {
-                continue;
-            }
-            val indices = result.getTileIndices(area);
-            if (indices != null) {
-                val cachedResult = new CachedImage(new ImageLayout(result), JAIContext.fileCache);
-
-                result.prefetchTiles(indices);
-                for (val tile : indices) {
-                    Raster newTile = result.getTile(tile.x, tile.y);
-                    WritableRaster cachedTile = cachedResult.getWritableTile(tile.x, tile.y);
-                    Functions.copyData(cachedTile, newTile);
-                }
-                result = cachedResult;
-            }
-            processedImage = result;
+        // The tiles pulled by the last stage land in the tile cache
+        val image = renderPipeline(false, -1, getPinBefore());
+        val indices = image.getTileIndices(area);
+        if (indices != null) {
+            image.getTiles(indices);
         }
     }
 
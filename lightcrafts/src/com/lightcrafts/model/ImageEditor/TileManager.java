@@ -2,6 +2,8 @@
 
 package com.lightcrafts.model.ImageEditor;
 
+import com.lightcrafts.jai.utils.LCTileScheduler;
+
 import javax.media.jai.TileComputationListener;
 import javax.media.jai.TileRequest;
 import javax.media.jai.PlanarImage;
@@ -38,7 +40,13 @@ class PaintRequest implements PaintContext {
         this.tileHandler = handler;
         this.pendingTiles = tileIndices.length;
 
-        this.tileRequest = image.queueTiles(tileIndices);
+        final LCTileScheduler.Lane lane = LCTileScheduler.setCurrentLane(
+                prefetch ? LCTileScheduler.Lane.PREFETCH : LCTileScheduler.Lane.VIEWPORT);
+        try {
+            this.tileRequest = image.queueTiles(tileIndices);
+        } finally {
+            LCTileScheduler.setCurrentLane(lane);
+        }
         for (Point tileIndice : tileIndices)
             tiles.add(new Point(tileIndice.x, tileIndice.y));
     }
@@ -27,6 +27,10 @@ import java.awt.event.ComponentEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.*;
 import java.awt.image.renderable.ParameterBlock;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static com.lightcrafts.model.ImageEditor.Locale.LOCALE;
 
@@ -161,18 +165,6 @@ public class ZoneFinder extends Preview implements PaintListener {
             image = JAI.create("Scale", pb, JAIContext.noCacheHint);
         }
 
-        // avoid keeping references to the input image
-        if (image instanceof RenderedOp) {
-            RenderedOp ropImage = (RenderedOp) image;
-
-            SampleModel sm = ropImage.getSampleModel().createCompatibleSampleModel(image.getWidth(), image.getHeight());
-
-            WritableRaster wr = Raster.createWritableRaster(sm, new Point(ropImage.getMinX(), ropImage.getMinY()));
-            ropImage.copyData(wr);
-            image = new BufferedImage(ropImage.getColorModel(), wr.createWritableTranslatedChild(0, 0), false, null);
-            ropImage.dispose();
-        }
-
         /* image = Functions.toColorSpace(image, JAIContext.sRGBColorSpace, null);
 
         if (((PlanarImage) image).getSampleModel().getDataType() == DataBuffer.TYPE_USHORT)
@@ -263,17 +255,50 @@ public class ZoneFinder extends Preview implements PaintListener {
         return result;
     }
 
-    private RenderedImage segment(RenderedImage image) {
-        Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+    /**
+     * Copies an image a tile at a time, so that computing its pipeline can
+     * be abandoned when the view is superseded.
+     *
+     * @return Returns the image data translated to the origin, or null if
+     * the view was cancelled.
+     */
+    private static WritableRaster copyData(RenderedImage image, View view) {
+        SampleModel sm = image.getSampleModel().createCompatibleSampleModel(image.getWidth(), image.getHeight());
+        WritableRaster wr = Raster.createWritableRaster(sm, new Point(image.getMinX(), image.getMinY()));
+
+        for (int ty = image.getMinTileY(); ty < image.getMinTileY() + image.getNumYTiles(); ty++)
+            for (int tx = image.getMinTileX(); tx < image.getMinTileX() + image.getNumXTiles(); tx++) {
+                if (view.cancelled)
+                    return null;
+                wr.setRect(image.getTile(tx, ty));
+            }
+        return wr.createWritableTranslatedChild(0, 0);
+    }
+
+    /**
+     * The pixels last segmented, to skip segmenting them again.
+     */
+    private byte[] lastInput = null;
+
+    private RenderedImage segment(Raster input, ColorModel inputColorModel) {
+        Rectangle bounds = input.getBounds();
 
-        byte[] pixels = ((DataBufferByte) image.getData(bounds).getDataBuffer()).getData();
-        if (pixels.length != bounds.height * bounds.width * image.getSampleModel().getNumBands()) {
-            pixels = (byte[]) image.getData(bounds).getDataElements(bounds.x, bounds.y, bounds.width, bounds.height, null);
+        byte[] pixels = ((DataBufferByte) input.getDataBuffer()).getData();
+        if (pixels.length != bounds.height * bounds.width * input.getNumBands()) {
+            pixels = (byte[]) input.getDataElements(bounds.x, bounds.y, bounds.width, bounds.height, null);
         }
 
         if (pixels.length <= 0 || bounds.height <= 15 || bounds.width <= 15)
             return null;
 
+        // Nothing upstream of the view changed, e.g. only operations after the zone mapper or the focused zone
+        if (lastPreview != null && Arrays.equals(pixels, lastInput)
+            && lastPreview.getWidth() == bounds.width && lastPreview.getHeight() == bounds.height) {
+            segmenter.reused();
+            return !colorMode && ADJUST_GRAYSCALE ? requantize(lastPreview, currentFocusZone) : lastPreview;
+        }
+        lastInput = pixels.clone();
+
         pixels = Segment.segmentImage(pixels, colorMode ? 3 : 1, bounds.height, bounds.width);
 
         DataBufferByte data = new DataBufferByte(pixels, pixels.length);
@@ -281,7 +306,7 @@ public class ZoneFinder extends Preview implements PaintListener {
         WritableRaster raster;
         ColorModel colorModel;
         if (colorMode) {
-            colorModel = image.getColorModel();
+            colorModel = inputColorModel;
             raster = Raster.createInterleavedRaster(data, bounds.width, bounds.height, 3 * bounds.width, 3, new int[]{0, 1, 2}, null);
         } else {
             raster = Raster.createInterleavedRaster(data, bounds.width, bounds.height, bounds.width, 1, new int[]{0}, null);
@@ -300,44 +325,152 @@ public class ZoneFinder extends Preview implements PaintListener {
         return result;
     }
 
-    // TODO: this is ugly code, use a real queue
-    class Segmenter extends Thread {
-        RenderedImage image;
-        RenderedImage nextImage = null;
+    /**
+     * Segments a view on the Segmenter thread.
+     */
+    private void segment(View view) {
+        long start = System.currentTimeMillis();
+        WritableRaster input;
+        try {
+            if (getSize().width <= 0 || getSize().height <= 0)
+                return;
+            input = copyData(view.image, view);
+        }
+        finally {
+            view.dispose();
+        }
+        if (input == null) {
+            segmenter.cancelled();
+            return;
+        }
+        long copied = System.currentTimeMillis();
 
-        Segmenter(Rectangle visibleRect, PlanarImage image) {
-            super("ZoneFinder Histogrammer");
-            this.image = cropScaleGrayscale(visibleRect, image);
+        RenderedImage newZones = segment(input, view.image.getColorModel());
+        long done = System.currentTimeMillis();
+
+        if (view.cancelled) {
+            segmenter.cancelled();
+            return;
         }
+        segmenter.segmented(copied - start, done - copied);
 
-        synchronized void nextView(Rectangle visibleRect, PlanarImage image) {
-            nextImage = cropScaleGrayscale(visibleRect, image);
+        if (newZones != null) {
+            zones = newZones;
+            repaint();
         }
+    }
 
-        synchronized private boolean getNextView() {
-            if (nextImage != null) {
-                image = nextImage;
-                nextImage = null;
-                return true;
-            } else
-                return false;
+    /**
+     * A view to segment, the pipeline of which is set up on the event thread.
+     * The op that was rendered for the view, if any, is disposed once its
+     * pixels are copied or the view is dropped.
+     */
+    private static final class View {
+        final ZoneFinder finder;
+        final RenderedImage image;
+        private final RenderedOp op;
+        volatile boolean cancelled = false;
+
+        View(ZoneFinder finder, RenderedImage image, RenderedOp op) {
+            this.finder = finder;
+            this.image = image;
+            this.op = op;
+        }
+
+        void dispose() {
+            if (op != null)
+                EventQueue.invokeLater(op::dispose);
+        }
+    }
+
+    /**
+     * Segments the views of all the ZoneFinders on one long-lived thread.
+     * A ZoneFinder has at most one view waiting, the latest, and a newer
+     * view cancels the one being segmented at its next check.
+     */
+    private static final class Segmenter extends Thread {
+        private final Map<ZoneFinder, View> pending = new LinkedHashMap<ZoneFinder, View>();
+        private View current = null;
+
+        private long segmentations, cancellations, reuses;
+        private long copyTime, segmentTime;
+
+        Segmenter() {
+            super("ZoneFinder Segmenter");
+            setDaemon(true);
+            start();
+        }
+
+        synchronized void submit(View view) {
+            View dropped = pending.put(view.finder, view);
+            if (dropped != null)
+                dropped.dispose();
+            if (current != null && current.finder == view.finder)
+                current.cancelled = true;
+            notify();
+        }
+
+        private synchronized View take() throws InterruptedException {
+            while (pending.isEmpty())
+                wait();
+            Iterator<View> i = pending.values().iterator();
+            current = i.next();
+            i.remove();
+            return current;
+        }
+
+        synchronized void segmented(long copyMillis, long segmentMillis) {
+            segmentations++;
+            copyTime += copyMillis;
+            segmentTime += segmentMillis;
+            if (DEBUG)
+                System.out.println("ZoneFinder: copy " + copyMillis + "ms, segment " + segmentMillis + "ms; " + this);
+        }
+
+        synchronized void cancelled() {
+            cancellations++;
+        }
+
+        synchronized void reused() {
+            reuses++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return segmentations + " segmented"
+                   + (segmentations > 0 ? " (avg copy " + copyTime / segmentations
+                                          + "ms, segment " + segmentTime / segmentations + "ms)" : "")
+                   + ", " + cancellations + " cancelled, " + reuses + " reused";
         }
 
         @Override
         public void run() {
-            do {
-                if (getSize().width > 0 && getSize().height > 0) {
-                    RenderedImage newZones = segment(image);
-                    if (newZones != null) {
-                        zones = newZones;
-                        repaint();
+            while (true) {
+                View view;
+                try {
+                    view = take();
+                }
+                catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    view.finder.segment(view);
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                finally {
+                    synchronized (this) {
+                        current = null;
                     }
                 }
-            } while (getNextView());
+            }
         }
     }
 
-    private Segmenter segmenter = null;
+    private static final boolean DEBUG = Boolean.getBoolean("lightcrafts.debug.zonefinder");
+
+    private static final Segmenter segmenter = new Segmenter();
 
     /*
         BIG NOTE: JAI has all sorts of deadlocks in its notification management,
@@ -369,11 +502,14 @@ public class ZoneFinder extends Preview implements PaintListener {
                     image = Functions.fromUShortToByte(image, null);
             }
 
-            if (segmenter == null || !segmenter.isAlive()) {
-                segmenter = new Segmenter(visibleRect, image);
-                segmenter.start();
-            } else
-                segmenter.nextView(visibleRect, image);
+            // Render the op here, only its pixels are computed by the Segmenter
+            RenderedImage view = cropScaleGrayscale(visibleRect, image);
+            RenderedOp viewOp = null;
+            if (view != image && view instanceof RenderedOp) {
+                viewOp = (RenderedOp) view;
+                view = viewOp.getRendering();
+            }
+            segmenter.submit(new View(this, view, viewOp));
         }
     }
 }
@@ -18,10 +18,8 @@ import java.awt.*;
 import java.awt.image.RenderedImage;
 import java.io.*;
 import java.lang.ref.SoftReference;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Objects;
-import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -77,6 +75,9 @@ public class ImageDatum {
     // The cache used by the ImageTask
     private FileCache cache;
 
+    // The folder's metadata catalog, null if there is no cache
+    private MetadataCatalog catalog;
+
     // The size for thumbnails, given to ImageTasks
     private int size;
 
@@ -95,12 +96,14 @@ public class ImageDatum {
     private boolean badFile = false;
 
     public ImageDatum(
-        File file, int size, ImageTaskQueue queue, FileCache cache
+        File file, int size, ImageTaskQueue queue, FileCache cache,
+        MetadataCatalog catalog
     ) {
         this.file = file;
         this.size = size;
         this.queue = queue;
         this.cache = cache;
+        this.catalog = catalog;
 
         markDirty();
 
@@ -588,87 +591,31 @@ public class ImageDatum {
     }
 
     private void writeMetadataCache() {
-        if (cache == null) {
-            return;
-        }
-        writeToStream(getMetadataKey(), meta, "metadata cache error: ");
-        writeToStream(getFileTimeCacheKey(), fileCacheTime, "file time cache error: ");
-        if (xmpFile == null) {
-            return;
-        }
-        writeToStream(getXmpKey(), xmpFile, "file time cache error: ");
-        writeToStream(getXmpFileTimeCacheKey(), xmpFileCacheTime, "XMP file time cache error: ");
-    }
-
-    private void writeToStream(@Nullable String key, Object obj, String errorMessage) {
-        if (key == null) {
+        if (catalog == null) {
             return;
         }
-        try (val out = new ObjectOutputStream(cache.putToStream(key))) {
-            out.writeObject(obj);
-        } catch (IOException e) {
-            System.err.println(errorMessage + e.getMessage());
-        }
+        catalog.put(file.getName(), fileCacheTime, xmpFile, xmpFileCacheTime, meta);
     }
 
     private void readMetadataCache() {
-        if (cache == null) {
+        if (catalog == null) {
             return;
         }
-        readMetadataCache(getFileTimeCacheKey(), o -> fileCacheTime = o, 0L);
-        readMetadataCache(getXmpKey(), o -> xmpFile = (File) o, null);
-        if (xmpFile != null) {
-            readMetadataCache(getXmpFileTimeCacheKey() , o -> xmpFileCacheTime = o, 0L);
-        }
-        else {
-            xmpFileCacheTime = 0;
-        }
-        readMetadataCache(getMetadataKey() , o -> meta = o, meta);
-    }
-
-    @SuppressWarnings("unchecked")
-    private <T> void readMetadataCache(String key, Consumer<T> consumer, T fallbackValue) {
-        if (!cache.contains(key)) {
+        val record = catalog.get(file.getName());
+        if (record == null) {
             return;
         }
-        try (InputStream in = cache.getStreamFor(key)) {
-            if (in != null) {
-                try (ObjectInputStream oin = new ObjectInputStream(in)) {
-                    consumer.accept((T) oin.readObject());
-                }
-            }
-        }
-        catch (IOException | ClassNotFoundException e) {
-            consumer.accept(fallbackValue);
-        }
+        fileCacheTime = record.fileTime;
+        xmpFile = record.xmpFile;
+        xmpFileCacheTime = xmpFile != null ? record.xmpFileTime : 0;
+        meta = record.getMetadata();
     }
 
     private void clearMetadataCache() {
-        if (cache == null) {
-            return;
-        }
-        removeFromCache(
-                getMetadataKey(),
-                getFileTimeCacheKey(),
-                getXmpKey(),
-                getXmpFileTimeCacheKey()
-        );
-        if (xmpFile == null) {
+        if (catalog == null) {
             return;
         }
-        removeFromCache(getXmpFileTimeCacheKey());
-    }
-
-    private void removeFromCache(String... keys) {
-        Arrays.stream(keys)
-                .filter(key -> cache.contains(key))
-                .forEach(key -> {
-                    try {
-                        cache.remove(key);
-                    } catch (IOException e) {
-                        System.err.println("metadata cache clear error: " + e.getMessage());
-                    }
-                });
+        catalog.remove(file.getName());
     }
 
     // The cache key for the rotate value.
@@ -676,16 +623,6 @@ public class ImageDatum {
         return file.getAbsolutePath() + "_rotate";
     }
 
-    // The cache key for metadata.
-    private String getMetadataKey() {
-        long time = Math.max(fileCacheTime, xmpFileCacheTime);
-        return file.getAbsolutePath() + "_" + time;
-    }
-
-    private String getXmpKey() {
-        return file.getAbsolutePath() + "_xmp_file";
-    }
-
     // Observe modification times for file and xmpFile.  These times are used
     // for modification polling in ImageListPoller and also to timestamp
     // cached metadata.
@@ -697,14 +634,6 @@ public class ImageDatum {
         xmpFileCacheTime = xmpFile != null ? xmpFile.lastModified() : 0;
     }
 
-    private String getFileTimeCacheKey() {
-        return file.getAbsolutePath() + "_cache_time";
-    }
-
-    private String getXmpFileTimeCacheKey() {
-        return xmpFile != null ? xmpFile.getAbsolutePath() + "_cache_time" : null;
-    }
-
     private void clearPreview() {
         PreviewUpdater.clearCachedPreviewForImage(meta, cache);
     }
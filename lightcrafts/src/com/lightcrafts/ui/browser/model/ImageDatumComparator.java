@@ -79,6 +79,8 @@ public class ImageDatumComparator implements Comparator<ImageDatum> {
         return AllDatums.toArray(new ImageDatumComparator[0]);
     }
 
+    // ImageList sorts by the same order using SortKeys, which caches the
+    // metadata values in primitive columns.
     public int compare(ImageDatum left, ImageDatum right) {
         // Sorting respects ImageGroups:
         ImageDatum leftLeader = left.getGroup().getLeader();
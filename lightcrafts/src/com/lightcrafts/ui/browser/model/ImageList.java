@@ -51,6 +51,9 @@ public class ImageList {
     // A cache for costly image data, used in the ImageDatums
     private FileCache cache;
 
+    // The cached metadata of the directory, null if there is no cache
+    private MetadataCatalog catalog;
+
     // A thread that monitors for files added, removed, and modified
     private ImageListPoller poller;
 
@@ -60,6 +63,9 @@ public class ImageList {
     // Sort order is also partly determined by ImageGroups, defined by this
     private ImageGroupProvider groups;
 
+    // The metadata values the ImageDatums are sorted by, guarded by list
+    private final SortKeys keys;
+
     // Listeners for add/remove/change of ImageDatums
     private LinkedList<ImageListListener> listeners;
 
@@ -110,7 +116,9 @@ public class ImageList {
         this.size = size;
         this.cache = cache;
         this.comp = comp;
-        list = Collections.synchronizedList(new LinkedList<>());
+        catalog = (cache != null) ? MetadataCatalog.open(directory, cache) : null;
+        list = Collections.synchronizedList(new ArrayList<>());
+        keys = new SortKeys();
         queue = new ImageTaskQueue();
         poller = new ImageListPoller(this, directory);
         listeners = new LinkedList<>();
@@ -125,18 +133,23 @@ public class ImageList {
                 progress.setMaximum(files.length);
                 // Just get metadata, let painting pull out thumbnails:
                 Arrays.stream(files)
-                        .map(file -> new ImageDatum(file, size, queue, cache))
+                        .map(file -> new ImageDatum(file, size, queue, cache, catalog))
                         .forEach(datum -> {
                             datum.getMetadata(useCache);
                             list.add(datum);
+                            keys.update(datum);
                             progress.incrementBy(1);
                         });
             } else {
                 cancel = true;
             }
+            if (catalog != null) {
+                catalog.flush();
+            }
             if (cancel) {
                 queue.removeAllTasks();
                 list.clear();
+                keys.clear();
                 wasCancelled = true;
                 cancel = false;
             }
@@ -197,6 +210,9 @@ public class ImageList {
             queue.stop();
             poller.stop();
         }
+        if (catalog != null) {
+            catalog.close();
+        }
     }
 
     /**
@@ -282,11 +298,17 @@ public class ImageList {
 
     // Used in ImageListPoller when a new File is discovered.
     void addFile(File file) {
-        val datum = new ImageDatum(file, size, queue, cache);
+        val datum = new ImageDatum(file, size, queue, cache, catalog);
         datum.refresh(false); // reads metadata, enqueues thumbnailing
         synchronized(list) {
             list.add(datum);
-            sort();
+            keys.update(datum);
+            if (cluster() || datum.getGroup().isNonTrivial()) {
+                sortGroups();
+            }
+            else {
+                reposition(datum);
+            }
             val index = list.indexOf(datum);
             EventQueue.invokeLater(() -> notifyAdded(datum, index));
         }
@@ -298,7 +320,12 @@ public class ImageList {
         synchronized(list) {
             val index = list.indexOf(datum);
             list.remove(datum);
-            sort();
+            keys.remove(datum);
+            // Without the datum, the list is still sorted unless it was
+            // a group leader.
+            if (cluster()) {
+                sortGroups();
+            }
             EventQueue.invokeLater(() -> notifyRemoved(datum, index));
         }
     }
@@ -308,7 +335,13 @@ public class ImageList {
         final int oldIndex, newIndex;
         synchronized(list) {
             oldIndex = list.indexOf(datum);
-            sort();
+            keys.update(datum);
+            if (cluster() || datum.getGroup().isNonTrivial()) {
+                sortGroups();
+            }
+            else {
+                reposition(datum);
+            }
             newIndex = list.indexOf(datum);
         }
         if (oldIndex != newIndex) {
@@ -321,24 +354,52 @@ public class ImageList {
     // placing all the other ImageGroup members by their respective leaders.
     private void sort() {
         synchronized(list) {
-            // Group ImageDatums:
-            if (groups != null) {
-                groups.cluster(list);
-            }
+            cluster();
+            sortGroups();
+        }
+    }
+
+    // Determine the ImageGroups, and tell if any ImageDatum got a different
+    // group leader.  If none did, an ImageDatum that is a group by itself
+    // can be repositioned without sorting the whole list.
+    private boolean cluster() {
+        if (groups == null) {
+            return false;
+        }
+        synchronized(list) {
+            val leaders = list.stream()
+                    .map(ImageList::getLeader)
+                    .toArray(ImageDatum[]::new);
+            groups.cluster(list);
+
             // Test code, to discover if the ImageGroupProvider is
             // generating bogus ImageGroup assignments:
 //            ImageGroup.checkConsistency(list);
 
+            for (int i = 0; i < leaders.length; i++) {
+                if (getLeader(list.get(i)) != leaders[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Sort the ImageGroup leaders by their keys, and place the members.
+    private void sortGroups() {
+        synchronized(list) {
             // Sort group members by file modification time:
             final Comparator<ImageDatum> modificationTimeComparator =
                     Comparator.comparing((ImageDatum m) -> m.getFile().lastModified()).reversed();
 
-            final List<ImageDatum> newList = list.stream()
+            val leaders = list.stream()
                     .map(ImageDatum::getGroup)
                     .distinct()
                     .map(ImageGroup::getLeader)
-                    .sorted(comp)
                     .distinct()
+                    .collect(Collectors.toList());
+
+            final List<ImageDatum> newList = keys.sort(leaders, comp).stream()
                     .flatMap(leader -> {
                         val members = leader.getGroup().getImageDatums();
                         return Stream.concat(Stream.of(leader),
@@ -352,6 +413,36 @@ public class ImageList {
         }
     }
 
+    // Move an ImageDatum that is a group by itself to its place in the
+    // sorted list, by binary search on the group leaders.  Group members
+    // follow their leader and compare like it, so the first position
+    // that compares greater is the start of a group.
+    private void reposition(ImageDatum datum) {
+        synchronized(list) {
+            if (! list.remove(datum)) {
+                return;
+            }
+            int low = 0;
+            int high = list.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                val leader = getLeader(list.get(mid));
+                if (keys.compare(comp, leader, datum) <= 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            list.add(low, datum);
+        }
+    }
+
+    private static ImageDatum getLeader(ImageDatum datum) {
+        val leader = datum.getGroup().getLeader();
+        return (leader != null) ? leader : datum;
+    }
+
     private void notifyAdded(ImageDatum datum, int index) {
         listeners.forEach(listener -> listener.imageAdded(this, datum, index));
     }
@@ -3,22 +3,43 @@
 package com.lightcrafts.ui.browser.model;
 
 import com.lightcrafts.image.ImageFileFilter;
+import com.lightcrafts.platform.Platform;
+import com.lightcrafts.utils.directory.DirectoryListener;
+import com.lightcrafts.utils.directory.DirectoryMonitor;
 import com.lightcrafts.utils.file.FileUtil;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
- * Given a directory, this Thread polls image Files for changes in their
- * modification times and triggers appropriate refreshes on ImageDatums.
+ * Given a directory, this Thread keeps an ImageList in sync with the image
+ * Files and their XMP files, and triggers appropriate refreshes on
+ * ImageDatums.
+ * <p>
+ * Changes are picked up from a DirectoryMonitor, and only the files named
+ * in its events get checked.  A full sweep that checks every file and
+ * lists the directory still runs now and then, to catch what the monitor
+ * can't report, like changes made by other hosts on a network filesystem:
+ * every <code>lightcrafts.browser.sweep</code> seconds (default 60), or
+ * every 3 seconds if the filesystem doesn't report changes at all.
  */
-class ImageListPoller implements Runnable {
+class ImageListPoller implements Runnable, DirectoryListener {
 
-    // The wait between scans for modifications, in milliseconds
-    private final static long Interval = 3000;
+    static final String SWEEP_INTERVAL_PROPERTY = "lightcrafts.browser.sweep";
+
+    // The wait between full sweeps, in milliseconds
+    private final static long SweepInterval =
+        Long.getLong(SWEEP_INTERVAL_PROPERTY, 60) * 1000;
+
+    // The wait between full sweeps without change notifications
+    private final static long PollInterval = 3000;
 
     private ImageList list;
 
@@ -30,6 +51,20 @@ class ImageListPoller implements Runnable {
 
     private boolean stop;
 
+    private DirectoryMonitor monitor;
+
+    private long interval = PollInterval;
+
+    // Files named in change events since the last pass, null after an
+    // overflow, when the monitor lost track and a sweep is due
+    private Set<File> changed = new LinkedHashSet<File>();
+
+    private long nextSweep;
+
+    private long eventCount;
+    private long checkCount;
+    private long sweepCount;
+
     ImageListPoller(ImageList list, File directory) {
         thread = new Thread(this, "Image List Poller");
         thread.setPriority(Thread.MIN_PRIORITY);
@@ -41,28 +76,62 @@ class ImageListPoller implements Runnable {
         while (! stop) {
             synchronized (this) {
                 try {
-                    poll();
-                    wait(Interval);
-                    if (pause) {
+                    long wait = nextSweep - System.currentTimeMillis();
+                    if ((changed != null) && changed.isEmpty() && (wait > 0)) {
+                        wait(wait);
+                    }
+                    // Events that come in meanwhile wait for resume()
+                    while (pause && ! stop) {
                         wait();
                     }
                 }
-                catch (Throwable e) {
-                    if (e instanceof InterruptedException) {
-                        // Probably a call to stop()
-                        continue;
-                    }
-                    System.err.println("Error in ImageListPoller:");
-                    e.printStackTrace();
-                    // Keep going anyway
+                catch (InterruptedException e) {
+                    // Probably a call to stop()
+                    continue;
                 }
             }
+            try {
+                poll();
+            }
+            catch (Throwable e) {
+                System.err.println("Error in ImageListPoller:");
+                e.printStackTrace();
+                // Keep going anyway
+            }
+        }
+        if (monitor != null) {
+            monitor.dispose();
+        }
+    }
+
+    // Called on the DirectoryMonitor thread.
+    public void directoryChanged(Path dir, Path file, String kind) {
+        if (! dir.toFile().equals(directory)) {
+            return;
+        }
+        synchronized (this) {
+            eventCount++;
+            if (kind.equals("OVERFLOW")) {
+                changed = null;
+            }
+            else if (changed != null) {
+                changed.add(file.toFile());
+            }
+            notifyAll();
         }
     }
 
     void start() {
         if (! thread.isAlive()) {
             stop = false;
+            monitor = Platform.getPlatform().getDirectoryMonitor();
+            if (monitor.isWatching()) {
+                monitor.addListener(this);
+                monitor.addDirectory(directory);
+                interval = SweepInterval;
+            }
+            // The ImageList constructor has just scanned the directory
+            nextSweep = System.currentTimeMillis() + interval;
             thread.start();
         }
     }
@@ -86,44 +155,89 @@ class ImageListPoller implements Runnable {
         }
     }
 
+    // The number of change events received from the DirectoryMonitor.
+    synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    // The number of files checked because of change events.
+    synchronized long getCheckCount() {
+        return checkCount;
+    }
+
+    // The number of full sweeps.
+    synchronized long getSweepCount() {
+        return sweepCount;
+    }
+
+    public synchronized String toString() {
+        return "ImageListPoller " + directory + ": " +
+            eventCount + " events, " + checkCount + " files checked, " +
+            sweepCount + " sweeps";
+    }
+
     private void poll() {
+        final Set<File> files;
+        final boolean sweep;
+        synchronized (this) {
+            sweep = (changed == null) ||
+                    (System.currentTimeMillis() >= nextSweep);
+            files = changed;
+            changed = new LinkedHashSet<File>();
+            if (sweep) {
+                sweepCount++;
+                nextSweep = System.currentTimeMillis() + interval;
+            }
+            else {
+                checkCount += files.size();
+            }
+        }
+        if (sweep) {
+            sweep();
+        }
+        else if (! files.isEmpty()) {
+            check(files);
+        }
+    }
+
+    // Check only the given files, images or XMP files.
+    private void check(Set<File> files) {
+        List<ImageDatum> data = list.getAllImageData();
+        Map<File, ImageDatum> images = new HashMap<File, ImageDatum>();
+        Map<File, ImageDatum> xmpFiles = new HashMap<File, ImageDatum>();
+        for (ImageDatum datum : data) {
+            images.put(datum.getFile(), datum);
+            File xmpFile = datum.getXmpFile();
+            if (xmpFile != null) {
+                xmpFiles.put(xmpFile, datum);
+            }
+        }
+        for (Iterator<File> i=files.iterator(); i.hasNext() && !stop; ) {
+            File file = i.next();
+            ImageDatum datum = images.get(file);
+            if (datum != null) {
+                checkFile(datum);
+            }
+            else if (file.isFile() && ImageFileFilter.INSTANCE.accept(file)) {
+                log("file appeared", file);
+                list.addFile(file);
+            }
+            datum = xmpFiles.get(file);
+            if (datum != null) {
+                checkXmpFile(datum);
+            }
+        }
+    }
+
+    // Check every file and list the directory.
+    private void sweep() {
         List<ImageDatum> data = list.getAllImageData();
         Set<File> listFiles = new HashSet<File>();
         for (Iterator<ImageDatum> i=data.iterator(); i.hasNext() && !stop; )  {
             ImageDatum datum = i.next();
-            long oldTime = datum.getFileCacheTime();
-            // If oldTime == 0, the datum is still initializing
-            File file = datum.getFile();
-            listFiles.add(file);
-            if (oldTime > 0) {
-                if (! file.isFile()) {
-                    log("file disappeared", file);
-                    list.removeImageData(datum);
-                }
-                else {
-                    long newTime = file.lastModified();
-                    if (newTime > oldTime) {
-                        log("modification detected", file);
-                        datum.refresh(false);
-                        list.metadataChanged(datum);
-                    }
-                }
-                File xmpFile = datum.getXmpFile();
-                if (xmpFile == null) {
-                    // XMP couldn't be determined, probably a metadata error
-                    continue;
-                }
-                long oldXmpTime = datum.getXmpFileCacheTime();
-                if (! xmpFile.isFile() && (oldXmpTime > 0)) {
-                    log("XMP file disappeared", file);
-                    datum.refresh(true);
-                    list.metadataChanged(datum);
-                }
-                else if (xmpFile.lastModified() > oldXmpTime) {
-                    log("XMP modification detected", file);
-                    datum.refresh(true);
-                    list.metadataChanged(datum);
-                }
+            listFiles.add(datum.getFile());
+            if (checkFile(datum)) {
+                checkXmpFile(datum);
             }
         }
         File[] dirFiles =
@@ -139,6 +253,51 @@ class ImageListPoller implements Runnable {
         }
     }
 
+    // Returns false if the file is gone.
+    private boolean checkFile(ImageDatum datum) {
+        long oldTime = datum.getFileCacheTime();
+        // If oldTime == 0, the datum is still initializing
+        if (oldTime <= 0) {
+            return true;
+        }
+        File file = datum.getFile();
+        if (! file.isFile()) {
+            log("file disappeared", file);
+            list.removeImageData(datum);
+            return false;
+        }
+        long newTime = file.lastModified();
+        if (newTime > oldTime) {
+            log("modification detected", file);
+            datum.refresh(false);
+            list.metadataChanged(datum);
+        }
+        return true;
+    }
+
+    private void checkXmpFile(ImageDatum datum) {
+        if (datum.getFileCacheTime() <= 0) {
+            return;
+        }
+        File xmpFile = datum.getXmpFile();
+        if (xmpFile == null) {
+            // XMP couldn't be determined, probably a metadata error
+            return;
+        }
+        File file = datum.getFile();
+        long oldXmpTime = datum.getXmpFileCacheTime();
+        if (! xmpFile.isFile() && (oldXmpTime > 0)) {
+            log("XMP file disappeared", file);
+            datum.refresh(true);
+            list.metadataChanged(datum);
+        }
+        else if (xmpFile.lastModified() > oldXmpTime) {
+            log("XMP modification detected", file);
+            datum.refresh(true);
+            list.metadataChanged(datum);
+        }
+    }
+
     private static void log(String message, File file) {
         System.out.println(message + " at " + file);
     }
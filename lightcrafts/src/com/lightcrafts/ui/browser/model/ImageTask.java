@@ -52,18 +52,24 @@ public class ImageTask implements Runnable {
     }
 
     public void run() {
+        finish(read());
+    }
+
+    ImageDatum getDatum() {
+        return datum;
+    }
+
+    // The I/O bound part, run in the ImageTaskQueue's reader lane: read
+    // the metadata, then the preview from the file cache or from the File.
+    RenderedImage read() {
         // First initialize metadata, if it's not already read.
-        ImageMetadata meta = datum.getMetadata(true);
+        datum.getMetadata(true);
 
         RenderedImage image = null;
 
         // If there's a file cache entry, use that.
         if (!datum.isBadFile() && cache != null) {
             image = readImageCache();
-            if (image != null) {
-                // Fix the orientation.
-                image = Thumbnailer.rotate(image, meta);
-            }
         }
         // If the file cache didn't answer, try to read the File.
         if (!datum.isBadFile() && image == null) {
@@ -74,15 +80,20 @@ public class ImageTask implements Runnable {
                 if (cache != null) {
                     writeImageCache(image);
                 }
-                // Fix the orientation.
-                image = Thumbnailer.rotate(image, meta);
             }
             else {
                 datum.setBadFile(true);
             }
         }
-        // If anything worked, scale and optimize for the ImageDatum.
+        return image;
+    }
+
+    // The CPU bound part, run in the ImageTaskQueue's worker lane: fix the
+    // orientation, scale and optimize for the ImageDatum.
+    void finish(RenderedImage image) {
         if (image != null) {
+            ImageMetadata meta = datum.getMetadata(true);
+            image = Thumbnailer.rotate(image, meta);
             image = fixSizeAndColors(image);
             datum.setImage(image);
         }
@@ -2,132 +2,305 @@
 
 package com.lightcrafts.ui.browser.model;
 
-import java.util.LinkedList;
+import com.lightcrafts.jai.utils.LCTileScheduler;
+
 import java.awt.*;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeSet;
+
+/**
+ * Runs ImageTasks on two pools of background threads: readers, for the I/O
+ * bound part of a task (metadata, the file cache, JPEG decoding), and
+ * workers, for the CPU bound part (rotation, scaling, color conversion).
+ * <p>
+ * Each lane is ordered by priority: a task raised because its thumbnail is
+ * being painted runs before the others, most recently raised first, and a
+ * lowered task runs last.  Changing the priority of a task takes O(log n).
+ * At most one task per ImageDatum runs at any time.
+ * <p>
+ * The number of readers can be set with the
+ * <code>lightcrafts.thumbnail.readers</code> system property, the number of
+ * workers with <code>lightcrafts.thumbnail.workers</code>.
+ */
+public class ImageTaskQueue {
+
+    public static final String READERS_PROPERTY = "lightcrafts.thumbnail.readers";
+    public static final String WORKERS_PROPERTY = "lightcrafts.thumbnail.workers";
+
+    // Reader lane entries only hold a task, worker lane entries also hold
+    // the image read for it.
+    private static class Entry implements Comparable<Entry> {
+        final ImageTask task;
+        final RenderedImage image;
+        final long priority;
+        final long sequence;
+
+        Entry(ImageTask task, RenderedImage image, long priority, long sequence) {
+            this.task = task;
+            this.image = image;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // A priority ordered set of tasks, always accessed with the queue
+    // monitor held.
+    private class Lane {
+        private final TreeSet<Entry> entries = new TreeSet<Entry>();
+        private final HashMap<ImageTask, Entry> index =
+            new HashMap<ImageTask, Entry>();
 
-public class ImageTaskQueue implements Runnable {
+        void add(ImageTask task, RenderedImage image, long priority) {
+            remove(task);
+            Entry entry = new Entry(task, image, priority, ++sequence);
+            entries.add(entry);
+            index.put(task, entry);
+        }
 
-    private LinkedList<ImageTask> queue;
+        boolean reprioritize(ImageTask task, long priority) {
+            Entry entry = index.get(task);
+            if (entry == null) {
+                return false;
+            }
+            add(task, entry.image, priority);
+            return true;
+        }
 
-    private Thread thread;
+        boolean remove(ImageTask task) {
+            Entry entry = index.remove(task);
+            if (entry == null) {
+                return false;
+            }
+            entries.remove(entry);
+            return true;
+        }
+
+        // The first entry whose ImageDatum is not already busy, or null
+        Entry take() {
+            for (Entry entry : entries) {
+                ImageDatum datum = entry.task.getDatum();
+                if (! running.containsKey(datum)) {
+                    entries.remove(entry);
+                    index.remove(entry.task);
+                    running.put(datum, entry.task);
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        void clear() {
+            entries.clear();
+            index.clear();
+        }
+
+        int size() {
+            return entries.size();
+        }
+    }
+
+    private final Object monitor = new Object();
+
+    private final Lane readLane = new Lane();
+    private final Lane workLane = new Lane();
+
+    // The ImageDatums whose tasks are in the hands of a thread
+    private final HashMap<ImageDatum, ImageTask> running =
+        new HashMap<ImageDatum, ImageTask>();
+
+    // Running tasks that were removed, a removed reader task is not handed
+    // over to the worker lane
+    private final HashSet<ImageTask> cancelled = new HashSet<ImageTask>();
+
+    // Priorities for new, raised and lowered tasks
+    private long top;
+    private long bottom;
+    private long sequence;
+
+    private final ArrayList<Thread> threads = new ArrayList<Thread>();
+    private boolean started;
     private boolean pause;
     private boolean stop;
 
     private LinkedList<ImageTaskQueueListener> listeners;
 
     public ImageTaskQueue() {
-        thread = new Thread(this, "Image Task Queue");
-        thread.setPriority(Thread.MIN_PRIORITY);
-        queue = new LinkedList<ImageTask>();
+        this(
+            Integer.getInteger(READERS_PROPERTY, 2),
+            Integer.getInteger(
+                WORKERS_PROPERTY,
+                Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)
+            )
+        );
+    }
+
+    public ImageTaskQueue(int readers, int workers) {
+        for (int n=0; n<Math.max(readers, 1); n++) {
+            threads.add(createThread(readLane, "Image Task Reader " + n));
+        }
+        for (int n=0; n<Math.max(workers, 1); n++) {
+            threads.add(createThread(workLane, "Image Task Worker " + n));
+        }
         listeners = new LinkedList<ImageTaskQueueListener>();
     }
 
     void addTask(ImageTask task) {
-        synchronized(queue) {
-            queue.add(task);
-            queue.notifyAll();
+        synchronized(monitor) {
+            workLane.remove(task);
+            readLane.add(task, null, 0);
+            monitor.notifyAll();
         }
     }
 
     void removeTask(ImageTask task) {
-        synchronized(queue) {
-            queue.remove(task);
+        synchronized(monitor) {
+            readLane.remove(task);
+            workLane.remove(task);
+            if (running.get(task.getDatum()) == task) {
+                cancelled.add(task);
+            }
         }
     }
 
     void removeAllTasks() {
-        synchronized(queue) {
-            queue.clear();
+        synchronized(monitor) {
+            readLane.clear();
+            workLane.clear();
+            cancelled.addAll(running.values());
         }
     }
 
     public void start() {
-        if (! thread.isAlive()) {
-            pause = false;
-            stop = false;
-            thread.start();
+        synchronized(monitor) {
+            if (! started) {
+                started = true;
+                pause = false;
+                stop = false;
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+            }
         }
     }
 
     public void stop() {
-        pause = false;
-        stop = true;
-        synchronized(queue) {
-            queue.notifyAll();
-        }
-        synchronized(thread) {
-            thread.notifyAll();
+        synchronized(monitor) {
+            pause = false;
+            stop = true;
+            monitor.notifyAll();
         }
     }
 
     public void pause() {
-        synchronized(thread) {
+        synchronized(monitor) {
             pause = true;
         }
     }
 
     public void resume() {
-        synchronized(thread) {
+        synchronized(monitor) {
             if (pause) {
                 pause = false;
-                thread.notifyAll();
+                monitor.notifyAll();
             }
         }
     }
 
     public void raiseTask(ImageTask task) {
-        synchronized(queue) {
-            if (queue.contains(task)) {
-                queue.remove(task);
-                queue.addFirst(task);
+        synchronized(monitor) {
+            long priority = ++top;
+            if (! readLane.reprioritize(task, priority)) {
+                workLane.reprioritize(task, priority);
             }
         }
     }
 
     public void lowerTask(ImageTask task) {
-        synchronized(queue) {
-            if (queue.contains(task)) {
-                queue.remove(task);
-                queue.addLast(task);
+        synchronized(monitor) {
+            long priority = --bottom;
+            if (! readLane.reprioritize(task, priority)) {
+                workLane.reprioritize(task, priority);
             }
         }
     }
 
-    public void run() {
-        while (! stop) {
-            Runnable task;
-            synchronized(queue) {
-                while (queue.isEmpty() && (! stop)) {
-                    waitForNotify(queue);
-                    if (stop) {
-                        return;
-                    }
+    void addListener(ImageTaskQueueListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(ImageTaskQueueListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Thread createThread(final Lane lane, String name) {
+        Thread thread = new Thread(
+            new Runnable() {
+                public void run() {
+                    LCTileScheduler.setCurrentLane(LCTileScheduler.Lane.THUMBNAIL);
+                    runLane(lane);
+                }
+            },
+            name
+        );
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    private void runLane(Lane lane) {
+        while (true) {
+            Entry entry;
+            synchronized(monitor) {
+                while (pause && (! stop)) {
+                    waitForNotify(monitor);
+                }
+                if (stop) {
+                    return;
+                }
+                entry = lane.take();
+                if (entry == null) {
+                    waitForNotify(monitor);
+                    continue;
                 }
-                task = queue.removeFirst();
                 logQueueSize();
             }
+            ImageTask task = entry.task;
             try {
-                task.run();
+                if (lane == readLane) {
+                    RenderedImage image = task.read();
+                    synchronized(monitor) {
+                        if (! cancelled.contains(task)) {
+                            workLane.add(task, image, entry.priority);
+                        }
+                    }
+                }
+                else {
+                    task.finish(entry.image);
+                }
             }
             catch (Throwable t) {
                 logTaskError(t);
             }
-            synchronized(thread) {
-                while (pause && (! stop)) {
-                    waitForNotify(thread);
+            finally {
+                synchronized(monitor) {
+                    running.remove(task.getDatum());
+                    cancelled.remove(task);
+                    monitor.notifyAll();
                 }
             }
         }
     }
 
-    void addListener(ImageTaskQueueListener listener) {
-        listeners.add(listener);
-    }
-
-    void removeListener(ImageTaskQueueListener listener) {
-        listeners.remove(listener);
-    }
-
     private static void waitForNotify(Object monitor) {
         synchronized(monitor) {
             boolean interrupted;
@@ -143,8 +316,9 @@ public class ImageTaskQueue implements Runnable {
         }
     }
 
+    // Called with the queue monitor held.
     private void logQueueSize() {
-        final int depth = queue.size();
+        final int depth = readLane.size() + workLane.size();
         EventQueue.invokeLater(
             new Runnable() {
                 public void run() {
@@ -0,0 +1,150 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.ui.browser.model;
+
+import com.lightcrafts.image.metadata.ImageMetadata;
+import com.lightcrafts.utils.filecache.FileCache;
+import com.lightcrafts.utils.filecache.FileCacheRecordStore;
+
+import java.io.*;
+
+/**
+ * A per-folder catalog of the trimmed metadata that ImageDatums keep for
+ * sorting and display, so that reopening a folder costs one file read
+ * instead of several cache entries and deserializations per image.
+ * <p>
+ * The catalog is a FileCacheRecordStore keyed by file name, each record
+ * has the modification times of the file and its XMP file, and the
+ * externalized ImageMetadata.
+ */
+class MetadataCatalog {
+
+    private static final int MAGIC = 0x4C5A4D43;    // "LZMC"
+    private static final int VERSION = 2;
+
+    /**
+     * What the catalog knows about one image file.
+     */
+    static class Record {
+        final long fileTime;
+        final File xmpFile;
+        final long xmpFileTime;
+        private final byte[] metadata;
+
+        private Record(long fileTime, File xmpFile, long xmpFileTime, byte[] metadata) {
+            this.fileTime = fileTime;
+            this.xmpFile = xmpFile;
+            this.xmpFileTime = xmpFileTime;
+            this.metadata = metadata;
+        }
+
+        /**
+         * Decode the cached metadata, or null if that fails.
+         */
+        ImageMetadata getMetadata() {
+            try (RecordInput in = new RecordInput(new ByteArrayInputStream(metadata))) {
+                ImageMetadata meta = new ImageMetadata();
+                meta.readExternal(in);
+                return meta;
+            }
+            catch (IOException e) {
+                System.err.println("metadata catalog error: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static final FileCacheRecordStore.Codec<Record> Codec =
+        new FileCacheRecordStore.Codec<Record>() {
+            public void write(Record record, DataOutput out) throws IOException {
+                out.writeLong(record.fileTime);
+                out.writeUTF(record.xmpFile != null ? record.xmpFile.getAbsolutePath() : "");
+                out.writeLong(record.xmpFileTime);
+                out.writeInt(record.metadata.length);
+                out.write(record.metadata);
+            }
+            public Record read(DataInput in) throws IOException {
+                long fileTime = in.readLong();
+                String xmpPath = in.readUTF();
+                long xmpFileTime = in.readLong();
+                byte[] metadata = new byte[in.readInt()];
+                in.readFully(metadata);
+                File xmpFile = xmpPath.isEmpty() ? null : new File(xmpPath);
+                return new Record(fileTime, xmpFile, xmpFileTime, metadata);
+            }
+        };
+
+    private final FileCacheRecordStore<Record> records;
+
+    /**
+     * Open the catalog for the given folder, reading it entirely.
+     */
+    static MetadataCatalog open(File directory, FileCache cache) {
+        return new MetadataCatalog(directory, cache);
+    }
+
+    private MetadataCatalog(File directory, FileCache cache) {
+        records = FileCacheRecordStore.open(
+            cache, directory.getAbsolutePath() + "_metadata_catalog",
+            MAGIC, VERSION, Codec, "Metadata catalog"
+        );
+    }
+
+    Record get(String name) {
+        return records.get(name);
+    }
+
+    void put(
+        String name, long fileTime, File xmpFile, long xmpFileTime,
+        ImageMetadata meta
+    ) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (RecordOutput data = new RecordOutput(bytes)) {
+            meta.writeExternal(data);
+        }
+        catch (IOException e) {
+            System.err.println("metadata catalog error: " + e.getMessage());
+            return;
+        }
+        records.put(
+            name, new Record(fileTime, xmpFile, xmpFileTime, bytes.toByteArray())
+        );
+    }
+
+    void remove(String name) {
+        records.remove(name);
+    }
+
+    /**
+     * Push appended records to the file.
+     */
+    void flush() {
+        records.flush();
+    }
+
+    void close() {
+        records.close();
+    }
+
+    // ImageMetadata externalizes through ObjectOutput, but only ever uses
+    // its DataOutput methods.
+    private static class RecordOutput extends DataOutputStream implements ObjectOutput {
+        RecordOutput(OutputStream out) {
+            super(out);
+        }
+
+        public void writeObject(Object obj) throws IOException {
+            throw new NotSerializableException(obj.getClass().getName());
+        }
+    }
+
+    private static class RecordInput extends DataInputStream implements ObjectInput {
+        RecordInput(InputStream in) {
+            super(in);
+        }
+
+        public Object readObject() throws IOException {
+            throw new NotSerializableException();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.ui.browser.model;
+
+import com.lightcrafts.image.metadata.CoreDirectory;
+import static com.lightcrafts.image.metadata.CoreTags.*;
+import com.lightcrafts.image.metadata.ImageMetadata;
+import com.lightcrafts.image.metadata.values.DateMetaValue;
+import com.lightcrafts.image.metadata.values.ImageMetaValue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The values of the sortable metadata fields of the ImageDatums in an
+ * ImageList, kept in one primitive column per ImageDatumComparator so that
+ * sorting does not have to go through the synchronized ImageDatum metadata.
+ * <p>
+ * Each ImageDatum gets a slot in the columns.  The slot is filled when the
+ * ImageDatum is added or its metadata change, and released when it is
+ * removed.  The order is the same as ImageDatumComparator.compare().
+ * <p>
+ * SortKeys is not synchronized, ImageList guards it with its list.
+ */
+class SortKeys {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<ImageDatum, Integer> slots = new IdentityHashMap<>();
+
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    private ImageDatum[] datums = new ImageDatum[INITIAL_CAPACITY];
+
+    private final Map<ImageDatumComparator, Column> columns =
+        new IdentityHashMap<>();
+
+    // The file names, used to break ties in every column
+    private final Column names;
+
+    SortKeys() {
+        for (ImageDatumComparator comp : ImageDatumComparator.getAll()) {
+            columns.put(comp, createColumn(comp.getTagId()));
+        }
+        names = columns.get(ImageDatumComparator.Name);
+    }
+
+    /**
+     * Read the sort keys of an ImageDatum from its metadata, for an
+     * ImageDatum that was just added or whose metadata have changed.
+     */
+    void update(ImageDatum datum) {
+        int slot = getSlot(datum);
+        ImageMetadata meta = datum.getMetadata(true);
+        for (Map.Entry<ImageDatumComparator, Column> entry : columns.entrySet()) {
+            int tagId = entry.getKey().getTagId();
+            ImageMetaValue value = meta.getValue(CoreDirectory.class, tagId);
+            entry.getValue().set(slot, value);
+        }
+    }
+
+    void remove(ImageDatum datum) {
+        Integer slot = slots.remove(datum);
+        if (slot != null) {
+            datums[slot] = null;
+            freeSlots.push(slot);
+        }
+    }
+
+    void clear() {
+        slots.clear();
+        freeSlots.clear();
+        Arrays.fill(datums, null);
+    }
+
+    /**
+     * Sort ImageDatums, usually ImageGroup leaders, in the order of the
+     * given ImageDatumComparator.
+     */
+    List<ImageDatum> sort(
+        Collection<ImageDatum> data, ImageDatumComparator comp
+    ) {
+        Integer[] order = data.stream()
+            .map(this::getKey)
+            .toArray(Integer[]::new);
+        Arrays.sort(order, getComparator(comp));
+        return Arrays.stream(order)
+            .map(slot -> datums[slot])
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Compare two ImageDatums by their keys, like
+     * ImageDatumComparator.compare() without the ImageGroup leaders.
+     */
+    int compare(ImageDatumComparator comp, ImageDatum left, ImageDatum right) {
+        return compare(comp, columns.get(comp), getKey(left), getKey(right));
+    }
+
+    private Comparator<Integer> getComparator(ImageDatumComparator comp) {
+        Column column = columns.get(comp);
+        return (left, right) -> compare(comp, column, left, right);
+    }
+
+    private int compare(
+        ImageDatumComparator comp, Column column, int left, int right
+    ) {
+        int result = compareValues(comp.reverse, column, left, right);
+        if (result == 0) {
+            result = compareValues(comp.reverse, names, left, right);
+        }
+        return result;
+    }
+
+    // Missing values come first, or last when the order is reversed.
+    private static int compareValues(
+        boolean reverse, Column column, int left, int right
+    ) {
+        boolean hasLeft = column.present[left];
+        boolean hasRight = column.present[right];
+        if (hasLeft && hasRight) {
+            return reverse
+                ? column.compare(right, left)
+                : column.compare(left, right);
+        }
+        else if (hasLeft) {
+            return reverse ? -1 : +1;
+        }
+        else if (hasRight) {
+            return reverse ? +1 : -1;
+        }
+        return 0;
+    }
+
+    // The slot of an ImageDatum, reading its keys if it doesn't have one yet.
+    private int getKey(ImageDatum datum) {
+        Integer slot = slots.get(datum);
+        if (slot == null) {
+            update(datum);
+            slot = slots.get(datum);
+        }
+        return slot;
+    }
+
+    // The slot of an ImageDatum, allocating an empty one if necessary.
+    private int getSlot(ImageDatum datum) {
+        Integer slot = slots.get(datum);
+        if (slot != null) {
+            return slot;
+        }
+        if (! freeSlots.isEmpty()) {
+            slot = freeSlots.pop();
+        }
+        else {
+            slot = slots.size();
+            if (slot == datums.length) {
+                int capacity = 2 * datums.length;
+                datums = Arrays.copyOf(datums, capacity);
+                for (Column column : columns.values()) {
+                    column.grow(capacity);
+                }
+            }
+        }
+        datums[slot] = datum;
+        slots.put(datum, slot);
+        return slot;
+    }
+
+    private static Column createColumn(int tagId) {
+        switch (tagId) {
+            case CORE_CAPTURE_DATE_TIME:
+            case CORE_FILE_DATE_TIME:
+            case CORE_FILE_SIZE:
+                return new LongColumn();
+            case CORE_APERTURE:
+            case CORE_FOCAL_LENGTH:
+            case CORE_SHUTTER_SPEED:
+                return new FloatColumn();
+            case CORE_RATING:
+                return new IntColumn();
+            default:
+                return new StringColumn();
+        }
+    }
+
+    private static abstract class Column {
+
+        boolean[] present = new boolean[INITIAL_CAPACITY];
+
+        void set(int slot, ImageMetaValue value) {
+            present[slot] = (value != null) && setValue(slot, value);
+        }
+
+        void grow(int capacity) {
+            present = Arrays.copyOf(present, capacity);
+        }
+
+        // Store the key of a value, return false if it has none.
+        abstract boolean setValue(int slot, ImageMetaValue value);
+
+        abstract int compare(int left, int right);
+    }
+
+    // Dates as milliseconds, and file sizes.
+    private static class LongColumn extends Column {
+
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        boolean setValue(int slot, ImageMetaValue value) {
+            if (value instanceof DateMetaValue) {
+                Date date = ((DateMetaValue) value).getDateValue();
+                if (date == null) {
+                    return false;
+                }
+                values[slot] = date.getTime();
+            }
+            else {
+                values[slot] = value.getLongValue();
+            }
+            return true;
+        }
+
+        int compare(int left, int right) {
+            return Long.compare(values[left], values[right]);
+        }
+
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    // Aperture, shutter speed and focal length.
+    private static class FloatColumn extends Column {
+
+        private float[] values = new float[INITIAL_CAPACITY];
+
+        boolean setValue(int slot, ImageMetaValue value) {
+            values[slot] = value.getFloatValue();
+            return true;
+        }
+
+        int compare(int left, int right) {
+            return Float.compare(values[left], values[right]);
+        }
+
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    // Ratings.
+    private static class IntColumn extends Column {
+
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        boolean setValue(int slot, ImageMetaValue value) {
+            values[slot] = value.getIntValue();
+            return true;
+        }
+
+        int compare(int left, int right) {
+            return Integer.compare(values[left], values[right]);
+        }
+
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    // File names and lenses, compared ignoring case like StringMetaValue.
+    // Lowercased once and interned, since many images share a lens.
+    private static class StringColumn extends Column {
+
+        private String[] values = new String[INITIAL_CAPACITY];
+
+        boolean setValue(int slot, ImageMetaValue value) {
+            String s = value.getStringValue();
+            values[slot] = (s != null) ? s.toLowerCase().intern() : null;
+            return s != null;
+        }
+
+        int compare(int left, int right) {
+            String l = values[left];
+            String r = values[right];
+            return (l == r) ? 0 : l.compareTo(r);
+        }
+
+        void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+}
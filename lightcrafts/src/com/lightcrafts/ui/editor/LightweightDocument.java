@@ -8,6 +8,9 @@ import com.lightcrafts.utils.xml.XmlNode;
 
 import static com.lightcrafts.ui.editor.Locale.LOCALE;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,6 +18,10 @@ import java.util.regex.Pattern;
 /**
  * A class to parse saved Documents and extract the contents of their
  * Image tags.
+ * <p>
+ * Files are pulled through a StAX parser up to the Image tag, without
+ * building a DOM or reading the rest of the file.  Files that are not
+ * well-formed up to there are grepped for the tag instead.
  */
 
 public class LightweightDocument {
@@ -33,6 +40,18 @@ public class LightweightDocument {
         ".*"                                          // anything
     );
 
+    // Thread-safe once configured
+    private final static XMLInputFactory Inputs;
+
+    static {
+        Inputs = XMLInputFactory.newInstance();
+        Inputs.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        Inputs.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false
+        );
+        Inputs.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
     private File imageFile;
     private File docFile;
 
@@ -61,50 +80,37 @@ public class LightweightDocument {
     }
 
     /**
-     * Construct a LightweightDocument by grepping the given file for LZN
-     * content.
+     * Construct a LightweightDocument by pulling the Image tag out of the
+     * given file.
      */
     public LightweightDocument(File file) throws IOException, XMLException {
         docFile = file;
-        InputStream in = new FileInputStream(file);
-
-        // XML parsing takes too long for scanning hundreds of files:
-//        XmlDocument doc = new XmlDocument(in);
-//        XmlNode root = doc.getRoot();
-//        XmlNode imageNode = root.getChild(ImageTag);
-//        String imagePath = imageNode.getAttribute(PathTag);
-
-        // Instead, we just do some grepping:
-        String line;
-        Matcher matcher = null;
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
-            do {
-                line = reader.readLine();
-                if (line != null) {
-                    matcher = PathsPattern.matcher(line);
-                }
-            } while ((line != null) && (!matcher.matches()));
-        }
 
-        if (matcher == null) {
-            // readLine() returned null the first time it was called.
+        if (file.length() == 0) {
             throw new IOException(LOCALE.get("EmptyFileError", file.getName()));
         }
-
-        if (! matcher.matches()) {
+        String[] paths;
+        try {
+            paths = readPaths(file);
+        }
+        catch (XMLStreamException e) {
+            // Maybe something the grepping can get through
+            paths = grepPaths(file);
+        }
+        if (paths == null) {
             throw new XMLException(LOCALE.get("MissingImageTagError"));
         }
-        String path = matcher.replaceFirst("$1");
-        if (path.length() == 0) {
+        String path = paths[0];
+        if ((path == null) || (path.length() == 0)) {
             throw new XMLException(LOCALE.get("MissingImagePathError"));
         }
-        imageFile = new File(matcher.replaceFirst("$1"));
+        imageFile = new File(path);
 
-        String relativePath = matcher.replaceFirst("$3");
+        String relativePath = paths[1];
         // The relative path attribute was introduced in LZN version 3,
         // and is therefore optional.  Starting in version 6, it overrides
         // the absolute path when present.
-        if (relativePath.length() > 0) {
+        if ((relativePath != null) && (relativePath.length() > 0)) {
             File relativeFile = RelativePathUtility.getRelativeFile(
                 docFile, relativePath
             );
@@ -114,6 +120,69 @@ public class LightweightDocument {
         }
     }
 
+    /**
+     * Find the Image child of the root element, the same one the DOM
+     * constructor finds, and return its path and relativePath attributes,
+     * or null if the root element has no Image child.
+     */
+    private static String[] readPaths(File file)
+        throws IOException, XMLStreamException
+    {
+        try (InputStream in =
+                 new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = Inputs.createXMLStreamReader(in);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamReader.START_ELEMENT) {
+                        depth++;
+                        if ((depth == 2) &&
+                            reader.getLocalName().equals(ImageTag)) {
+                            return new String[] {
+                                reader.getAttributeValue(null, PathTag),
+                                reader.getAttributeValue(null, RelativePathTag)
+                            };
+                        }
+                    }
+                    else if (event == XMLStreamReader.END_ELEMENT) {
+                        if (--depth == 0) {
+                            break;
+                        }
+                    }
+                }
+                return null;
+            }
+            finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Grep the given file line by line for an Image tag, and return its
+     * path and relativePath attributes, or null if there is none.
+     */
+    private static String[] grepPaths(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        String line;
+        Matcher matcher = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+            do {
+                line = reader.readLine();
+                if (line != null) {
+                    matcher = PathsPattern.matcher(line);
+                }
+            } while ((line != null) && (!matcher.matches()));
+        }
+        if ((matcher == null) || (! matcher.matches())) {
+            return null;
+        }
+        return new String[] {
+            matcher.replaceFirst("$1"), matcher.replaceFirst("$3")
+        };
+    }
+
     public File getDocFile() {
         return docFile;
     }
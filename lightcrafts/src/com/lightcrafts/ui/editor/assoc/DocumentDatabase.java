@@ -14,11 +14,29 @@ import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Keep track of all the directories that Documents have ever been saved to or
  * opened from, and explore these places to build an index mapping image files
  * to Document files.
+ * <p>
+ * Files are interpreted at most once per modification time: the results are
+ * kept in a persistent {@link DocumentIndex}, so saving a Document updates
+ * the index for that one file, and exploring a directory only parses the
+ * files that are new or have changed since the last session.  Those are
+ * parsed on a pool of threads, sized by the
+ * <code>lightcrafts.docdb.threads</code> system property (default: the
+ * number of processors).
+ * <p>
+ * All the public methods are thread-safe.  They hold a private lock, and
+ * DocumentDatabaseListeners are called after it is released, so listeners
+ * may hold locks of their own that other threads take before calling here.
  */
 
 public class DocumentDatabase {
@@ -30,6 +48,9 @@ public class DocumentDatabase {
     private static Map<File, Collection<File>> ImagesToDocs =
         new HashMap<File, Collection<File>>();
 
+    // Document Files back to their image Files:
+    private static Map<File, File> DocsToImages = new HashMap<File, File>();
+
     // DocumentDatabaseListeners (WeakReferences to DocumentDatabaseListeners):
     private static List<WeakReference<DocumentDatabaseListener>> Listeners =
         new LinkedList<WeakReference<DocumentDatabaseListener>>();
@@ -38,6 +59,18 @@ public class DocumentDatabase {
     private static Map<String, DocumentInterpreter> Interpreters =
         new HashMap<String, DocumentInterpreter>();
 
+    public static final String THREADS_PROPERTY = "lightcrafts.docdb.threads";
+
+    // Document files to their image Files, by modification time, loaded
+    // on first use:
+    private static DocumentIndex Index;
+
+    // Parses files for directory scans, created on first use:
+    private static ExecutorService Parsers;
+
+    // Guards all the state above:
+    private static final Object Lock = new Object();
+
     static {
         // Initialize the naive DocumentInterpreter, where the LZN structure
         // has just been serialized.
@@ -66,9 +99,11 @@ public class DocumentDatabase {
     }
 
     public static void addDocumentInterpreter(DocumentInterpreter interpreter) {
-        Collection<String> suffixes = interpreter.getSuffixes();
-        for (String suffix : suffixes) {
-            Interpreters.put(suffix, interpreter);
+        synchronized (Lock) {
+            Collection<String> suffixes = interpreter.getSuffixes();
+            for (String suffix : suffixes) {
+                Interpreters.put(suffix, interpreter);
+            }
         }
     }
 
@@ -80,11 +115,14 @@ public class DocumentDatabase {
      */
     public static File[] findImageFiles(String name) {
         Set<File> dirs = new HashSet<File>();
-        dirs.addAll(Directories);
-        for (File file : ImagesToDocs.keySet()) {
-            File imageDir = file.getParentFile();
-            if (imageDir != null) {
-                dirs.add(imageDir);
+        synchronized (Lock) {
+            getIndex();
+            dirs.addAll(Directories);
+            for (File file : ImagesToDocs.keySet()) {
+                File imageDir = file.getParentFile();
+                if (imageDir != null) {
+                    dirs.add(imageDir);
+                }
             }
         }
         ArrayList<File> files = new ArrayList<File>();
@@ -102,21 +140,28 @@ public class DocumentDatabase {
      * Document files associated to an image File.
      */
     public static void addListener(DocumentDatabaseListener listener) {
-        Listeners.add(new WeakReference<DocumentDatabaseListener>(listener));
+        synchronized (Lock) {
+            Listeners.add(new WeakReference<DocumentDatabaseListener>(listener));
+        }
     }
 
     /**
-     * Adds the parent of the given File to the database.  This is just a
-     * convenience method for {@link #addDocumentDirectory(File)}, which may
-     * be faster if the parent of the File has already been added.
+     * Adds the parent of the given File to the database, and updates the
+     * index for the given File only.  The rest of the directory gets
+     * indexed by {@link #addDocumentDirectory(File)}.
      */
     public static void addDocumentFile(File file) {
         if (file.isFile()) {
-            File dir = file.getParentFile();
-            if (! directoriesContains(dir)) {
-                addToDirectories(dir);
+            Set<File> changed = new LinkedHashSet<File>();
+            synchronized (Lock) {
+                File dir = file.getParentFile();
+                if (! directoriesContains(dir)) {
+                    addToDirectories(dir);
+                }
+                readFile(file, changed);
+                getIndex().flush();
             }
-            readDirectory(dir);
+            notifyListeners(changed);
         }
     }
 
@@ -145,10 +190,18 @@ public class DocumentDatabase {
      * the directory will be added to the index.
      */
     public static void addDocumentDirectory(File dir) {
+        Set<File> changed = new LinkedHashSet<File>();
+        synchronized (Lock) {
+            addDirectory(dir, changed);
+        }
+        notifyListeners(changed);
+    }
+
+    private static void addDirectory(File dir, Set<File> changed) {
         if (dir.isDirectory()) {
             addToDirectories(dir);
         }
-        readDirectory(dir);
+        readDirectory(dir, changed);
     }
 
     /**
@@ -158,37 +211,80 @@ public class DocumentDatabase {
      */
     public static void addDocumentDirectoryRecurse(File dir) {
         if (dir.isDirectory()) {
-            readRecurse(dir);
+            Set<File> changed = new LinkedHashSet<File>();
+            synchronized (Lock) {
+                List<File> files = new ArrayList<File>();
+                readRecurse(dir, files);
+                readFiles(files, changed);
+                getIndex().flush();
+            }
+            notifyListeners(changed);
         }
     }
 
     public static void addDirectories(File[] dirs) {
-        for (File dir : dirs) {
-            addDocumentDirectory(dir);
+        Set<File> changed = new LinkedHashSet<File>();
+        synchronized (Lock) {
+            for (File dir : dirs) {
+                addDirectory(dir, changed);
+            }
         }
+        notifyListeners(changed);
     }
 
     public static List<File> getDocumentsForImage(File imageFile) {
         try {
             imageFile = imageFile.getCanonicalFile();
-            Collection<File> docs = ImagesToDocs.get(imageFile);
-            if (docs == null) {
-                docs = new LinkedList<File>();
-                ImagesToDocs.put(imageFile, docs);
-            }
-            return new LinkedList<File>(docs);
         }
         catch (IOException e) {
             // report no associated Documents
             return Collections.emptyList();
         }
+        synchronized (Lock) {
+            getIndex();
+            Collection<File> docs = ImagesToDocs.get(imageFile);
+            if (docs == null) {
+                return new LinkedList<File>();
+            }
+            // Indexed Documents may have been deleted since
+            boolean removed = false;
+            for (Iterator<File> i=docs.iterator(); i.hasNext(); ) {
+                File docFile = i.next();
+                if (! docFile.isFile()) {
+                    i.remove();
+                    DocsToImages.remove(docFile);
+                    Index.remove(docFile);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                Index.flush();
+            }
+            return new LinkedList<File>(docs);
+        }
     }
 
     public static Collection<File> getAssociatedDocuments(File docFile) {
         try {
-            LightweightDocument doc = new LightweightDocument(docFile);
-            File imageFile = doc.getImageFile().getCanonicalFile();
-            return new LinkedList<File>(ImagesToDocs.get(imageFile));
+            docFile = docFile.getCanonicalFile();
+            File imageFile;
+            DocumentIndex.Entry entry;
+            synchronized (Lock) {
+                entry = getIndex().get(docFile);
+            }
+            if ((entry != null) && (entry.time == docFile.lastModified())) {
+                imageFile = entry.imageFile;
+            }
+            else {
+                LightweightDocument doc = new LightweightDocument(docFile);
+                imageFile = doc.getImageFile().getCanonicalFile();
+            }
+            synchronized (Lock) {
+                Collection<File> docs = ImagesToDocs.get(imageFile);
+                if (docs != null) {
+                    return new LinkedList<File>(docs);
+                }
+            }
         }
         catch (IOException e) {
             // do nothing
@@ -196,89 +292,230 @@ public class DocumentDatabase {
         return Collections.emptySet();
     }
 
+    /**
+     * Push everything to the persistent index and close its file, when the
+     * application exits.
+     */
+    public static void close() {
+        synchronized (Lock) {
+            if (Index != null) {
+                Index.close();
+            }
+        }
+    }
+
     /**
      * Attempt to interpret the given File as a saved Document.  If this
      * succeeds, then associate the File with the corresponding image File
      * in the index.
      */
-    private static void readFile(File file) {
-        String suffix = FileUtil.getExtensionOf(file);
-        if (suffix == null) {
-            return;
-        }
-        DocumentInterpreter interp = Interpreters.get(suffix);
-        if (interp == null) {
-            return;
+    private static void readFile(File file, Set<File> changed) {
+        readFiles(Collections.singletonList(file), changed);
+    }
+
+    /**
+     * Bring the index up to date for the given Files: those whose
+     * modification time matches the index are associated right away, the
+     * others are interpreted, in parallel if there are several.  Collect the
+     * image Files whose Documents changed, for notifyListeners().
+     */
+    private static void readFiles(List<File> files, Set<File> changed) {
+        DocumentIndex index = getIndex();
+        List<File> stale = new ArrayList<File>();
+        for (File file : files) {
+            DocumentInterpreter interp = getInterpreter(file);
+            if (interp == null) {
+                continue;
+            }
+            try {
+                file = file.getCanonicalFile();
+            }
+            catch (IOException e) {
+                continue;
+            }
+            DocumentIndex.Entry entry = index.get(file);
+            if ((entry != null) && (entry.time == file.lastModified())) {
+                associate(file, entry.imageFile, changed);
+            }
+            else {
+                stale.add(file);
+            }
         }
-        try {
-            file = file.getCanonicalFile();
-            File imageFile = interp.getImageFile(file);
-            if (imageFile == null) {
-                return;
+        if (stale.size() == 1) {
+            File file = stale.get(0);
+            long time = file.lastModified();
+            try {
+                File imageFile = interpret(file);
+                index.put(file, time, imageFile);
+                associate(file, imageFile, changed);
             }
-            Collection<File> docs = ImagesToDocs.get(imageFile);
-            if (docs == null) {
-                docs = new LinkedList<File>();
-                ImagesToDocs.put(imageFile, docs);
+            catch (IOException e) {
+                logReadError(file, e);
             }
-            if (! docs.contains(file)) {
-                docs.add(file);
-                notifyListeners(imageFile);
+        }
+        else if (stale.size() > 1) {
+            ExecutorService parsers = getParsers();
+            List<Future<File>> futures = new ArrayList<Future<File>>();
+            long[] times = new long[stale.size()];
+            for (int n=0; n<stale.size(); n++) {
+                final File file = stale.get(n);
+                times[n] = file.lastModified();
+                futures.add(
+                    parsers.submit(
+                        new Callable<File>() {
+                            public File call() throws IOException {
+                                return interpret(file);
+                            }
+                        }
+                    )
+                );
             }
+            for (int n=0; n<stale.size(); n++) {
+                File file = stale.get(n);
+                try {
+                    File imageFile = getUninterruptibly(futures.get(n));
+                    index.put(file, times[n], imageFile);
+                    associate(file, imageFile, changed);
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        logReadError(file, (IOException) cause);
+                    }
+                    else {
+                        System.err.println(
+                            "DocDB: error reading " + file.getName() + ":"
+                        );
+                        cause.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ask the DocumentInterpreter for the given File which image File it
+     * points to.  Returns null if the File is not a Document.  This may be
+     * called from the parser threads, so it must not touch the index.
+     */
+    private static File interpret(File file) throws IOException {
+        DocumentInterpreter interp = getInterpreter(file);
+        if (interp == null) {
+            return null;
+        }
+        try {
+            return interp.getImageFile(file);
         }
         catch (XMLException e) {
             // Encountered a file that is not an editor file--so what?
+            return null;
         }
-        catch (IOException e) {
-            System.err.println(
-                "DocDB: can't read " + file.getName() + ": " +
-                e.getMessage()
-            );
+    }
+
+    private static DocumentInterpreter getInterpreter(File file) {
+        String suffix = FileUtil.getExtensionOf(file);
+        if (suffix == null) {
+            return null;
+        }
+        return Interpreters.get(suffix);
+    }
+
+    /**
+     * Make the given document File point to the given image File, or to
+     * nothing if the image File is null, and collect the image Files whose
+     * Documents changed.
+     */
+    private static void associate(
+        File docFile, File imageFile, Set<File> changed
+    ) {
+        File oldImageFile = DocsToImages.get(docFile);
+        if ((oldImageFile != null) && (! oldImageFile.equals(imageFile))) {
+            Collection<File> docs = ImagesToDocs.get(oldImageFile);
+            if ((docs != null) && docs.remove(docFile)) {
+                changed.add(oldImageFile);
+            }
+            DocsToImages.remove(docFile);
+        }
+        if (imageFile == null) {
+            return;
+        }
+        DocsToImages.put(docFile, imageFile);
+        Collection<File> docs = ImagesToDocs.get(imageFile);
+        if (docs == null) {
+            docs = new LinkedList<File>();
+            ImagesToDocs.put(imageFile, docs);
+        }
+        if (! docs.contains(docFile)) {
+            docs.add(docFile);
+            changed.add(imageFile);
         }
     }
 
+    private static void logReadError(File file, IOException e) {
+        System.err.println(
+            "DocDB: can't read " + file.getName() + ": " +
+            e.getMessage()
+        );
+    }
+
     /**
      * Examine all files in the given directory, and try to import them into
-     * the index by calling readFile().
+     * the index by calling readFiles().
      */
-    private static void readDirectory(File dir) {
+    private static void readDirectory(File dir, Set<File> changed) {
         File[] files = FileUtil.listFiles(dir);
         if (files != null) {    // not a directory, or an I/O error
+            List<File> list = new ArrayList<File>();
             for (File file : files) {
                 if (file.isFile()) {
-                    readFile(file);
+                    list.add(file);
                 }
             }
+            readFiles(list, changed);
+            getIndex().flush();
         }
     }
 
     /**
-     * Notify listeners that the set of Document files associated with the
-     * given image File has changed.
+     * Notify listeners that the sets of Document files associated with the
+     * given image Files have changed.  This must be called without the
+     * lock, since listeners take their own locks.
      */
-    private static void notifyListeners(File imageFile) {
-        for (Iterator i=Listeners.iterator(); i.hasNext(); ) {
-            WeakReference ref = (WeakReference) i.next();
-            DocumentDatabaseListener listener =
-                (DocumentDatabaseListener) ref.get();
-            if (listener != null) {
-                listener.docFilesChanged(imageFile);
+    private static void notifyListeners(Collection<File> imageFiles) {
+        if (imageFiles.isEmpty()) {
+            return;
+        }
+        List<DocumentDatabaseListener> listeners =
+            new ArrayList<DocumentDatabaseListener>();
+        synchronized (Lock) {
+            for (Iterator i=Listeners.iterator(); i.hasNext(); ) {
+                WeakReference ref = (WeakReference) i.next();
+                DocumentDatabaseListener listener =
+                    (DocumentDatabaseListener) ref.get();
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+                else {
+                    i.remove();
+                }
             }
-            else {
-                i.remove();
+        }
+        for (File imageFile : imageFiles) {
+            for (DocumentDatabaseListener listener : listeners) {
+                listener.docFilesChanged(imageFile);
             }
         }
     }
 
     /**
-     * If the given File is a normal file, call readFile().  Otherwise, if the
-     * given File is a directory, and if this directory is not in the
-     * database, then add it to the database and call readRecurse() on all
-     * its children.
+     * If the given File is a normal file, collect it for readFiles().
+     * Otherwise, if the given File is a directory, and if this directory is
+     * not in the database, then add it to the database and call
+     * readRecurse() on all its children.
      */
-    private static void readRecurse(File file) {
+    private static void readRecurse(File file, List<File> files) {
         if (file.isFile()) {
-            readFile(file);
+            files.add(file);
         }
         else if (file.isDirectory()) {
             if (! directoriesContains(file)) {
@@ -287,10 +524,76 @@ public class DocumentDatabase {
             File[] children = FileUtil.listFiles(file);
             if (children != null) {
                 for (File child : children) {
-                    readRecurse(child);
+                    readRecurse(child, files);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the persistent index on first use, and put the Documents it
+     * knows about into the maps.
+     */
+    private static DocumentIndex getIndex() {
+        if (Index == null) {
+            Index = DocumentIndex.open();
+            Set<File> changed = new HashSet<File>();
+            for (Map.Entry<File, DocumentIndex.Entry> entry :
+                    Index.getEntries().entrySet()) {
+                File docFile = entry.getKey();
+                File imageFile = entry.getValue().imageFile;
+                if (imageFile != null) {
+                    associate(docFile, imageFile, changed);
+                    File dir = docFile.getParentFile();
+                    if (dir != null) {
+                        Directories.add(dir);
+                    }
                 }
             }
         }
+        return Index;
+    }
+
+    private static ExecutorService getParsers() {
+        if (Parsers == null) {
+            int threads = Integer.getInteger(
+                THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()
+            );
+            Parsers = Executors.newFixedThreadPool(
+                Math.max(threads, 1),
+                new ThreadFactory() {
+                    private int count;
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "DocDB Parser " + count++);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                }
+            );
+        }
+        return Parsers;
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future)
+        throws ExecutionException
+    {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,106 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.ui.editor.assoc;
+
+import com.lightcrafts.utils.filecache.FileCacheFactory;
+import com.lightcrafts.utils.filecache.FileCacheRecordStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The persistent part of the DocumentDatabase: for every file that has been
+ * interpreted, its modification time and the image file it points to, or
+ * null if it turned out not to be a Document.  A file whose modification
+ * time hasn't changed never needs to be parsed again.
+ * <p>
+ * The index is a FileCacheRecordStore in the global FileCache, keyed by
+ * file path.  If there is no FileCache, the index just lives in memory.
+ */
+class DocumentIndex {
+
+    private static final int MAGIC = 0x4C5A4449;    // "LZDI"
+    private static final int VERSION = 2;
+
+    private static final String Key = "DocumentDatabaseIndex";
+
+    /**
+     * What the index knows about one file.
+     */
+    static class Entry {
+        final long time;
+        final File imageFile;
+
+        private Entry(long time, File imageFile) {
+            this.time = time;
+            this.imageFile = imageFile;
+        }
+    }
+
+    private static final FileCacheRecordStore.Codec<Entry> Codec =
+        new FileCacheRecordStore.Codec<Entry>() {
+            public void write(Entry entry, DataOutput out) throws IOException {
+                out.writeLong(entry.time);
+                out.writeUTF(entry.imageFile != null ? entry.imageFile.getPath() : "");
+            }
+            public Entry read(DataInput in) throws IOException {
+                long time = in.readLong();
+                String imagePath = in.readUTF();
+                File imageFile = imagePath.isEmpty() ? null : new File(imagePath);
+                return new Entry(time, imageFile);
+            }
+        };
+
+    private final FileCacheRecordStore<Entry> entries;
+
+    /**
+     * Open the index and read it entirely.
+     */
+    static DocumentIndex open() {
+        return new DocumentIndex();
+    }
+
+    private DocumentIndex() {
+        entries = FileCacheRecordStore.open(
+            FileCacheFactory.getGlobalCache(), Key, MAGIC, VERSION, Codec, "DocDB"
+        );
+    }
+
+    Entry get(File docFile) {
+        return entries.get(docFile.getPath());
+    }
+
+    Map<File, Entry> getEntries() {
+        Map<File, Entry> files = new HashMap<File, Entry>();
+        for (Map.Entry<String, Entry> entry : entries.getEntries().entrySet()) {
+            files.put(new File(entry.getKey()), entry.getValue());
+        }
+        return files;
+    }
+
+    void put(File docFile, long time, File imageFile) {
+        entries.put(docFile.getPath(), new Entry(time, imageFile));
+    }
+
+    void remove(File docFile) {
+        entries.remove(docFile.getPath());
+    }
+
+    /**
+     * Push appended records to the file.
+     */
+    void flush() {
+        entries.flush();
+    }
+
+    /**
+     * Push appended records to the file and close it.
+     */
+    void close() {
+        entries.close();
+    }
+}
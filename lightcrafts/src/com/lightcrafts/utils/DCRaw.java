@@ -10,11 +10,14 @@ import com.lightcrafts.image.libs.LCImageReaderFactory;
 import com.lightcrafts.image.metadata.providers.*;
 import com.lightcrafts.image.metadata.MetadataUtil;
 import com.lightcrafts.jai.JAIContext;
+import com.lightcrafts.jai.opimage.CachedImage;
 import com.lightcrafts.utils.bytebuffer.ByteBufferUtil;
 
 import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.*;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.RasterFactory;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -43,13 +46,22 @@ public final class DCRaw implements
     static private Map<String,DCRaw> dcrawCache =
         new LRUHashMap<>(100);
 
-    public static synchronized DCRaw getInstanceFor( String fileName ) {
-        DCRaw instance = dcrawCache.get(fileName);
-        if (instance == null) {
-            instance = new DCRaw(fileName);
+    public static DCRaw getInstanceFor( String fileName ) {
+        synchronized (DCRaw.class) {
+            val instance = dcrawCache.get(fileName);
+            if (instance != null)
+                return instance;
+        }
+        // Run dcraw outside of the lock, so that several files can be
+        // identified at the same time.
+        val instance = new DCRaw(fileName);
+        synchronized (DCRaw.class) {
+            val other = dcrawCache.get(fileName);
+            if (other != null)
+                return other;
             dcrawCache.put(fileName, instance);
+            return instance;
         }
-        return instance;
     }
 
     /**
@@ -192,39 +204,23 @@ public final class DCRaw implements
         val info = new String[]{DCRAW_PATH, "-v", "-i", "-t", "0", m_fileName};
         val secondaryInfo = new String[]{DCRAW_PATH, "-v", "-i", "-s", "1", "-t", "0", m_fileName};
 
-        final int error;
+        try (DCRawPool.Invocation dcraw = DCRawPool.INSTANCE.invoke(secondary ? secondaryInfo : info)) {
+            String line;
+            while ((line = readln(dcraw.getStdOut())) != null) {
+                // System.out.println(line);
+                parseDCRawInfo(line, secondary);
+            }
 
-        synchronized (DCRaw.class) {
-            final Process p = execProcess(secondary ? secondaryInfo : info);
-            final InputStream dcrawStdErr = getDcrawStdErr(p);
-            final InputStream dcrawStdOut = getDcrawStdOut(p);
-            try {
-                String line;
-                while ((line = readln(dcrawStdOut)) != null) {
-                    // System.out.println(line);
-                    parseDCRawInfo(line, secondary);
-                }
+            // Flush stderr just in case...
+            while ((line = readln(dcraw.getStdErr())) != null)
+                ; // System.out.println(line);
 
-                // Flush stderr just in case...
-                while ((line = readln(dcrawStdErr)) != null)
-                    ; // System.out.println(line);
-            } finally {
-                if (p != null) {
-                    dcrawStdErr.close();
-                    dcrawStdOut.close();
-                    try {
-                        p.waitFor();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    error = p.exitValue();
-                    p.destroy();
-                } else {
-                    error = 0;
-                }
+            val error = dcraw.waitFor();
+            if (dcraw.isTimedOut()) {
+                throw new IOException("dcraw timed out on " + m_fileName);
             }
+            return error;
         }
-        return error;
     }
 
     private void parseDCRawInfo(String line, boolean secondary) {
@@ -343,27 +339,6 @@ public final class DCRaw implements
         }
     }
 
-    private InputStream getDcrawStdOut(Process p) {
-        return p == null
-                ? ForkDaemon.INSTANCE.getStdOut()
-                : p.getInputStream();
-    }
-
-    private InputStream getDcrawStdErr(Process p) {
-        return p == null
-                ? ForkDaemon.INSTANCE.getStdErr()
-                : new BufferedInputStream(p.getErrorStream());
-    }
-
-    private Process execProcess(String[] cmd) throws IOException {
-        if (ForkDaemon.INSTANCE != null) {
-            ForkDaemon.INSTANCE.invoke(cmd);
-            return null;
-        } else {
-            return Runtime.getRuntime().exec(cmd);
-        }
-    }
-
     private static class ImageData {
         final int width, height, bands, dataType;
         final Object data;
@@ -379,53 +354,82 @@ public final class DCRaw implements
         }
     }
 
-    private static ImageData readPPM(File file) throws BadImageFileException {
-        try (FileInputStream s = new FileInputStream(file)) {
-            val S1 = readln(s);
-            if (S1 == null) {
-                throw new BadImageFileException(file);
-            }
+    private static class PNMHeader {
+        final int width, height, bands, dataType;
 
-            final int width;
-            final int height;
-            final int bands;
-            final int dataType;
-            switch (S1) {
-                case "P5":
-                case "P6":
-                    bands = S1.equals("P5") ? 1 : 3;
-                    val S2 = readln(s);
-                    val S3 = readln(s);
-                    if (S2 == null || S3 == null) {
-                        throw new BadImageFileException(file);
-                    }
-                    val dimensions = S2.split("\\s");
-                    width = Integer.parseInt(dimensions[0]);
-                    height = Integer.parseInt(dimensions[1]);
-                    dataType = S3.equals("255") ? DataBuffer.TYPE_BYTE : DataBuffer.TYPE_USHORT;
-                    break;
-                case "P7":
-                    val SWIDTH = readln(s);
-                    val SHEIGHT = readln(s);
-                    val SDEPTH = readln(s);
-                    val SMAXVAL = readln(s);
-                    if (SWIDTH == null || SHEIGHT == null || SDEPTH == null || SMAXVAL == null) {
-                        throw new BadImageFileException(file);
-                    }
-                    val WIDTH = "WIDTH ";
-                    width = Integer.parseInt(SWIDTH.substring(WIDTH.length()));
-                    val HEIGHT = "HEIGHT ";
-                    height = Integer.parseInt(SHEIGHT.substring(HEIGHT.length()));
-                    val DEPTH = "DEPTH ";
-                    bands = Integer.parseInt(SDEPTH.substring(DEPTH.length()));
-                    val MAXVAL = "MAXVAL ";
-                    dataType = SMAXVAL.substring(MAXVAL.length()).equals("65535")
-                            ? DataBuffer.TYPE_USHORT
-                            : DataBuffer.TYPE_BYTE;
-                    break;
-                default:
+        PNMHeader(int width, int height, int bands, int dataType) {
+            this.width = width;
+            this.height = height;
+            this.bands = bands;
+            this.dataType = dataType;
+        }
+
+        int getBytesPerSample() {
+            return dataType == DataBuffer.TYPE_BYTE ? 1 : 2;
+        }
+    }
+
+    /**
+     * Parse a PNM header, leaving the stream at the first pixel byte.
+     */
+    private static PNMHeader readPNMHeader(InputStream s, File file)
+            throws BadImageFileException
+    {
+        val S1 = readln(s);
+        if (S1 == null) {
+            throw new BadImageFileException(file);
+        }
+
+        final int width;
+        final int height;
+        final int bands;
+        final int dataType;
+        switch (S1) {
+            case "P5":
+            case "P6":
+                bands = S1.equals("P5") ? 1 : 3;
+                val S2 = readln(s);
+                val S3 = readln(s);
+                if (S2 == null || S3 == null) {
                     throw new BadImageFileException(file);
-            }
+                }
+                val dimensions = S2.split("\\s");
+                width = Integer.parseInt(dimensions[0]);
+                height = Integer.parseInt(dimensions[1]);
+                dataType = S3.equals("255") ? DataBuffer.TYPE_BYTE : DataBuffer.TYPE_USHORT;
+                break;
+            case "P7":
+                val SWIDTH = readln(s);
+                val SHEIGHT = readln(s);
+                val SDEPTH = readln(s);
+                val SMAXVAL = readln(s);
+                if (SWIDTH == null || SHEIGHT == null || SDEPTH == null || SMAXVAL == null) {
+                    throw new BadImageFileException(file);
+                }
+                val WIDTH = "WIDTH ";
+                width = Integer.parseInt(SWIDTH.substring(WIDTH.length()));
+                val HEIGHT = "HEIGHT ";
+                height = Integer.parseInt(SHEIGHT.substring(HEIGHT.length()));
+                val DEPTH = "DEPTH ";
+                bands = Integer.parseInt(SDEPTH.substring(DEPTH.length()));
+                val MAXVAL = "MAXVAL ";
+                dataType = SMAXVAL.substring(MAXVAL.length()).equals("65535")
+                        ? DataBuffer.TYPE_USHORT
+                        : DataBuffer.TYPE_BYTE;
+                break;
+            default:
+                throw new BadImageFileException(file);
+        }
+        return new PNMHeader(width, height, bands, dataType);
+    }
+
+    private static ImageData readPPM(File file) throws BadImageFileException {
+        try (FileInputStream s = new FileInputStream(file)) {
+            val header = readPNMHeader(s, file);
+            val width = header.width;
+            val height = header.height;
+            val bands = header.bands;
+            val dataType = header.dataType;
             val imageData = new ImageData(width, height, bands, dataType);
             val totalData = width * height * bands * (dataType == DataBuffer.TYPE_BYTE ? 1 : 2);
 
@@ -460,6 +464,71 @@ public final class DCRaw implements
         }
     }
 
+    /**
+     * Read the pixels following a PNM header into the tiles of a new
+     * {@link CachedImage}, one tile row at a time: only the tiles of the
+     * current row and a single scanline are ever on the heap.  16 bit PNM
+     * samples are big endian, they are swapped while copying.
+     */
+    private static CachedImage readPNMTiles(InputStream in, PNMHeader header,
+                                            ColorModel cm, File file)
+            throws IOException, BadImageFileException
+    {
+        val width = header.width;
+        val height = header.height;
+        val bands = header.bands;
+        val isByte = header.dataType == DataBuffer.TYPE_BYTE;
+        val tileWidth = JAIContext.TILE_WIDTH;
+        val tileHeight = JAIContext.TILE_HEIGHT;
+
+        val bandOffsets = new int[bands];
+        for (int b = 0; b < bands; b++)
+            bandOffsets[b] = b;
+        val sm = new PixelInterleavedSampleModel(
+                header.dataType, tileWidth, tileHeight, bands, bands * tileWidth, bandOffsets);
+        val layout = new ImageLayout(0, 0, width, height, 0, 0, tileWidth, tileHeight, sm, cm);
+        val image = new CachedImage(layout, JAIContext.fileCache);
+
+        val row = new byte[width * bands * header.getBytesPerSample()];
+        val tiles = new WritableRaster[image.getNumXTiles()];
+        val data = new DataInputStream(in);
+
+        for (int y = 0; y < height; y++) {
+            val tileY = y / tileHeight;
+            val tileRow = y - tileY * tileHeight;
+            if (tileRow == 0) {
+                for (int tx = 0; tx < tiles.length; tx++)
+                    tiles[tx] = RasterFactory.createWritableRaster(
+                            sm, new Point(tx * tileWidth, tileY * tileHeight));
+            }
+            try {
+                data.readFully(row);
+            } catch (EOFException e) {
+                throw new BadImageFileException(file, e);
+            }
+            val dstOffset = tileRow * tileWidth * bands;
+            for (int tx = 0; tx < tiles.length; tx++) {
+                val x0 = tx * tileWidth;
+                val samples = Math.min(tileWidth, width - x0) * bands;
+                if (isByte) {
+                    val dst = ((DataBufferByte) tiles[tx].getDataBuffer()).getData();
+                    System.arraycopy(row, x0 * bands, dst, dstOffset, samples);
+                } else {
+                    val dst = ((DataBufferUShort) tiles[tx].getDataBuffer()).getData();
+                    for (int i = 0, j = 2 * x0 * bands; i < samples; i++, j += 2)
+                        dst[dstOffset + i] = (short) ((row[j] << 8) | (row[j + 1] & 0xff));
+                }
+            }
+            if (tileRow == tileHeight - 1 || y == height - 1) {
+                for (int tx = 0; tx < tiles.length; tx++) {
+                    image.setTile(tx, tileY, tiles[tx]);
+                    tiles[tx] = null;
+                }
+            }
+        }
+        return image;
+    }
+
     private static final String DCRAW_OUTPUT = "Writing data to ";
 
     public enum dcrawMode {full, preview, thumb}
@@ -490,11 +559,18 @@ public final class DCRaw implements
             if (secondaryPixels)
                 runDCRawInfo(true);
 
-            of = getDcrawOutputFile(mode, secondaryPixels);
-
             final long t2;
             final int totalData;
-            if (of.getName().endsWith(".jpg") || of.getName().endsWith(".tiff")) {
+            if (mode != dcrawMode.thumb) {
+                val image = streamDCRaw(mode, secondaryPixels);
+                t2 = System.currentTimeMillis();
+                totalData = image.getWidth() *
+                        image.getHeight() *
+                        image.getSampleModel().getNumBands() *
+                        (image.getSampleModel().getDataType() == DataBuffer.TYPE_BYTE ? 1 : 2);
+                result = image;
+            } else if ((of = getDcrawOutputFile(mode, secondaryPixels)).getName().endsWith(".jpg")
+                    || of.getName().endsWith(".tiff")) {
                 try {
                     val readerFactory = new LCImageReaderFactory();
                     val reader = readerFactory.create(of);
@@ -537,6 +613,52 @@ public final class DCRaw implements
         return result;
     }
 
+    /**
+     * Run dcraw with its output on stdout and read the pixels as they
+     * arrive, there is no temporary file and no full frame array.
+     */
+    private CachedImage streamDCRaw(dcrawMode mode, boolean secondaryPixels)
+            throws IOException, UnknownImageTypeException, BadImageFileException
+    {
+        val file = new File(m_fileName);
+        val cmd = dcrawCommandLine(mode, secondaryPixels, null);
+
+        final CachedImage image;
+        final int error;
+        final boolean timedOut;
+
+        try (DCRawPool.Invocation dcraw = DCRawPool.INSTANCE.invoke(cmd, true)) {
+            try {
+                val in = new BufferedInputStream(dcraw.getStdOut(), 1 << 16);
+                val header = readPNMHeader(in, file);
+                val cm = getColorModel(mode, header.bands, header.dataType);
+                image = readPNMTiles(in, header, cm, file);
+            } catch (IOException | BadImageFileException e) {
+                if (dcraw.isTimedOut()) {
+                    throw new BadImageFileException(file, e);
+                }
+                throw e;
+            }
+
+            // Diagnostics come on stderr, dcraw writes only a few lines so
+            // the pipe can't fill up while we read the pixels
+            String line;
+            while ((line = readln(dcraw.getStdErr())) != null)
+                System.out.println(line);
+
+            error = dcraw.waitFor();
+            timedOut = dcraw.isTimedOut();
+        }
+
+        System.out.println("dcraw value: " + error);
+
+        if (error > 0 || timedOut) {
+            JAIContext.fileCache.removeTiles(image);
+            throw new BadImageFileException(file);
+        }
+        return image;
+    }
+
     private File getDcrawOutputFile(dcrawMode mode, boolean secondaryPixels)
             throws IOException, BadImageFileException
     {
@@ -546,25 +668,12 @@ public final class DCRaw implements
         val cmd = dcrawCommandLine(mode, secondaryPixels, of);
 
         final int error;
+        final boolean timedOut;
 
-        synchronized (DCRaw.class) {
-            final Process p;
-            final InputStream dcrawStdErr;
-            final InputStream dcrawStdOut;
-            if (ForkDaemon.INSTANCE != null) {
-                p = null;
-                ForkDaemon.INSTANCE.invoke(cmd);
-                dcrawStdErr = ForkDaemon.INSTANCE.getStdErr();
-                dcrawStdOut = ForkDaemon.INSTANCE.getStdOut();
-            } else {
-                p = Runtime.getRuntime().exec(cmd);
-                dcrawStdErr = new BufferedInputStream(p.getErrorStream());
-                dcrawStdOut = p.getInputStream();
-            }
-
+        try (DCRawPool.Invocation dcraw = DCRawPool.INSTANCE.invoke(cmd)) {
             String line;
             // output expected on stderr
-            while ((line = readln(dcrawStdErr)) != null) {
+            while ((line = readln(dcraw.getStdErr())) != null) {
                 System.out.println(line);
 
                 val args = match(line, DCRAW_OUTPUT);
@@ -573,27 +682,19 @@ public final class DCRaw implements
             }
 
             // Flush stdout just in case...
-            while ((line = readln(dcrawStdOut)) != null)
+            while ((line = readln(dcraw.getStdOut())) != null)
                 System.out.println(line);
 
-            if (p != null) {
-                dcrawStdErr.close();
-
-                try {
-                    p.waitFor();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                error = p.exitValue();
-                p.destroy();
-            } else {
-                error = 0;
-            }
+            error = dcraw.waitFor();
+            timedOut = dcraw.isTimedOut();
         }
 
         System.out.println("dcraw value: " + error);
 
-        if (error > 0) {
+        if (error > 0 || timedOut) {
+            if (!of.delete()) {
+                System.out.println("Could not delete temporary file: " + of);
+            }
             throw new BadImageFileException(of);
         }
 
@@ -611,9 +712,13 @@ public final class DCRaw implements
     private String[] dcrawCommandLine(dcrawMode mode, boolean secondaryPixels, File of) {
         val makeModel = (m_make + ' ' + m_model).toUpperCase();
         val four_colors = four_color_cameras.contains(makeModel);
-        val path = of.getAbsolutePath();
-
-        val cmd = new ArrayList<String>(Arrays.asList(DCRAW_PATH, "-F", path, "-v"));
+        val cmd = new ArrayList<String>();
+        cmd.add(DCRAW_PATH);
+        if (of != null)
+            cmd.addAll(Arrays.asList("-F", of.getAbsolutePath()));
+        else
+            cmd.add("-c");
+        cmd.add("-v");
 
         switch (mode) {
         case full:
@@ -0,0 +1,286 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of concurrent dcraw invocations.
+ * <p>
+ * Each {@link Invocation} gets its own stdout and stderr: either a
+ * {@link ForkDaemon} of its own, when the fork daemon is in use, or a plain
+ * child process.  At most {@link #getConcurrency()} invocations run at the
+ * same time, the others wait in line.  An invocation running longer than
+ * the timeout is killed, which unblocks whoever is reading its streams.
+ * <p>
+ * The concurrency level defaults to the number of processors and can be
+ * set with the <code>lightcrafts.dcraw.threads</code> system property; the
+ * timeout, in seconds, with <code>lightcrafts.dcraw.timeout</code>.
+ */
+public final class DCRawPool {
+
+    ////////// public /////////////////////////////////////////////////////////
+
+    public static final String CONCURRENCY_PROPERTY = "lightcrafts.dcraw.threads";
+    public static final String TIMEOUT_PROPERTY = "lightcrafts.dcraw.timeout";
+
+    public static final DCRawPool INSTANCE = new DCRawPool(
+        Integer.getInteger(
+            CONCURRENCY_PROPERTY, Runtime.getRuntime().availableProcessors()
+        ),
+        Long.getLong(TIMEOUT_PROPERTY, 300)
+    );
+
+    /**
+     * A running dcraw command.  It must be closed to give its slot back to
+     * the pool.
+     */
+    public final class Invocation implements AutoCloseable {
+
+        public InputStream getStdOut() {
+            return m_stdout;
+        }
+
+        public InputStream getStdErr() {
+            return m_stderr;
+        }
+
+        /**
+         * Wait for the command to complete and return its exit value.  The
+         * fork daemon doesn't report exit values, so this is always 0 for
+         * its invocations.
+         */
+        public int waitFor() throws IOException {
+            if (m_process == null) {
+                return 0;
+            }
+            try {
+                m_process.waitFor();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for dcraw");
+            }
+            return m_process.exitValue();
+        }
+
+        public boolean isTimedOut() {
+            return m_timedOut;
+        }
+
+        /**
+         * How long this invocation waited for a free slot, in milliseconds.
+         */
+        public long getQueueWait() {
+            return m_queueWait / 1000000;
+        }
+
+        @Override
+        public void close() {
+            if (m_closed) {
+                return;
+            }
+            m_closed = true;
+            m_watchdog.cancel(false);
+
+            m_decodeNanos.addAndGet(System.nanoTime() - m_start);
+            if (m_timedOut) {
+                m_timeouts.incrementAndGet();
+            }
+
+            if (m_process != null) {
+                try {
+                    m_stdout.close();
+                    m_stderr.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+                m_process.destroy();
+            }
+            else if (!m_timedOut) {
+                m_idleForkers.add(m_forker);
+            }
+            m_slots.release();
+        }
+
+        ////////// private ////////////////////////////////////////////////////
+
+        private Invocation(String[] cmd, boolean direct, long queueWait)
+            throws IOException
+        {
+            m_queueWait = queueWait;
+
+            ForkDaemon forker = null;
+            if (ForkDaemon.INSTANCE != null && !direct) {
+                forker = m_idleForkers.poll();
+                if (forker == null) {
+                    try {
+                        forker = ForkDaemon.newInstance();
+                    }
+                    catch (IOException e) {
+                        // Fall back to a plain child process.
+                        e.printStackTrace();
+                    }
+                }
+            }
+            m_forker = forker;
+
+            if (forker != null) {
+                m_process = null;
+                forker.invoke(cmd);
+                m_stdout = forker.getStdOut();
+                m_stderr = forker.getStdErr();
+            }
+            else {
+                m_process = Runtime.getRuntime().exec(cmd);
+                m_stdout = m_process.getInputStream();
+                m_stderr = new BufferedInputStream(m_process.getErrorStream());
+            }
+            m_start = System.nanoTime();
+            m_watchdog = m_timer.schedule(
+                new Runnable() {
+                    public void run() {
+                        timeout();
+                    }
+                },
+                m_timeout, TimeUnit.SECONDS
+            );
+        }
+
+        private void timeout() {
+            m_timedOut = true;
+            System.err.println(
+                "dcraw timed out after " + m_timeout + "s, killing it"
+            );
+            if (m_process != null) {
+                m_process.destroyForcibly();
+            }
+            else {
+                // The forker goes away with its pipes, and a fresh one will
+                // be started on demand.
+                m_forker.destroy();
+            }
+        }
+
+        private final ForkDaemon m_forker;
+        private final Process m_process;
+        private final InputStream m_stdout;
+        private final InputStream m_stderr;
+        private final long m_queueWait;
+        private final long m_start;
+        private final ScheduledFuture<?> m_watchdog;
+        private volatile boolean m_timedOut;
+        private boolean m_closed;
+    }
+
+    /**
+     * Start the given dcraw command as soon as a slot is free.
+     */
+    public Invocation invoke(String[] cmd) throws IOException {
+        return invoke(cmd, false);
+    }
+
+    /**
+     * Start the given dcraw command as soon as a slot is free.  A direct
+     * invocation always runs as a plain child process: the fork daemon
+     * relays stdout and stderr in turns with blocking reads, which stalls
+     * on large binary output like an image streamed to stdout.
+     */
+    public Invocation invoke(String[] cmd, boolean direct) throws IOException {
+        final long t0 = System.nanoTime();
+        m_slots.acquireUninterruptibly();
+        final long queueWait = System.nanoTime() - t0;
+        m_queueNanos.addAndGet(queueWait);
+        m_invocations.incrementAndGet();
+        try {
+            return new Invocation(cmd, direct, queueWait);
+        }
+        catch (IOException | RuntimeException e) {
+            m_slots.release();
+            throw e;
+        }
+    }
+
+    public int getConcurrency() {
+        return m_concurrency;
+    }
+
+    public long getInvocationCount() {
+        return m_invocations.get();
+    }
+
+    public long getTimeoutCount() {
+        return m_timeouts.get();
+    }
+
+    /**
+     * Average time spent waiting for a free slot, in milliseconds.
+     */
+    public double getAverageQueueWait() {
+        final long n = m_invocations.get();
+        return n > 0 ? m_queueNanos.get() / (n * 1e6) : 0;
+    }
+
+    /**
+     * Average time from the start of dcraw to the release of its slot, in
+     * milliseconds.
+     */
+    public double getAverageDecodeTime() {
+        final long n = m_invocations.get();
+        return n > 0 ? m_decodeNanos.get() / (n * 1e6) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "DCRawPool: %d slots, %d invocations, %d timeouts, " +
+            "queue wait %.1fms, decode %.1fms",
+            m_concurrency, getInvocationCount(), getTimeoutCount(),
+            getAverageQueueWait(), getAverageDecodeTime()
+        );
+    }
+
+    ////////// private ////////////////////////////////////////////////////////
+
+    private DCRawPool(int concurrency, long timeout) {
+        m_concurrency = Math.max(concurrency, 1);
+        m_timeout = Math.max(timeout, 1);
+        m_slots = new Semaphore(m_concurrency, true);
+        m_timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "DCRaw Watchdog");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }
+        );
+        if (ForkDaemon.INSTANCE != null) {
+            m_idleForkers.add(ForkDaemon.INSTANCE);
+        }
+    }
+
+    private final int m_concurrency;
+    private final long m_timeout;
+    private final Semaphore m_slots;
+    private final ScheduledExecutorService m_timer;
+    private final ConcurrentLinkedQueue<ForkDaemon> m_idleForkers =
+        new ConcurrentLinkedQueue<ForkDaemon>();
+
+    private final AtomicLong m_invocations = new AtomicLong();
+    private final AtomicLong m_timeouts = new AtomicLong();
+    private final AtomicLong m_queueNanos = new AtomicLong();
+    private final AtomicLong m_decodeNanos = new AtomicLong();
+}
+/* vim:set et sw=4 ts=4: */
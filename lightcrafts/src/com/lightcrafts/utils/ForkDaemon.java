@@ -62,6 +62,21 @@ public final class ForkDaemon {
         INSTANCE = new ForkDaemon();
     }
 
+    /**
+     * Start another forker, so that several commands can run at the same
+     * time each with its own pipes.  See DCRawPool.
+     */
+    static ForkDaemon newInstance() throws IOException {
+        return new ForkDaemon();
+    }
+
+    /**
+     * Kill the forker, closing its pipes.
+     */
+    void destroy() {
+        forkerProcess.destroyForcibly();
+    }
+
     ////////// protected //////////////////////////////////////////////////////
 
     protected void finalize() throws Throwable {
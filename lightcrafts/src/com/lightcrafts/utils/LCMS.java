@@ -14,6 +14,9 @@ import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 /**
  * Created by IntelliJ IDEA.
@@ -304,23 +307,62 @@ public class LCMS {
 
     // TODO: exception handling
 
-    private final static class RCHandleHashMap<K,V extends RCHandle> extends LRUHashMap<K,V> {
+    /**
+     * A bounded cache of reference counted native handles.  The cache holds
+     * a reference to each of its handles, released when the handle is
+     * evicted, so a handle is freed once it is neither cached nor in use.
+     */
+    private final static class RCHandleCache<K> {
+        private final Map<K, RCHandle> map;
+        private long hits;
+        private long misses;
+
+        RCHandleCache(final int maxEntries) {
+            map = new LRUHashMap<K, RCHandle>(16, 0.75f, true, maxEntries) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, RCHandle> eldest) {
+                    if (size() > m_maxEntries) {
+                        eldest.getValue().release();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Gets a reference to the handle for the given key, creating it if it
+         * isn't cached.  Creation happens under the cache lock so that
+         * concurrent callers don't create the same native object twice.
+         */
+        synchronized RCHandle acquire(K key, Supplier<RCHandle> factory) {
+            RCHandle handle = map.get(key);
+            if (handle != null) {
+                hits++;
+            } else {
+                misses++;
+                handle = factory.get();
+                map.put(key, handle);
+            }
+            handle.increment();
+            return handle;
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
 
-        public RCHandleHashMap(int max_entries) {
-            super(max_entries);
+        synchronized long getMisses() {
+            return misses;
         }
 
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
-            if (size() > m_maxEntries) {
-                eldest.getValue().decrement();
-                return true;
-            }
-            return false;
+        public synchronized String toString() {
+            return map.size() + " cached, " + hits + " hits, " + misses + " misses";
         }
     }
 
-    private static class RCHandle {
+    private static abstract class RCHandle {
         final long handle;
         private int refcount = 1;
 
@@ -333,9 +375,89 @@ public class LCMS {
             return refcount;
         }
 
-        synchronized int decrement() {
-            refcount--;
-            return refcount;
+        /**
+         * Drops a reference, freeing the native object with the last one.
+         */
+        void release() {
+            final boolean last;
+            synchronized (this) {
+                last = --refcount == 0;
+            }
+            if (last)
+                close();
+        }
+
+        abstract void close();
+    }
+
+    private static class ProfileHandle extends RCHandle {
+        /**
+         * What the profile was made from, which identifies it in transform
+         * cache keys: native handles may be reused once a profile is closed.
+         */
+        final Object key;
+
+        ProfileHandle(long handle, Object key) {
+            super(handle);
+            this.key = key;
+        }
+
+        @Override
+        void close() {
+            LCMSNative.cmsCloseProfile(handle);
+        }
+    }
+
+    private static class TransformHandle extends RCHandle {
+        TransformHandle(long handle) {
+            super(handle);
+        }
+
+        @Override
+        void close() {
+            LCMSNative.cmsDeleteTransform(handle);
+        }
+    }
+
+    /**
+     * The contents of an ICC_Profile, so that distinct but equal instances,
+     * like those read again from the same file, share a native profile.
+     */
+    private static class ICCProfileKey {
+        private static final Map<ICC_Profile, ICCProfileKey> keys = new WeakHashMap<ICC_Profile, ICCProfileKey>();
+
+        final byte[] data;
+        private final int hash;
+
+        private ICCProfileKey(byte[] data) {
+            this.data = data;
+            hash = Arrays.hashCode(data);
+        }
+
+        static ICCProfileKey get(ICC_Profile iccProfile) {
+            synchronized (keys) {
+                ICCProfileKey key = keys.get(iccProfile);
+                if (key == null) {
+                    key = new ICCProfileKey(iccProfile.getData());
+                    keys.put(iccProfile, key);
+                }
+                return key;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ICCProfileKey that = (ICCProfileKey) o;
+
+            return hash == that.hash && Arrays.equals(data, that.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 
@@ -375,42 +497,27 @@ public class LCMS {
     }
 
     public static class Profile {
-        private static Map<Object, RCHandle> profileCache = new RCHandleHashMap<Object, RCHandle>(20);
+        private static final RCHandleCache<Object> profileCache = new RCHandleCache<Object>(20);
 
-        protected RCHandle cmsProfile = null;
+        protected ProfileHandle cmsProfile = null;
 
         protected Profile() { }
 
         public Profile(ICC_Profile iccProfile) {
-            RCHandle handle = profileCache.get(iccProfile);
-
-            if (handle != null && handle.increment() > 1)
-                cmsProfile = handle;
-            else {
-                byte[] data = iccProfile.getData();
-                cmsProfile = new RCHandle(LCMSNative.cmsOpenProfileFromMem(data, data.length));
-                profileCache.put(iccProfile, cmsProfile);
-                cmsProfile.increment(); // for the cache reference
-            }
+            final ICCProfileKey key = ICCProfileKey.get(iccProfile);
+            cmsProfile = (ProfileHandle) profileCache.acquire(key, () -> new ProfileHandle(
+                    LCMSNative.cmsOpenProfileFromMem(key.data, key.data.length), key));
         }
 
         public Profile(double[] whitePoint, double[] primaries, double gamma) {
-            RGBProfileComponents components = new RGBProfileComponents(whitePoint, primaries, gamma);
-            RCHandle handle = profileCache.get(components);
-
-            if (handle != null && handle.increment() > 1)
-                cmsProfile = handle;
-            else {
-                cmsProfile = new RCHandle(LCMSNative.cmsCreateRGBProfile(whitePoint, primaries, gamma));
-                profileCache.put(components, cmsProfile);
-                cmsProfile.increment(); // for the cache reference
-            }
+            final RGBProfileComponents key = new RGBProfileComponents(whitePoint, primaries, gamma);
+            cmsProfile = (ProfileHandle) profileCache.acquire(key, () -> new ProfileHandle(
+                    LCMSNative.cmsCreateRGBProfile(whitePoint, primaries, gamma), key));
         }
 
-        public void dispose() {
-            if (cmsProfile != null && cmsProfile.decrement() == 0) {
-                LCMSNative.cmsCloseProfile(cmsProfile.handle);
-            }
+        public synchronized void dispose() {
+            if (cmsProfile != null)
+                cmsProfile.release();
             cmsProfile = null;
         }
 
@@ -418,17 +525,29 @@ public class LCMS {
         public void finalize() {
             dispose();
         }
+
+        /**
+         * Gets the number of profiles served from the profile cache.
+         */
+        public static long getCacheHits() {
+            return profileCache.getHits();
+        }
+
+        /**
+         * Gets the number of profiles that had to be opened.
+         */
+        public static long getCacheMisses() {
+            return profileCache.getMisses();
+        }
     }
 
     public static class LABProfile extends Profile {
-        private static long labProfileHandle = -1;
-        private static RCHandle handle = null;
+        private static ProfileHandle handle = null;
 
         public LABProfile() {
-            if (labProfileHandle == -1) {
-                labProfileHandle = LCMSNative.cmsCreateLab2Profile();
-                cmsProfile = handle = new RCHandle(labProfileHandle);
-            } else {
+            synchronized (LABProfile.class) {
+                if (handle == null)
+                    handle = new ProfileHandle(LCMSNative.cmsCreateLab2Profile(), LABProfile.class);
                 cmsProfile = handle;
             }
         }
@@ -465,39 +584,45 @@ public class LCMS {
     }
 
     public static class Transform {
-        private static Map<Object, RCHandle> transformCache = new RCHandleHashMap<Object, RCHandle>(20);
+        private static final RCHandleCache<TransformData> transformCache =
+                new RCHandleCache<TransformData>(Integer.getInteger("lightcrafts.lcms.transforms", 32));
 
         private RCHandle cmsTransform;
 
+        /**
+         * Identifies a transform by its profiles' contents, rather than their
+         * native handles, so that transforms are shared by separately built
+         * op-images and a reused handle can't match a stale transform.
+         */
         private static class TransformData {
-            final long inputProfileHandle;
+            final Object inputProfile;
             final int inputType;
-            final long outputProfileHandle;
+            final Object outputProfile;
             final int outputType;
-            final long proofProfileHandle;
+            final Object proofProfile;
             final int intent;
             final int proofIntent;
             final int flags;
 
             TransformData(Profile input, int inputType, Profile output, int outputType, int intent, int flags) {
-                inputProfileHandle = input.cmsProfile.handle;
+                inputProfile = input.cmsProfile.key;
                 this.inputType = inputType;
-                outputProfileHandle = output.cmsProfile.handle;
+                outputProfile = output.cmsProfile.key;
                 this.outputType = outputType;
                 this.intent = intent;
-                proofProfileHandle = 0;
+                proofProfile = null;
                 this.proofIntent = 0;
                 this.flags = flags;
             }
 
             TransformData(Profile input, int inputType, Profile output, int outputType, Profile proof,
                           int intent, int proofIntent, int flags) {
-                inputProfileHandle = input.cmsProfile.handle;
+                inputProfile = input.cmsProfile.key;
                 this.inputType = inputType;
-                outputProfileHandle = output.cmsProfile.handle;
+                outputProfile = output.cmsProfile.key;
                 this.outputType = outputType;
                 this.intent = intent;
-                proofProfileHandle = proof.cmsProfile.handle;
+                proofProfile = proof.cmsProfile.key;
                 this.proofIntent = proofIntent;
                 this.flags = flags;
             }
@@ -510,23 +635,23 @@ public class LCMS {
                 TransformData that = (TransformData) o;
 
                 return ((flags == that.flags)
-                        && (inputProfileHandle == that.inputProfileHandle)
                         && (inputType == that.inputType)
                         && (intent == that.intent)
-                        && (outputProfileHandle == that.outputProfileHandle)
                         && (outputType == that.outputType)
                         && (proofIntent == that.proofIntent)
-                        && (proofProfileHandle == that.proofProfileHandle));
+                        && inputProfile.equals(that.inputProfile)
+                        && outputProfile.equals(that.outputProfile)
+                        && Objects.equals(proofProfile, that.proofProfile));
             }
 
             @Override
             public int hashCode() {
                 int result;
-                result = (int) (inputProfileHandle ^ (inputProfileHandle >>> 32));
+                result = inputProfile.hashCode();
                 result = 31 * result + inputType;
-                result = 31 * result + (int) (outputProfileHandle ^ (outputProfileHandle >>> 32));
+                result = 31 * result + outputProfile.hashCode();
                 result = 31 * result + outputType;
-                result = 31 * result + (int) (proofProfileHandle ^ (proofProfileHandle >>> 32));
+                result = 31 * result + Objects.hashCode(proofProfile);
                 result = 31 * result + intent;
                 result = 31 * result + proofIntent;
                 result = 31 * result + flags;
@@ -536,43 +661,47 @@ public class LCMS {
 
         public Transform(Profile input, int inputType, Profile output, int outputType, int intent, int flags) {
             TransformData td = new TransformData(input, inputType, output, outputType, intent, flags);
-            RCHandle transformHandle = transformCache.get(td);
-
-            if (transformHandle != null && transformHandle.increment() > 1)
-                cmsTransform = transformHandle;
-            else {
-                // Don't bother hires with 8bit to 8bit transforms
-                if (inputType != TYPE_RGB_8 || outputType != TYPE_RGB_8)
-                    flags |= cmsFLAGS_HIGHRESPRECALC;
-
-                cmsTransform = new RCHandle(LCMSNative.cmsCreateTransform(input.cmsProfile.handle, inputType,
-                        output.cmsProfile.handle, outputType,
-                        intent, flags));
-
-                transformCache.put(td, cmsTransform);
-                cmsTransform.increment(); // for the cache reference
-            }
+            // Don't bother hires with 8bit to 8bit transforms
+            final int cmsFlags = inputType != TYPE_RGB_8 || outputType != TYPE_RGB_8
+                                 ? flags | cmsFLAGS_HIGHRESPRECALC
+                                 : flags;
+
+            cmsTransform = transformCache.acquire(td, () -> new TransformHandle(
+                    LCMSNative.cmsCreateTransform(input.cmsProfile.handle, inputType,
+                                                  output.cmsProfile.handle, outputType,
+                                                  intent, cmsFlags)));
         }
 
         public Transform(Profile input, int inputType, Profile output, int outputType, Profile proof,
                          int intent, int proofIntent, int flags) {
             TransformData td = new TransformData(input, inputType, output, outputType, proof, intent, proofIntent, flags);
-            RCHandle transformHandle = transformCache.get(td);
 
-            if (transformHandle != null && transformHandle.increment() > 1)
-                cmsTransform = transformHandle;
-            else {
-                cmsTransform = new RCHandle(LCMSNative.cmsCreateProofingTransform(input.cmsProfile.handle, inputType,
-                        output.cmsProfile.handle, outputType,
-                        proof.cmsProfile.handle,
-                        intent, proofIntent,
-                        flags
-                                | cmsFLAGS_NOTPRECALC
-                                | cmsFLAGS_SOFTPROOFING));
-
-                transformCache.put(td, cmsTransform);
-                cmsTransform.increment(); // for the cache reference
-            }
+            cmsTransform = transformCache.acquire(td, () -> new TransformHandle(
+                    LCMSNative.cmsCreateProofingTransform(input.cmsProfile.handle, inputType,
+                                                          output.cmsProfile.handle, outputType,
+                                                          proof.cmsProfile.handle,
+                                                          intent, proofIntent,
+                                                          flags
+                                                                  | cmsFLAGS_NOTPRECALC
+                                                                  | cmsFLAGS_SOFTPROOFING)));
+        }
+
+        /**
+         * Gets the number of transforms served from the transform cache.
+         */
+        public static long getCacheHits() {
+            return transformCache.getHits();
+        }
+
+        /**
+         * Gets the number of transforms that had to be built.
+         */
+        public static long getCacheMisses() {
+            return transformCache.getMisses();
+        }
+
+        public static String getCacheStatistics() {
+            return "LCMS transforms: " + transformCache + "; profiles: " + Profile.profileCache;
         }
 
         public void doTransform(RasterAccessor src, RasterFormatTag srcRft, ColorModel srcCm,
@@ -629,10 +758,9 @@ public class LCMS {
             LCMSNative.cmsDoTransform(cmsTransform.handle, input, output, 1);
         }
 
-        public void dispose() {
-            if (cmsTransform != null && cmsTransform.decrement() == 0) {
-                LCMSNative.cmsDeleteTransform(cmsTransform.handle);
-            }
+        public synchronized void dispose() {
+            if (cmsTransform != null)
+                cmsTransform.release();
             cmsTransform = null;
         }
 
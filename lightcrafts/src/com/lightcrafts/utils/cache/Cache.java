@@ -4,7 +4,12 @@ package com.lightcrafts.utils.cache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -13,6 +18,13 @@ import java.util.Map;
  *    <li>More objects than can fit into memory can be cached.
  *    <li>Unlike a map, once you get an object, it's no longer in the cache.
  *  </ul>
+ * Objects written to the {@link CacheStore} are queued and written by a
+ * background thread, so the caller doesn't wait for the disk.  Until then,
+ * they are read back straight from the queue.  The queue holds at most
+ * <code>lightcrafts.cache.spillqueue</code> megabytes (default 64), beyond
+ * that callers wait for the writer to catch up.  The lock on the cache is
+ * never held during I/O.  An optional {@link CacheCodec} compresses the
+ * objects on the writer thread.
  *
  * @author Paul J. Lucas [paul@lightcrafts.com]
  */
@@ -30,7 +42,26 @@ public final class Cache {
      */
     public Cache( CacheObjectBroker objBroker, CacheObjectMap objMap,
                   CacheStore store, FreeBlockManager freeBlockMgr ) {
+        this( objBroker, objMap, store, freeBlockMgr, null );
+    }
+
+    /**
+     * Construct a <code>Cache</code> that compresses the objects it writes
+     * to its {@link CacheStore}.
+     *
+     * @param objBroker The {@link CacheObjectBroker} to use.
+     * @param objMap The {@link CacheObjectMap} to use.
+     * @param store The {@link CacheStore} to use.
+     * @param freeBlockMgr The {@link FreeBlockManager} to use.
+     * @param codec The {@link CacheCodec} to use, or <code>null</code> to
+     * write objects as they are.
+     */
+    public Cache( CacheObjectBroker objBroker, CacheObjectMap objMap,
+                  CacheStore store, FreeBlockManager freeBlockMgr,
+                  CacheCodec codec ) {
+        m_codec = codec;
         m_blockMap = new HashMap<Object,CacheBlock>();
+        m_pending = new LinkedHashMap<Object,ByteBuffer>();
         m_freeBlockMgr = freeBlockMgr;
         m_objBroker = objBroker;
         m_objMap = objMap;
@@ -43,11 +74,111 @@ public final class Cache {
      */
     public synchronized void clear() throws IOException {
         m_blockMap.clear();
+        m_pending.clear();
+        m_pendingBytes = 0;
+        ++m_generation;
+        m_storeEnd = 0;
+        notifyAll();
         m_freeBlockMgr.clear();
         m_objMap.clear();
         m_store.clear();
     }
 
+    /**
+     * Compacts the {@link CacheStore}: moves the objects at the end of the
+     * store into free blocks before them, last object first, then shrinks
+     * the store to end after the last object.  The lock on the cache is held
+     * throughout, so this is for when the cache is not busy.
+     *
+     * @return Returns the number of bytes the store shrank by.
+     */
+    public synchronized long compact() throws IOException {
+        if ( m_storeEnd < 0 )
+            m_storeEnd = m_store.getSize();
+        final long oldEnd = m_storeEnd;
+
+        final List<Map.Entry<Object,CacheBlock>> objects =
+            new ArrayList<Map.Entry<Object,CacheBlock>>( m_blockMap.entrySet() );
+        Collections.sort(
+            objects,
+            new Comparator<Map.Entry<Object,CacheBlock>>() {
+                public int compare( Map.Entry<Object,CacheBlock> e1,
+                                    Map.Entry<Object,CacheBlock> e2 ) {
+                    return Long.compare(
+                        e2.getValue().getPosition(), e1.getValue().getPosition()
+                    );
+                }
+            }
+        );
+        for ( Map.Entry<Object,CacheBlock> me : objects ) {
+            final CacheBlock block = me.getValue();
+            final CacheBlock hole = m_freeBlockMgr.findBlockOfSize(
+                block.getSize(), block.getPosition()
+            );
+            if ( hole == null )
+                continue;
+            final ByteBuffer buf = m_store.getByteBuffer( block.getSize() );
+            m_store.readFromStore( block.getPosition(), buf );
+            m_store.writeToStore( hole.getPosition(), buf );
+            m_blockMap.put( me.getKey(), hole );
+            m_freeBlockMgr.freeBlock( block );
+        }
+
+        //
+        // Blocks being read or written right now are not free, so they are
+        // never cut off.
+        //
+        final CacheBlock tail = m_freeBlockMgr.trimEnd( m_storeEnd );
+        if ( tail != null ) {
+            m_storeEnd = tail.getPosition();
+            m_store.truncate( m_storeEnd );
+        }
+        return oldEnd - m_storeEnd;
+    }
+
+    /**
+     * Gets the fraction of the {@link CacheStore} that is free space, which
+     * {@link #compact()} can give back.
+     *
+     * @return Returns said fraction, between 0 and 1.
+     */
+    public synchronized double getFreeRatio() {
+        return m_storeEnd > 0 ?
+            (double)m_freeBlockMgr.getFreeSize() / m_storeEnd : 0;
+    }
+
+    /**
+     * Gets the fragmentation of the free space in the {@link CacheStore}: 0
+     * if it's all in one block, close to 1 if it's scattered in many small
+     * blocks.
+     *
+     * @return Returns said fragmentation, between 0 and 1.
+     */
+    public synchronized double getFragmentation() {
+        final long freeSize = m_freeBlockMgr.getFreeSize();
+        return freeSize > 0 ?
+            1 - (double)m_freeBlockMgr.getLargestFreeBlockSize() / freeSize : 0;
+    }
+
+    /**
+     * Gets the average size of the objects written to the {@link CacheStore}
+     * relative to their size before compression.
+     *
+     * @return Returns said ratio, 1 if there is no {@link CacheCodec}.
+     */
+    public synchronized double getCompressionRatio() {
+        return m_rawBytes > 0 ? (double)m_writtenBytes / m_rawBytes : 1;
+    }
+
+    /**
+     * Gets the size of the used part of the {@link CacheStore}.
+     *
+     * @return Returns said size, in bytes.
+     */
+    public synchronized long getStoreSize() {
+        return Math.max( m_storeEnd, 0 );
+    }
+
     /**
      * Checks whether the cache contains a particular object.
      *
@@ -62,6 +193,10 @@ public final class Cache {
      * Disposes of this <code>Cache</code>.
      */
     public synchronized void dispose() throws IOException {
+        m_disposed = true;
+        m_pending.clear();
+        m_pendingBytes = 0;
+        notifyAll();
         m_objMap.dispose();
         m_store.dispose();
     }
@@ -150,17 +285,44 @@ public final class Cache {
      * any purpose.
      * @return Returns the read object.
      */
-    public synchronized Object readFromStore( Object key, Object aux )
+    public Object readFromStore( Object key, Object aux )
         throws IOException
     {
-        final CacheBlock block = m_blockMap.remove( key );
-        if ( block == null )
-            return null;
-        final ByteBuffer buf = m_store.getByteBuffer( block.getSize() );
-        m_store.readFromStore( block.getPosition(), buf );
-        final Object obj = m_objBroker.decodeFromByteBuffer( buf, aux );
-        m_freeBlockMgr.freeBlock( block );
-        return obj;
+        final CacheBlock block;
+        final int generation;
+        synchronized ( this ) {
+            final ByteBuffer buf = m_pending.remove( key );
+            if ( buf != null ) {
+                //
+                // Not written yet: if the writer is busy with it, it finds
+                // out it's gone when done.
+                //
+                m_pendingBytes -= buf.limit();
+                notifyAll();
+                buf.position( 0 );
+                return m_objBroker.decodeFromByteBuffer( buf, aux );
+            }
+            block = m_blockMap.remove( key );
+            if ( block == null )
+                return null;
+            generation = m_generation;
+        }
+        try {
+            ByteBuffer buf = m_store.getByteBuffer( block.getSize() );
+            m_store.readFromStore( block.getPosition(), buf );
+            if ( m_codec != null )
+                buf = m_codec.decompress( buf, m_store );
+            return m_objBroker.decodeFromByteBuffer( buf, aux );
+        }
+        finally {
+            //
+            // The block can't be reused before it's been read.
+            //
+            synchronized ( this ) {
+                if ( generation == m_generation )
+                    m_freeBlockMgr.freeBlock( block );
+            }
+        }
     }
 
     /**
@@ -172,6 +334,12 @@ public final class Cache {
      * @return Returns <code>true</code> only if the object was removed.
      */
     public synchronized boolean removeFromStore( Object key ) {
+        final ByteBuffer buf = m_pending.remove( key );
+        if ( buf != null ) {
+            m_pendingBytes -= buf.limit();
+            notifyAll();
+            return true;
+        }
         final CacheBlock block = m_blockMap.remove( key );
         if ( block != null ) {
             m_freeBlockMgr.freeBlock( block );
@@ -188,13 +356,17 @@ public final class Cache {
      * contains an object having the given key.
      */
     public synchronized boolean storeContains( Object key ) {
-        return m_blockMap.containsKey( key );
+        return m_blockMap.containsKey( key ) || m_pending.containsKey( key );
     }
 
     /**
      * Writes and object to the {@link CacheStore} being used.  This method is
      * meant to be called only by methods of classes that implement the
      * {@link CacheObjectMap} interface.
+     * <p>
+     * The object is only queued for writing, so the {@link ByteBuffer}
+     * belongs to the <code>Cache</code> from now on and must not be reused.
+     * This waits only if the queue is full.
      *
      * @param key The object's key.
      * @param buf The encoded object to write.
@@ -203,23 +375,56 @@ public final class Cache {
         throws IOException
     {
         final int objSize = buf.limit();
-        CacheBlock block = m_freeBlockMgr.findBlockOfSize( objSize );
-        if ( block == null ) {
-            //
-            // There are no free blocks available: create a new one at the end
-            // of the store.
-            //
-            // The calls to getSize() and writeToStore() must be together in a
-            // synchronized block.
-            //
-            synchronized ( m_store ) {
-                block = new CacheBlock( m_store.getSize(), objSize );
-                m_store.writeToStore( block.getPosition(), buf );
+        while ( m_pendingBytes > 0 && m_pendingBytes + objSize > MAX_PENDING
+                && !m_disposed ) {
+            try {
+                wait();
             }
-        } else
-            m_store.writeToStore( block.getPosition(), buf );
+            catch ( InterruptedException e ) {
+                // Go over the limit this once.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if ( m_disposed )
+            return;
 
-        m_blockMap.put( key, block );
+        final CacheBlock oldBlock = m_blockMap.remove( key );
+        if ( oldBlock != null )
+            m_freeBlockMgr.freeBlock( oldBlock );
+        final ByteBuffer oldBuf = m_pending.put( key, buf );
+        if ( oldBuf != null )
+            m_pendingBytes -= oldBuf.limit();
+        m_pendingBytes += objSize;
+
+        if ( m_writer == null ) {
+            m_writer = new Thread(
+                new Runnable() {
+                    public void run() {
+                        writeLoop();
+                    }
+                },
+                "Cache Writer"
+            );
+            m_writer.setDaemon( true );
+            m_writer.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Gets a description of the store usage for debugging.
+     */
+    public synchronized String toString() {
+        return String.format(
+            "Cache: %d objects stored, %d queued, store %dMB, " +
+            "%d free blocks, %.0f%% free, %.0f%% fragmented, " +
+            "%.0f%% compressed size",
+            m_blockMap.size(), m_pending.size(), getStoreSize() >> 20,
+            m_freeBlockMgr.getFreeBlockCount(),
+            getFreeRatio() * 100, getFragmentation() * 100,
+            getCompressionRatio() * 100
+        );
     }
 
     ////////// protected //////////////////////////////////////////////////////
@@ -234,6 +439,109 @@ public final class Cache {
 
     ////////// private ////////////////////////////////////////////////////////
 
+    /**
+     * The maximum total size (in bytes) of the objects waiting to be written.
+     */
+    private static final long MAX_PENDING =
+        Long.getLong( "lightcrafts.cache.spillqueue", 64 ) * 1024 * 1024;
+
+    /**
+     * Find room for an object in the {@link CacheStore}: a free block, or a
+     * new block at the end of the store.  Must be called with the lock held.
+     *
+     * @param objSize The size of the object.
+     * @return Returns said block.
+     */
+    private CacheBlock allocateBlock( int objSize ) throws IOException {
+        final CacheBlock block = m_freeBlockMgr.findBlockOfSize( objSize );
+        if ( block != null )
+            return block;
+        if ( m_storeEnd < 0 )
+            m_storeEnd = m_store.getSize();
+        final CacheBlock newBlock = new CacheBlock( m_storeEnd, objSize );
+        m_storeEnd += objSize;
+        return newBlock;
+    }
+
+    /**
+     * Write the queued objects to the {@link CacheStore}, oldest first, until
+     * the cache is disposed.
+     */
+    private void writeLoop() {
+        while ( true ) {
+            final Object key;
+            final ByteBuffer buf;
+            final int generation;
+            synchronized ( this ) {
+                while ( m_pending.isEmpty() && !m_disposed ) {
+                    try {
+                        wait();
+                    }
+                    catch ( InterruptedException e ) {
+                        // keep waiting
+                    }
+                }
+                if ( m_disposed )
+                    return;
+                final Map.Entry<Object,ByteBuffer> me =
+                    m_pending.entrySet().iterator().next();
+                key = me.getKey();
+                buf = me.getValue();
+                generation = m_generation;
+            }
+
+            //
+            // The buffer is only ever read from here on, and through a
+            // duplicate, since readFromStore() may decode it meanwhile.
+            //
+            final ByteBuffer data = m_codec != null ?
+                m_codec.compress( buf ) : buf.duplicate();
+
+            CacheBlock block = null;
+            synchronized ( this ) {
+                if ( generation != m_generation || m_pending.get( key ) != buf )
+                    continue;
+                try {
+                    block = allocateBlock( data.limit() );
+                }
+                catch ( IOException e ) {
+                    e.printStackTrace();
+                }
+            }
+            boolean written = false;
+            if ( block != null ) {
+                try {
+                    m_store.writeToStore( block.getPosition(), data );
+                    written = true;
+                }
+                catch ( IOException e ) {
+                    if ( !m_disposed )
+                        e.printStackTrace();
+                }
+            }
+            synchronized ( this ) {
+                if ( generation != m_generation )
+                    continue;
+                if ( m_pending.get( key ) == buf ) {
+                    //
+                    // If it couldn't be written, the object is lost and
+                    // will have to be recomputed.
+                    //
+                    m_pending.remove( key );
+                    m_pendingBytes -= buf.limit();
+                    notifyAll();
+                    if ( written ) {
+                        m_blockMap.put( key, block );
+                        m_rawBytes += buf.limit();
+                        m_writtenBytes += data.limit();
+                        continue;
+                    }
+                }
+                if ( block != null )
+                    m_freeBlockMgr.freeBlock( block );
+            }
+        }
+    }
 
     /**
      * A mapping for those objects that have been cached.  The key is the
@@ -241,6 +549,48 @@ public final class Cache {
      */
     private final Map<Object,CacheBlock> m_blockMap;
 
+    /**
+     * The objects waiting to be written, in the order they were queued.  The
+     * key is the object's key and the value its encoded representation.
+     */
+    private final Map<Object,ByteBuffer> m_pending;
+
+    /**
+     * The total size (in bytes) of the objects in {@link #m_pending}.
+     */
+    private long m_pendingBytes;
+
+    /**
+     * The end of the used part of the {@link CacheStore}, or -1 if it has
+     * to be asked for.
+     */
+    private long m_storeEnd = -1;
+
+    /**
+     * Incremented by {@link #clear()}, so that blocks of a previous
+     * generation are not freed again.
+     */
+    private int m_generation;
+
+    private boolean m_disposed;
+
+    /**
+     * The {@link CacheCodec} to use, or <code>null</code>.
+     */
+    private final CacheCodec m_codec;
+
+    /**
+     * The total size of the objects written to the {@link CacheStore}, before
+     * and after compression.
+     */
+    private long m_rawBytes;
+    private long m_writtenBytes;
+
+    /**
+     * The thread running {@link #writeLoop()}, started on demand.
+     */
+    private Thread m_writer;
+
     /**
      * The {@link FreeBlockManager} to use.
      */
@@ -0,0 +1,38 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.utils.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A <code>CacheCodec</code> compresses the encoded objects a {@link Cache}
+ * writes to its {@link CacheStore}, and decompresses them when they are read
+ * back.  It must be lossless.
+ */
+public interface CacheCodec {
+
+    /**
+     * Compresses an encoded object.
+     *
+     * @param buf The encoded object, from position 0 to its limit.  Its
+     * position must not be changed, since it may be read concurrently.
+     * @return Returns a {@link ByteBuffer} holding the compressed object from
+     * position 0 to its limit.  It may be reused by the next call on the same
+     * thread.
+     */
+    ByteBuffer compress( ByteBuffer buf );
+
+    /**
+     * Decompresses an object compressed by {@link #compress(ByteBuffer)}.
+     *
+     * @param buf The compressed object, from position 0 to its limit.
+     * @param store The {@link CacheStore} to get the decompressed
+     * {@link ByteBuffer} from.
+     * @return Returns the encoded object.
+     */
+    ByteBuffer decompress( ByteBuffer buf, CacheStore store )
+        throws IOException;
+
+}
+/* vim:set et sw=4 ts=4: */
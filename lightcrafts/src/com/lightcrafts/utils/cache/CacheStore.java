@@ -34,16 +34,22 @@ public interface CacheStore {
     ByteBuffer getByteBuffer( int size );
 
     /**
-     * Gets the current size of the cache.  Note that a call to this method
-     * that is followed by a call to {@link #writeToStore(long,ByteBuffer)}
-     * must both be in a <code>synchronized</code> block on the store.
+     * Gets the current size of the cache.
      *
      * @return Returns said size.
      */
     long getSize() throws IOException;
 
     /**
-     * Read data from the {@link CacheStore}.
+     * Shrinks the store to the given size, discarding the data beyond it.
+     *
+     * @param size The new size of the store.
+     */
+    void truncate( long size ) throws IOException;
+
+    /**
+     * Read data from the {@link CacheStore}.  Reads and writes of different
+     * blocks may be called concurrently.
      *
      * @param pos The position within the store to read from.
      * @param buf The {@link ByteBuffer} to read into.
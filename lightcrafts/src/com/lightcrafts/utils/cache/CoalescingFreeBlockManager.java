@@ -2,12 +2,21 @@
 
 package com.lightcrafts.utils.cache;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * A <code>CoalescingFreeBlockManager</code> is-a {@link FreeBlockManager} that
  * coalesces adjacent free {@link CacheBlock}s.
+ * <p>
+ * The free blocks are kept twice: by position, to find the neighbors to
+ * coalesce with, and by size then position, to find the smallest block that
+ * fits (best fit, lowest position first).  Since cached objects come in a
+ * few sizes, best fit leaves exact holes for them.  Finding and freeing
+ * blocks take O(log n) in the number of free blocks; only the first-fit
+ * search used for compaction is linear.
  *
  * @author Paul J. Lucas [paul@lightcrafts.com]
  */
@@ -19,14 +28,17 @@ public final class CoalescingFreeBlockManager implements FreeBlockManager {
      * Construct a <code>CoalescingFreeBlockManager</code>.
      */
     public CoalescingFreeBlockManager() {
-        m_freeBlockList = new ArrayList<CacheBlock>();
+        m_byPosition = new TreeMap<Long,CacheBlock>();
+        m_bySize = new TreeSet<CacheBlock>( BY_SIZE );
     }
 
     /**
      * Set the number of blocks being managed to zero.
      */
     public synchronized void clear() {
-        m_freeBlockList.clear();
+        m_byPosition.clear();
+        m_bySize.clear();
+        m_freeSize = 0;
     }
 
     /**
@@ -39,31 +51,23 @@ public final class CoalescingFreeBlockManager implements FreeBlockManager {
      * <code>null</code>.
      */
     public synchronized CacheBlock findBlockOfSize( int objSize ) {
-        if ( !m_freeBlockList.isEmpty() )
-            for ( Iterator<CacheBlock> i = m_freeBlockList.iterator();
-                  i.hasNext(); ) {
-                final CacheBlock block = i.next();
-                final int blockSize = block.getSize();
-                if ( blockSize == objSize ) {
-                    //
-                    // Found an exact fit: simply remove the block as-is from
-                    // the free-block list.
-                    //
-                    i.remove();
-                    return block;
-                }
-                if ( blockSize > objSize ) {
-                    //
-                    // Found a block that's bigger: adjust its position and
-                    // size by the object's size, then return a new CacheBlock
-                    // that's the exact size.
-                    //
-                    final long blockPos = block.getPosition();
-                    block.setPosition( blockPos + objSize );
-                    block.setSize( blockSize - objSize );
-                    return new CacheBlock( blockPos, objSize );
-                }
-            }
+        final CacheBlock block =
+            m_bySize.ceiling( new CacheBlock( Long.MIN_VALUE, objSize ) );
+        if ( block == null )
+            return null;
+        return take( block, objSize );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized CacheBlock findBlockOfSize( int objSize, long limit ) {
+        for ( CacheBlock block : m_byPosition.values() ) {
+            if ( block.getPosition() + objSize > limit )
+                break;
+            if ( block.getSize() >= objSize )
+                return take( block, objSize );
+        }
         return null;
     }
 
@@ -74,70 +78,147 @@ public final class CoalescingFreeBlockManager implements FreeBlockManager {
      * @param freeBlock The block to free.
      */
     public synchronized void freeBlock( CacheBlock freeBlock ) {
-        if ( m_freeBlockList.isEmpty() ) {
-            m_freeBlockList.add( freeBlock );
-            return;
-        }
+        m_freeSize += freeBlock.getSize();
+        long freePos = freeBlock.getPosition();
+        int freeSize = freeBlock.getSize();
+
         //
-        // Go through the free block list and try to coalesce blocks.  An
-        // invariant is that all the blocks should be in ascending position
-        // order.
+        // If the free block comes immediately after the previous block,
+        // coalesce it by expanding the previous block.
         //
-        final long freePos = freeBlock.getPosition();
-        int freeSize = freeBlock.getSize();
-        int index = 0;
-        for ( Iterator<CacheBlock> i = m_freeBlockList.iterator();
-              i.hasNext(); ++index ) {
-            final CacheBlock block = i.next();
-            final long blockPos = block.getPosition();
-            final int blockSize = block.getSize();
-            if ( blockPos + blockSize == freePos ) {
-                //
-                // The free block comes immediately after the current block:
-                // coalesce it by expanding the size of the current block and
-                // discarding the free block.
-                //
-                freeSize += blockSize;
-                block.setSize( freeSize );
-
-                if ( i.hasNext() ) {
-                    //
-                    // Check to see if the free block exactly filled a gap
-                    // between the current block and the next block: if it did,
-                    // coalesce the next block also.
-                    //
-                    final CacheBlock nextBlock = i.next();
-                    if ( blockPos + freeSize == nextBlock.getPosition() ) {
-                        block.setSize( freeSize + nextBlock.getSize() );
-                        i.remove();
-                    }
-                }
-                return;
+        final Map.Entry<Long,CacheBlock> prev = m_byPosition.lowerEntry( freePos );
+        CacheBlock block = freeBlock;
+        if ( prev != null ) {
+            final CacheBlock prevBlock = prev.getValue();
+            if ( prevBlock.getPosition() + prevBlock.getSize() == freePos ) {
+                m_bySize.remove( prevBlock );
+                freePos = prevBlock.getPosition();
+                freeSize += prevBlock.getSize();
+                block = prevBlock;
             }
-            if ( freePos + freeSize == blockPos ) {
-                //
-                // The free block comes immediately before the current block:
-                // coalesce it by expanding the size of the current block and
-                // discarding the free block.
-                //
-                block.setPosition( freePos );
-                block.setSize( blockSize + freeSize );
-                return;
-            }
-            if ( freePos > blockPos )
-                break;
         }
+
         //
-        // The free block couldn't be coalesced: just insert it.
+        // If the free block comes immediately before the next block,
+        // coalesce that one too.
         //
-        m_freeBlockList.add( index, freeBlock );
+        final CacheBlock nextBlock = m_byPosition.get( freePos + freeSize );
+        if ( nextBlock != null ) {
+            m_bySize.remove( nextBlock );
+            m_byPosition.remove( nextBlock.getPosition() );
+            freeSize += nextBlock.getSize();
+        }
+
+        block.setPosition( freePos );
+        block.setSize( freeSize );
+        m_byPosition.put( freePos, block );
+        m_bySize.add( block );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized CacheBlock trimEnd( long end ) {
+        final Map.Entry<Long,CacheBlock> last = m_byPosition.lastEntry();
+        if ( last == null )
+            return null;
+        final CacheBlock block = last.getValue();
+        if ( block.getPosition() + block.getSize() != end )
+            return null;
+        m_byPosition.remove( block.getPosition() );
+        m_bySize.remove( block );
+        m_freeSize -= block.getSize();
+        return block;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getFreeBlockCount() {
+        return m_byPosition.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getFreeSize() {
+        return m_freeSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getLargestFreeBlockSize() {
+        return m_bySize.isEmpty() ? 0 : m_bySize.last().getSize();
+    }
+
+    /**
+     * Gets a description of the free space for debugging.
+     */
+    public synchronized String toString() {
+        return "free blocks: " + getFreeBlockCount() + ", free size: " +
+               getFreeSize() + ", largest: " + getLargestFreeBlockSize();
     }
 
     ////////// private ////////////////////////////////////////////////////////
 
     /**
-     * The list of freed {@link CacheBlock}s.
+     * Orders blocks by size, then position.
+     */
+    private static final Comparator<CacheBlock> BY_SIZE =
+        new Comparator<CacheBlock>() {
+            public int compare( CacheBlock b1, CacheBlock b2 ) {
+                if ( b1.getSize() != b2.getSize() )
+                    return b1.getSize() < b2.getSize() ? -1 : 1;
+                return Long.compare( b1.getPosition(), b2.getPosition() );
+            }
+        };
+
+    /**
+     * Take the given amount of space from the start of the given free block.
+     *
+     * @param block A free block at least as large as the requested size.
+     * @param objSize The size of the block to return.
+     * @return Returns a block of exactly the requested size.
+     */
+    private CacheBlock take( CacheBlock block, int objSize ) {
+        m_freeSize -= objSize;
+        m_bySize.remove( block );
+        m_byPosition.remove( block.getPosition() );
+        final int blockSize = block.getSize();
+        if ( blockSize == objSize ) {
+            //
+            // Found an exact fit: simply hand over the block as-is.
+            //
+            return block;
+        }
+        //
+        // Found a block that's bigger: adjust its position and size by the
+        // object's size, then return a new CacheBlock that's the exact size.
+        //
+        final long blockPos = block.getPosition();
+        block.setPosition( blockPos + objSize );
+        block.setSize( blockSize - objSize );
+        m_byPosition.put( block.getPosition(), block );
+        m_bySize.add( block );
+        return new CacheBlock( blockPos, objSize );
+    }
+
+    /**
+     * The freed {@link CacheBlock}s by position.  Blocks are never adjacent,
+     * since adjacent blocks are coalesced.
+     */
+    private final TreeMap<Long,CacheBlock> m_byPosition;
+
+    /**
+     * The same {@link CacheBlock}s, by size then position.  A block must be
+     * removed from here before its size or position changes.
+     */
+    private final TreeSet<CacheBlock> m_bySize;
+
+    /**
+     * The total size of the free blocks.
      */
-    private final ArrayList<CacheBlock> m_freeBlockList;
+    private long m_freeSize;
 }
 /* vim:set et sw=4 ts=4: */
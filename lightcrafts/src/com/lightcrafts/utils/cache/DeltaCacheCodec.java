@@ -0,0 +1,199 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.utils.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A <code>DeltaCacheCodec</code> is-a {@link CacheCodec} for image data made
+ * of 16-bit samples, like spilled tiles.
+ * <p>
+ * Each sample is predicted by the same sample of the previous pixel, and
+ * the difference is zig-zag coded into 1 to 3 bytes, 1 for differences
+ * within +/-64.  The pixel size, from 1 to 4 samples, is guessed for each
+ * object from the start of its data.  Objects that don't get smaller are
+ * stored as they are, so the worst case costs a 5 byte header.
+ * <p>
+ * Compressed objects start with a flags byte, holding the pixel size (0 if
+ * the data is stored as is) and the byte order of the samples, followed by
+ * the size of the original object as 4 bytes, big-endian.
+ */
+public final class DeltaCacheCodec implements CacheCodec {
+
+    ////////// public /////////////////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    public ByteBuffer compress( ByteBuffer buf ) {
+        final int size = buf.limit();
+        final int count = size / 2;
+        final Scratch scratch = m_scratch.get();
+        final short[] samples = scratch.getSamples( count );
+        final byte[] out = scratch.getBytes( size + HEADER_SIZE );
+
+        final ByteBuffer in = buf.duplicate().order( buf.order() );
+        in.position( 0 );
+        in.asShortBuffer().get( samples, 0, count );
+
+        final int stride = guessStride( samples, count );
+        final int end = size + HEADER_SIZE - 3;
+        int p = HEADER_SIZE;
+        for ( int i = 0; i < count; ++i ) {
+            if ( p > end ) {
+                p = -1;                 // it doesn't pay
+                break;
+            }
+            final int pred = i >= stride ? samples[ i - stride ] : 0;
+            final int r = (short)(samples[i] - pred);
+            final int z = (r << 1) ^ (r >> 31);
+            if ( z < 0x80 )
+                out[ p++ ] = (byte)z;
+            else if ( z < 0x4000 ) {
+                out[ p++ ] = (byte)(z | 0x80);
+                out[ p++ ] = (byte)(z >>> 7);
+            } else {
+                out[ p++ ] = (byte)(z | 0x80);
+                out[ p++ ] = (byte)((z >>> 7) | 0x80);
+                out[ p++ ] = (byte)(z >>> 14);
+            }
+        }
+        int flags = stride;
+        if ( p < 0 ) {
+            flags = STORED;
+            in.position( 0 );
+            in.get( out, HEADER_SIZE, size );
+            p = HEADER_SIZE + size;
+        } else if ( (size & 1) != 0 )
+            out[ p++ ] = in.get( size - 1 );
+        if ( buf.order() == ByteOrder.LITTLE_ENDIAN )
+            flags |= LITTLE_ENDIAN;
+        out[0] = (byte)flags;
+        out[1] = (byte)(size >>> 24);
+        out[2] = (byte)(size >>> 16);
+        out[3] = (byte)(size >>> 8);
+        out[4] = (byte)size;
+        return ByteBuffer.wrap( out, 0, p );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ByteBuffer decompress( ByteBuffer buf, CacheStore store )
+        throws IOException
+    {
+        final int length = buf.limit();
+        final byte[] in;
+        if ( buf.hasArray() && buf.arrayOffset() == 0 )
+            in = buf.array();
+        else {
+            in = new byte[ length ];
+            final ByteBuffer dup = buf.duplicate();
+            dup.position( 0 );
+            dup.get( in );
+        }
+        if ( length < HEADER_SIZE )
+            throw new IOException( "truncated cache object" );
+        final int flags = in[0];
+        final int size = (in[1] & 0xFF) << 24 | (in[2] & 0xFF) << 16 |
+                         (in[3] & 0xFF) << 8 | (in[4] & 0xFF);
+        final int stride = flags & STRIDE_MASK;
+
+        final ByteBuffer out = store.getByteBuffer( size );
+        out.order( (flags & LITTLE_ENDIAN) != 0 ?
+            ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+        if ( stride == STORED ) {
+            out.put( in, HEADER_SIZE, size );
+            out.position( 0 );
+            return out;
+        }
+
+        final int count = size / 2;
+        final short[] samples = m_scratch.get().getSamples( count );
+        int p = HEADER_SIZE;
+        try {
+            for ( int i = 0; i < count; ++i ) {
+                int z = in[ p++ ];
+                if ( z < 0 ) {
+                    z = (z & 0x7F) | in[ p++ ] << 7;
+                    if ( z < 0 )
+                        z = (z & 0x3FFF) | in[ p++ ] << 14;
+                }
+                final int pred = i >= stride ? samples[ i - stride ] : 0;
+                samples[i] = (short)(((z >>> 1) ^ -(z & 1)) + pred);
+            }
+            out.asShortBuffer().put( samples, 0, count );
+            if ( (size & 1) != 0 )
+                out.put( size - 1, in[ p ] );
+        }
+        catch ( ArrayIndexOutOfBoundsException e ) {
+            throw new IOException( "truncated cache object" );
+        }
+        out.position( 0 );
+        return out;
+    }
+
+    ////////// private ////////////////////////////////////////////////////////
+
+    private static final int HEADER_SIZE = 5;
+
+    private static final int STORED = 0;
+    private static final int STRIDE_MASK = 0x07;
+    private static final int LITTLE_ENDIAN = 0x08;
+
+    private static final int MAX_STRIDE = 4;
+
+    /**
+     * How many samples are looked at to guess the pixel size.
+     */
+    private static final int GUESS_SAMPLES = 4096;
+
+    /**
+     * Guess the number of samples per pixel, the one giving the smallest
+     * differences at the start of the data.
+     */
+    private static int guessStride( short[] samples, int count ) {
+        final int n = Math.min( count, GUESS_SAMPLES );
+        int best = 1;
+        long bestSum = Long.MAX_VALUE;
+        for ( int stride = 1; stride <= MAX_STRIDE; ++stride ) {
+            long sum = 0;
+            for ( int i = stride; i < n; ++i )
+                sum += Math.abs( (short)(samples[i] - samples[ i - stride ]) );
+            if ( sum < bestSum ) {
+                bestSum = sum;
+                best = stride;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Buffers reused by the calls on a thread.
+     */
+    private static final class Scratch {
+        short[] getSamples( int count ) {
+            if ( m_samples == null || m_samples.length < count )
+                m_samples = new short[ count ];
+            return m_samples;
+        }
+
+        byte[] getBytes( int size ) {
+            if ( m_bytes == null || m_bytes.length < size )
+                m_bytes = new byte[ size ];
+            return m_bytes;
+        }
+
+        private short[] m_samples;
+        private byte[] m_bytes;
+    }
+
+    private final ThreadLocal<Scratch> m_scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+}
+/* vim:set et sw=4 ts=4: */
@@ -7,10 +7,20 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 
 /**
  * A <code>DirectFileCacheStore</code> is-a {@link CacheStore} that uses a
  * {@link File} directly for its backing store.
+ * <p>
+ * Reads and writes are positional {@link FileChannel} operations that don't
+ * share a file pointer, so they need no lock and reads and writes of
+ * different blocks proceed concurrently.
+ * <p>
+ * A {@link FileChannel} is closed when a thread blocked in it is
+ * interrupted.  Since any thread may read from the store, the channel is
+ * then reopened and the operation retried.
  *
  * @author Paul J. Lucas [paul@lightcrafts.com]
  */
@@ -25,14 +35,16 @@ public final class DirectFileCacheStore implements CacheStore {
      */
     public DirectFileCacheStore( File cacheFile ) throws IOException {
         cacheFile.deleteOnExit();
+        m_cacheFile = cacheFile;
         m_file = new RandomAccessFile( cacheFile, "rw" );
+        m_channel = m_file.getChannel();
     }
 
     /**
      * {@inheritDoc}
      */
     public synchronized void clear() throws IOException {
-        m_file.setLength( 0 );
+        getChannel().truncate( 0 );
     }
 
     /**
@@ -40,6 +52,7 @@ public final class DirectFileCacheStore implements CacheStore {
      */
     public synchronized void dispose() throws IOException {
         if ( m_file != null ) {
+            m_disposed = true;
             m_file.close();
             m_file = null;
         }
@@ -57,43 +70,116 @@ public final class DirectFileCacheStore implements CacheStore {
     /**
      * {@inheritDoc}
      */
-    public synchronized long getSize() throws IOException {
-        return m_file.length();
+    public long getSize() throws IOException {
+        return getChannel().size();
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized void readFromStore( long pos, ByteBuffer buf )
-        throws IOException
-    {
-        m_file.seek( pos );
-        if ( buf.hasArray() )
-            m_file.read( buf.array(), 0, buf.limit() );
-        else
-            m_file.getChannel().read( buf );
+    public synchronized void truncate( long size ) throws IOException {
+        getChannel().truncate( size );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void readFromStore( long pos, ByteBuffer buf ) throws IOException {
+        buf.position( 0 );
+        boolean interrupted = false;
+        try {
+            for ( int retries = 0; ; ++retries ) {
+                try {
+                    final FileChannel channel = getChannel();
+                    while ( buf.hasRemaining() ) {
+                        if ( channel.read( buf, pos + buf.position() ) < 0 )
+                            break;
+                    }
+                    break;
+                }
+                catch ( ClosedChannelException e ) {
+                    interrupted |= Thread.interrupted();
+                    if ( m_disposed || retries >= MAX_RETRIES )
+                        throw e;
+                }
+            }
+        }
+        finally {
+            if ( interrupted )
+                Thread.currentThread().interrupt();
+        }
         buf.position( 0 );
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized void writeToStore( long pos, ByteBuffer buf )
-        throws IOException
-    {
+    public void writeToStore( long pos, ByteBuffer buf ) throws IOException {
         buf.position( 0 );
-        m_file.seek( pos );
-        if ( buf.hasArray() )
-            m_file.write( buf.array(), 0, buf.limit() );
-        else
-            m_file.getChannel().write( buf );
+        boolean interrupted = false;
+        try {
+            for ( int retries = 0; ; ++retries ) {
+                try {
+                    final FileChannel channel = getChannel();
+                    while ( buf.hasRemaining() )
+                        channel.write( buf, pos + buf.position() );
+                    break;
+                }
+                catch ( ClosedChannelException e ) {
+                    // An interrupt cleared now would close the reopened
+                    // channel again, it's restored when done.
+                    interrupted |= Thread.interrupted();
+                    if ( m_disposed || retries >= MAX_RETRIES )
+                        throw e;
+                }
+            }
+        }
+        finally {
+            if ( interrupted )
+                Thread.currentThread().interrupt();
+        }
     }
 
     ////////// private ////////////////////////////////////////////////////////
 
+    /**
+     * Gets the channel to the backing file, reopening it if it was closed by
+     * an interrupt.
+     *
+     * @return Returns said channel.
+     */
+    private FileChannel getChannel() throws IOException {
+        final FileChannel channel = m_channel;
+        if ( channel.isOpen() )
+            return channel;
+        synchronized ( this ) {
+            if ( m_disposed )
+                throw new ClosedChannelException();
+            if ( !m_channel.isOpen() ) {
+                m_file = new RandomAccessFile( m_cacheFile, "rw" );
+                m_channel = m_file.getChannel();
+            }
+            return m_channel;
+        }
+    }
+
+    /**
+     * How many times an operation is retried after an interrupt.
+     */
+    private static final int MAX_RETRIES = 3;
+
     /**
      * The {@link File} to use as the backing store.
      */
+    private final File m_cacheFile;
+
     private RandomAccessFile m_file;
+
+    /**
+     * The channel to {@link #m_file}, replaced when reopened.
+     */
+    private volatile FileChannel m_channel;
+
+    private volatile boolean m_disposed;
 }
 /* vim:set et sw=4 ts=4: */
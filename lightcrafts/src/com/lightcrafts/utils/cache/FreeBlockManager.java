@@ -33,5 +33,49 @@ public interface FreeBlockManager {
      */
     void freeBlock( CacheBlock block );
 
+    /**
+     * Try to find a block at least as large as the requested size that ends
+     * at or before the given position, the lowest such block.  Used to move
+     * objects towards the start of a store.
+     *
+     * @param objSize The minimum size of a block of space to find.
+     * @param limit The position the block must end at or before.
+     * @return If a block can be found, returns it resized to exactly the
+     * requested size; otherwise returns <code>null</code>.
+     */
+    CacheBlock findBlockOfSize( int objSize, long limit );
+
+    /**
+     * If the last free block ends at the given position, take it away from
+     * the manager, so that the space it covers can be truncated.
+     *
+     * @param end The end of the managed space.
+     * @return Returns the removed block or <code>null</code> if there is no
+     * free block at the end.
+     */
+    CacheBlock trimEnd( long end );
+
+    /**
+     * Gets the number of free blocks.
+     *
+     * @return Returns said number.
+     */
+    int getFreeBlockCount();
+
+    /**
+     * Gets the total size of the free blocks.
+     *
+     * @return Returns said size.
+     */
+    long getFreeSize();
+
+    /**
+     * Gets the size of the largest free block, the largest object that fits
+     * without growing.
+     *
+     * @return Returns said size.
+     */
+    int getLargestFreeBlockSize();
+
 }
 /* vim:set et sw=4 ts=4: */
@@ -201,14 +201,20 @@ public final class LRUCacheObjectMap implements CacheObjectMap {
     }
 
     /**
-     * Spill a {@link ByteBuffer} to the {@link CacheStore}.
+     * Spill a {@link ByteBuffer} to the {@link CacheStore}.  The
+     * {@link Cache} writes it later, so it gets a copy and the native buffer
+     * is freed right away.
      *
      * @param key The object's key.
      * @param buf The {@link ByteBuffer} to spill.
      */
     private void spill( Object key, ByteBuffer buf ) {
+        final ByteBuffer copy =
+            m_cache.getCacheStore().getByteBuffer( buf.limit() );
+        buf.position( 0 );
+        copy.put( buf );
         try {
-            m_cache.writeToStore( key, buf );
+            m_cache.writeToStore( key, copy );
         }
         catch ( IOException e ) {
             throw new CacheIOException( e );
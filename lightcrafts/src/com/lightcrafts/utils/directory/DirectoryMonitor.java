@@ -4,7 +4,10 @@
 package com.lightcrafts.utils.directory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
@@ -50,6 +53,25 @@ public abstract class DirectoryMonitor {
      */
     public void dispose() {
         m_monitorThread.stopMonitoring();
+        if (watcher != null) {
+            try {
+                // Wakes up the monitor thread
+                watcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Tells whether the filesystem can report changes at all.  Even when it
+     * can, changes made by other hosts on network filesystems may go
+     * unnoticed.
+     *
+     * @return Returns <code>true</code> only if a watch service is available.
+     */
+    public boolean isWatching() {
+        return watcher != null;
     }
 
     /**
@@ -143,6 +165,8 @@ public abstract class DirectoryMonitor {
                 final WatchKey watchKey;
                 try {
                     watchKey = watcher.take();
+                } catch (ClosedWatchServiceException e) {
+                    return;
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                     return;
@@ -150,9 +174,15 @@ public abstract class DirectoryMonitor {
 
                 final Path path = (Path) watchKey.watchable();
                 for (final WatchEvent event : watchKey.pollEvents()) {
-                    Path context = (Path) event.context();
                     Path dir = getPathFor(watchKey);
-                    Path file = dir.resolve(context);
+                    if (dir == null) {
+                        continue;
+                    }
+                    // Events were lost, there is no file name: OVERFLOW
+                    // is reported on the directory itself
+                    Path file = event.kind() == StandardWatchEventKinds.OVERFLOW
+                            ? dir
+                            : dir.resolve((Path) event.context());
                     String kind = event.kind().name();
                     notifyListenersAbout(dir, file, kind);
                 }
@@ -38,10 +38,15 @@ public final class UnixDirectoryMonitor extends DirectoryMonitor {
      */
     @Override
     public void addDirectory(File directory) {
+        if (watcher == null) {
+            return;
+        }
         try {
             final Path dir = directory.toPath();
             WatchKey watchKey = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-            watchKeyMap.put(watchKey, dir);
+            synchronized (watchKeyMap) {
+                watchKeyMap.put(watchKey, dir);
+            }
             if (DEBUG) {
                 System.out.println("UnixDirectoryMonitor: added " + dir);
             }
@@ -72,7 +77,9 @@ public final class UnixDirectoryMonitor extends DirectoryMonitor {
 
     @Override
     Path getPathFor(WatchKey key) {
-        return watchKeyMap.get(key);
+        synchronized (watchKeyMap) {
+            return watchKeyMap.get(key);
+        }
     }
 
     private final Map<WatchKey, Path> watchKeyMap = new HashMap<>();
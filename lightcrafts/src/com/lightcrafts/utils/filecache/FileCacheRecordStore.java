@@ -0,0 +1,290 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.utils.filecache;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>FileCacheRecordStore</code> is a map of string keys to values
+ * persisted as an append-only file in a {@link FileCache}.
+ * <p>
+ * The file is a header followed by length prefixed records, each with a key
+ * and either a value or a removal mark.  A later record for the same key
+ * supersedes an earlier one.  The whole file is read at once into a hashed
+ * index when the store is opened, and rewritten without the superseded
+ * records when those make up more than half of it.  Appended records are
+ * buffered until {@link #flush()} or {@link #close()}.
+ * <p>
+ * Without a {@link FileCache}, the store just lives in memory.
+ *
+ * @param <V> The type of the values.
+ */
+public final class FileCacheRecordStore<V> {
+
+    ////////// public /////////////////////////////////////////////////////////
+
+    /**
+     * A <code>Codec</code> writes and reads the values of a store.
+     */
+    public interface Codec<V> {
+        void write( V value, DataOutput out ) throws IOException;
+
+        V read( DataInput in ) throws IOException;
+    }
+
+    /**
+     * Opens a store, reading it entirely.
+     *
+     * @param cache The {@link FileCache} holding the store's file, or
+     * <code>null</code> for a store that only lives in memory.
+     * @param key The key of the store's file in the cache.
+     * @param magic The number identifying the kind of store.
+     * @param version The version of the record format: a file with another
+     * version is started over.
+     * @param codec The {@link Codec} of the values.
+     * @param name The name of the store in messages.
+     * @return Returns the store.
+     */
+    public static <V> FileCacheRecordStore<V> open( FileCache cache,
+                                                    String key, int magic,
+                                                    int version,
+                                                    Codec<V> codec,
+                                                    String name ) {
+        final FileCacheRecordStore<V> store = new FileCacheRecordStore<V>(
+            cache, key, magic, version, codec, name
+        );
+        if ( cache != null )
+            store.load();
+        return store;
+    }
+
+    /**
+     * Gets the value for a key.
+     *
+     * @param key The key.
+     * @return Returns the value or <code>null</code> if there is none.
+     */
+    public synchronized V get( String key ) {
+        return m_index.get( key );
+    }
+
+    /**
+     * Gets all the entries of the store.
+     *
+     * @return Returns a copy of the entries.
+     */
+    public synchronized Map<String,V> getEntries() {
+        return new HashMap<String,V>( m_index );
+    }
+
+    /**
+     * Puts a value, superseding the value for the same key if any.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public synchronized void put( String key, V value ) {
+        m_index.put( key, value );
+        append( key, value );
+    }
+
+    /**
+     * Removes the value for a key.
+     *
+     * @param key The key.
+     */
+    public synchronized void remove( String key ) {
+        if ( m_index.remove( key ) != null )
+            append( key, null );
+    }
+
+    /**
+     * Pushes the appended records to the file.
+     */
+    public synchronized void flush() {
+        if ( m_out != null ) {
+            try {
+                m_out.flush();
+            }
+            catch ( IOException e ) {
+                logError( e );
+                closeOutput();
+            }
+        }
+    }
+
+    /**
+     * Pushes the appended records to the file and closes it.  The store can
+     * still be used afterwards, the file is reopened on the next append.
+     */
+    public synchronized void close() {
+        flush();
+        closeOutput();
+    }
+
+    ////////// private ////////////////////////////////////////////////////////
+
+    private FileCacheRecordStore( FileCache cache, String key, int magic,
+                                  int version, Codec<V> codec, String name ) {
+        m_cache = cache;
+        m_key = key;
+        m_magic = magic;
+        m_version = version;
+        m_codec = codec;
+        m_name = name;
+    }
+
+    /**
+     * Reads the file into the index.
+     */
+    private void load() {
+        m_file = m_cache.getFileFor( m_key );
+        if ( m_file == null )
+            return;
+        final long t1 = System.currentTimeMillis();
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes( m_file.toPath() );
+        }
+        catch ( IOException e ) {
+            logError( e );
+            m_file = null;
+            return;
+        }
+        // Appending after a damaged record would make the rest unreadable
+        boolean damaged = false;
+        try ( DataInputStream in =
+                  new DataInputStream( new ByteArrayInputStream( bytes ) ) ) {
+            if ( in.readInt() != m_magic || in.readInt() != m_version ) {
+                m_file = null;          // start over
+                return;
+            }
+            while ( in.available() > 0 ) {
+                final int length = in.readInt();
+                if ( length > in.available() ) {
+                    damaged = true;     // a record cut short by a crash
+                    break;
+                }
+                final String key = in.readUTF();
+                if ( in.readBoolean() )
+                    m_index.put( key, m_codec.read( in ) );
+                else
+                    m_index.remove( key );
+                m_recordCount++;
+            }
+        }
+        catch ( IOException e ) {
+            // Keep what could be read, the rest is recomputed
+            logError( e );
+            damaged = true;
+        }
+        if ( FileCache.DEBUG ) {
+            final long t2 = System.currentTimeMillis();
+            System.err.println(
+                m_name + ": " + m_index.size() + " records read in "
+                + (t2 - t1) + "ms"
+            );
+        }
+        if ( damaged || m_recordCount > 2 * m_index.size() )
+            compact();
+    }
+
+    /**
+     * Rewrites the file with the live records only.
+     */
+    private void compact() {
+        closeOutput();
+        m_file = null;
+        m_recordCount = 0;
+        for ( Map.Entry<String,V> entry : m_index.entrySet() )
+            append( entry.getKey(), entry.getValue() );
+        flush();
+    }
+
+    /**
+     * Appends a record to the file.
+     *
+     * @param key The key.
+     * @param value The value or <code>null</code> for a removal.
+     */
+    private void append( String key, V value ) {
+        if ( m_cache == null )
+            return;
+        try {
+            if ( m_out == null )
+                openOutput();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+            final DataOutputStream data = new DataOutputStream( bytes );
+            data.writeUTF( key );
+            data.writeBoolean( value != null );
+            if ( value != null )
+                m_codec.write( value, data );
+            m_out.writeInt( bytes.size() );
+            bytes.writeTo( m_out );
+            m_recordCount++;
+        }
+        catch ( IOException e ) {
+            logError( e );
+            closeOutput();
+        }
+    }
+
+    private void openOutput() throws IOException {
+        if ( m_file == null ) {
+            // A new store, register it with the cache
+            m_file = m_cache.putToFile( m_key );
+            try ( DataOutputStream header =
+                      new DataOutputStream( new FileOutputStream( m_file ) ) ) {
+                header.writeInt( m_magic );
+                header.writeInt( m_version );
+            }
+            m_cache.notifyAboutCloseOf( m_file );
+        }
+        m_out = new DataOutputStream(
+            new BufferedOutputStream(
+                new FileOutputStream( m_file, true ), 64 * 1024
+            )
+        );
+    }
+
+    private void closeOutput() {
+        if ( m_out != null ) {
+            try {
+                m_out.close();
+            }
+            catch ( IOException e ) {
+                logError( e );
+            }
+            m_out = null;
+        }
+    }
+
+    private void logError( IOException e ) {
+        System.err.println( m_name + " error: " + e.getMessage() );
+    }
+
+    private final FileCache m_cache;
+    private final String m_key;
+    private final int m_magic;
+    private final int m_version;
+    private final Codec<V> m_codec;
+    private final String m_name;
+
+    /**
+     * The file of the store, or <code>null</code> if there is none yet.
+     */
+    private File m_file;
+
+    private final Map<String,V> m_index = new HashMap<String,V>();
+
+    /**
+     * The number of records in the file, including superseded ones.
+     */
+    private int m_recordCount;
+
+    private DataOutputStream m_out;
+}
+/* vim:set et sw=4 ts=4: */
@@ -34,20 +34,21 @@ import java.util.Arrays;
  * <p>
  * Each instance represents one Document, which is always and only accessible
  * through its root XmlDocument.XmlNode.
+ * <p>
+ * DocumentBuilders and Transformers are not thread-safe, so each thread
+ * keeps its own, and XmlDocuments can be read and written on several
+ * threads at once.  A single XmlDocument is still not thread-safe.
  */
 
 public class XmlDocument {
 
-    private static DocumentBuilder Builder;
-    private static TransformerFactory Transformers;
+    // The factories are only used while holding their locks, their
+    // products are kept per thread.
+    private static final DocumentBuilderFactory Builders;
+    private static final TransformerFactory Transformers;
 
     static {
-        try {
-            Builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        }
-        catch (ParserConfigurationException e) {
-            throw new RuntimeException("Couldn't init XML builder", e);
-        }
+        Builders = DocumentBuilderFactory.newInstance();
         try {
             Transformers = TransformerFactory.newInstance();
         }
@@ -62,8 +63,28 @@ public class XmlDocument {
         }
     }
 
+    private static final ThreadLocal<DocumentBuilder> Builder =
+        new ThreadLocal<DocumentBuilder>() {
+            protected DocumentBuilder initialValue() {
+                try {
+                    synchronized (Builders) {
+                        return Builders.newDocumentBuilder();
+                    }
+                }
+                catch (ParserConfigurationException e) {
+                    throw new RuntimeException("Couldn't init XML builder", e);
+                }
+            }
+        };
+
+    // Transformers for reading, configured as they come from the factory,
+    // and for writing, configured by createTransformer():
+    private static final ThreadLocal<Transformer> Reader =
+        new ThreadLocal<Transformer>();
+    private static final ThreadLocal<Transformer> Writer =
+        new ThreadLocal<Transformer>();
+
     private Document doc;
-    private Transformer xform;
 
     @Getter
     private XmlNode root;
@@ -74,7 +95,6 @@ public class XmlDocument {
      */
     public XmlDocument(String name) {
         doc = createDocument();
-        xform = createTransformer();
         Element e = doc.createElement(name);
         doc.appendChild(e);
         root = new XmlNode(e);
@@ -91,13 +111,11 @@ public class XmlDocument {
 
     public XmlDocument(Document doc) {
         this.doc = doc;
-        xform = createTransformer();
         root = new XmlNode(doc.getDocumentElement());
     }
 
     public XmlDocument(InputStream in) throws IOException {
         doc = createDocument();
-        xform = createTransformer();
         read(in);
         Element e = doc.getDocumentElement();
         root = new XmlNode(e);
@@ -108,13 +126,11 @@ public class XmlDocument {
         doc = createDocument();
         e = (Element) doc.importNode(e, true);
         doc.appendChild(e);
-        xform = createTransformer();
         root = new XmlNode(e);
     }
 
     public XmlDocument(XmlDocument xml) {
         doc = (Document) xml.doc.cloneNode(true);
-        xform = createTransformer();
         Element e = doc.getDocumentElement();
         root = new XmlNode(e);
     }
@@ -123,10 +139,17 @@ public class XmlDocument {
         DOMSource source = new DOMSource(doc);
         Writer writer = new OutputStreamWriter(out, "UTF-8");
         StreamResult result = new StreamResult(writer);
+        Transformer xform = Writer.get();
+        if (xform == null) {
+            xform = createTransformer();
+        }
         try {
             xform.transform(source, result);
+            Writer.set(xform);
         }
         catch (TransformerException e) {
+            // A failed Transformer may not be reusable
+            Writer.remove();
             throw new IOException("Couldn't write XML: " + e.getMessage());
         }
     }
@@ -134,23 +157,41 @@ public class XmlDocument {
     private void read(InputStream in) throws IOException {
         StreamSource source = new StreamSource(in);
         DOMResult result = new DOMResult(doc);
-        Transformer xform = createTransformer();
+        Transformer xform = Reader.get();
+        if (xform == null) {
+            xform = newTransformer();
+        }
         try {
             xform.transform(source, result);
+            Reader.set(xform);
         }
         catch (TransformerException e) {
+            Reader.remove();
             throw new IOException("Couldn't read XML: " + e.getMessage());
         }
     }
 
     private static Document createDocument() {
-        return Builder.newDocument();
+        return Builder.get().newDocument();
+    }
+
+    private static Transformer newTransformer() {
+        try {
+            synchronized (Transformers) {
+                return Transformers.newTransformer();
+            }
+        }
+        catch (TransformerConfigurationException e) {
+            throw new RuntimeException("Couldn't init XML transformer", e);
+        }
     }
 
     private static Transformer createTransformer() {
         Transformer xform = null;
         try {
-            xform = Transformers.newTransformer();
+            synchronized (Transformers) {
+                xform = Transformers.newTransformer();
+            }
         }
         catch (TransformerConfigurationException e) {
             e.printStackTrace();
@@ -5,6 +5,8 @@ package com.lightcrafts.image.metadata;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,6 +19,11 @@ import com.lightcrafts.image.UnknownImageTypeException;
 /**
  * A <code>BulkMetadataTester</code> is-a {@link TestCase} for bulk testing of
  * reading metadata from lots of images.
+ * <p>
+ * The last test reports the mean time to read the metadata of a file and the
+ * heap retained by the metadata per file.  Run it once with
+ * <code>-Dlightcrafts.metadata.lazy=false</code> to compare with eager maker
+ * notes decoding.
  *
  * @author Paul J. Lucas [paul@lightcrafts.com]
  */
@@ -42,6 +49,7 @@ public final class BulkMetadataTester extends TestCase {
     public static Test suite() {
         try {
             makeTestFor( new File( System.getProperty( "testDir" ) ) );
+            m_suite.addTest( new SummaryTestCase() );
         }
         catch ( Throwable t ) {
             t.printStackTrace();
@@ -73,7 +81,10 @@ public final class BulkMetadataTester extends TestCase {
          * exceptions are thrown, assume the test passed.
          */
         public void runTest() throws Exception {
-            m_imageInfo.getMetadata();
+            final long start = System.nanoTime();
+            final ImageMetadata metadata = m_imageInfo.getMetadata();
+            m_readTime += System.nanoTime() - start;
+            m_metadata.add( metadata );
             assertTrue( true );
         }
 
@@ -83,6 +94,54 @@ public final class BulkMetadataTester extends TestCase {
         private final ImageInfo m_imageInfo;
     }
 
+    /**
+     * A <code>SummaryTestCase</code> is-a {@link TestCase} that prints the
+     * time and memory statistics of the {@link ReadMetadataTestCase}s run
+     * before it.
+     */
+    private static final class SummaryTestCase extends TestCase {
+
+        /**
+         * Construct a <code>SummaryTestCase</code>.
+         */
+        SummaryTestCase() {
+            super( "summary" );
+        }
+
+        /**
+         * Print the mean read time and the heap retained by the metadata
+         * read, per file.
+         */
+        public void runTest() throws Exception {
+            final int count = m_metadata.size();
+            if ( count == 0 )
+                return;
+            final long retained = usedHeap();
+            m_metadata.clear();
+            final long released = usedHeap();
+            System.out.printf(
+                "%d files, lazy %s: %.2f ms/file, %d bytes/file%n",
+                count,
+                System.getProperty( "lightcrafts.metadata.lazy", "true" ),
+                m_readTime / 1e6 / count,
+                (retained - released) / count
+            );
+            assertTrue( true );
+        }
+
+        /**
+         * Gets the heap in use after a garbage collection.
+         *
+         * @return Returns said number of bytes.
+         */
+        private static long usedHeap() {
+            final Runtime runtime = Runtime.getRuntime();
+            for ( int i = 0; i < 3; ++i )
+                System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
     /**
      * Make a {@link TestCase} for the given file.  If the file does not exist,
      * is not readable, is hidden, or is a file we don't know how to deal with,
@@ -135,6 +194,17 @@ public final class BulkMetadataTester extends TestCase {
      */
     private static final TestSuite m_suite = new TestSuite();
 
+    /**
+     * The metadata read so far, kept to measure the heap it retains.
+     */
+    private static final List<ImageMetadata> m_metadata =
+        new ArrayList<ImageMetadata>();
+
+    /**
+     * The total time spent reading metadata, in nanoseconds.
+     */
+    private static long m_readTime;
+
     static {
         System.loadLibrary( "DCRaw" );
     }
@@ -0,0 +1,93 @@
+/* Copyright (C) 2005-2011 Fabio Riccardi */
+
+package com.lightcrafts.image.metadata;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lightcrafts.image.ImageInfo;
+
+/**
+ * Times the {@link ImageMetadata} getters that go through the provider
+ * lookup, on the metadata of the image files (e.g. NEF and CR2) in the
+ * directory given by the <code>testDir</code> property.  Reports the time
+ * and, where the JVM can tell, the bytes allocated per getter call.
+ */
+public final class MetadataGetterBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static final int ITERATIONS = 20000;
+
+    public static void main( String[] args ) throws Exception {
+        final List<ImageMetadata> metadata = new ArrayList<ImageMetadata>();
+        collect( new File( System.getProperty( "testDir", "." ) ), metadata );
+        if ( metadata.isEmpty() ) {
+            System.err.println( "No image metadata found" );
+            System.exit( -1 );
+        }
+        System.out.println( metadata.size() + " images" );
+
+        final int calls = ITERATIONS * metadata.size() * 8;
+        for ( int round = 0; round < ROUNDS; ++round ) {
+            final long bytes = allocatedBytes();
+            final long start = System.nanoTime();
+            double sink = 0;
+            for ( int i = 0; i < ITERATIONS; ++i )
+                for ( ImageMetadata meta : metadata ) {
+                    sink += meta.getAperture();
+                    sink += meta.getShutterSpeed();
+                    sink += meta.getFocalLength();
+                    sink += meta.getISO();
+                    sink += meta.getImageWidth();
+                    sink += meta.getRating();
+                    sink += meta.getCaptureDateTime() != null ? 1 : 0;
+                    sink += meta.getLens() != null ? 1 : 0;
+                }
+            final long time = System.nanoTime() - start;
+            final long allocated = allocatedBytes() - bytes;
+            System.out.printf(
+                "%.1f ns/call, %s bytes/call (%s)%n",
+                (double)time / calls,
+                allocated >= 0 ? String.format( "%.1f", (double)allocated / calls ) : "?",
+                sink
+            );
+        }
+    }
+
+    private static void collect( File file, List<ImageMetadata> metadata ) {
+        if ( file.isDirectory() ) {
+            final File[] files = file.listFiles();
+            if ( files != null )
+                for ( File f : files )
+                    collect( f, metadata );
+            return;
+        }
+        if ( file.isHidden() || !file.isFile() )
+            return;
+        try {
+            metadata.add( ImageInfo.getInstanceFor( file ).getMetadata() );
+        }
+        catch ( Exception e ) {
+            // not an image we know
+        }
+    }
+
+    // The bytes allocated by this thread so far, or -1 if unsupported.
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if ( bean instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean)bean)
+                .getThreadAllocatedBytes( Thread.currentThread().getId() );
+        }
+        return -1;
+    }
+
+    static {
+        System.loadLibrary( "DCRaw" );
+    }
+}
+/* vim:set et sw=4 ts=4: */
@@ -0,0 +1,119 @@
+/* Copyright (C) 2026-     Masahiro Kitagawa */
+
+package com.lightcrafts.jai.opimage;
+
+import org.junit.Test;
+
+import javax.media.jai.BorderExtender;
+import javax.media.jai.ImageLayout;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.*;
+
+public class LCGaussianBlurTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    // Smaller than the image, so that the padding of inner tiles is checked too
+    private static final int TILE_SIZE = 64;
+
+    @Test
+    public void blurUShort() throws Exception {
+        var image = createImage(BufferedImage.TYPE_USHORT_GRAY, 0xffff);
+        for (double sigma : new double[]{3, 7.5, 20, 70}) {
+            assertBlurred(image, 0xffff, sigma);
+        }
+    }
+
+    @Test
+    public void blurByte() throws Exception {
+        var image = createImage(BufferedImage.TYPE_3BYTE_BGR, 0xff);
+        for (double sigma : new double[]{3, 12.5}) {
+            assertBlurred(image, 0xff, sigma);
+        }
+    }
+
+    // Gradients, hard edged blocks and a fine dither of +/- 5%
+    private BufferedImage createImage(int type, int max) {
+        var image = new BufferedImage(WIDTH, HEIGHT, type);
+        var raster = image.getRaster();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int b = 0; b < raster.getNumBands(); b++) {
+                    double v = (x + b * y) / (double) (WIDTH + HEIGHT);
+                    if ((x / 40 + y / 30 + b) % 3 == 0) {
+                        v = 1 - v;
+                    }
+                    v += ((x * 7919 + y * 104729 + b * 31) % 101 - 50) / 1000.0;
+                    raster.setSample(x, y, b, (int) Math.max(0, Math.min(max, v * max)));
+                }
+            }
+        }
+        return image;
+    }
+
+    private void assertBlurred(BufferedImage image, int max, double sigma) {
+        var layout = new ImageLayout();
+        layout.setTileWidth(TILE_SIZE);
+        layout.setTileHeight(TILE_SIZE);
+        var op = new LCGaussianBlurOpImage(
+                image, BorderExtender.createInstance(BorderExtender.BORDER_COPY),
+                null, layout, sigma);
+        var src = image.getRaster();
+        var dst = op.getData();
+
+        // Deriche's fit and the padding cut at three deviations stay within
+        // 0.11% of the range on 16 bit data, 8 bit data also loses up to half
+        // a code value (0.2%) to rounding: the worst case here is 0.29%
+        final double tolerance = 0.003 * max;
+        for (int b = 0; b < src.getNumBands(); b++) {
+            final double[] expected = convolve(src, b, sigma);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals("sigma " + sigma + " at " + x + "," + y + " band " + b,
+                            expected[y * WIDTH + x], dst.getSample(x, y, b), tolerance);
+                }
+            }
+        }
+    }
+
+    // Separable convolution with the kernel sampled out to six deviations,
+    // repeating the edge pixels like BORDER_COPY
+    private double[] convolve(Raster src, int band, double sigma) {
+        final int radius = (int) Math.ceil(6 * sigma);
+        var kernel = new double[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            sum += kernel[i + radius] = Math.exp(-i * i / (2 * sigma * sigma));
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+
+        var rows = new double[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double v = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    final int xx = Math.max(0, Math.min(WIDTH - 1, x + i));
+                    v += kernel[i + radius] * src.getSample(xx, y, band);
+                }
+                rows[y * WIDTH + x] = v;
+            }
+        }
+
+        var result = new double[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double v = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    final int yy = Math.max(0, Math.min(HEIGHT - 1, y + i));
+                    v += kernel[i + radius] * rows[yy * WIDTH + x];
+                }
+                result[y * WIDTH + x] = v;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+/* Copyright (C) 2026-     Masahiro Kitagawa */
+
+package com.lightcrafts.jai.opimage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+// Needs the classes built from src-vector and --add-modules jdk.incubator.vector
+public class PointKernelsTest {
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 17;
+
+    // Padded scanlines and a spare sample per pixel, to exercise the strides
+    private static final int PIXEL_STRIDE = 4;
+    private static final int LINE_STRIDE = WIDTH * PIXEL_STRIDE + 5;
+    private static final int[] BAND_OFFSETS = {2, 1, 0};
+
+    private final PointKernels scalar = new ScalarPointKernels();
+    private PointKernels vector;
+    private short[] src;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            vector = (PointKernels) Class.forName("com.lightcrafts.jai.opimage.VectorPointKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            vector = null;
+        }
+        assumeTrue(vector != null);
+
+        // Ramps across the whole range, with black and white clipped pixels
+        src = new short[LINE_STRIDE * HEIGHT];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (short) (i % 97 == 0 ? 0 : i % 89 == 0 ? 0xffff : i * 211);
+        }
+    }
+
+    @Test
+    public void vibrance() throws Exception {
+        var toLinearsRGB = new float[][]{
+                {1.66f, -0.59f, -0.07f}, {-0.12f, 1.13f, -0.01f}, {-0.02f, -0.1f, 1.12f}
+        };
+        for (float amount : new float[]{0.5f, 1.5f}) {
+            final float rest = (1 - amount) / 2;
+            var transform = new float[][]{
+                    {amount, rest, rest}, {rest, amount, rest}, {rest, rest, amount}
+            };
+            var expected = new short[src.length];
+            var actual = new short[src.length];
+            scalar.vibrance(src, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    expected, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    WIDTH, HEIGHT, transform, toLinearsRGB, amount > 1);
+            vector.vibrance(src, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    actual, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    WIDTH, HEIGHT, transform, toLinearsRGB, amount > 1);
+            assertSamePixels(expected, actual);
+        }
+    }
+
+    @Test
+    public void rawAdjustments() throws Exception {
+        var cameraRGB = new float[][]{
+                {1.8f, -0.6f, -0.2f}, {-0.2f, 1.5f, -0.3f}, {0.05f, -0.5f, 1.45f}
+        };
+        for (float exposure : new float[]{0.7f, 1f, 1.6f}) {
+            var expected = new short[src.length];
+            var actual = new short[src.length];
+            scalar.rawAdjustments(src, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    expected, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    WIDTH, HEIGHT, cameraRGB, exposure);
+            vector.rawAdjustments(src, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    actual, BAND_OFFSETS, LINE_STRIDE, PIXEL_STRIDE,
+                    WIDTH, HEIGHT, cameraRGB, exposure);
+            assertSamePixels(expected, actual);
+        }
+    }
+
+    // The scalar loops do part of their arithmetic in double and the vector
+    // lanes all of it in float, so a sample may truncate to the next code value
+    private static void assertSamePixels(short[] expected, short[] actual) {
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                for (int band : BAND_OFFSETS) {
+                    final int i = row * LINE_STRIDE + col * PIXEL_STRIDE + band;
+                    assertEquals("pixel " + col + "," + row + " band " + band,
+                            expected[i] & 0xffff, actual[i] & 0xffff, 1);
+                }
+            }
+        }
+    }
+}
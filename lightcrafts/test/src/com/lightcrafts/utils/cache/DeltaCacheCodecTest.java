@@ -0,0 +1,104 @@
+/* Copyright (C) 2026-     Masahiro Kitagawa */
+
+package com.lightcrafts.utils.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaCacheCodecTest {
+    private static final int TILE_SIZE = 512;
+
+    private final DeltaCacheCodec codec = new DeltaCacheCodec();
+    private File file;
+    private CacheStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("LCCacheTest", ".cce");
+        store = new DirectFileCacheStore(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.dispose();
+        file.delete();
+    }
+
+    @Test
+    public void compressSmoothTile() throws Exception {
+        final ByteBuffer tile = gradient(3, 16, ByteOrder.nativeOrder());
+        final ByteBuffer compressed = roundTrip(tile);
+        assertTrue(compressed.limit() < tile.limit() * 0.6);
+    }
+
+    @Test
+    public void compressOtherByteOrder() throws Exception {
+        final ByteOrder order = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+                ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN;
+        roundTrip(gradient(3, 16, order));
+    }
+
+    @Test
+    public void compressPixelSizes() throws Exception {
+        for (int bands = 1; bands <= 4; bands++) {
+            roundTrip(gradient(bands, 256, ByteOrder.nativeOrder()));
+        }
+    }
+
+    @Test
+    public void storeNoise() throws Exception {
+        final ByteBuffer buf = store.getByteBuffer(10001);
+        final byte[] noise = new byte[buf.limit()];
+        new Random(1).nextBytes(noise);
+        buf.put(noise);
+        // stored as is, after the header
+        assertEquals(buf.limit() + 5, roundTrip(buf).limit());
+    }
+
+    @Test
+    public void compressOddSize() throws Exception {
+        final ByteBuffer buf = store.getByteBuffer(7);
+        buf.put(new byte[]{1, 2, 3, 4, 5, 6, 7});
+        roundTrip(buf);
+    }
+
+    private ByteBuffer roundTrip(ByteBuffer buf) throws IOException {
+        final ByteBuffer compressed = codec.compress(buf);
+        final byte[] copy = new byte[compressed.limit()];
+        compressed.get(copy);
+        final ByteBuffer result = codec.decompress(ByteBuffer.wrap(copy), store);
+        assertEquals(buf.limit(), result.limit());
+        for (int i = 0; i < buf.limit(); i++) {
+            assertEquals(buf.get(i), result.get(i));
+        }
+        return compressed;
+    }
+
+    // A 16 bit tile with a gradient in each band, dithered by up to +/- noise
+    private ByteBuffer gradient(int bands, int noise, ByteOrder order) {
+        final ByteBuffer buf = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * bands * 2);
+        buf.order(order);
+        int i = 0;
+        for (int y = 0; y < TILE_SIZE; y++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                for (int b = 0; b < bands; b++) {
+                    final int dither = (x * 7919 + y * 104729 + b * 31) % (2 * noise) - noise;
+                    final int value = 8000 * (b + 1) + 4 * x + 2 * y + dither;
+                    buf.putShort(i, (short) value);
+                    i += 2;
+                }
+            }
+        }
+        return buf;
+    }
+}